@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares verifying small signed messages one by one with verifying them as a batch.
+ * Scores are the time per batch; divide by the batch size for the time per signature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchVerificationBenchmark {
+  private static final int MESSAGE_SIZE = 512;
+
+  @Param({"8", "64", "512"})
+  private int batchSize;
+
+  private SignifyVerifier verifier;
+  private List<String> base64Signatures;
+  private List<Signature> signatures;
+  private List<byte[]> messages;
+
+  @Setup
+  public void signMessages() {
+    TestSigner signer = TestSigner.generate();
+    Random random = new Random(batchSize);
+    base64Signatures = new ArrayList<>();
+    signatures = new ArrayList<>();
+    messages = new ArrayList<>();
+    for (int i = 0; i < batchSize; i++) {
+      byte[] message = new byte[MESSAGE_SIZE];
+      random.nextBytes(message);
+      String base64Signature = signer.sign(message);
+      base64Signatures.add(base64Signature);
+      signatures.add(Signature.fromBase64String(base64Signature));
+      messages.add(message);
+    }
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+  }
+
+  @Benchmark
+  public void verifyEach() throws Exception {
+    for (int i = 0; i < batchSize; i++) {
+      verifier.verify(base64Signatures.get(i), messages.get(i));
+    }
+  }
+
+  @Benchmark
+  public void verifyBatch() throws Exception {
+    verifier.verifyBatch(signatures, messages);
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Load test of {@link BatchingSignifyVerifier} against calling the verifier directly, with many threads each
+ * verifying one small message at a time. Sample time mode reports the p50/p99 latency of a verification and
+ * the number of samples per second, which is the throughput.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=BatchingBenchmark}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@Threads(32)
+public class BatchingBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class SignedMessage {
+    byte[] message;
+    Signature signature;
+    SignifyVerifier verifier;
+
+    @Setup
+    public void createSignedMessage() {
+      message = "a small message, e.g. a request token".getBytes(UTF_8);
+      TestSigner signer = TestSigner.generate();
+      signature = Signature.fromBase64String(signer.sign(message));
+      verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Batching {
+    @Param({"16", "64"})
+    int maxBatchSize;
+
+    @Param({"50", "200"})
+    int maxWaitMicros;
+
+    BatchingSignifyVerifier verifier;
+
+    @Setup
+    public void startBatching(SignedMessage signed) {
+      verifier = new BatchingSignifyVerifier(signed.verifier, maxBatchSize, maxWaitMicros, TimeUnit.MICROSECONDS);
+    }
+
+    @TearDown
+    public void stopBatching() {
+      verifier.close();
+    }
+  }
+
+  @Benchmark
+  public VerificationResult direct(SignedMessage signed) {
+    return signed.verifier.tryVerify(signed.signature, signed.message);
+  }
+
+  @Benchmark
+  public VerificationResult batched(SignedMessage signed, Batching batching) {
+    return batching.verifier.verify(signed.signature, signed.message).join();
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.engine.VerificationEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the verification engines for repeated verifications with the same key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EngineBenchmark {
+  @Param({"TinkVerificationEngine", "BuiltInVerificationEngine", "JdkVerificationEngine"})
+  private String engine;
+
+  @Param({"64", "1024"})
+  private int messageSize;
+
+  private SignifyVerifier verifier;
+  private String base64Signature;
+  private byte[] message;
+
+  @Setup
+  public void signMessage() throws ReflectiveOperationException {
+    TestSigner signer = TestSigner.generate();
+    message = new byte[messageSize];
+    new Random(messageSize).nextBytes(message);
+    base64Signature = signer.sign(message);
+    VerificationEngine instance = (VerificationEngine) Class.forName("com.alphabot.security.jsignify.engine." + engine)
+        .getConstructor().newInstance();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey(), instance);
+  }
+
+  @Benchmark
+  public void verify() throws Exception {
+    verifier.verify(base64Signature, message);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.common.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of reading a message file for verification, from 0 B to 8 GB.
+ * {@code readAllBytes} measures the former {@code verifyFile} implementation, which reads the whole file into a
+ * byte array; it fails for files larger than 2 GB and needs a heap larger than the file, so it only runs up to
+ * 1 GB.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=FileVerificationBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class FileVerificationBenchmark {
+
+  /*
+   * A message file of random bytes with its signature, deleted after the trial.
+   */
+  public abstract static class SignedFile {
+    Path directory;
+    Path messageFile;
+    Path signatureFile;
+    String base64Signature;
+    SignifyVerifier verifier;
+
+    void create(long size) throws IOException {
+      directory = Files.createTempDirectory("jsignify-benchmark");
+      messageFile = directory.resolve("message.bin");
+      signatureFile = directory.resolve("message.bin.sig");
+
+      Random random = new Random(size);
+      byte[] block = new byte[1024 * 1024];
+      try (OutputStream out = Files.newOutputStream(messageFile)) {
+        for (long written = 0; written < size; written += block.length) {
+          random.nextBytes(block);
+          out.write(block, 0, (int) Math.min(block.length, size - written));
+        }
+      }
+
+      TestSigner signer = TestSigner.generate();
+      signer.writeSignature(signatureFile, messageFile);
+      base64Signature = FileUtil.readBase64File(signatureFile);
+      verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteSignedFile() throws IOException {
+      Files.deleteIfExists(signatureFile);
+      Files.deleteIfExists(messageFile);
+      Files.deleteIfExists(directory);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class ByteArrayFile extends SignedFile {
+    @Param({"0", "1024", "65536", "1048576", "67108864", "1073741824"})
+    long size;
+
+    @Setup(Level.Trial)
+    public void createSignedFile() throws IOException {
+      create(size);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class ChannelFile extends SignedFile {
+    @Param({"0", "1024", "65536", "1048576", "67108864", "1073741824", "8589934592"})
+    long size;
+
+    @Param({"STREAMING", "MAPPED", "AUTO"})
+    String readMode;
+
+    @Setup(Level.Trial)
+    public void createSignedFile() throws IOException {
+      create(size);
+    }
+  }
+
+  @Benchmark
+  public void readAllBytes(ByteArrayFile file) throws Exception {
+    file.verifier.verify(file.base64Signature, FileUtil.readAllBytes(file.messageFile));
+  }
+
+  @Benchmark
+  public void verifyFile(ChannelFile file) throws Exception {
+    file.verifier.verifyFile(file.signatureFile, file.messageFile, MessageReadMode.valueOf(file.readMode));
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.crypto.tink.subtle.Hex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares looking up the digest of one file in a generated signed checksum list with a {@link ManifestIndex}
+ * against verifying and parsing the list for every lookup with {@link ChecksumListVerifier}, and measures
+ * building the index. The listed file does not exist, so no file is hashed.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=ManifestIndexBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class ManifestIndexBenchmark {
+  @Param({"100000", "2000000"})
+  private int lineCount;
+
+  private Path directory;
+  private Path checksumFile;
+  private SignifyVerifier verifier;
+  private ManifestIndex index;
+  private ChecksumListVerifier listVerifier;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void createChecksumList() throws IOException, VerificationFailedException {
+    directory = Files.createTempDirectory("jsignify-benchmark");
+    Path list = directory.resolve("SHA256");
+    Random random = new Random(lineCount);
+    byte[] digest = new byte[32];
+    try (BufferedWriter writer = Files.newBufferedWriter(list, UTF_8)) {
+      for (int i = 0; i < lineCount; i++) {
+        random.nextBytes(digest);
+        writer.write("SHA256 (" + name(i) + ") = " + Hex.encode(digest) + "\n");
+      }
+    }
+    TestSigner signer = TestSigner.generate();
+    String signature = signer.sign(() -> Files.newInputStream(list));
+    checksumFile = directory.resolve("SHA256.sig");
+    try (OutputStream out = Files.newOutputStream(checksumFile, StandardOpenOption.CREATE_NEW)) {
+      out.write(("untrusted comment: verify with benchmark.pub\n" + signature + "\n").getBytes(UTF_8));
+      Files.copy(list, out);
+    }
+    Files.delete(list);
+
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    index = new ManifestIndex(verifier, checksumFile);
+    listVerifier = new ChecksumListVerifier(verifier);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteChecksumList() throws IOException {
+    Files.delete(checksumFile);
+    Files.delete(directory);
+  }
+
+  @Benchmark
+  public ChecksumReport.Status manifestIndex() {
+    return index.check(name(nextIndex()), directory.resolve("missing"));
+  }
+
+  @Benchmark
+  public ChecksumReport checksumListVerifier() throws IOException, VerificationFailedException {
+    return listVerifier.verify(checksumFile, directory, List.of(name(nextIndex())));
+  }
+
+  @Benchmark
+  public ManifestIndex buildIndex() throws IOException, VerificationFailedException {
+    return new ManifestIndex(verifier, checksumFile);
+  }
+
+  private int nextIndex() {
+    next = (next + 7919) % lineCount;
+    return next;
+  }
+
+  private static String name(int i) {
+    return "packages/amd64/package-" + i + ".tgz";
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SignifyVerifier#verify(String, byte[])} for messages held in memory, from 0 B to 1 GB.
+ * {@link FileVerificationBenchmark} covers the same sizes read from files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class MessageVerificationBenchmark {
+  @Param({"0", "1024", "65536", "1048576", "67108864", "1073741824"})
+  private int size;
+
+  private byte[] message;
+  private String base64Signature;
+  private Signature signature;
+  private SignifyVerifier verifier;
+
+  @Setup
+  public void createSignedMessage() {
+    message = new byte[size];
+    new Random(size).nextBytes(message);
+    TestSigner signer = TestSigner.generate();
+    base64Signature = signer.sign(message);
+    signature = Signature.fromBase64String(base64Signature);
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+  }
+
+  @Benchmark
+  public void verifyBase64Signature() throws Exception {
+    verifier.verify(base64Signature, message);
+  }
+
+  @Benchmark
+  public void verifyParsedSignature() throws Exception {
+    verifier.verifyMessage(signature, message);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.common.FileUtil;
+import com.alphabot.security.jsignify.elements.PublicKey;
+import com.alphabot.security.jsignify.elements.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Measures parsing of public keys and signatures from Base64 strings, bytes and files.
+ * Run with the GC profiler (the default of {@code ./gradlew jmh}) to see the allocations per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParsingBenchmark {
+  private String base64PublicKey;
+  private String base64Signature;
+  private byte[] base64SignatureBytes;
+  private ByteBuffer base64SignatureBuffer;
+  private Path directory;
+  private Path signatureFile;
+
+  @Setup
+  public void createSignature() throws IOException {
+    TestSigner signer = TestSigner.generate();
+    base64PublicKey = signer.getBase64PublicKey();
+    base64Signature = signer.sign(new byte[] {1, 2, 3});
+    base64SignatureBytes = base64Signature.getBytes(US_ASCII);
+    base64SignatureBuffer = ByteBuffer.allocateDirect(base64SignatureBytes.length).put(base64SignatureBytes).flip();
+    directory = Files.createTempDirectory("jsignify-benchmark");
+    signatureFile = directory.resolve("message.sig");
+    signer.writeSignature(signatureFile, new byte[] {1, 2, 3});
+  }
+
+  @TearDown
+  public void deleteSignature() throws IOException {
+    Files.deleteIfExists(signatureFile);
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  public PublicKey publicKeyFromBase64String() {
+    return PublicKey.fromBase64String(base64PublicKey);
+  }
+
+  @Benchmark
+  public Signature signatureFromBase64String() {
+    return Signature.fromBase64String(base64Signature);
+  }
+
+  @Benchmark
+  public Signature signatureFromBase64Bytes() {
+    return Signature.fromBase64Bytes(base64SignatureBytes);
+  }
+
+  @Benchmark
+  public Signature signatureFromDirectBuffer() {
+    return Signature.fromBase64Bytes(base64SignatureBuffer);
+  }
+
+  @Benchmark
+  public String readBase64File() throws IOException {
+    return FileUtil.readBase64File(signatureFile);
+  }
+
+  @Benchmark
+  public Signature signatureFromFile() throws IOException {
+    return Signature.fromFile(signatureFile);
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Compares rejecting invalid signatures by catching {@link VerificationFailedException} (the {@code verify}
+ * methods) with the {@code tryVerify} methods, which return a {@link VerificationResult} instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RejectionBenchmark {
+  @Param({"WRONG_KEY", "BAD_SIGNATURE", "MALFORMED"})
+  private VerificationResult rejection;
+
+  private byte[] message;
+  private String base64Signature;
+  private SignifyVerifier verifier;
+
+  @Setup
+  public void createRejectedSignature() {
+    message = "forged message".getBytes(UTF_8);
+    TestSigner signer = TestSigner.generate();
+    TestSigner otherSigner = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    switch (rejection) {
+      case WRONG_KEY:
+        base64Signature = otherSigner.sign(message);
+        break;
+      case BAD_SIGNATURE:
+        base64Signature = signer.sign("signed message".getBytes(UTF_8));
+        break;
+      default:
+        base64Signature = "RWSvK/";
+    }
+  }
+
+  @Benchmark
+  public boolean catchException() {
+    try {
+      verifier.verify(base64Signature, message);
+      return true;
+    } catch (VerificationFailedException | IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  @Benchmark
+  public VerificationResult tryVerify() {
+    return verifier.tryVerify(base64Signature, message);
+  }
+}
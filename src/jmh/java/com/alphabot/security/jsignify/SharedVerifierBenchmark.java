@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of one {@link SignifyVerifier} shared by several threads. With no contention,
+ * the throughput grows with the number of threads up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SharedVerifierBenchmark {
+  @Param({"64", "65536"})
+  private int size;
+
+  private byte[] message;
+  private Signature signature;
+  private SignifyVerifier verifier;
+
+  @Setup
+  public void createSignedMessage() {
+    message = new byte[size];
+    new Random(size).nextBytes(message);
+    TestSigner signer = TestSigner.generate();
+    signature = Signature.fromBase64String(signer.sign(message));
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void oneThread() throws Exception {
+    verifier.verifyMessage(signature, message);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void fourThreads() throws Exception {
+    verifier.verifyMessage(signature, message);
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public void allCores() throws Exception {
+    verifier.verifyMessage(signature, message);
+  }
+}
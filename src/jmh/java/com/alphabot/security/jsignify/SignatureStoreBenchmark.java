@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up signatures by artifact id in a {@link SignatureStore} against a {@link HashMap} of parsed
+ * signatures on the heap. The heap held by such a map is measured by {@link #hashMapFootprint}, in single shot
+ * mode, and reported as the secondary result {@code mapHeapMegabytes}; the store holds none.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=SignatureStoreBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class SignatureStoreBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Size {
+    @Param({"100000", "1000000"})
+    int signatureCount;
+  }
+
+  @State(Scope.Benchmark)
+  public static class Signatures {
+    Path file;
+    SignatureStore store;
+    Map<String, Signature> map;
+    int signatureCount;
+    int next;
+
+    @Setup(Level.Trial)
+    public void fill(Size size) throws IOException {
+      signatureCount = size.signatureCount;
+      file = Files.createTempFile("jsignify-benchmark", ".store");
+      Files.delete(file);
+      store = SignatureStore.open(file);
+      map = newHashMap(signatureCount);
+      for (Map.Entry<String, Signature> entry : map.entrySet()) {
+        store.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+      store.close();
+      Files.delete(file);
+    }
+
+    String nextId() {
+      next = (next + 7919) % signatureCount;
+      return id(next);
+    }
+  }
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Footprint {
+    public long mapHeapMegabytes;
+  }
+
+  @Benchmark
+  public Signature signatureStore(Signatures signatures) {
+    return signatures.store.get(signatures.nextId());
+  }
+
+  @Benchmark
+  public Signature hashMap(Signatures signatures) {
+    return signatures.map.get(signatures.nextId());
+  }
+
+  /*
+   * Builds the map once per iteration; only the heap it holds is of interest, not the time.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public Map<String, Signature> hashMapFootprint(Size size, Footprint footprint) {
+    long heapBefore = usedHeap();
+    Map<String, Signature> map = newHashMap(size.signatureCount);
+    footprint.mapHeapMegabytes = (usedHeap() - heapBefore) >> 20;
+    return map;
+  }
+
+  private static Map<String, Signature> newHashMap(int signatureCount) {
+    Random random = new Random(signatureCount);
+    byte[] layout = new byte[SignatureStore.RECORD_LEN];
+    Map<String, Signature> map = new HashMap<>();
+    for (int i = 0; i < signatureCount; i++) {
+      random.nextBytes(layout);
+      layout[0] = 'E';
+      layout[1] = 'd';
+      map.put(id(i), Signature.fromLayout(ByteBuffer.wrap(layout)));
+    }
+    return map;
+  }
+
+  private static String id(int i) {
+    return "packages/amd64/package-" + i + ".tgz";
+  }
+
+  private static long usedHeap() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
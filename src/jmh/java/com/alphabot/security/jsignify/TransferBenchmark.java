@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link VerifyingTransfer} with copying a message file first and verifying the copy afterwards,
+ * which reads every byte a second time.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=TransferBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TransferBenchmark {
+  @Param({"1048576", "67108864"})
+  private long size;
+
+  private Path directory;
+  private Path sourceFile;
+  private Path signatureFile;
+  private Path destination;
+  private Signature signature;
+  private SignifyVerifier verifier;
+  private VerifyingTransfer transfer;
+
+  @Setup(Level.Trial)
+  public void createSignedFile() throws IOException {
+    directory = Files.createTempDirectory("jsignify-benchmark");
+    sourceFile = directory.resolve("source.bin");
+    signatureFile = directory.resolve("source.bin.sig");
+    destination = directory.resolve("destination.bin");
+
+    Random random = new Random(size);
+    byte[] block = new byte[1024 * 1024];
+    try (OutputStream out = Files.newOutputStream(sourceFile)) {
+      for (long written = 0; written < size; written += block.length) {
+        random.nextBytes(block);
+        out.write(block, 0, (int) Math.min(block.length, size - written));
+      }
+    }
+
+    TestSigner signer = TestSigner.generate();
+    signer.writeSignature(signatureFile, sourceFile);
+    signature = Signature.fromFile(signatureFile);
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    transfer = new VerifyingTransfer(verifier, Long.MAX_VALUE);
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFiles() throws IOException {
+    Files.deleteIfExists(destination);
+    Files.deleteIfExists(signatureFile);
+    Files.deleteIfExists(sourceFile);
+    Files.deleteIfExists(directory);
+  }
+
+  @Benchmark
+  public void copyThenVerifyFile() throws Exception {
+    try (FileChannel source = FileChannel.open(sourceFile, StandardOpenOption.READ);
+        FileChannel target = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (long position = 0; position < size; ) {
+        position += target.transferFrom(source, position, size - position);
+      }
+      target.force(true);
+    }
+    verifier.verifyFile(signatureFile, destination);
+  }
+
+  @Benchmark
+  public void verifyingTransfer() throws Exception {
+    try (FileChannel source = FileChannel.open(sourceFile, StandardOpenOption.READ)) {
+      transfer.transfer(signature, source, destination);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Compares verifying a generated tree of signed files with {@link TreeVerifier} against calling
+ * {@link SignifyVerifier#verifyFile(Path, Path)} for one file after the other.
+ * The files are 128 B, 1 KB and 8 KB large, with 1000 files per directory.
+ * Run with {@code ./gradlew jmh -Pjmh.includes=TreeVerificationBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class TreeVerificationBenchmark {
+  private static final int[] SIZES = {128, 1024, 8192};
+  private static final int FILES_PER_DIRECTORY = 1000;
+
+  @Param({"1000", "100000"})
+  private int fileCount;
+
+  private Path root;
+  private SignifyVerifier verifier;
+  private TreeVerifier treeVerifier;
+
+  @Setup(Level.Trial)
+  public void createTree() throws IOException {
+    root = Files.createTempDirectory("jsignify-benchmark");
+    TestSigner signer = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    treeVerifier = new TreeVerifier(verifier);
+
+    // signing is slow, so all files of a size have the same content
+    byte[][] contents = new byte[SIZES.length][];
+    String[] signatures = new String[SIZES.length];
+    Random random = new Random(fileCount);
+    for (int i = 0; i < SIZES.length; i++) {
+      contents[i] = new byte[SIZES[i]];
+      random.nextBytes(contents[i]);
+      signatures[i] = "untrusted comment: verify with benchmark.pub\n" + signer.sign(contents[i]) + "\n";
+    }
+
+    for (int i = 0; i < fileCount; i++) {
+      Path directory = root.resolve("d" + i / FILES_PER_DIRECTORY);
+      if (i % FILES_PER_DIRECTORY == 0) {
+        Files.createDirectory(directory);
+      }
+      Files.write(directory.resolve("f" + i + ".tar"), contents[i % SIZES.length]);
+      Files.writeString(directory.resolve("f" + i + ".tar.sig"), signatures[i % SIZES.length]);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteTree() throws IOException {
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  @Benchmark
+  public TreeReport treeVerifier() throws IOException {
+    return treeVerifier.verify(root);
+  }
+
+  @Benchmark
+  public void verifyFileLoop() throws Exception {
+    for (int i = 0; i < fileCount; i++) {
+      Path directory = root.resolve("d" + i / FILES_PER_DIRECTORY);
+      verifier.verifyFile(directory.resolve("f" + i + ".tar.sig"), directory.resolve("f" + i + ".tar"));
+    }
+  }
+}
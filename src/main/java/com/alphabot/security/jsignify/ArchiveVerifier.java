@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ArchiveVerifier verifies the entries of a zip or jar archive against a signed checksum list, without
+ * extracting the archive.
+ *
+ * <p>The checksum list has the format read by {@link ChecksumListVerifier}; its names are the names of the
+ * archive entries (e.g. {@code lib/foo.jar}). The signature of the list is verified first. Then the archive is
+ * opened with random access through its central directory, and the listed entries are inflated and hashed
+ * in memory, in parallel on a fork-join pool. Nothing is written to the disk, and each entry being hashed
+ * needs a fixed-size buffer only, so memory use is bounded by the number of entries read at the same time.
+ *
+ * <p>The report lists every entry of the checksum list, followed by the entries of the archive that are not
+ * listed ({@link ChecksumReport.Status#NOT_LISTED}); listed entries missing in the archive are
+ * {@link ChecksumReport.Status#MISSING}. A name that occurs more than once in the archive is
+ * {@link ChecksumReport.Status#DUPLICATE} (whether listed or not) and its entries are not hashed: zip readers
+ * differ in which of the entries they return, so a checked copy would not protect the others. Directory
+ * entries are ignored. Jar signatures are not checked, and the jar manifest is an entry like any other.
+ */
+@Alpha
+public final class ArchiveVerifier {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final SignifyVerifier verifier;
+  private final ForkJoinPool pool;
+  private final int maxEntriesInFlight;
+
+  /**
+   * Create a new ArchiveVerifier that hashes entries on the common fork-join pool, reading as many entries at
+   * the same time as the pool has threads.
+   * @param verifier the verifier of the checksum list's signature
+   */
+  public ArchiveVerifier(SignifyVerifier verifier) {
+    this(verifier, ForkJoinPool.commonPool(), ForkJoinPool.commonPool().getParallelism());
+  }
+
+  /**
+   * Create a new ArchiveVerifier that hashes entries on the given pool.
+   * @param verifier the verifier of the checksum list's signature
+   * @param pool the pool the entries are hashed on
+   * @param maxEntriesInFlight the maximum number of entries read at the same time
+   * @throws IllegalArgumentException in case maxEntriesInFlight is not positive
+   */
+  public ArchiveVerifier(SignifyVerifier verifier, ForkJoinPool pool, int maxEntriesInFlight) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(pool, "pool");
+    Preconditions.checkArgument(
+        maxEntriesInFlight > 0, "maxEntriesInFlight must be positive, but was %s.", maxEntriesInFlight);
+    this.verifier = verifier;
+    this.pool = pool;
+    this.maxEntriesInFlight = maxEntriesInFlight;
+  }
+
+  /**
+   * Verify a checksum list and the entries of an archive.
+   * @param checksumFile a path pointing to the signed checksum list
+   * @param archive a path pointing to the zip or jar archive
+   * @return the result for each listed entry and each entry of the archive that is not listed
+   * @throws VerificationFailedException in case the signature of the checksum list is not valid
+   * @throws IOException in case an I/O error occurs while reading the checksum list or the central directory
+   *     of the archive (e.g. it is not a zip archive)
+   * @throws IllegalArgumentException in case the checksum list is in the wrong format
+   */
+  public ChecksumReport verify(Path checksumFile, Path archive) throws VerificationFailedException, IOException {
+    Preconditions.checkNotNull(checksumFile, "checksumFile");
+    Preconditions.checkNotNull(archive, "archive");
+    List<ChecksumListVerifier.Checksum> checksums = ChecksumListVerifier.readChecksumList(verifier, checksumFile);
+
+    try (ZipFile zip = new ZipFile(archive.toFile())) {
+      Map<String, Integer> archived = countEntries(zip);
+      List<ChecksumReport.Entry> entries = hashEntries(zip, checksums, archived);
+      for (ChecksumListVerifier.Checksum checksum : checksums) {
+        archived.remove(checksum.name);
+      }
+      for (Map.Entry<String, Integer> unlisted : archived.entrySet()) {
+        ChecksumReport.Status status = unlisted.getValue() > 1 ? ChecksumReport.Status.DUPLICATE : ChecksumReport.Status.NOT_LISTED;
+        entries.add(new ChecksumReport.Entry(unlisted.getKey(), status));
+      }
+      return new ChecksumReport(entries);
+    }
+  }
+
+  /*
+   * Counts the entries per name in the central directory. ZipFile.getEntry returns only one entry of a
+   * duplicated name, but entries() walks all of them.
+   */
+  private static Map<String, Integer> countEntries(ZipFile zip) {
+    Map<String, Integer> counts = new LinkedHashMap<>();
+    Enumeration<? extends ZipEntry> archived = zip.entries();
+    while (archived.hasMoreElements()) {
+      ZipEntry entry = archived.nextElement();
+      if (!entry.isDirectory()) {
+        counts.merge(entry.getName(), 1, Integer::sum);
+      }
+    }
+    return counts;
+  }
+
+  private List<ChecksumReport.Entry> hashEntries(
+      ZipFile zip, List<ChecksumListVerifier.Checksum> checksums, Map<String, Integer> archived)
+      throws InterruptedIOException {
+    try {
+      return BoundedTasks.run(pool, maxEntriesInFlight, checksums, checksum -> archived.getOrDefault(checksum.name, 0) > 1
+          ? new ChecksumReport.Entry(checksum.name, ChecksumReport.Status.DUPLICATE)
+          : check(zip, checksum));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while verifying archive");
+    }
+  }
+
+  private static ChecksumReport.Entry check(ZipFile zip, ChecksumListVerifier.Checksum checksum) {
+    ZipEntry entry = zip.getEntry(checksum.name);
+    if (entry == null || entry.isDirectory()) {
+      return new ChecksumReport.Entry(checksum.name, ChecksumReport.Status.MISSING);
+    }
+    MessageDigest digest = ChecksumListVerifier.newDigest(checksum.algorithm);
+    try (InputStream in = zip.getInputStream(entry)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      return new ChecksumReport.Entry(checksum.name, ChecksumReport.Status.UNREADABLE);
+    }
+    boolean matches = MessageDigest.isEqual(digest.digest(), checksum.expected);
+    return new ChecksumReport.Entry(checksum.name, matches ? ChecksumReport.Status.OK : ChecksumReport.Status.MISMATCH);
+  }
+}
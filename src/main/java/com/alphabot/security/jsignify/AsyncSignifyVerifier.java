@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.ed25519.Ed25519Verifier;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * AsyncSignifyVerifier verifies message files without blocking the caller, returning a
+ * {@link CompletableFuture} of the {@link VerificationResult}.
+ *
+ * <p>The blocking reads and the CPU work of a verification run on separate executors, so that a read executor
+ * sized for blocking I/O does not oversubscribe the cores: the read executor only reads the signature and the
+ * chunks of the message file; hashing the chunks and checking the Ed25519 equation run on the crypto
+ * executor. The chunks of a message are hashed in order while the next ones are read, with at most a fixed
+ * number of chunks read ahead per verification. No stage blocks while it waits for another one, so the read
+ * executor can be any executor, e.g. one that starts a virtual thread per task on JDKs that have them, and
+ * the two executors may also be the same pool or share threads.
+ *
+ * <p>At most a fixed number of verifications is pending at a time. Beyond that, new verifications are
+ * rejected at once: their futures fail with a {@link RejectedExecutionException}. A cancelled verification
+ * stops at the next chunk of the message; its slot is freed once its running stages have ended.
+ *
+ * <p>Instances are thread-safe. The executors are not shut down by this class.
+ */
+@Alpha
+public final class AsyncSignifyVerifier {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // chunks of a message read ahead of the hashing, per verification
+  static final int CHUNKS_IN_FLIGHT = 4;
+
+  private final SignifyVerifier verifier;
+  private final Executor readExecutor;
+  private final Executor cryptoExecutor;
+  private final Semaphore pending;
+
+  /**
+   * Create a new AsyncSignifyVerifier.
+   * @param verifier the verifier holding the public key
+   * @param readExecutor the executor the blocking reads run on
+   * @param cryptoExecutor the executor the CPU-bound hashing and crypto run on, e.g. a pool sized to the number of cores
+   * @param maxPending the maximum number of verifications that are pending at a time
+   * @throws IllegalArgumentException in case maxPending is not positive
+   */
+  public AsyncSignifyVerifier(SignifyVerifier verifier, Executor readExecutor, Executor cryptoExecutor, int maxPending) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(readExecutor, "readExecutor");
+    Preconditions.checkNotNull(cryptoExecutor, "cryptoExecutor");
+    Preconditions.checkArgument(maxPending > 0, "maxPending must be positive, but was %s.", maxPending);
+    this.verifier = verifier;
+    this.readExecutor = readExecutor;
+    this.cryptoExecutor = cryptoExecutor;
+    this.pending = new Semaphore(maxPending);
+  }
+
+  /**
+   * Verify a message file with its corresponding signature file.
+   * The future fails with an {@link IOException} in case the signature or the message file cannot be read,
+   * and with a {@link RejectedExecutionException} in case too many verifications are pending or an executor
+   * rejects a stage.
+   * @param signatureFile a path pointing to the signature file
+   * @param messageFile a path pointing to the message file to verify
+   * @return the future result of the verification; {@link VerificationResult#MALFORMED} if the signature file is
+   *     in the wrong format
+   */
+  public CompletableFuture<VerificationResult> verifyFile(Path signatureFile, Path messageFile) {
+    Preconditions.checkNotNull(signatureFile, "signatureFile");
+    Preconditions.checkNotNull(messageFile, "messageFile");
+    CompletableFuture<VerificationResult> result = new CompletableFuture<>();
+    CompletableFuture<VerificationResult> outcome = newPendingOutcome(result);
+    if (outcome != null) {
+      runStage(readExecutor, result, outcome, () -> read(signatureFile, messageFile, result, outcome));
+    }
+    return result;
+  }
+
+  /**
+   * Verify a message held in memory with its corresponding signature in Base64 format.
+   * Only the crypto executor is used.
+   * @param base64Signature signature Base64 encoded (typically starting with RW...)
+   * @param message message to verify
+   * @return the future result of the verification
+   * @see SignifyVerifier#tryVerify(String, byte[])
+   */
+  public CompletableFuture<VerificationResult> verify(String base64Signature, byte[] message) {
+    Preconditions.checkNotNull(base64Signature, "base64Signature");
+    Preconditions.checkNotNull(message, "message");
+    CompletableFuture<VerificationResult> result = new CompletableFuture<>();
+    CompletableFuture<VerificationResult> outcome = newPendingOutcome(result);
+    if (outcome != null) {
+      runStage(cryptoExecutor, result, outcome, () -> outcome.complete(verifier.tryVerify(base64Signature, message)));
+    }
+    return result;
+  }
+
+  /**
+   * Get the number of verifications that can still be started before new ones are rejected.
+   * @return the number of free slots
+   */
+  public int availableSlots() {
+    return pending.availablePermits();
+  }
+
+  /*
+   * Takes a slot for a verification and returns the future its stages complete, or null if no slot is free.
+   * The slot is freed once the stages have completed the outcome, which they do even if the result was
+   * cancelled; only then is the outcome passed on to the result.
+   */
+  private CompletableFuture<VerificationResult> newPendingOutcome(CompletableFuture<VerificationResult> result) {
+    if (!pending.tryAcquire()) {
+      result.completeExceptionally(new RejectedExecutionException("too many pending verifications"));
+      return null;
+    }
+    CompletableFuture<VerificationResult> outcome = new CompletableFuture<>();
+    outcome.whenComplete((value, failure) -> {
+      pending.release();
+      if (failure == null) {
+        result.complete(value);
+      } else {
+        result.completeExceptionally(failure);
+      }
+    });
+    return outcome;
+  }
+
+  private static void runStage(
+      Executor executor, CompletableFuture<VerificationResult> result, CompletableFuture<VerificationResult> outcome, Stage stage) {
+    try {
+      executor.execute(() -> {
+        if (result.isDone()) {
+          outcome.cancel(false);
+          return;
+        }
+        try {
+          stage.run();
+        } catch (IOException | RuntimeException e) {
+          outcome.completeExceptionally(e);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      outcome.completeExceptionally(e);
+    }
+  }
+
+  private void read(Path signatureFile, Path messageFile, CompletableFuture<VerificationResult> result,
+      CompletableFuture<VerificationResult> outcome) throws IOException {
+    Signature signature = Signature.tryFromFile(signatureFile);
+    if (signature == null) {
+      outcome.complete(VerificationResult.MALFORMED);
+      return;
+    }
+    if (verifier.isSignedWithOtherKey(signature)) {
+      outcome.complete(VerificationResult.WRONG_KEY);
+      return;
+    }
+
+    FileChannel message = FileChannel.open(messageFile, StandardOpenOption.READ);
+    new HashChain(verifier.newVerification(signature), message, result, outcome).readChunks();
+  }
+
+  /*
+   * A stage of a verification, which completes the outcome or passes it on to the next stage.
+   */
+  private interface Stage {
+    void run() throws IOException;
+  }
+
+  /*
+   * Reads the chunks of a message on the read executor and hands them, in order, to the crypto executor to be
+   * hashed, one after the other. Once CHUNKS_IN_FLIGHT chunks are waiting to be hashed, the read stage ends
+   * instead of waiting, and the next one is started when a chunk has been hashed; so only that many buffers
+   * are used per verification, and no stage ever waits for another one to get a thread. After the result has
+   * been cancelled, the remaining chunks are dropped instead of hashed.
+   */
+  private final class HashChain {
+    private final Ed25519Verifier.Verification verification;
+    private final FileChannel message;
+    private final CompletableFuture<VerificationResult> result;
+    private final CompletableFuture<VerificationResult> outcome;
+    private final Deque<ByteBuffer> free = new ArrayDeque<>(CHUNKS_IN_FLIGHT);
+    // true while a read stage is running or about to run; guarded by this
+    private boolean reading = true;
+    // only used by the read stages, which run one after the other
+    private CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+
+    private HashChain(Ed25519Verifier.Verification verification, FileChannel message,
+        CompletableFuture<VerificationResult> result, CompletableFuture<VerificationResult> outcome) {
+      this.verification = verification;
+      this.message = message;
+      this.result = result;
+      this.outcome = outcome;
+      for (int i = 0; i < CHUNKS_IN_FLIGHT; i++) {
+        free.add(ByteBuffer.allocate(BUFFER_SIZE));
+      }
+    }
+
+    private void readChunks() {
+      try {
+        while (!result.isDone() && !tail.isCompletedExceptionally()) {
+          ByteBuffer buffer;
+          synchronized (this) {
+            buffer = free.poll();
+            if (buffer == null) {
+              // resumed by the next hashed chunk
+              reading = false;
+              return;
+            }
+          }
+          if (message.read(buffer) == -1) {
+            break;
+          }
+          buffer.flip();
+          tail = tail.thenRunAsync(() -> {
+            if (!result.isDone()) {
+              verification.update(buffer);
+            }
+          }, cryptoExecutor);
+          tail.whenComplete((value, failure) -> release(buffer));
+        }
+        message.close();
+      } catch (IOException | RuntimeException e) {
+        end(e);
+        return;
+      }
+      end(null);
+    }
+
+    private void release(ByteBuffer buffer) {
+      boolean resume;
+      synchronized (this) {
+        buffer.clear();
+        free.add(buffer);
+        resume = !reading;
+        reading = true;
+      }
+      if (resume) {
+        try {
+          readExecutor.execute(this::readChunks);
+        } catch (RejectedExecutionException e) {
+          end(e);
+        }
+      }
+    }
+
+    /*
+     * Ends the reading; it stays marked as running, so no read stage is started again. The outcome is
+     * completed once the chunks that were already handed on have been hashed or dropped, which holds the slot
+     * until then.
+     */
+    private void end(Exception failure) {
+      if (failure != null) {
+        try {
+          message.close();
+        } catch (IOException e) {
+          failure.addSuppressed(e);
+        }
+        tail.whenComplete((value, hashFailure) -> outcome.completeExceptionally(failure));
+        return;
+      }
+      tail.thenRunAsync(() -> {
+        if (result.isDone()) {
+          outcome.cancel(false);
+        } else {
+          outcome.complete(SignifyVerifier.result(verification.verify()));
+        }
+      }, cryptoExecutor).whenComplete((value, checkFailure) -> {
+        if (checkFailure != null) {
+          outcome.completeExceptionally(checkFailure instanceof CompletionException ? checkFailure.getCause() : checkFailure);
+        }
+      });
+    }
+  }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BatchingSignifyVerifier coalesces concurrent verifications of small messages into batches, which are
+ * checked with {@link SignifyVerifier#tryVerifyBatch} at a fraction of the cost of single verifications.
+ *
+ * <p>A dispatcher thread collects submitted verifications until either the maximum batch size is reached or
+ * the maximum wait has passed since the first verification of the batch arrived, and then hands the batch to
+ * the batch executor. The two knobs trade latency for throughput: a larger batch size makes each signature
+ * cheaper under load, a longer wait fills batches under light load at the cost of up to that much latency.
+ * A maximum wait of zero only batches verifications that are already queued.
+ *
+ * <p>At most a fixed number of verifications is pending (queued or in a batch not yet checked) at a time.
+ * Beyond that, new verifications are rejected at once: their futures fail with a
+ * {@link RejectedExecutionException}, as with {@link AsyncSignifyVerifier}.
+ *
+ * <p>Each verification has the result of {@link SignifyVerifier#verify(String, byte[])} with the built-in
+ * engine, whether it was checked in a batch or on its own.
+ *
+ * <p>Instances are thread-safe and must be closed to stop the dispatcher thread.
+ */
+@Alpha
+public final class BatchingSignifyVerifier implements AutoCloseable {
+  /**
+   * The maximum number of pending verifications of the constructors that do not take one.
+   */
+  public static final int DEFAULT_MAX_PENDING = 64 * 1024;
+
+  private final SignifyVerifier verifier;
+  private final Executor batchExecutor;
+  private final int maxBatchSize;
+  private final long maxWaitNanos;
+  // bounded by the slots of pending
+  private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+  private final Semaphore pending;
+  private final Thread dispatcher;
+  private boolean closed;
+
+  /**
+   * Create a new BatchingSignifyVerifier that checks batches on the common fork-join pool, with at most
+   * {@value #DEFAULT_MAX_PENDING} pending verifications.
+   * @param verifier the verifier holding the public key
+   * @param maxBatchSize the maximum number of signatures in a batch, e.g. 64
+   * @param maxWait the maximum time a verification waits for further ones to join its batch, e.g. 200 microseconds
+   * @param unit the unit of maxWait
+   * @throws IllegalArgumentException in case maxBatchSize is not positive or maxWait is negative
+   */
+  public BatchingSignifyVerifier(SignifyVerifier verifier, int maxBatchSize, long maxWait, TimeUnit unit) {
+    this(verifier, ForkJoinPool.commonPool(), maxBatchSize, maxWait, unit);
+  }
+
+  /**
+   * Create a new BatchingSignifyVerifier that checks batches on the given executor, with at most
+   * {@value #DEFAULT_MAX_PENDING} pending verifications.
+   * @param verifier the verifier holding the public key
+   * @param batchExecutor the executor the batches are checked on
+   * @param maxBatchSize the maximum number of signatures in a batch, e.g. 64
+   * @param maxWait the maximum time a verification waits for further ones to join its batch, e.g. 200 microseconds
+   * @param unit the unit of maxWait
+   * @throws IllegalArgumentException in case maxBatchSize is not positive or maxWait is negative
+   */
+  public BatchingSignifyVerifier(SignifyVerifier verifier, Executor batchExecutor, int maxBatchSize, long maxWait, TimeUnit unit) {
+    this(verifier, batchExecutor, maxBatchSize, maxWait, unit, DEFAULT_MAX_PENDING);
+  }
+
+  /**
+   * Create a new BatchingSignifyVerifier that checks batches on the given executor.
+   * @param verifier the verifier holding the public key
+   * @param batchExecutor the executor the batches are checked on
+   * @param maxBatchSize the maximum number of signatures in a batch, e.g. 64
+   * @param maxWait the maximum time a verification waits for further ones to join its batch, e.g. 200 microseconds
+   * @param unit the unit of maxWait
+   * @param maxPending the maximum number of verifications that are pending at a time
+   * @throws IllegalArgumentException in case maxBatchSize or maxPending is not positive or maxWait is negative
+   */
+  public BatchingSignifyVerifier(SignifyVerifier verifier, Executor batchExecutor, int maxBatchSize, long maxWait, TimeUnit unit,
+      int maxPending) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(batchExecutor, "batchExecutor");
+    Preconditions.checkNotNull(unit, "unit");
+    Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive, but was %s.", maxBatchSize);
+    Preconditions.checkArgument(maxWait >= 0, "maxWait must not be negative, but was %s.", maxWait);
+    Preconditions.checkArgument(maxPending > 0, "maxPending must be positive, but was %s.", maxPending);
+    this.verifier = verifier;
+    this.batchExecutor = batchExecutor;
+    this.maxBatchSize = maxBatchSize;
+    this.maxWaitNanos = unit.toNanos(maxWait);
+    this.pending = new Semaphore(maxPending);
+    this.dispatcher = new Thread(this::dispatch, "jsignify-batch-dispatcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * Submit a message with its corresponding signature in Base64 format for verification in the next batch.
+   * @param base64Signature signature Base64 encoded (typically starting with RW...)
+   * @param message message to verify
+   * @return the future result of the verification; {@link VerificationResult#MALFORMED} if the signature is in
+   *     the wrong format. The future fails with a {@link RejectedExecutionException} in case this verifier is
+   *     closed, too many verifications are pending or the batch executor rejects the batch.
+   */
+  public CompletableFuture<VerificationResult> verify(String base64Signature, byte[] message) {
+    Preconditions.checkNotNull(base64Signature, "base64Signature");
+    Signature signature = Signature.tryFromBase64String(base64Signature);
+    if (signature == null) {
+      return CompletableFuture.completedFuture(VerificationResult.MALFORMED);
+    }
+    return verify(signature, message);
+  }
+
+  /**
+   * Submit a message with its corresponding signature for verification in the next batch.
+   * @param signature the signature of the message
+   * @param message message to verify
+   * @return the future result of the verification. The future fails with a {@link RejectedExecutionException}
+   *     in case this verifier is closed, too many verifications are pending or the batch executor rejects the
+   *     batch.
+   */
+  public CompletableFuture<VerificationResult> verify(Signature signature, byte[] message) {
+    Preconditions.checkNotNull(signature, "signature");
+    Preconditions.checkNotNull(message, "message");
+    Request request = new Request(signature, message);
+    synchronized (this) {
+      if (closed) {
+        request.result.completeExceptionally(new RejectedExecutionException("verifier is closed"));
+        return request.result;
+      }
+      if (!pending.tryAcquire()) {
+        request.result.completeExceptionally(new RejectedExecutionException("too many pending verifications"));
+        return request.result;
+      }
+      queue.add(request);
+    }
+    return request.result;
+  }
+
+  /**
+   * Get the number of verifications that can still be submitted before new ones are rejected.
+   * @return the number of free slots
+   */
+  public int availableSlots() {
+    return pending.availablePermits();
+  }
+
+  /**
+   * Stop accepting verifications and wait until the dispatcher has handed all queued ones to the batch
+   * executor. Verifications submitted afterwards fail.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    dispatcher.interrupt();
+    boolean interrupted = false;
+    while (dispatcher.isAlive()) {
+      try {
+        dispatcher.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void dispatch() {
+    boolean running = true;
+    while (running) {
+      List<Request> batch = new ArrayList<>(maxBatchSize);
+      try {
+        batch.add(queue.take());
+        collect(batch);
+      } catch (InterruptedException e) {
+        running = false;
+      }
+      submit(batch);
+    }
+
+    List<Request> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    for (int start = 0; start < remaining.size(); start += maxBatchSize) {
+      submit(remaining.subList(start, Math.min(start + maxBatchSize, remaining.size())));
+    }
+  }
+
+  /*
+   * Adds queued requests to the batch until it is full or the maximum wait since its first request has passed.
+   */
+  private void collect(List<Request> batch) throws InterruptedException {
+    long deadline = System.nanoTime() + maxWaitNanos;
+    queue.drainTo(batch, maxBatchSize - batch.size());
+    while (batch.size() < maxBatchSize) {
+      long remaining = deadline - System.nanoTime();
+      Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+      if (next == null) {
+        return;
+      }
+      batch.add(next);
+      queue.drainTo(batch, maxBatchSize - batch.size());
+    }
+  }
+
+  private void submit(List<Request> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    try {
+      batchExecutor.execute(() -> check(batch));
+    } catch (RejectedExecutionException e) {
+      pending.release(batch.size());
+      batch.forEach(request -> request.result.completeExceptionally(e));
+    }
+  }
+
+  private void check(List<Request> batch) {
+    List<Request> requests = new ArrayList<>(batch.size());
+    List<Signature> signatures = new ArrayList<>(batch.size());
+    List<byte[]> messages = new ArrayList<>(batch.size());
+    for (Request request : batch) {
+      // skip cancelled requests
+      if (!request.result.isDone()) {
+        requests.add(request);
+        signatures.add(request.signature);
+        messages.add(request.message);
+      }
+    }
+
+    List<VerificationResult> results;
+    try {
+      results = verifier.tryVerifyBatch(signatures, messages);
+    } catch (RuntimeException e) {
+      pending.release(batch.size());
+      requests.forEach(request -> request.result.completeExceptionally(e));
+      return;
+    }
+    // free the slots first, so that a caller waiting for a result can submit the next verification at once
+    pending.release(batch.size());
+    for (int i = 0; i < requests.size(); i++) {
+      requests.get(i).result.complete(results.get(i));
+    }
+  }
+
+  private static final class Request {
+    private final Signature signature;
+    private final byte[] message;
+    private final CompletableFuture<VerificationResult> result = new CompletableFuture<>();
+
+    private Request(Signature signature, byte[] message) {
+      this.signature = signature;
+      this.message = message;
+    }
+  }
+}
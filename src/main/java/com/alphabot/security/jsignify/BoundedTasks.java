@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/*
+ * Runs a task for every item of a list in a fork-join pool, with at most a given number of items in flight, and
+ * returns the results in the order of the items (used internally by ChecksumListVerifier, TreeVerifier and
+ * ArchiveVerifier).
+ *
+ * The caller never blocks to submit: the first items are submitted at once and every finished item submits the
+ * next one. The caller then waits for the last item through a CompletableFuture, which blocks a worker of a
+ * fork-join pool with ForkJoinPool.managedBlock. So a caller running in the pool itself, even in a pool with a
+ * parallelism of 1, cannot starve the items it waits for.
+ */
+final class BoundedTasks {
+  private BoundedTasks() {
+  }
+
+  /*
+   * Returns the result of the task for every item, in the order of the items. A task that throws stops the
+   * items that are not submitted yet, and its exception is thrown here. If the caller is interrupted, no more
+   * items are submitted and InterruptedException is thrown, with the items in flight left to finish.
+   */
+  static <T, R> List<R> run(ForkJoinPool pool, int maxInFlight, List<T> items, Function<? super T, ? extends R> task)
+      throws InterruptedException {
+    Run<T, R> run = new Run<>(pool, items, task);
+    for (int i = 0; i < maxInFlight && i < items.size(); i++) {
+      run.submitNext();
+    }
+    try {
+      run.done.get();
+    } catch (InterruptedException e) {
+      run.done.cancel(false);
+      throw e;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+
+    List<R> results = new ArrayList<>(items.size());
+    for (int i = 0; i < items.size(); i++) {
+      results.add(run.results.get(i));
+    }
+    return results;
+  }
+
+  /*
+   * The state of one call of run. done completes when the last item is finished, or exceptionally with the
+   * first exception of a task; once it is done (or cancelled by the caller), no more items are submitted.
+   */
+  private static final class Run<T, R> {
+    private final ForkJoinPool pool;
+    private final List<T> items;
+    private final Function<? super T, ? extends R> task;
+    private final AtomicReferenceArray<R> results;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger remaining;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private Run(ForkJoinPool pool, List<T> items, Function<? super T, ? extends R> task) {
+      this.pool = pool;
+      this.items = items;
+      this.task = task;
+      this.results = new AtomicReferenceArray<>(items.size());
+      this.remaining = new AtomicInteger(items.size());
+      if (items.isEmpty()) {
+        done.complete(null);
+      }
+    }
+
+    private void submitNext() {
+      int index = next.getAndIncrement();
+      if (index >= items.size() || done.isDone()) {
+        return;
+      }
+      try {
+        pool.execute(() -> runItem(index));
+      } catch (RejectedExecutionException e) {
+        done.completeExceptionally(e);
+      }
+    }
+
+    private void runItem(int index) {
+      if (done.isDone()) {
+        return;
+      }
+      try {
+        results.set(index, task.apply(items.get(index)));
+      } catch (RuntimeException | Error e) {
+        done.completeExceptionally(e);
+        return;
+      }
+      if (remaining.decrementAndGet() == 0) {
+        done.complete(null);
+      } else {
+        submitNext();
+      }
+    }
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * CachingSignifyVerifier remembers the results of file verifications, for callers that verify the same
+ * files over and over.
+ *
+ * <p>A result is cached under the signature and the identity of the message file: its absolute path, size,
+ * modification time and file key (e.g. the inode, where the file system has one). A file that was changed
+ * since it was verified has another identity and is verified again. To avoid trusting a modification time
+ * that may not have ticked yet, results are not cached for files modified less than two seconds before the
+ * verification started, nor if the file identity changed while it was verified. Concurrent verifications of
+ * the same signature and file are collapsed into one. The least recently used results are evicted once the
+ * cache is full.
+ *
+ * <p>With a {@link VerificationLedger}, the results also survive restarts: files that are not cached are looked
+ * up in the ledger before they are read, and the results of files that were read are recorded in it.
+ *
+ * <p>Instances are thread-safe.
+ */
+@Alpha
+public final class CachingSignifyVerifier {
+  static final long RACY_MODIFICATION_MILLIS = 2000;
+
+  private final SignifyVerifier verifier;
+  private final Cache<Key, Entry> cache;
+  private final VerificationLedger ledger;
+
+  /**
+   * Create a new CachingSignifyVerifier.
+   * @param verifier the verifier holding the public key
+   * @param maxEntries the maximum number of cached results
+   * @throws IllegalArgumentException in case maxEntries is negative
+   */
+  public CachingSignifyVerifier(SignifyVerifier verifier, long maxEntries) {
+    this(verifier, maxEntries, null);
+  }
+
+  /**
+   * Create a new CachingSignifyVerifier that keeps its results in a ledger as well.
+   * @param verifier the verifier holding the public key
+   * @param maxEntries the maximum number of results cached in memory
+   * @param ledger the ledger the results are looked up in and recorded to, or null for none; it is not closed
+   *     by this verifier
+   * @throws IllegalArgumentException in case maxEntries is negative
+   */
+  public CachingSignifyVerifier(SignifyVerifier verifier, long maxEntries, VerificationLedger ledger) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkArgument(maxEntries >= 0, "maxEntries must not be negative, but was %s.", maxEntries);
+    this.verifier = verifier;
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxEntries).recordStats().build();
+    this.ledger = ledger;
+  }
+
+  /**
+   * Verify a message file with its corresponding signature file, using a cached result if the file did not
+   * change since it was verified.
+   * @param signatureFile a path pointing to the signature file
+   * @param messageFile a path pointing to the message file to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs (e.g. message file not found)
+   * @throws IllegalArgumentException in case an argument is in the wrong format
+   * @see SignifyVerifier#verifyFile(Path, Path)
+   */
+  public void verifyFile(Path signatureFile, Path messageFile) throws VerificationFailedException, IOException {
+    SignifyVerifier.check(tryVerifyFile(Signature.fromFile(signatureFile), messageFile));
+  }
+
+  /**
+   * Verify a message file with its corresponding signature file without throwing if the verification fails,
+   * using a cached result if the file did not change since it was verified.
+   * @param signatureFile a path pointing to the signature file
+   * @param messageFile a path pointing to the message file to verify
+   * @return the result of the verification; {@link VerificationResult#MALFORMED} if the signature file is in the
+   *     wrong format
+   * @throws IOException in case an I/O error occurs (e.g. message file not found)
+   * @see SignifyVerifier#tryVerifyFile(Path, Path)
+   */
+  public VerificationResult tryVerifyFile(Path signatureFile, Path messageFile) throws IOException {
+    Signature signature = Signature.tryFromFile(signatureFile);
+    if (signature == null) {
+      return VerificationResult.MALFORMED;
+    }
+    return tryVerifyFile(signature, messageFile);
+  }
+
+  private VerificationResult tryVerifyFile(Signature signature, Path messageFile) throws IOException {
+    Key key = Key.of(signature, messageFile);
+    Entry entry;
+    try {
+      entry = cache.get(key, () -> verify(key, signature, messageFile));
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    } catch (UncheckedExecutionException | ExecutionError e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    if (!entry.cacheable) {
+      cache.asMap().remove(key, entry);
+    }
+    return entry.result;
+  }
+
+  /**
+   * Remove all cached results.
+   */
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  CacheStats stats() {
+    return cache.stats();
+  }
+
+  private Entry verify(Key key, Signature signature, Path messageFile) throws IOException {
+    if (ledger != null && !verifier.isSignedWithOtherKey(signature)) {
+      VerificationResult recorded = ledger.findResult(key.file, key.attributes, verifier.getPublicKey(), signature);
+      if (recorded != null) {
+        return new Entry(recorded, true);
+      }
+    }
+    long start = System.currentTimeMillis();
+    VerificationResult result = verifier.tryVerifyFile(signature, messageFile, MessageReadMode.AUTO);
+    boolean unchanged = key.equals(Key.of(signature, messageFile));
+    boolean settled = key.lastModified.toMillis() < start - RACY_MODIFICATION_MILLIS;
+    if (ledger != null && unchanged && settled) {
+      ledger.recordResult(key.file, key.attributes, verifier.getPublicKey(), signature, result);
+    }
+    return new Entry(result, unchanged && settled);
+  }
+
+  private static final class Entry {
+    private final VerificationResult result;
+    private final boolean cacheable;
+
+    private Entry(VerificationResult result, boolean cacheable) {
+      this.result = result;
+      this.cacheable = cacheable;
+    }
+  }
+
+  /*
+   * A signature together with the identity of a message file.
+   */
+  private static final class Key {
+    private final byte[] signature;
+    private final long keyNumber;
+    private final Path file;
+    private final long size;
+    private final FileTime lastModified;
+    private final Object fileKey;
+    private final BasicFileAttributes attributes;
+
+    private Key(Signature signature, Path file, BasicFileAttributes attributes) {
+      this.signature = signature.getSignature();
+      this.keyNumber = signature.getKeyNumber().toLong();
+      this.file = file;
+      this.size = attributes.size();
+      this.lastModified = attributes.lastModifiedTime();
+      this.fileKey = attributes.fileKey();
+      this.attributes = attributes;
+    }
+
+    static Key of(Signature signature, Path messageFile) throws IOException {
+      Path file = messageFile.toAbsolutePath().normalize();
+      return new Key(signature, file, Files.readAttributes(file, BasicFileAttributes.class));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key other = (Key) o;
+      return keyNumber == other.keyNumber && size == other.size && Arrays.equals(signature, other.signature)
+          && file.equals(other.file) && lastModified.equals(other.lastModified) && Objects.equals(fileKey, other.fileKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(Arrays.hashCode(signature), file, size, lastModified);
+    }
+  }
+}
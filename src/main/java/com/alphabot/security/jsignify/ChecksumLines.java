@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/*
+ * The lines of a checksum list, in the format "SHA256 (name) = hex" or "SHA512 (name) = hex" (used internally by
+ * ChecksumListVerifier and ManifestIndex).
+ *
+ * The lines are parsed in place, in a buffer holding the list from index 0 to its limit. A line ends at \n;
+ * whitespace at its end (e.g. the \r of \r\n) is ignored, and a line of only whitespace is skipped. The name is
+ * everything between the "(" after the algorithm and the ") = " before the digest, so it may contain ") = " too.
+ */
+final class ChecksumLines {
+  static final int NAME_OFFSET = "SHA256 (".length();
+  static final byte[] NAME_END = ") = ".getBytes(UTF_8);
+  static final int MIN_LINE_LEN = NAME_OFFSET + NAME_END.length + 64;
+
+  private static final byte[] SHA256_PREFIX = "SHA256 (".getBytes(UTF_8);
+  private static final byte[] SHA512_PREFIX = "SHA512 (".getBytes(UTF_8);
+  private static final int SHA256_HEX_LEN = 64;
+  private static final int SHA512_HEX_LEN = 128;
+
+  private ChecksumLines() {
+  }
+
+  /*
+   * Returns the index of the \n that ends the line starting at start, or the limit for the last line.
+   */
+  static int lineEnd(ByteBuffer list, int start) {
+    int end = start;
+    while (end < list.limit() && list.get(end) != '\n') {
+      end++;
+    }
+    return end;
+  }
+
+  /*
+   * Returns the end of the line without the whitespace at its end; start if the line is blank.
+   */
+  static int trimmedEnd(ByteBuffer list, int start, int lineEnd) {
+    int end = lineEnd;
+    while (end > start && (list.get(end - 1) & 0xff) <= ' ') {
+      end--;
+    }
+    return end;
+  }
+
+  /*
+   * Returns true if there is only whitespace from index to the end of its line.
+   */
+  static boolean isTrimmedEnd(ByteBuffer list, int index) {
+    for (int i = index; i < list.limit() && list.get(i) != '\n'; i++) {
+      if ((list.get(i) & 0xff) > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Returns the end of the name of the line from start to its trimmed end, or -1 if the line is in another
+   * format.
+   */
+  static int nameEnd(ByteBuffer list, int start, int end) {
+    if (!startsWith(list, start, SHA256_PREFIX) && !startsWith(list, start, SHA512_PREFIX)) {
+      return -1;
+    }
+    int hexLength = hexLength(list, start);
+    int nameEnd = end - hexLength - NAME_END.length;
+    if (nameEnd < start + NAME_OFFSET || !startsWith(list, nameEnd, NAME_END)) {
+      return -1;
+    }
+    for (int i = end - hexLength; i < end; i++) {
+      if (hexValue(list.get(i)) < 0) {
+        return -1;
+      }
+    }
+    return nameEnd;
+  }
+
+  /*
+   * Returns the name of the algorithm of a valid line, as accepted by ChecksumListVerifier.newDigest.
+   */
+  static String algorithm(ByteBuffer list, int start) {
+    return list.get(start + 3) == '2' ? "SHA256" : "SHA512";
+  }
+
+  static int hexLength(ByteBuffer list, int start) {
+    return list.get(start + 3) == '2' ? SHA256_HEX_LEN : SHA512_HEX_LEN;
+  }
+
+  /*
+   * Decodes the digest of a valid line from start to its trimmed end.
+   */
+  static byte[] digest(ByteBuffer list, int start, int end) {
+    int hexStart = end - hexLength(list, start);
+    byte[] digest = new byte[(end - hexStart) / 2];
+    for (int i = 0; i < digest.length; i++) {
+      digest[i] = (byte) (hexValue(list.get(hexStart + 2 * i)) << 4 | hexValue(list.get(hexStart + 2 * i + 1)));
+    }
+    return digest;
+  }
+
+  static String name(ByteBuffer list, int start, int nameEnd) {
+    byte[] name = new byte[nameEnd - start - NAME_OFFSET];
+    list.duplicate().position(start + NAME_OFFSET).get(name);
+    return new String(name, UTF_8);
+  }
+
+  static boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix) {
+    if (buffer.limit() - offset < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer.get(offset + i) != prefix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int hexValue(byte c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    } else if (c >= 'A' && c <= 'F') {
+      return c - 'A' + 10;
+    }
+    return -1;
+  }
+}
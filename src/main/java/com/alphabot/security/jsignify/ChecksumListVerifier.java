@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.common.FileUtil;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ChecksumListVerifier verifies signed checksum lists and the files they list, like {@code signify -C}.
+ *
+ * <p>A checksum list (e.g. OpenBSD's {@code SHA256.sig}) is a signature file with the signed list embedded
+ * after the signature line. The list consists of lines in the format {@code SHA256 (name) = hex} or
+ * {@code SHA512 (name) = hex}. The signature of the list is verified first; then the listed files are
+ * hashed in parallel on a fork-join pool, with a bound on the number of files read at the same time.
+ *
+ * <p>With a {@link VerificationLedger}, the digests of files that did not change since they were last hashed
+ * are taken from the ledger instead of reading the files again.
+ */
+@Alpha
+public final class ChecksumListVerifier {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final SignifyVerifier verifier;
+  private final ForkJoinPool pool;
+  private final int maxFilesInFlight;
+  private final VerificationLedger ledger;
+
+  /**
+   * Create a new ChecksumListVerifier that hashes files on the common fork-join pool, reading as many files at
+   * the same time as the pool has threads.
+   * @param verifier the verifier of the checksum list's signature
+   */
+  public ChecksumListVerifier(SignifyVerifier verifier) {
+    this(verifier, ForkJoinPool.commonPool(), ForkJoinPool.commonPool().getParallelism());
+  }
+
+  /**
+   * Create a new ChecksumListVerifier that hashes files on the given pool.
+   * @param verifier the verifier of the checksum list's signature
+   * @param pool the pool the files are hashed on
+   * @param maxFilesInFlight the maximum number of files read at the same time
+   * @throws IllegalArgumentException in case maxFilesInFlight is not positive
+   */
+  public ChecksumListVerifier(SignifyVerifier verifier, ForkJoinPool pool, int maxFilesInFlight) {
+    this(verifier, pool, maxFilesInFlight, null);
+  }
+
+  /**
+   * Create a new ChecksumListVerifier that hashes files on the given pool and keeps their digests in a ledger.
+   * @param verifier the verifier of the checksum list's signature
+   * @param pool the pool the files are hashed on
+   * @param maxFilesInFlight the maximum number of files read at the same time
+   * @param ledger the ledger the digests are looked up in and recorded to, or null for none; it is not closed
+   *     by this verifier
+   * @throws IllegalArgumentException in case maxFilesInFlight is not positive
+   */
+  public ChecksumListVerifier(SignifyVerifier verifier, ForkJoinPool pool, int maxFilesInFlight, VerificationLedger ledger) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(pool, "pool");
+    Preconditions.checkArgument(maxFilesInFlight > 0, "maxFilesInFlight must be positive, but was %s.", maxFilesInFlight);
+    this.verifier = verifier;
+    this.pool = pool;
+    this.maxFilesInFlight = maxFilesInFlight;
+    this.ledger = ledger;
+  }
+
+  /**
+   * Verify a checksum list and all files it lists. File names are resolved against the directory of the list.
+   * @param checksumFile a path pointing to the signed checksum list
+   * @return the result for each listed file
+   * @throws VerificationFailedException in case the signature of the checksum list is not valid
+   * @throws IOException in case an I/O error occurs while reading the checksum list
+   * @throws IllegalArgumentException in case the checksum list is in the wrong format
+   */
+  public ChecksumReport verify(Path checksumFile) throws VerificationFailedException, IOException {
+    Preconditions.checkNotNull(checksumFile, "checksumFile");
+    Path directory = checksumFile.toAbsolutePath().getParent();
+    if (directory == null) {
+      throw new IllegalArgumentException("checksumFile must be a file, but was " + checksumFile + ".");
+    }
+    return verify(checksumFile, directory, null);
+  }
+
+  /**
+   * Verify a checksum list and some of the files it lists.
+   * @param checksumFile a path pointing to the signed checksum list
+   * @param baseDirectory the directory the file names of the list are resolved against
+   * @param names the names (as in the list) of the files to check, or null to check every listed file
+   * @return the result for each requested file
+   * @throws VerificationFailedException in case the signature of the checksum list is not valid
+   * @throws IOException in case an I/O error occurs while reading the checksum list
+   * @throws IllegalArgumentException in case the checksum list is in the wrong format
+   */
+  public ChecksumReport verify(Path checksumFile, Path baseDirectory, Collection<String> names)
+      throws VerificationFailedException, IOException {
+    Preconditions.checkNotNull(checksumFile, "checksumFile");
+    Preconditions.checkNotNull(baseDirectory, "baseDirectory");
+    List<Checksum> checksums = readChecksumList(verifier, checksumFile);
+
+    List<Checksum> selected = new ArrayList<>();
+    Set<String> notListed = names == null ? new LinkedHashSet<>() : new LinkedHashSet<>(names);
+    for (Checksum checksum : checksums) {
+      if (names == null || notListed.remove(checksum.name)) {
+        selected.add(checksum);
+      }
+    }
+
+    List<ChecksumReport.Entry> entries = hashFiles(selected, baseDirectory);
+    for (String name : notListed) {
+      entries.add(new ChecksumReport.Entry(name, ChecksumReport.Status.NOT_LISTED));
+    }
+    return new ChecksumReport(entries);
+  }
+
+  private List<ChecksumReport.Entry> hashFiles(List<Checksum> checksums, Path baseDirectory) throws InterruptedIOException {
+    try {
+      return BoundedTasks.run(pool, maxFilesInFlight, checksums,
+          checksum -> check(checksum, baseDirectory.resolve(checksum.name)));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while verifying checksum list");
+    }
+  }
+
+  private ChecksumReport.Entry check(Checksum checksum, Path file) {
+    byte[] digest;
+    try {
+      digest = ledger == null ? hash(checksum.algorithm, file) : hashWithLedger(checksum.algorithm, file);
+    } catch (NoSuchFileException e) {
+      return new ChecksumReport.Entry(checksum.name, ChecksumReport.Status.MISSING);
+    } catch (IOException e) {
+      return new ChecksumReport.Entry(checksum.name, ChecksumReport.Status.UNREADABLE);
+    }
+    boolean matches = MessageDigest.isEqual(digest, checksum.expected);
+    return new ChecksumReport.Entry(checksum.name, matches ? ChecksumReport.Status.OK : ChecksumReport.Status.MISMATCH);
+  }
+
+  private byte[] hashWithLedger(String algorithm, Path file) throws IOException {
+    Path absoluteFile = file.toAbsolutePath().normalize();
+    BasicFileAttributes attributes = Files.readAttributes(absoluteFile, BasicFileAttributes.class);
+    byte[] recorded = ledger.findDigest(absoluteFile, attributes, algorithm);
+    if (recorded != null) {
+      return recorded;
+    }
+    long start = System.currentTimeMillis();
+    byte[] digest = hash(algorithm, absoluteFile);
+    if (VerificationLedger.isSettled(absoluteFile, attributes, start)) {
+      ledger.recordDigest(absoluteFile, attributes, algorithm, digest);
+    }
+    return digest;
+  }
+
+  static byte[] hash(String algorithm, Path file) throws IOException {
+    MessageDigest digest = newDigest(algorithm);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      while (channel.read(buffer) != -1) {
+        buffer.flip();
+        digest.update(buffer);
+        buffer.clear();
+      }
+    }
+    return digest.digest();
+  }
+
+  /*
+   * Verifies the signature of a checksum list and parses its lines.
+   */
+  static List<Checksum> readChecksumList(SignifyVerifier verifier, Path checksumFile)
+      throws VerificationFailedException, IOException {
+    ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(checksumFile));
+    FileUtil.Header header = FileUtil.splitHeader(content);
+    if (header == null) {
+      throw new IllegalArgumentException("invalid checksum list " + checksumFile.toAbsolutePath().toString()
+          + "; must start with '" + FileUtil.COMMENT_HEADER + "' and a signature line");
+    }
+    ByteBuffer list = content.position((int) header.getEnd()).slice();
+
+    verifier.verify(Signature.fromBase64Bytes(header.getBase64Bytes()), list);
+
+    List<Checksum> checksums = new ArrayList<>();
+    int lineNumber = 0;
+    for (int start = 0; start < list.limit();) {
+      int lineEnd = ChecksumLines.lineEnd(list, start);
+      int end = ChecksumLines.trimmedEnd(list, start, lineEnd);
+      lineNumber++;
+      if (end > start) {
+        int nameEnd = ChecksumLines.nameEnd(list, start, end);
+        if (nameEnd < 0) {
+          throw new IllegalArgumentException("invalid line " + lineNumber + " in checksum list "
+              + checksumFile.toAbsolutePath().toString());
+        }
+        checksums.add(new Checksum(ChecksumLines.algorithm(list, start), ChecksumLines.name(list, start, nameEnd),
+            ChecksumLines.digest(list, start, end)));
+      }
+      start = lineEnd + 1;
+    }
+    return checksums;
+  }
+
+  static MessageDigest newDigest(String algorithm) {
+    try {
+      return MessageDigest.getInstance("SHA256".equals(algorithm) ? "SHA-256" : "SHA-512");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(algorithm + " is not available", e);
+    }
+  }
+
+  /*
+   * A line of the checksum list.
+   */
+  static final class Checksum {
+    final String algorithm;
+    final String name;
+    final byte[] expected;
+
+    private Checksum(String algorithm, String name, byte[] expected) {
+      this.algorithm = algorithm;
+      this.name = name;
+      this.expected = expected;
+    }
+  }
+}
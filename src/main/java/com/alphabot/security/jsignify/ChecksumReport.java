@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of verifying the files of a checksum list, see {@link ChecksumListVerifier} and
+ * {@link ArchiveVerifier}.
+ */
+public final class ChecksumReport {
+  private final List<Entry> entries;
+
+  /**
+   * The outcome for a single file.
+   */
+  public enum Status {
+    /**
+     * The file matches its checksum.
+     */
+    OK,
+    /**
+     * The file does not match its checksum.
+     */
+    MISMATCH,
+    /**
+     * The file could not be read (e.g. an I/O error, or an archive entry that cannot be inflated).
+     */
+    UNREADABLE,
+    /**
+     * The file is in the checksum list, but does not exist (or is not an entry of the archive).
+     */
+    MISSING,
+    /**
+     * The file was requested (or is in the archive), but is not in the checksum list.
+     */
+    NOT_LISTED,
+    /**
+     * The archive holds more than one entry with this name, so readers of the archive may see different content
+     * than the one that was checked.
+     */
+    DUPLICATE
+  }
+
+  /**
+   * The result for a single file.
+   */
+  public static final class Entry {
+    private final String name;
+    private final Status status;
+
+    Entry(String name, Status status) {
+      this.name = name;
+      this.status = status;
+    }
+
+    /**
+     * Get the name of the file as written in the checksum list.
+     * @return the name of the file
+     */
+    public String getName() {
+      return name;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    @Override
+    public String toString() {
+      return name + ": " + status;
+    }
+  }
+
+  ChecksumReport(List<Entry> entries) {
+    Preconditions.checkNotNull(entries, "entries");
+    this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+  }
+
+  /**
+   * Get the results of all checked files, in the order of the checksum list (requested files that are not
+   * listed come last).
+   * @return the results per file
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Check whether every checked file matches its checksum.
+   * @return true if all files are {@link Status#OK}
+   */
+  public boolean isOk() {
+    return entries.stream().allMatch(entry -> entry.status == Status.OK);
+  }
+
+  /**
+   * Get the results of the files that do not match their checksum, could not be read, are missing, are duplicated or are not listed.
+   * @return the results of the failed files
+   */
+  public List<Entry> getFailures() {
+    List<Entry> failures = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (entry.status != Status.OK) {
+        failures.add(entry);
+      }
+    }
+    return failures;
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.common.FileUtil;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.crypto.tink.subtle.Hex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/*
+ * The verified header of a gzip file signed with signify -z (used internally).
+ *
+ * signify replaces the gzip header with one that carries a comment (FCOMMENT). The comment is a
+ * signature file with an embedded message:
+ *
+ *   untrusted comment: ...
+ *   <base64 signature>
+ *   date=...
+ *   key=...
+ *   algorithm=SHA512/256
+ *   blocksize=65536
+ *
+ *   <hex SHA-512/256 hash of block 0>
+ *   <hex SHA-512/256 hash of block 1>
+ *   ...
+ *
+ * The blocks are consecutive chunks of blocksize bytes (the last one may be shorter) of the compressed
+ * data that follows the header, including the gzip trailer.
+ *
+ * The header is read before anything is verified, so its fields are bounded: the file name (FNAME) is
+ * skipped and may not be longer than a path, and the comment may not be longer than the lines before the
+ * hashes plus one line for each of maxBlockCount blocks.
+ */
+final class GzipSignatureHeader {
+  static final String HASH_ALGORITHM = "SHA-512/256";
+  static final int MAX_NAME_LEN = 4096;
+  // the comment and signature lines and the date, key, algorithm and blocksize lines
+  static final int MAX_METADATA_LEN = 4096;
+
+  private static final int FHCRC = 0x02;
+  private static final int FEXTRA = 0x04;
+  private static final int FNAME = 0x08;
+  private static final int FCOMMENT = 0x10;
+  private static final int HASH_LEN = 32;
+  private static final int HASH_LINE_LEN = 2 * HASH_LEN + 1;
+  private static final int INITIAL_COMMENT_CAPACITY = 8 * 1024;
+
+  private final int blockSize;
+  private final byte[][] blockHashes;
+  private final long payloadOffset;
+
+  private GzipSignatureHeader(int blockSize, byte[][] blockHashes, long payloadOffset) {
+    this.blockSize = blockSize;
+    this.blockHashes = blockHashes;
+    this.payloadOffset = payloadOffset;
+  }
+
+  /*
+   * Reads the gzip header from the stream, which is left positioned at the first byte of the compressed
+   * data, and verifies the signature of the embedded block hashes.
+   */
+  static GzipSignatureHeader read(InputStream in, SignifyVerifier verifier, int maxBlockCount)
+      throws VerificationFailedException, IOException {
+    CountingReader reader = new CountingReader(in);
+    if (reader.read() != 0x1f || reader.read() != 0x8b || reader.read() != 8) {
+      throw new IllegalArgumentException("not a gzip file with deflate compression");
+    }
+    int flags = reader.read();
+    reader.skip(6);
+    if ((flags & FEXTRA) != 0) {
+      reader.skip(reader.read() | (reader.read() << 8));
+    }
+    if ((flags & FNAME) != 0) {
+      reader.skipZeroTerminated("file name", MAX_NAME_LEN);
+    }
+    if ((flags & FCOMMENT) == 0) {
+      throw new IllegalArgumentException("gzip header has no comment with a signature");
+    }
+    ByteBuffer comment = reader.readZeroTerminated("comment", maxCommentLength(maxBlockCount));
+    if ((flags & FHCRC) != 0) {
+      reader.skip(2);
+    }
+
+    ByteBuffer message = verifyComment(comment, verifier);
+    return parse(message, reader.count, maxBlockCount);
+  }
+
+  static int maxCommentLength(int maxBlockCount) {
+    return (int) Math.min(Integer.MAX_VALUE - 8, MAX_METADATA_LEN + (long) maxBlockCount * HASH_LINE_LEN);
+  }
+
+  int getBlockSize() {
+    return blockSize;
+  }
+
+  int getBlockCount() {
+    return blockHashes.length;
+  }
+
+  /*
+   * Offset of the compressed data (the first block) from the start of the gzip file.
+   */
+  long getPayloadOffset() {
+    return payloadOffset;
+  }
+
+  static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance(HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+    }
+  }
+
+  /*
+   * Returns true if the hash matches the signed hash of the block.
+   */
+  boolean matches(int block, byte[] hash) {
+    return MessageDigest.isEqual(hash, blockHashes[block]);
+  }
+
+  /*
+   * Verifies the message embedded in the comment in place and returns it, from its position to its limit.
+   */
+  private static ByteBuffer verifyComment(ByteBuffer comment, SignifyVerifier verifier) throws VerificationFailedException {
+    FileUtil.Header header = FileUtil.splitHeader(comment);
+    if (header == null) {
+      throw new IllegalArgumentException("gzip comment must start with '" + FileUtil.COMMENT_HEADER + "' and a signature line");
+    }
+    ByteBuffer message = comment.duplicate().position((int) header.getEnd());
+    verifier.verify(Signature.fromBase64Bytes(header.getBase64Bytes()), message);
+    return message;
+  }
+
+  private static GzipSignatureHeader parse(ByteBuffer message, long payloadOffset, int maxBlockCount) {
+    String text = new String(message.array(), message.arrayOffset() + message.position(), message.remaining(), UTF_8);
+    String[] lines = text.split("\n", -1);
+    int blockSize = -1;
+    int line = 0;
+    boolean algorithmFound = false;
+    for (; line < lines.length && !lines[line].isEmpty(); line++) {
+      if (lines[line].equals("algorithm=SHA512/256")) {
+        algorithmFound = true;
+      } else if (lines[line].startsWith("algorithm=")) {
+        throw new IllegalArgumentException("unsupported block hash " + lines[line]);
+      } else if (lines[line].startsWith("blocksize=")) {
+        blockSize = parseBlockSize(lines[line].substring("blocksize=".length()));
+      }
+    }
+    if (!algorithmFound || blockSize <= 0 || line == lines.length) {
+      throw new IllegalArgumentException("signed gzip header must contain algorithm, blocksize and block hashes");
+    }
+
+    // the list ends with a newline, so the last "line" is empty
+    int blockCount = lines.length - line - 2;
+    if (blockCount < 0 || !lines[lines.length - 1].isEmpty()) {
+      throw new IllegalArgumentException("signed gzip header must end with a newline");
+    }
+    if (blockCount > maxBlockCount) {
+      throw new IllegalArgumentException("signed gzip header has more than " + maxBlockCount + " blocks");
+    }
+    byte[][] blockHashes = new byte[blockCount][];
+    for (int i = 0; i < blockCount; i++) {
+      String hash = lines[line + 1 + i];
+      if (hash.length() != 2 * HASH_LEN) {
+        throw new IllegalArgumentException("invalid hash of block " + i + " in signed gzip header");
+      }
+      blockHashes[i] = Hex.decode(hash);
+    }
+    return new GzipSignatureHeader(blockSize, blockHashes, payloadOffset);
+  }
+
+  private static int parseBlockSize(String value) {
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid blocksize " + value, e);
+    }
+  }
+
+  /*
+   * Reads the header byte by byte and counts its length.
+   */
+  private static final class CountingReader {
+    private final InputStream in;
+    private long count;
+
+    private CountingReader(InputStream in) {
+      this.in = in;
+    }
+
+    int read() throws IOException {
+      int b = in.read();
+      if (b == -1) {
+        throw new EOFException("unexpected end of gzip header");
+      }
+      count++;
+      return b;
+    }
+
+    void skip(int length) throws IOException {
+      for (int i = 0; i < length; i++) {
+        read();
+      }
+    }
+
+    void skipZeroTerminated(String field, int maxLength) throws IOException {
+      int length = 0;
+      while (read() != 0) {
+        if (length++ == maxLength) {
+          throw new IllegalArgumentException("gzip header " + field + " is longer than " + maxLength + " bytes");
+        }
+      }
+    }
+
+    /*
+     * Returns the field from index 0 to the limit of the buffer. The buffer starts small and grows with the
+     * field, by doubling, but never beyond maxLength, so a hostile header cannot make it any larger.
+     */
+    ByteBuffer readZeroTerminated(String field, int maxLength) throws IOException {
+      byte[] bytes = new byte[Math.min(maxLength, INITIAL_COMMENT_CAPACITY)];
+      int length = 0;
+      int b;
+      while ((b = read()) != 0) {
+        if (length == bytes.length) {
+          if (length == maxLength) {
+            throw new IllegalArgumentException("gzip header " + field + " is longer than " + maxLength + " bytes");
+          }
+          bytes = Arrays.copyOf(bytes, (int) Math.min(maxLength, 2L * length));
+        }
+        bytes[length++] = (byte) b;
+      }
+      return ByteBuffer.wrap(bytes, 0, length);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * GzipSignatureVerifier verifies gzip files with an embedded signature, as created by {@code signify -zS}.
+ *
+ * <p>signify stores a signed list of SHA-512/256 hashes in the gzip header comment, one hash for each block
+ * (64 KB by default) of the compressed data. After the header has been verified, the blocks are checked as
+ * they are read: up to a fixed number of blocks is read ahead and hashed in parallel, and a block is only
+ * decompressed after its hash matched.
+ *
+ * <p>The header is read before its signature is checked, so the number of blocks is limited (see
+ * {@link #DEFAULT_MAX_BLOCK_COUNT}), and with it the memory needed to read the hashes.
+ */
+@Alpha
+public final class GzipSignatureVerifier {
+  /**
+   * Default maximum number of blocks of a signed gzip file: 16 GB of compressed data with the default block
+   * size of 64 KB, and a header comment of at most about 17 MB.
+   */
+  public static final int DEFAULT_MAX_BLOCK_COUNT = 256 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // a gzip header without optional fields, put in front of the verified compressed data
+  private static final byte[] PLAIN_GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 3};
+
+  private final SignifyVerifier verifier;
+  private final Executor executor;
+  private final int blocksInFlight;
+  private final int maxBlockCount;
+
+  /**
+   * Create a new GzipSignatureVerifier that hashes blocks on the common fork-join pool.
+   * @param verifier the verifier of the signed gzip header
+   */
+  public GzipSignatureVerifier(SignifyVerifier verifier) {
+    this(verifier, ForkJoinPool.commonPool(), 2 * ForkJoinPool.commonPool().getParallelism());
+  }
+
+  /**
+   * Create a new GzipSignatureVerifier that hashes blocks on the given executor.
+   * @param verifier the verifier of the signed gzip header
+   * @param executor the executor the blocks are hashed on
+   * @param blocksInFlight the maximum number of blocks read ahead (and held in memory) while they are hashed
+   * @throws IllegalArgumentException in case blocksInFlight is not positive
+   */
+  public GzipSignatureVerifier(SignifyVerifier verifier, Executor executor, int blocksInFlight) {
+    this(verifier, executor, blocksInFlight, DEFAULT_MAX_BLOCK_COUNT);
+  }
+
+  /**
+   * Create a new GzipSignatureVerifier that hashes blocks on the given executor and accepts files with up to
+   * the given number of blocks.
+   * @param verifier the verifier of the signed gzip header
+   * @param executor the executor the blocks are hashed on
+   * @param blocksInFlight the maximum number of blocks read ahead (and held in memory) while they are hashed
+   * @param maxBlockCount the maximum number of blocks of a file; each block takes 65 bytes of the header
+   * @throws IllegalArgumentException in case blocksInFlight or maxBlockCount is not positive
+   */
+  public GzipSignatureVerifier(SignifyVerifier verifier, Executor executor, int blocksInFlight, int maxBlockCount) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(executor, "executor");
+    Preconditions.checkArgument(blocksInFlight > 0, "blocksInFlight must be positive, but was %s.", blocksInFlight);
+    Preconditions.checkArgument(maxBlockCount > 0, "maxBlockCount must be positive, but was %s.", maxBlockCount);
+    this.verifier = verifier;
+    this.executor = executor;
+    this.blocksInFlight = blocksInFlight;
+    this.maxBlockCount = maxBlockCount;
+  }
+
+  /**
+   * Verify the signed header of a gzip file and return its decompressed content.
+   * The returned stream checks each block of the compressed data before decompressing it. If a block does
+   * not match its signed hash, or the data is longer or shorter than signed, reading fails with an
+   * {@link IOException} caused by a {@link VerificationFailedException}; no byte of such a block is returned.
+   * Closing the returned stream closes the given stream.
+   * @param gzip stream of the signed gzip file
+   * @return the verified, decompressed content
+   * @throws VerificationFailedException in case the signature of the header is not valid
+   * @throws IOException in case an I/O error occurs while reading the header
+   * @throws IllegalArgumentException in case the header is in the wrong format or has more than the maximum
+   *     number of blocks
+   */
+  public InputStream verify(InputStream gzip) throws VerificationFailedException, IOException {
+    Preconditions.checkNotNull(gzip, "gzip");
+    InputStream in = new BufferedInputStream(gzip, BUFFER_SIZE);
+    GzipSignatureHeader header = GzipSignatureHeader.read(in, verifier, maxBlockCount);
+
+    InputStream blocks = new VerifiedBlockInputStream(in, header, executor, blocksInFlight);
+    return new GZIPInputStream(new SequenceInputStream(new ByteArrayInputStream(PLAIN_GZIP_HEADER), blocks), BUFFER_SIZE);
+  }
+
+  /**
+   * Verify the signed header of a gzip file and open the file for random access to its verified blocks.
+   * Only the header is read here; each block is checked when it is read.
+   * @param gzipFile a path pointing to the signed gzip file
+   * @return the opened file, which has to be closed
+   * @throws VerificationFailedException in case the signature of the header is not valid, or the file size does not
+   *     match the signed blocks
+   * @throws IOException in case an I/O error occurs (e.g. file not found)
+   * @throws IllegalArgumentException in case the header is in the wrong format or has more than the maximum
+   *     number of blocks
+   */
+  public SignedGzipFile open(Path gzipFile) throws VerificationFailedException, IOException {
+    Preconditions.checkNotNull(gzipFile, "gzipFile");
+    FileChannel channel = FileChannel.open(gzipFile, StandardOpenOption.READ);
+    try {
+      InputStream in = new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+      return new SignedGzipFile(channel, GzipSignatureHeader.read(in, verifier, maxBlockCount));
+    } catch (VerificationFailedException | IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+}
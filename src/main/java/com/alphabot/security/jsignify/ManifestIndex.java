@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.common.FileUtil;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * ManifestIndex looks up single files in a large signed checksum list (e.g. the {@code SHA256.sig} of a
+ * package mirror) without parsing the list again for every lookup.
+ *
+ * <p>The checksum list has the format read by {@link ChecksumListVerifier}. It is memory-mapped and its
+ * signature is verified once; then every line is indexed in an open-addressing hash table of primitive
+ * arrays, from a hash of the file name to the offset of the line in the mapped list. A lookup hashes the
+ * name, compares it with the listed name in place and decodes only the requested digest. The index uses
+ * 8 bytes per slot, with twice as many slots as lines, in addition to the mapping.
+ *
+ * <p>{@link #refresh()} picks up a new version of the list. The list is verified again whenever the file
+ * changed, but the index is only rebuilt if the signature changed, e.g. not if only the comment did. As the
+ * digests are read from the mapped file, a new list must be moved into place, not written into the existing
+ * file. If a verification fails, the index is unusable until a later refresh succeeds.
+ *
+ * <p>Instances are thread-safe; lookups are not blocked by a refresh.
+ */
+@Alpha
+public final class ManifestIndex {
+  private final SignifyVerifier verifier;
+  private final Path checksumFile;
+  private volatile Snapshot snapshot;
+
+  /**
+   * Create a new ManifestIndex of a checksum list.
+   * @param verifier the verifier of the checksum list's signature
+   * @param checksumFile a path pointing to the signed checksum list
+   * @throws VerificationFailedException in case the signature of the checksum list is not valid
+   * @throws IOException in case an I/O error occurs while reading the checksum list
+   * @throws IllegalArgumentException in case the checksum list is in the wrong format
+   */
+  public ManifestIndex(SignifyVerifier verifier, Path checksumFile) throws VerificationFailedException, IOException {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(checksumFile, "checksumFile");
+    this.verifier = verifier;
+    this.checksumFile = checksumFile;
+    refresh();
+  }
+
+  /**
+   * Read the checksum list again if the file changed since it was last read.
+   * @return true if the index was rebuilt because the signature of the list changed
+   * @throws VerificationFailedException in case the signature of the changed checksum list is not valid
+   * @throws IOException in case an I/O error occurs while reading the checksum list
+   * @throws IllegalArgumentException in case the changed checksum list is in the wrong format
+   */
+  public synchronized boolean refresh() throws VerificationFailedException, IOException {
+    BasicFileAttributes attributes = Files.readAttributes(checksumFile, BasicFileAttributes.class);
+    Snapshot current = snapshot;
+    if (current != null && current.isReadFrom(attributes)) {
+      return false;
+    }
+    Snapshot read;
+    boolean rebuild;
+    try {
+      read = read(attributes);
+      rebuild = current == null || !read.signature.getLayoutBuffer().equals(current.signature.getLayoutBuffer());
+      if (rebuild) {
+        read.buildIndex(checksumFile);
+      } else {
+        read.useIndexOf(current);
+      }
+    } catch (VerificationFailedException | IOException | RuntimeException e) {
+      // the file may have been changed in place, so the mapping of the current version cannot be trusted
+      snapshot = null;
+      throw e;
+    }
+    snapshot = read;
+    return rebuild;
+  }
+
+  /**
+   * Get the number of lines of the checksum list.
+   * @return the number of listed files
+   * @throws IllegalStateException in case the last refresh failed
+   */
+  public int size() {
+    return current().count;
+  }
+
+  /**
+   * Get the listed digest of a file.
+   * @param name the name of the file as in the list
+   * @return the digest, or null if the file is not listed
+   * @throws IllegalStateException in case the last refresh failed
+   */
+  public byte[] getDigest(String name) {
+    Preconditions.checkNotNull(name, "name");
+    Snapshot current = current();
+    int line = current.find(name.getBytes(UTF_8));
+    return line < 0 ? null : current.digest(line);
+  }
+
+  /**
+   * Check a file against its listed digest.
+   * @param name the name of the file as in the list
+   * @param file a path pointing to the file
+   * @return the outcome of the check; {@link ChecksumReport.Status#NOT_LISTED} if the file is not listed
+   * @throws IllegalStateException in case the last refresh failed
+   */
+  public ChecksumReport.Status check(String name, Path file) {
+    Preconditions.checkNotNull(name, "name");
+    Preconditions.checkNotNull(file, "file");
+    Snapshot current = current();
+    int line = current.find(name.getBytes(UTF_8));
+    if (line < 0) {
+      return ChecksumReport.Status.NOT_LISTED;
+    }
+    byte[] digest;
+    try {
+      digest = ChecksumListVerifier.hash(current.algorithm(line), file);
+    } catch (NoSuchFileException e) {
+      return ChecksumReport.Status.MISSING;
+    } catch (IOException e) {
+      return ChecksumReport.Status.UNREADABLE;
+    }
+    return MessageDigest.isEqual(digest, current.digest(line)) ? ChecksumReport.Status.OK : ChecksumReport.Status.MISMATCH;
+  }
+
+  private Snapshot current() {
+    Snapshot current = snapshot;
+    Preconditions.checkState(current != null, "the last refresh of the manifest index failed");
+    return current;
+  }
+
+  /*
+   * Maps the checksum list and verifies its signature.
+   */
+  private Snapshot read(BasicFileAttributes attributes) throws VerificationFailedException, IOException {
+    MappedByteBuffer content;
+    try (FileChannel channel = FileChannel.open(checksumFile, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("checksum list " + checksumFile.toAbsolutePath() + " is too large");
+      }
+      content = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    FileUtil.Header header = FileUtil.splitHeader(content);
+    if (header == null) {
+      throw new IllegalArgumentException("invalid checksum list " + checksumFile.toAbsolutePath().toString()
+          + "; must start with '" + FileUtil.COMMENT_HEADER + "' and a signature line");
+    }
+    Signature signature = Signature.fromBase64Bytes(header.getBase64Bytes());
+    ByteBuffer list = content.position((int) header.getEnd()).slice();
+
+    verifier.verify(signature, list);
+
+    return new Snapshot(list, signature, attributes);
+  }
+
+  /*
+   * FNV-1a, which is enough as names are compared after their hashes match.
+   */
+  private static int hash(ByteBuffer buffer, int from, int to) {
+    int hash = 0x811c9dc5;
+    for (int i = from; i < to; i++) {
+      hash = (hash ^ (buffer.get(i) & 0xff)) * 0x01000193;
+    }
+    return hash ^ (hash >>> 16);
+  }
+
+  /*
+   * A verified version of the checksum list with its index. The list and the index are never changed.
+   */
+  private static final class Snapshot {
+    private final ByteBuffer list;
+    private final Signature signature;
+    private final long size;
+    private final long lastModified;
+    private final Object fileKey;
+    // the hash of the name and the offset of the line plus one (0 for an empty slot) per slot
+    private int[] hashes;
+    private int[] lines;
+    private int count;
+
+    private Snapshot(ByteBuffer list, Signature signature, BasicFileAttributes attributes) {
+      this.list = list;
+      this.signature = signature;
+      this.size = attributes.size();
+      this.lastModified = attributes.lastModifiedTime().toMillis();
+      this.fileKey = attributes.fileKey();
+    }
+
+    boolean isReadFrom(BasicFileAttributes attributes) {
+      return size == attributes.size() && lastModified == attributes.lastModifiedTime().toMillis()
+          && Objects.equals(fileKey, attributes.fileKey());
+    }
+
+    /*
+     * Indexes every line, checking its format. A name listed more than once finds its last line.
+     */
+    void buildIndex(Path checksumFile) {
+      int lineCount = 0;
+      for (int i = 0; i < list.limit(); i++) {
+        if (list.get(i) != '\n' && (i + 1 == list.limit() || list.get(i + 1) == '\n')) {
+          lineCount++;
+        }
+      }
+      // more lines are not valid, which fails below
+      lineCount = Math.min(lineCount, list.limit() / ChecksumLines.MIN_LINE_LEN);
+      int slots = Integer.highestOneBit(Math.max(16, 2 * lineCount + 1)) << 1;
+      hashes = new int[slots];
+      lines = new int[slots];
+
+      int lineNumber = 0;
+      for (int start = 0; start < list.limit();) {
+        int lineEnd = ChecksumLines.lineEnd(list, start);
+        int end = ChecksumLines.trimmedEnd(list, start, lineEnd);
+        lineNumber++;
+        if (end > start) {
+          int nameEnd = ChecksumLines.nameEnd(list, start, end);
+          if (nameEnd < 0) {
+            throw new IllegalArgumentException("invalid line " + lineNumber + " in checksum list "
+                + checksumFile.toAbsolutePath().toString());
+          }
+          int nameStart = start + ChecksumLines.NAME_OFFSET;
+          int hash = hash(list, nameStart, nameEnd);
+          int slot = findSlot(hash, nameStart, nameEnd - nameStart, list);
+          if (lines[slot] == 0) {
+            count++;
+          }
+          hashes[slot] = hash;
+          lines[slot] = start + 1;
+        }
+        start = lineEnd + 1;
+      }
+    }
+
+    void useIndexOf(Snapshot other) {
+      hashes = other.hashes;
+      lines = other.lines;
+      count = other.count;
+    }
+
+    /*
+     * Returns the offset of the line of the name, or -1 if it is not listed.
+     */
+    int find(byte[] name) {
+      ByteBuffer wrapped = ByteBuffer.wrap(name);
+      int slot = findSlot(hash(wrapped, 0, name.length), 0, name.length, wrapped);
+      return lines[slot] - 1;
+    }
+
+    /*
+     * Returns the slot of the name, or the empty slot where it belongs (linear probing).
+     */
+    private int findSlot(int hash, int nameOffset, int nameLength, ByteBuffer nameSource) {
+      int mask = hashes.length - 1;
+      int slot = hash & mask;
+      while (lines[slot] != 0
+          && (hashes[slot] != hash || !hasName(lines[slot] - 1, nameSource, nameOffset, nameLength))) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+
+    /*
+     * Returns true if the line lists exactly the name. The name is followed by ") = " and the digest, which
+     * ends the line except for whitespace.
+     */
+    private boolean hasName(int line, ByteBuffer nameSource, int nameOffset, int nameLength) {
+      int nameEnd = line + ChecksumLines.NAME_OFFSET + nameLength;
+      int end = nameEnd + ChecksumLines.NAME_END.length + ChecksumLines.hexLength(list, line);
+      if (end > list.limit() || !ChecksumLines.isTrimmedEnd(list, end) || !ChecksumLines.startsWith(list, nameEnd, ChecksumLines.NAME_END)) {
+        return false;
+      }
+      for (int i = 0; i < nameLength; i++) {
+        if (list.get(line + ChecksumLines.NAME_OFFSET + i) != nameSource.get(nameOffset + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String algorithm(int line) {
+      return ChecksumLines.algorithm(list, line);
+    }
+
+    byte[] digest(int line) {
+      return ChecksumLines.digest(list, line, ChecksumLines.trimmedEnd(list, line, ChecksumLines.lineEnd(list, line)));
+    }
+  }
+}
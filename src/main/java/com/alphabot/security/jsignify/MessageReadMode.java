@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+/**
+ * How a message file is read for verification.
+ */
+public enum MessageReadMode {
+  /**
+   * Map files of at least {@link SignifyVerifier#MAPPED_READ_THRESHOLD} bytes, stream smaller ones.
+   */
+  AUTO,
+  /**
+   * Map the file into memory (in regions of at most 1 GB) and hash the mapped regions directly,
+   * without copying the message into a heap buffer.
+   */
+  MAPPED,
+  /**
+   * Read the file through a fixed-size heap buffer.
+   */
+  STREAMING
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * SignatureStore keeps the signatures of many artifacts (e.g. every package of a mirror) in a memory-mapped
+ * file, looked up by artifact id.
+ *
+ * <p>A signature is stored as its 74 byte decoded layout (algorithm, key number and Ed25519 signature) in a
+ * fixed-size record, and found through an open-addressing hash index in the same file. Neither the records
+ * nor the index are held on the heap, so heap use does not grow with the number of signatures; only the
+ * {@link Signature} returned by {@link #get(String)} is created on demand, from the mapped record. A store
+ * holds up to 16,777,216 signatures.
+ *
+ * <p>Artifact ids are only kept as the first 128 bits of their SHA-256 hash. Whoever can write the store can
+ * swap signatures, but not make a message pass verification without the secret key.
+ *
+ * <p>The store is opened by one instance at a time, which holds an exclusive lock on the file. Changes
+ * survive a crash of the process; {@link #flush()} and {@link #close()} write them to the disk. A crash of
+ * the system before that can lose recent changes: a signature whose record was lost is reported as missing.
+ * After a crash, the next {@link #open(Path)} reads the whole index once to repair the store. Instances are
+ * thread-safe.
+ */
+@Alpha
+public final class SignatureStore implements Closeable, Flushable {
+  /*
+   * Layout of the header:
+   *    0  magic "JSSIGSTO"
+   *    8  version
+   *   12  record length
+   *   16  number of index slots, a power of two
+   *   20  number of records
+   *   24  open flag, set while an instance has the store open
+   *
+   * The header is followed by room for half as many records as there are index slots, and then by the slots.
+   * A record is the decoded layout of a signature. Layout of an index slot:
+   *    0  first 16 bytes of the SHA-256 of the artifact id
+   *   16  number of the record plus one, 0 for an empty slot
+   */
+  static final int HEADER_LEN = 64;
+  static final int RECORD_LEN = 74;
+  static final int SLOT_LEN = 20;
+  static final int INITIAL_SLOTS = 1024;
+  static final int MAX_SLOTS = 1 << 25;
+
+  private static final byte[] MAGIC = "JSSIGSTO".getBytes(UTF_8);
+  private static final int VERSION = 1;
+  private static final int VERSION_OFFSET = 8;
+  private static final int RECORD_LEN_OFFSET = 12;
+  private static final int SLOTS_OFFSET = 16;
+  private static final int COUNT_OFFSET = 20;
+  private static final int OPEN_OFFSET = 24;
+  private static final int SLOT_RECORD_OFFSET = 16;
+  private static final String SIGNATURE_SUFFIX = ".sig";
+
+  private final Path file;
+  private FileChannel channel;
+  private MappedByteBuffer map;
+  private int slots;
+  private int count;
+
+  private SignatureStore(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Open a store file, creating it if it does not exist.
+   * @param storeFile a path pointing to the store file
+   * @return the opened store
+   * @throws IOException in case an I/O error occurs or the store is opened by another instance
+   * @throws IllegalArgumentException in case the file exists, but is not a store of this version
+   */
+  public static SignatureStore open(Path storeFile) throws IOException {
+    Preconditions.checkNotNull(storeFile, "storeFile");
+    SignatureStore store = new SignatureStore(storeFile.toAbsolutePath().normalize());
+    store.openFile();
+    return store;
+  }
+
+  /**
+   * Store the signature of an artifact, replacing the signature stored for it before.
+   * @param artifactId the id of the artifact, e.g. its path in a mirror
+   * @param signature the signature of the artifact
+   * @throws IOException in case an I/O error occurs while growing the file, or the store is full
+   */
+  public synchronized void put(String artifactId, Signature signature) throws IOException {
+    Preconditions.checkNotNull(artifactId, "artifactId");
+    Preconditions.checkNotNull(signature, "signature");
+    ensureOpen();
+    ByteBuffer id = id(artifactId);
+    int record = findRecord(id);
+    if (record == 0) {
+      if (count == slots / 2) {
+        grow();
+      }
+      record = ++count;
+      copyLayout(signature, record);
+      map.putInt(COUNT_OFFSET, count);
+      // the slot last, so that it never points to a record that is not written yet
+      int offset = slotOffset(slots, findSlot(slots, id.getLong(0), id.getLong(8)));
+      map.putLong(offset, id.getLong(0));
+      map.putLong(offset + 8, id.getLong(8));
+      map.putInt(offset + SLOT_RECORD_OFFSET, record);
+    } else {
+      copyLayout(signature, record);
+    }
+  }
+
+  /**
+   * Get the signature of an artifact.
+   * @param artifactId the id of the artifact
+   * @return the signature, or null if none is stored for the artifact
+   */
+  public synchronized Signature get(String artifactId) {
+    Preconditions.checkNotNull(artifactId, "artifactId");
+    ensureOpen();
+    int record = findRecord(id(artifactId));
+    if (record == 0) {
+      return null;
+    }
+    ByteBuffer layout = map.duplicate();
+    layout.position(recordOffset(record)).limit(recordOffset(record) + RECORD_LEN);
+    try {
+      return Signature.fromLayout(layout);
+    } catch (IllegalArgumentException e) {
+      // the record was lost in a crash of the system
+      return null;
+    }
+  }
+
+  /**
+   * Check whether a signature is stored for an artifact.
+   * @param artifactId the id of the artifact
+   * @return true if a signature is stored for the artifact
+   */
+  public boolean contains(String artifactId) {
+    return get(artifactId) != null;
+  }
+
+  /**
+   * Get the number of artifacts with a stored signature.
+   * @return the number of stored signatures
+   */
+  public synchronized int size() {
+    ensureOpen();
+    return count;
+  }
+
+  /**
+   * Import the signature files of a directory tree: the signature in {@code dir/foo.tar.sig} is stored for the
+   * artifact id {@code dir/foo.tar}, relative to the directory and with {@code /} as separator. Signature files
+   * in the wrong format, and files and directories below the root that cannot be read, are skipped. The store
+   * is flushed at the end.
+   * @param directory the root of the directory tree
+   * @return the number of imported signatures
+   * @throws IOException in case the root cannot be read (e.g. root not found), an I/O error occurs while
+   *     writing the store or the store is full
+   */
+  public int importSignatures(Path directory) throws IOException {
+    Preconditions.checkNotNull(directory, "directory");
+    Path root = directory.toAbsolutePath().normalize();
+    int[] imported = new int[1];
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+        String name = String.valueOf(file.getFileName());
+        if (attributes.isRegularFile() && name.endsWith(SIGNATURE_SUFFIX) && name.length() > SIGNATURE_SUFFIX.length()) {
+          Signature signature = readSignature(file);
+          if (signature == null) {
+            return FileVisitResult.CONTINUE;
+          }
+          put(artifactId(root, file), signature);
+          imported[0]++;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+        if (file.equals(root)) {
+          throw e;
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    flush();
+    return imported[0];
+  }
+
+  /*
+   * Returns null if the signature file is in the wrong format or cannot be read.
+   */
+  private static Signature readSignature(Path file) {
+    try {
+      return Signature.tryFromFile(file);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Write the changes made so far to the disk.
+   * @throws IOException in case an I/O error occurs
+   */
+  @Override
+  public synchronized void flush() throws IOException {
+    ensureOpen();
+    map.force();
+  }
+
+  /**
+   * Write the changes to the disk and close the store.
+   * @throws IOException in case an I/O error occurs
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      try {
+        map.put(OPEN_OFFSET, (byte) 0);
+        map.force();
+      } finally {
+        channel.close();
+        channel = null;
+        map = null;
+      }
+    }
+  }
+
+  private void ensureOpen() {
+    Preconditions.checkState(channel != null, "signature store is closed");
+  }
+
+  private synchronized void openFile() throws IOException {
+    FileChannel opened = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+    try {
+      FileLock acquired;
+      try {
+        acquired = opened.tryLock();
+      } catch (OverlappingFileLockException e) {
+        acquired = null;
+      }
+      if (acquired == null) {
+        throw new IOException("signature store " + file + " is opened by another instance");
+      }
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LEN);
+      int read;
+      do {
+        read = opened.read(header, header.position());
+      } while (read > 0 && header.hasRemaining());
+      if (opened.size() <= HEADER_LEN && isZero(header.array(), header.position())) {
+        // new, or the creator crashed before it wrote the header; anything else is never overwritten
+        header.clear();
+        header.put(MAGIC).putInt(VERSION).putInt(RECORD_LEN).putInt(INITIAL_SLOTS).clear();
+        opened.truncate(0);
+        writeFully(opened, header, 0);
+        writeFully(opened, ByteBuffer.allocate(1), length(INITIAL_SLOTS) - 1);
+      } else if (header.position() < HEADER_LEN || !isValidHeader(header, opened.size())) {
+        throw new IllegalArgumentException("invalid signature store " + file);
+      }
+      slots = header.getInt(SLOTS_OFFSET);
+      count = header.getInt(COUNT_OFFSET);
+      // beyond the length belongs to a growth of the index that did not finish
+      opened.truncate(length(slots));
+      map = opened.map(FileChannel.MapMode.READ_WRITE, 0, length(slots));
+      if (map.get(OPEN_OFFSET) != 0) {
+        recover();
+      }
+      map.put(OPEN_OFFSET, (byte) 1);
+      map.force();
+      channel = opened;
+    } catch (IOException | RuntimeException e) {
+      opened.close();
+      throw e;
+    }
+  }
+
+  private static boolean isValidHeader(ByteBuffer header, long size) {
+    int headerSlots = header.getInt(SLOTS_OFFSET);
+    int headerCount = header.getInt(COUNT_OFFSET);
+    return Arrays.equals(Arrays.copyOf(header.array(), MAGIC.length), MAGIC)
+        && header.getInt(VERSION_OFFSET) == VERSION && header.getInt(RECORD_LEN_OFFSET) == RECORD_LEN
+        && headerSlots >= INITIAL_SLOTS && headerSlots <= MAX_SLOTS && Integer.bitCount(headerSlots) == 1
+        && headerCount >= 0 && headerCount <= headerSlots / 2 && size >= length(headerSlots);
+  }
+
+  /*
+   * Repairs the store after it was not closed. The index slots reach the disk independently of the number of
+   * records in the header, so records may be in use beyond that number; they must not be handed out again.
+   */
+  private void recover() {
+    int highest = count;
+    for (int slot = 0; slot < slots; slot++) {
+      int record = map.getInt(slotOffset(slots, slot) + SLOT_RECORD_OFFSET);
+      if (record < 0 || record > slots / 2) {
+        throw new IllegalArgumentException("invalid signature store " + file);
+      }
+      highest = Math.max(highest, record);
+    }
+    count = highest;
+    map.putInt(COUNT_OFFSET, count);
+  }
+
+  /*
+   * Returns the number of the record of the artifact (starting at 1), or 0 if none is stored.
+   */
+  private int findRecord(ByteBuffer id) {
+    int offset = slotOffset(slots, findSlot(slots, id.getLong(0), id.getLong(8)));
+    return map.getInt(offset + SLOT_RECORD_OFFSET);
+  }
+
+  /*
+   * Returns the slot of the id, or the empty slot where it belongs (linear probing).
+   */
+  private int findSlot(int slotCount, long high, long low) {
+    int mask = slotCount - 1;
+    int slot = (int) high & mask;
+    while (true) {
+      int offset = slotOffset(slotCount, slot);
+      if (map.getInt(offset + SLOT_RECORD_OFFSET) == 0 || (map.getLong(offset) == high && map.getLong(offset + 8) == low)) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /*
+   * Doubles the number of index slots in place: the file is extended, the index is rebuilt behind the space of
+   * the grown records, and only then the header switches to it. The old index becomes space for records.
+   * Whatever of the new index reached the file before a crash is cut off again when the store is opened.
+   */
+  private void grow() throws IOException {
+    if (slots == MAX_SLOTS) {
+      throw new IOException("signature store " + file + " is full");
+    }
+    int grown = 2 * slots;
+    writeFully(channel, ByteBuffer.allocate(1), length(grown) - 1);
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length(grown));
+    for (int slot = 0; slot < slots; slot++) {
+      int offset = slotOffset(slots, slot);
+      int record = map.getInt(offset + SLOT_RECORD_OFFSET);
+      if (record != 0) {
+        long high = map.getLong(offset);
+        long low = map.getLong(offset + 8);
+        int target = slotOffset(grown, findSlot(grown, high, low));
+        map.putLong(target, high);
+        map.putLong(target + 8, low);
+        map.putInt(target + SLOT_RECORD_OFFSET, record);
+      }
+    }
+    map.force();
+    map.putInt(SLOTS_OFFSET, grown);
+    // before records are appended where the old index was
+    map.force();
+    slots = grown;
+  }
+
+  private void copyLayout(Signature signature, int record) {
+    ByteBuffer target = map.duplicate();
+    target.position(recordOffset(record));
+    target.put(signature.getLayoutBuffer());
+  }
+
+  private static ByteBuffer id(String artifactId) {
+    return ByteBuffer.wrap(Hashing.sha256().hashString(artifactId, UTF_8).asBytes());
+  }
+
+  static String artifactId(Path root, Path signatureFile) {
+    Path relative = root.relativize(signatureFile);
+    String id = relative.toString().replace(relative.getFileSystem().getSeparator(), "/");
+    return id.substring(0, id.length() - SIGNATURE_SUFFIX.length());
+  }
+
+  private static long length(int slotCount) {
+    return HEADER_LEN + (long) slotCount / 2 * RECORD_LEN + (long) slotCount * SLOT_LEN;
+  }
+
+  private static int recordOffset(int record) {
+    return HEADER_LEN + (record - 1) * RECORD_LEN;
+  }
+
+  private static int slotOffset(int slotCount, int slot) {
+    return HEADER_LEN + slotCount / 2 * RECORD_LEN + slot * SLOT_LEN;
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long current = position;
+    while (buffer.hasRemaining()) {
+      current += channel.write(buffer, current);
+    }
+  }
+
+  private static boolean isZero(byte[] bytes, int length) {
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
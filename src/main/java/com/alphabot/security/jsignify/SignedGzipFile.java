@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * A gzip file signed with {@code signify -zS}, opened for random access to its verified blocks.
+ * See {@link GzipSignatureVerifier#open}.
+ *
+ * <p>Once the signed header is verified, every block of the compressed data can be read and checked on its
+ * own with a positional read, so reading a block costs O(block size) regardless of the file size. Blocks are
+ * compressed data: deflate streams generally cannot be decompressed from the middle, so a caller that needs
+ * decompressed data from a later block has to start decompressing at the first block.
+ *
+ * <p>Instances are thread-safe.
+ */
+@Alpha
+public final class SignedGzipFile implements Closeable {
+  private final FileChannel channel;
+  private final GzipSignatureHeader header;
+  private final long payloadSize;
+
+  SignedGzipFile(FileChannel channel, GzipSignatureHeader header) throws VerificationFailedException, IOException {
+    this.channel = channel;
+    this.header = header;
+    this.payloadSize = channel.size() - header.getPayloadOffset();
+    long signedBlocks = (payloadSize + header.getBlockSize() - 1) / header.getBlockSize();
+    if (signedBlocks != header.getBlockCount()) {
+      throw new VerificationFailedException("verification failed: file size does not match the signed blocks");
+    }
+  }
+
+  public int getBlockCount() {
+    return header.getBlockCount();
+  }
+
+  public int getBlockSize() {
+    return header.getBlockSize();
+  }
+
+  /**
+   * Get the length of a block, which is the block size for all blocks but the last one.
+   * @param block the index of the block
+   * @return the length of the block in bytes
+   * @throws IndexOutOfBoundsException in case there is no such block
+   */
+  public int getBlockLength(int block) {
+    Preconditions.checkElementIndex(block, header.getBlockCount(), "block");
+    return (int) Math.min(header.getBlockSize(), payloadSize - (long) block * header.getBlockSize());
+  }
+
+  /**
+   * Read a block of the compressed data and check it against its signed hash.
+   * @param block the index of the block
+   * @return a new buffer holding the verified block
+   * @throws VerificationFailedException in case the block does not match its signed hash
+   * @throws IOException in case an I/O error occurs
+   * @throws IndexOutOfBoundsException in case there is no such block
+   */
+  public ByteBuffer readBlock(int block) throws VerificationFailedException, IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(getBlockLength(block));
+    readBlock(block, buffer);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Read a block of the compressed data into a buffer and check it against its signed hash.
+   * The block is put at the position of the buffer, whose position is advanced by the length of the block.
+   * If the block does not match, the buffer content between the old and the new position is undefined.
+   * @param block the index of the block
+   * @param buffer the buffer the block is read into
+   * @throws VerificationFailedException in case the block does not match its signed hash
+   * @throws IOException in case an I/O error occurs
+   * @throws IndexOutOfBoundsException in case there is no such block
+   * @throws IllegalArgumentException in case the remaining space of the buffer is smaller than the block
+   */
+  public void readBlock(int block, ByteBuffer buffer) throws VerificationFailedException, IOException {
+    int length = getBlockLength(block);
+    Preconditions.checkArgument(
+        buffer.remaining() >= length,
+        "Buffer must have %s bytes remaining, but has %s.", length, buffer.remaining());
+
+    int start = buffer.position();
+    ByteBuffer target = buffer.duplicate();
+    target.limit(start + length);
+    long position = header.getPayloadOffset() + (long) block * header.getBlockSize();
+    while (target.hasRemaining()) {
+      int read = channel.read(target, position + target.position() - start);
+      if (read == -1) {
+        throw new EOFException("file ends within block " + block);
+      }
+    }
+
+    target.position(start);
+    MessageDigest digest = GzipSignatureHeader.newDigest();
+    digest.update(target);
+    if (!header.matches(block, digest.digest())) {
+      throw new VerificationFailedException("verification failed: block " + block + " does not match its signed hash");
+    }
+    buffer.position(start + length);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
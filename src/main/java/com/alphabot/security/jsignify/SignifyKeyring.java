@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.PublicKey;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.engine.VerificationEngine;
+import com.alphabot.security.jsignify.engine.VerificationEngines;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * SignifyKeyring verifies (OpenBSD) Signify signatures against several trusted public keys.
+ * The key is chosen by the key number of the signature.
+ *
+ * <p>The keys are read from the {@code *.pub} files of a directory. {@link #reload()} reads the directory
+ * again and swaps in the new set of keys at once, so verifications running in other threads are never
+ * blocked and always see either the old or the new set.
+ */
+@Alpha
+public final class SignifyKeyring {
+  private final Path keyDirectory;
+  private final VerificationEngine engine;
+  private volatile Keys keys;
+
+  /**
+   * Create a new SignifyKeyring with the public keys of a directory.
+   * Messages held in memory are verified with {@link VerificationEngines#getDefault()}.
+   * @param keyDirectory a path pointing to a directory with public key files ({@code *.pub})
+   * @throws IOException in case an I/O error occurs (e.g. directory not found)
+   * @throws IllegalArgumentException in case a public key file is in the wrong format or two different keys have the same key number
+   */
+  public SignifyKeyring(Path keyDirectory) throws IOException {
+    this(keyDirectory, VerificationEngines.getDefault());
+  }
+
+  /**
+   * Create a new SignifyKeyring with the public keys of a directory and the engine that verifies messages
+   * held in memory.
+   * @param keyDirectory a path pointing to a directory with public key files ({@code *.pub})
+   * @param engine the engine used by {@link #verify(String, byte[])}
+   * @throws IOException in case an I/O error occurs (e.g. directory not found)
+   * @throws IllegalArgumentException in case a public key file is in the wrong format or two different keys have the same key number
+   */
+  public SignifyKeyring(Path keyDirectory, VerificationEngine engine) throws IOException {
+    Preconditions.checkNotNull(keyDirectory, "keyDirectory");
+    Preconditions.checkNotNull(engine, "engine");
+    this.keyDirectory = keyDirectory;
+    this.engine = engine;
+    reload();
+  }
+
+  /**
+   * Read the public key files of the directory again, e.g. after a key rotation.
+   * If reading fails, the keys loaded before stay in use.
+   * @throws IOException in case an I/O error occurs (e.g. directory not found)
+   * @throws IllegalArgumentException in case a public key file is in the wrong format or two different keys have the same key number
+   */
+  public synchronized void reload() throws IOException {
+    List<PublicKey> publicKeys = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(keyDirectory, "*.pub")) {
+      for (Path file : files) {
+        if (Files.isRegularFile(file)) {
+          publicKeys.add(PublicKey.fromFile(file));
+        }
+      }
+    }
+    publicKeys.sort(Comparator.comparingLong(publicKey -> publicKey.getKeyNumber().toLong()));
+
+    // copies of a key file, e.g. made during a key rotation, are loaded once
+    List<PublicKey> distinctKeys = new ArrayList<>();
+    for (PublicKey publicKey : publicKeys) {
+      PublicKey previous = distinctKeys.isEmpty() ? null : distinctKeys.get(distinctKeys.size() - 1);
+      if (previous == null || !previous.getKeyNumber().equals(publicKey.getKeyNumber())) {
+        distinctKeys.add(publicKey);
+      } else {
+        Preconditions.checkArgument(
+            previous.getPublicKeyBuffer().equals(publicKey.getPublicKeyBuffer()),
+            "Key number %s is used by more than one public key in %s.",
+            Long.toHexString(publicKey.getKeyNumber().toLong()), keyDirectory);
+      }
+    }
+
+    long[] keyNumbers = new long[distinctKeys.size()];
+    SignifyVerifier[] verifiers = new SignifyVerifier[distinctKeys.size()];
+    for (int i = 0; i < keyNumbers.length; i++) {
+      PublicKey publicKey = distinctKeys.get(i);
+      keyNumbers[i] = publicKey.getKeyNumber().toLong();
+      verifiers[i] = new SignifyVerifier(publicKey, engine);
+    }
+    keys = new Keys(keyNumbers, verifiers);
+  }
+
+  /**
+   * Get the number of public keys currently loaded.
+   * @return the number of public keys
+   */
+  public int size() {
+    return keys.keyNumbers.length;
+  }
+
+  /**
+   * Verify a message file with its corresponding signature file.
+   * @param signatureFile a path pointing to the signature file
+   * @param messageFile a path pointing to the message file to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by a trusted key)
+   * @throws IOException in case an I/O error occurs (e.g. message file not found)
+   * @throws IllegalArgumentException in case an argument is in the wrong format
+   * @see SignifyVerifier#verifyFile(Path, Path)
+   */
+  public void verifyFile(Path signatureFile, Path messageFile) throws VerificationFailedException, IOException {
+    Signature signature = Signature.fromFile(signatureFile);
+
+    verifierFor(signature).verifyFile(signature, messageFile, MessageReadMode.AUTO);
+  }
+
+  /**
+   * Verify a message with its corresponding signature in Base64 format.
+   * @param base64Signature signature Base64 encoded (typically starting with RW...)
+   * @param message message to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by a trusted key)
+   * @throws IllegalArgumentException in case an argument is in the wrong format
+   */
+  public void verify(String base64Signature, byte[] message) throws VerificationFailedException {
+    Signature signature = Signature.fromBase64String(base64Signature);
+
+    verifierFor(signature).verifyMessage(signature, message);
+  }
+
+  /**
+   * Verify a message read from a stream with its corresponding signature.
+   * @param signature the signature of the message
+   * @param message stream of the message to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by a trusted key)
+   * @throws IOException in case an I/O error occurs while reading the message
+   * @see SignifyVerifier#verify(Signature, InputStream)
+   */
+  public void verify(Signature signature, InputStream message) throws VerificationFailedException, IOException {
+    verifierFor(signature).verify(signature, message);
+  }
+
+  /**
+   * Verify a message read from a channel with its corresponding signature.
+   * @param signature the signature of the message
+   * @param message channel of the message to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by a trusted key)
+   * @throws IOException in case an I/O error occurs while reading the message
+   * @see SignifyVerifier#verify(Signature, ReadableByteChannel)
+   */
+  public void verify(Signature signature, ReadableByteChannel message) throws VerificationFailedException, IOException {
+    verifierFor(signature).verify(signature, message);
+  }
+
+  /**
+   * Verify a message with its corresponding signature in Base64 format, without throwing if the verification
+   * fails. A signature made with a key that is not in the keyring is reported as {@link VerificationResult#WRONG_KEY}.
+   * @param base64Signature signature Base64 encoded (typically starting with RW...)
+   * @param message message to verify
+   * @return the result of the verification
+   * @see SignifyVerifier#tryVerify(String, byte[])
+   */
+  public VerificationResult tryVerify(String base64Signature, byte[] message) {
+    Signature signature = Signature.tryFromBase64String(base64Signature);
+    if (signature == null) {
+      return VerificationResult.MALFORMED;
+    }
+    SignifyVerifier verifier = findVerifier(signature);
+    return verifier == null ? VerificationResult.WRONG_KEY : verifier.tryVerify(signature, message);
+  }
+
+  private SignifyVerifier verifierFor(Signature signature) throws VerificationFailedException {
+    SignifyVerifier verifier = findVerifier(signature);
+    if (verifier == null) {
+      throw new VerificationFailedException("verification failed: signed with an unknown key");
+    }
+    return verifier;
+  }
+
+  private SignifyVerifier findVerifier(Signature signature) {
+    Keys current = keys;
+    int index = Arrays.binarySearch(current.keyNumbers, signature.getKeyNumber().toLong());
+    return index < 0 ? null : current.verifiers[index];
+  }
+
+  /*
+   * An immutable set of keys, sorted by key number.
+   */
+  private static final class Keys {
+    private final long[] keyNumbers;
+    private final SignifyVerifier[] verifiers;
+
+    private Keys(long[] keyNumbers, SignifyVerifier[] verifiers) {
+      this.keyNumbers = keyNumbers;
+      this.verifiers = verifiers;
+    }
+  }
+}
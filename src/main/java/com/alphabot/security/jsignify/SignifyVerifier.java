@@ -15,44 +15,113 @@
 package com.alphabot.security.jsignify;
 
 import com.alphabot.security.jsignify.common.FileUtil;
+import com.alphabot.security.jsignify.ed25519.Ed25519Verifier;
 import com.alphabot.security.jsignify.elements.PublicKey;
 import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.engine.BuiltInVerificationEngine;
+import com.alphabot.security.jsignify.engine.VerificationEngine;
+import com.alphabot.security.jsignify.engine.VerificationEngines;
+import com.alphabot.security.jsignify.exception.BatchVerificationFailedException;
 import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
 import com.google.crypto.tink.annotations.Alpha;
-import com.google.crypto.tink.subtle.Ed25519Verify;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
-import java.security.GeneralSecurityException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * SignifyVerifier can be used to verify (OpenBSD) Signify signatures.
+ *
+ * <p>Streams, files, byte buffers and batches are verified with the built-in Ed25519 implementation, which
+ * checks the equation with the cofactor 8 (see {@link Ed25519Verifier}). Single messages held in memory are
+ * verified with the engine of the verifier, the built-in one by default. The Tink and JDK engines check without
+ * the cofactor, so with them {@link #verify(String, byte[])} rejects a signature whose R has a small-order
+ * component, which the other methods accept. Only the holder of the private key can craft such a signature.
  */
 @Alpha
 public final class SignifyVerifier {
+  /**
+   * Minimum size of a message file that is mapped into memory in {@link MessageReadMode#AUTO} mode.
+   */
+  public static final long MAPPED_READ_THRESHOLD = 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long MAPPED_REGION_SIZE = 1L << 30;
+
   private final PublicKey publicKey;
+  private final Ed25519Verifier ed25519Verifier;
+  private final VerificationEngine.KeyVerifier messageVerifier;
 
   /**
    * Create a new SignifyVerifier with a public key from file.
+   * Messages held in memory are verified with {@link VerificationEngines#getDefault()}.
    * @param publicKeyFile a path pointing to the public key file
    * @throws IOException in case an I/O error occurs (e.g. public key file not found)
    * @throws IllegalArgumentException in case an argument is in the wrong format
    */
   public SignifyVerifier(Path publicKeyFile) throws IOException {
-    publicKey = PublicKey.fromFile(publicKeyFile);
+    this(PublicKey.fromFile(publicKeyFile), VerificationEngines.getDefault());
+  }
+
+  /**
+   * Create a new SignifyVerifier with a public key from file and the engine that verifies messages held in memory.
+   * With an engine that checks without the cofactor, the result may differ from the one of the other methods
+   * (see above).
+   * @param publicKeyFile a path pointing to the public key file
+   * @param engine the engine used by {@link #verify(String, byte[])}
+   * @throws IOException in case an I/O error occurs (e.g. public key file not found)
+   * @throws IllegalArgumentException in case an argument is in the wrong format
+   */
+  public SignifyVerifier(Path publicKeyFile, VerificationEngine engine) throws IOException {
+    this(PublicKey.fromFile(publicKeyFile), engine);
   }
 
   /**
    * Create a new SignifyVerifier with a public key from a Base64 string.
+   * Messages held in memory are verified with {@link VerificationEngines#getDefault()}.
    * @param base64PublicKey public key Base64 encoded (typically starting with RW...)
    * @throws IllegalArgumentException in case an argument is in the wrong format
    */
   public SignifyVerifier(String base64PublicKey) {
-    publicKey = PublicKey.fromBase64String(base64PublicKey);
+    this(PublicKey.fromBase64String(base64PublicKey), VerificationEngines.getDefault());
+  }
+
+  /**
+   * Create a new SignifyVerifier with a public key from a Base64 string and the engine that verifies
+   * messages held in memory.
+   * With an engine that checks without the cofactor, the result may differ from the one of the other methods
+   * (see above).
+   * @param base64PublicKey public key Base64 encoded (typically starting with RW...)
+   * @param engine the engine used by {@link #verify(String, byte[])}
+   * @throws IllegalArgumentException in case an argument is in the wrong format
+   */
+  public SignifyVerifier(String base64PublicKey, VerificationEngine engine) {
+    this(PublicKey.fromBase64String(base64PublicKey), engine);
+  }
+
+  SignifyVerifier(PublicKey publicKey, VerificationEngine engine) {
+    Preconditions.checkNotNull(engine, "engine");
+    this.publicKey = publicKey;
+    this.ed25519Verifier = new Ed25519Verifier(publicKey.getPublicKey());
+    // the built-in engine would precompute the same key table a second time
+    this.messageVerifier = engine instanceof BuiltInVerificationEngine
+        ? ed25519Verifier::verify
+        : engine.newKeyVerifier(publicKey.getPublicKey());
   }
 
   /**
    * Verify a message file with its corresponding signature file.
+   * The message file is read in a single pass, independent of its size: large files are mapped into
+   * memory, small files are read through a fixed-size buffer (see {@link MessageReadMode#AUTO}).
    * @param signatureFile a path pointing to the signature file
    * @param messageFile a path pointing to the message file to verify
    * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
@@ -60,10 +129,47 @@ public final class SignifyVerifier {
    * @throws IllegalArgumentException in case an argument is in the wrong format
    */
   public void verifyFile(Path signatureFile, Path messageFile) throws VerificationFailedException, IOException {
-    Signature signature = Signature.fromFile(signatureFile);
-    byte[] message = FileUtil.readAllBytes(messageFile);
+    verifyFile(signatureFile, messageFile, MessageReadMode.AUTO);
+  }
 
-    verifyMessage(signature, message);
+  /**
+   * Verify a message file with its corresponding signature file, choosing how the message file is read.
+   * Mapped regions are released by the garbage collector, so the message file should not be truncated
+   * while (or shortly after) it is verified in mapped mode.
+   * @param signatureFile a path pointing to the signature file
+   * @param messageFile a path pointing to the message file to verify
+   * @param readMode how the message file is read
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs (e.g. message file not found)
+   * @throws IllegalArgumentException in case an argument is in the wrong format
+   */
+  public void verifyFile(Path signatureFile, Path messageFile, MessageReadMode readMode)
+      throws VerificationFailedException, IOException {
+    verifyFile(Signature.fromFile(signatureFile), messageFile, readMode);
+  }
+
+  void verifyFile(Signature signature, Path messageFile, MessageReadMode readMode) throws VerificationFailedException, IOException {
+    check(tryVerifyFile(signature, messageFile, readMode));
+  }
+
+  /**
+   * Verify a signature file with the message embedded after the signature line (as created by
+   * {@code signify -S -e}).
+   * Only the two header lines are parsed; the message is then read in a single pass from the offset right
+   * after them, like the message file of {@link #verifyFile(Path, Path)}, so memory use does not depend on
+   * the size of the message. To use the verified message, copy it with
+   * {@link VerifyingTransfer#transferEmbedded(Path, Path)} instead of reading the file again: the file may
+   * have been replaced in between.
+   * @param signedFile a path pointing to the signature file with the embedded message
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs (e.g. file not found)
+   * @throws IllegalArgumentException in case the header of the file is in the wrong format
+   */
+  public void verifyEmbeddedFile(Path signedFile) throws VerificationFailedException, IOException {
+    try (FileChannel channel = FileChannel.open(signedFile, StandardOpenOption.READ)) {
+      Signature signature = Signature.fromBase64Bytes(FileUtil.readHeader(channel, signedFile).getBase64Bytes());
+      check(tryVerifyEmbedded(signature, channel));
+    }
   }
 
   /**
@@ -79,16 +185,309 @@ public final class SignifyVerifier {
     verifyMessage(signature, message);
   }
 
-  private void verifyMessage(Signature signature, byte[] message) throws VerificationFailedException {
-    if (publicKey.getKeyNumber().isNotEqualTo(signature.getKeyNumber())) {
-      throw new VerificationFailedException("verification failed: checked against wrong key");
+  /**
+   * Verify a message read from a stream with its corresponding signature.
+   * The stream is read to its end (but not closed) through a fixed-size buffer, so memory use does not
+   * depend on the size of the message.
+   * @param signature the signature of the message
+   * @param message stream of the message to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs while reading the message
+   */
+  public void verify(Signature signature, InputStream message) throws VerificationFailedException, IOException {
+    check(tryVerify(signature, message));
+  }
+
+  /**
+   * Verify a message read from a channel with its corresponding signature.
+   * The channel is read to its end (but not closed) through a fixed-size buffer, so memory use does not
+   * depend on the size of the message.
+   * @param signature the signature of the message
+   * @param message channel of the message to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs while reading the message
+   */
+  public void verify(Signature signature, ReadableByteChannel message) throws VerificationFailedException, IOException {
+    check(tryVerify(signature, message));
+  }
+
+  /**
+   * Verify a message held in one or more byte buffers with its corresponding signature.
+   * The remaining bytes of the buffers (heap, direct or mapped; read-only or not) are hashed in place and in
+   * order, as if they were one message, so a message scattered over several buffers needs no copy. The
+   * positions of the buffers are left unchanged.
+   * @param signature the signature of the message
+   * @param message buffers holding the parts of the message to verify
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   */
+  public void verify(Signature signature, ByteBuffer... message) throws VerificationFailedException {
+    check(tryVerify(signature, message));
+  }
+
+  /**
+   * Verify a message file with its corresponding signature file, without throwing if the verification fails.
+   * @param signatureFile a path pointing to the signature file
+   * @param messageFile a path pointing to the message file to verify
+   * @return the result of the verification; {@link VerificationResult#MALFORMED} if the signature file is in the
+   *     wrong format
+   * @throws IOException in case an I/O error occurs (e.g. message file not found)
+   * @see #verifyFile(Path, Path)
+   */
+  public VerificationResult tryVerifyFile(Path signatureFile, Path messageFile) throws IOException {
+    Signature signature = Signature.tryFromFile(signatureFile);
+    if (signature == null) {
+      return VerificationResult.MALFORMED;
     }
+    return tryVerifyFile(signature, messageFile, MessageReadMode.AUTO);
+  }
 
-    Ed25519Verify verifier = new Ed25519Verify(publicKey.getPublicKey());
-    try {
-      verifier.verify(signature.getSignature(), message);
-    } catch (GeneralSecurityException e) {
-      throw new VerificationFailedException("signature verification failed", e);
+  VerificationResult tryVerifyFile(Signature signature, Path messageFile, MessageReadMode readMode) throws IOException {
+    try (FileChannel message = FileChannel.open(messageFile, StandardOpenOption.READ)) {
+      boolean mapped = readMode == MessageReadMode.MAPPED
+          || (readMode == MessageReadMode.AUTO && message.size() >= MAPPED_READ_THRESHOLD);
+      return mapped ? tryVerifyMapped(signature, message) : tryVerify(signature, message);
+    }
+  }
+
+  /**
+   * Verify a signature file with an embedded message, without throwing if the verification fails.
+   * @param signedFile a path pointing to the signature file with the embedded message
+   * @return the result of the verification; {@link VerificationResult#MALFORMED} if the header of the file is
+   *     in the wrong format
+   * @throws IOException in case an I/O error occurs (e.g. file not found)
+   * @see #verifyEmbeddedFile(Path)
+   */
+  public VerificationResult tryVerifyEmbeddedFile(Path signedFile) throws IOException {
+    try (FileChannel channel = FileChannel.open(signedFile, StandardOpenOption.READ)) {
+      FileUtil.Header header = FileUtil.tryReadHeader(channel);
+      Signature signature = header == null ? null : Signature.tryFromBase64Bytes(header.getBase64Bytes());
+      if (signature == null) {
+        return VerificationResult.MALFORMED;
+      }
+      return tryVerifyEmbedded(signature, channel);
+    }
+  }
+
+  /**
+   * Verify a message with its corresponding signature in Base64 format, without throwing if the verification
+   * fails. Rejecting a signature this way is cheaper than catching a {@link VerificationFailedException},
+   * which matters when many forged or wrongly keyed signatures have to be rejected.
+   * @param base64Signature signature Base64 encoded (typically starting with RW...)
+   * @param message message to verify
+   * @return the result of the verification; {@link VerificationResult#MALFORMED} if the signature is in the
+   *     wrong format
+   * @see #verify(String, byte[])
+   */
+  public VerificationResult tryVerify(String base64Signature, byte[] message) {
+    Signature signature = Signature.tryFromBase64String(base64Signature);
+    if (signature == null) {
+      return VerificationResult.MALFORMED;
     }
+    return tryVerify(signature, message);
+  }
+
+  /**
+   * Verify a message with its corresponding signature, without throwing if the verification fails.
+   * @param signature the signature of the message
+   * @param message message to verify
+   * @return the result of the verification
+   */
+  public VerificationResult tryVerify(Signature signature, byte[] message) {
+    if (isSignedWithOtherKey(signature)) {
+      return VerificationResult.WRONG_KEY;
+    }
+    return result(messageVerifier.verify(signature.getSignature(), message));
+  }
+
+  /**
+   * Verify a message read from a stream with its corresponding signature, without throwing if the
+   * verification fails. The stream is read to its end (but not closed).
+   * @param signature the signature of the message
+   * @param message stream of the message to verify
+   * @return the result of the verification
+   * @throws IOException in case an I/O error occurs while reading the message
+   * @see #verify(Signature, InputStream)
+   */
+  public VerificationResult tryVerify(Signature signature, InputStream message) throws IOException {
+    if (isSignedWithOtherKey(signature)) {
+      return VerificationResult.WRONG_KEY;
+    }
+    Ed25519Verifier.Verification verification = newVerification(signature);
+
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int read;
+    while ((read = message.read(buffer)) != -1) {
+      verification.update(buffer, 0, read);
+    }
+
+    return result(verification.verify());
+  }
+
+  /**
+   * Verify a message read from a channel with its corresponding signature, without throwing if the
+   * verification fails. The channel is read to its end (but not closed).
+   * @param signature the signature of the message
+   * @param message channel of the message to verify
+   * @return the result of the verification
+   * @throws IOException in case an I/O error occurs while reading the message
+   * @see #verify(Signature, ReadableByteChannel)
+   */
+  public VerificationResult tryVerify(Signature signature, ReadableByteChannel message) throws IOException {
+    if (isSignedWithOtherKey(signature)) {
+      return VerificationResult.WRONG_KEY;
+    }
+    Ed25519Verifier.Verification verification = newVerification(signature);
+
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    while (message.read(buffer) != -1) {
+      buffer.flip();
+      verification.update(buffer);
+      buffer.clear();
+    }
+
+    return result(verification.verify());
+  }
+
+  /**
+   * Verify a message held in one or more byte buffers with its corresponding signature, without throwing if
+   * the verification fails. The positions of the buffers are left unchanged.
+   * @param signature the signature of the message
+   * @param message buffers holding the parts of the message to verify
+   * @return the result of the verification
+   * @see #verify(Signature, ByteBuffer...)
+   */
+  public VerificationResult tryVerify(Signature signature, ByteBuffer... message) {
+    Preconditions.checkNotNull(message, "message");
+    if (isSignedWithOtherKey(signature)) {
+      return VerificationResult.WRONG_KEY;
+    }
+    Ed25519Verifier.Verification verification = newVerification(signature);
+
+    for (ByteBuffer part : message) {
+      // a duplicate shares the content, but has its own position
+      verification.update(part.duplicate());
+    }
+
+    return result(verification.verify());
+  }
+
+  /**
+   * Verify many messages held in memory with their corresponding signatures at once.
+   * This is considerably faster than verifying the messages one by one, see
+   * {@link Ed25519Verifier#verifyBatch} for how the batch is checked.
+   * The result for each message is the one of {@link #verify(String, byte[])} with the built-in engine,
+   * which also checks the equation with the cofactor 8.
+   * @param signatures the signatures of the messages
+   * @param messages messages to verify, in the same order as the signatures
+   * @throws BatchVerificationFailedException in case the verification of at least one message fails, listing
+   *     the indices of all failed messages (signatures made with another key count as failed)
+   * @throws IllegalArgumentException in case the lists differ in size
+   */
+  public void verifyBatch(List<Signature> signatures, List<byte[]> messages) throws BatchVerificationFailedException {
+    List<VerificationResult> results = tryVerifyBatch(signatures, messages);
+
+    List<Integer> invalidIndices = new ArrayList<>();
+    for (int i = 0; i < results.size(); i++) {
+      if (results.get(i) != VerificationResult.OK) {
+        invalidIndices.add(i);
+      }
+    }
+
+    if (!invalidIndices.isEmpty()) {
+      throw new BatchVerificationFailedException(invalidIndices);
+    }
+  }
+
+  /**
+   * Verify many messages held in memory with their corresponding signatures at once, without throwing if
+   * verifications fail.
+   * The result for each message is the one of {@link #verify(String, byte[])} with the built-in engine.
+   * @param signatures the signatures of the messages
+   * @param messages messages to verify, in the same order as the signatures
+   * @return the result for each message, in the same order as the messages
+   * @throws IllegalArgumentException in case the lists differ in size
+   * @see #verifyBatch(List, List)
+   */
+  public List<VerificationResult> tryVerifyBatch(List<Signature> signatures, List<byte[]> messages) {
+    Preconditions.checkNotNull(signatures, "signatures");
+    Preconditions.checkNotNull(messages, "messages");
+    Preconditions.checkArgument(
+        signatures.size() == messages.size(),
+        "Number of signatures (%s) and messages (%s) must be equal.", signatures.size(), messages.size());
+
+    VerificationResult[] results = new VerificationResult[signatures.size()];
+    List<Integer> batchIndices = new ArrayList<>();
+    List<byte[]> batchSignatures = new ArrayList<>();
+    List<byte[]> batchMessages = new ArrayList<>();
+    for (int i = 0; i < signatures.size(); i++) {
+      Signature signature = signatures.get(i);
+      if (isSignedWithOtherKey(signature)) {
+        results[i] = VerificationResult.WRONG_KEY;
+      } else {
+        batchIndices.add(i);
+        batchSignatures.add(signature.getSignature());
+        batchMessages.add(messages.get(i));
+      }
+    }
+
+    boolean[] validInBatch = ed25519Verifier.verifyBatch(batchSignatures, batchMessages);
+    for (int i = 0; i < validInBatch.length; i++) {
+      results[batchIndices.get(i)] = result(validInBatch[i]);
+    }
+    return Arrays.asList(results);
+  }
+
+  /* The channel is positioned at the start of the embedded message. */
+  private VerificationResult tryVerifyEmbedded(Signature signature, FileChannel channel) throws IOException {
+    boolean mapped = channel.size() - channel.position() >= MAPPED_READ_THRESHOLD;
+    return mapped ? tryVerifyMapped(signature, channel) : tryVerify(signature, channel);
+  }
+
+  /* Maps the message from the current position of the channel to its end. */
+  private VerificationResult tryVerifyMapped(Signature signature, FileChannel message) throws IOException {
+    if (isSignedWithOtherKey(signature)) {
+      return VerificationResult.WRONG_KEY;
+    }
+    Ed25519Verifier.Verification verification = newVerification(signature);
+
+    long size = message.size();
+    for (long position = message.position(); position < size; position += MAPPED_REGION_SIZE) {
+      MappedByteBuffer region = message.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_REGION_SIZE, size - position));
+      verification.update(region);
+    }
+
+    return result(verification.verify());
+  }
+
+  PublicKey getPublicKey() {
+    return publicKey;
+  }
+
+  Ed25519Verifier.Verification newVerification(Signature signature) {
+    return ed25519Verifier.newVerification(signature.getSignatureBuffer());
+  }
+
+  boolean isSignedWithOtherKey(Signature signature) {
+    return publicKey.getKeyNumber().isNotEqualTo(signature.getKeyNumber());
+  }
+
+  static VerificationResult result(boolean valid) {
+    return valid ? VerificationResult.OK : VerificationResult.BAD_SIGNATURE;
+  }
+
+  /*
+   * Turns a failed result into the exception thrown by the verify methods.
+   */
+  static void check(VerificationResult result) throws VerificationFailedException {
+    if (result == VerificationResult.WRONG_KEY) {
+      throw new VerificationFailedException("verification failed: checked against wrong key");
+    }
+    if (result != VerificationResult.OK) {
+      throw new VerificationFailedException("signature verification failed");
+    }
+  }
+
+  void verifyMessage(Signature signature, byte[] message) throws VerificationFailedException {
+    check(tryVerify(signature, message));
   }
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of verifying the signed files of a directory tree, see {@link TreeVerifier}.
+ */
+public final class TreeReport {
+  private final List<Entry> entries;
+  private final List<Path> unsignedFiles;
+  private final Duration elapsed;
+
+  /**
+   * The outcome for a single message file.
+   */
+  public enum Status {
+    /**
+     * The signature of the file is valid.
+     */
+    OK,
+    /**
+     * The file is signed with another key.
+     */
+    WRONG_KEY,
+    /**
+     * The signature of the file is not valid (e.g. the file was modified).
+     */
+    BAD_SIGNATURE,
+    /**
+     * The signature file is in the wrong format.
+     */
+    MALFORMED,
+    /**
+     * The file could not be read.
+     */
+    UNREADABLE,
+    /**
+     * There is a signature file, but no file it belongs to.
+     */
+    MISSING_MESSAGE;
+
+    static Status of(VerificationResult result) {
+      switch (result) {
+        case OK:
+          return OK;
+        case WRONG_KEY:
+          return WRONG_KEY;
+        case BAD_SIGNATURE:
+          return BAD_SIGNATURE;
+        default:
+          return MALFORMED;
+      }
+    }
+  }
+
+  /**
+   * The result for a single message file.
+   */
+  public static final class Entry {
+    private final Path messageFile;
+    private final Status status;
+    private final long size;
+
+    Entry(Path messageFile, Status status, long size) {
+      this.messageFile = messageFile;
+      this.status = status;
+      this.size = size;
+    }
+
+    /**
+     * Get the message file, resolved against the root of the tree. For {@link Status#MISSING_MESSAGE} this is
+     * the file the signature file belongs to. For {@link Status#UNREADABLE} it may also be a signature file or a
+     * directory that could not be read while walking the tree.
+     * @return the message file
+     */
+    public Path getMessageFile() {
+      return messageFile;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    /**
+     * Get the size of the message file when the tree was walked.
+     * @return the size in bytes
+     */
+    public long getSize() {
+      return size;
+    }
+
+    @Override
+    public String toString() {
+      return messageFile + ": " + status;
+    }
+  }
+
+  TreeReport(List<Entry> entries, List<Path> unsignedFiles, Duration elapsed) {
+    Preconditions.checkNotNull(entries, "entries");
+    Preconditions.checkNotNull(unsignedFiles, "unsignedFiles");
+    Preconditions.checkNotNull(elapsed, "elapsed");
+    this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+    this.unsignedFiles = Collections.unmodifiableList(new ArrayList<>(unsignedFiles));
+    this.elapsed = elapsed;
+  }
+
+  /**
+   * Get the results of all signed files and of all signature files without a message file, ordered by path.
+   * @return the results per file
+   */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Get the files without a signature file next to them, ordered by path. They are not part of the entries.
+   * @return the unsigned files
+   */
+  public List<Path> getUnsignedFiles() {
+    return unsignedFiles;
+  }
+
+  /**
+   * Check whether every signed file has a valid signature.
+   * @return true if all entries are {@link Status#OK}
+   */
+  public boolean isOk() {
+    return entries.stream().allMatch(entry -> entry.status == Status.OK);
+  }
+
+  /**
+   * Get the results of the files whose signature is not valid, could not be read or have no message file.
+   * @return the results of the failed files
+   */
+  public List<Entry> getFailures() {
+    List<Entry> failures = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (entry.status != Status.OK) {
+        failures.add(entry);
+      }
+    }
+    return failures;
+  }
+
+  /**
+   * Count the entries with a status.
+   * @param status the status to count
+   * @return the number of entries with the status
+   */
+  public int count(Status status) {
+    Preconditions.checkNotNull(status, "status");
+    return (int) entries.stream().filter(entry -> entry.status == status).count();
+  }
+
+  /**
+   * Get the total size of the message files that were verified.
+   * @return the size in bytes
+   */
+  public long getBytes() {
+    return entries.stream().mapToLong(entry -> entry.size).sum();
+  }
+
+  /**
+   * Get the time it took to verify the files, without walking the tree.
+   * @return the elapsed time
+   */
+  public Duration getElapsed() {
+    return elapsed;
+  }
+
+  /**
+   * Get the throughput of the verification.
+   * @return the verified bytes per second, or 0 if no time elapsed
+   */
+  public double getBytesPerSecond() {
+    long nanos = elapsed.toNanos();
+    return nanos == 0 ? 0 : getBytes() * 1e9 / nanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d signed files, %d failed, %d unsigned, %d bytes in %d ms (%.0f bytes/s)",
+        entries.size(), getFailures().size(), unsignedFiles.size(), getBytes(), elapsed.toMillis(), getBytesPerSecond());
+  }
+}
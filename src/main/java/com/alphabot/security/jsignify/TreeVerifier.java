@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * TreeVerifier verifies all signed files of a directory tree, e.g. an artifact repository where each
+ * {@code foo.tar} sits next to its signature file {@code foo.tar.sig}.
+ *
+ * <p>The tree is walked first and every file is paired with the {@code .sig} file next to it. The pairs are
+ * then verified in parallel on a fork-join pool, with a bound on the number of files read at the same time.
+ * The largest files are read first, so the pool is not left waiting for one large file at the end. Symbolic
+ * links are not followed. A file or directory below the root that cannot be read while walking the tree is
+ * reported as {@link TreeReport.Status#UNREADABLE}, and the walk goes on.
+ */
+@Alpha
+public final class TreeVerifier {
+  private static final String SIGNATURE_SUFFIX = ".sig";
+
+  private final SignifyVerifier verifier;
+  private final ForkJoinPool pool;
+  private final int maxFilesInFlight;
+
+  /**
+   * Create a new TreeVerifier that verifies files on the common fork-join pool, reading as many files at
+   * the same time as the pool has threads.
+   * @param verifier the verifier holding the public key
+   */
+  public TreeVerifier(SignifyVerifier verifier) {
+    this(verifier, ForkJoinPool.commonPool(), ForkJoinPool.commonPool().getParallelism());
+  }
+
+  /**
+   * Create a new TreeVerifier that verifies files on the given pool.
+   * @param verifier the verifier holding the public key
+   * @param pool the pool the files are verified on
+   * @param maxFilesInFlight the maximum number of files read at the same time
+   * @throws IllegalArgumentException in case maxFilesInFlight is not positive
+   */
+  public TreeVerifier(SignifyVerifier verifier, ForkJoinPool pool, int maxFilesInFlight) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(pool, "pool");
+    Preconditions.checkArgument(maxFilesInFlight > 0, "maxFilesInFlight must be positive, but was %s.", maxFilesInFlight);
+    this.verifier = verifier;
+    this.pool = pool;
+    this.maxFilesInFlight = maxFilesInFlight;
+  }
+
+  /**
+   * Verify all signed files of a directory tree.
+   * @param root a path pointing to the root directory of the tree
+   * @return the result for each signed file
+   * @throws IOException in case the root cannot be read (e.g. root not found)
+   */
+  public TreeReport verify(Path root) throws IOException {
+    return verify(root, entry -> { });
+  }
+
+  /**
+   * Verify all signed files of a directory tree, passing each result to a listener as soon as it is known,
+   * e.g. to report progress.
+   * @param root a path pointing to the root directory of the tree
+   * @param listener the listener, called from the threads of the pool, so it must be thread-safe
+   * @return the result for each signed file
+   * @throws IOException in case the root cannot be read (e.g. root not found)
+   */
+  public TreeReport verify(Path root, Consumer<TreeReport.Entry> listener) throws IOException {
+    Preconditions.checkNotNull(root, "root");
+    Preconditions.checkNotNull(listener, "listener");
+    Map<Path, BasicFileAttributes> files = new TreeMap<>();
+    Set<Path> unreadable = new TreeSet<>();
+    walk(root, files, unreadable);
+
+    List<Pair> pairs = new ArrayList<>();
+    List<TreeReport.Entry> entries = new ArrayList<>();
+    List<Path> unsignedFiles = new ArrayList<>();
+    for (Path path : unreadable) {
+      TreeReport.Entry entry = new TreeReport.Entry(path, TreeReport.Status.UNREADABLE, 0);
+      listener.accept(entry);
+      entries.add(entry);
+    }
+    for (Map.Entry<Path, BasicFileAttributes> file : files.entrySet()) {
+      Path fileName = file.getKey().getFileName();
+      String name = fileName == null ? "" : fileName.toString();
+      if (name.endsWith(SIGNATURE_SUFFIX) && name.length() > SIGNATURE_SUFFIX.length()) {
+        Path messageFile = file.getKey().resolveSibling(name.substring(0, name.length() - SIGNATURE_SUFFIX.length()));
+        BasicFileAttributes message = files.get(messageFile);
+        if (message != null) {
+          pairs.add(new Pair(messageFile, file.getKey(), message.size()));
+        } else if (!unreadable.contains(messageFile)) {
+          TreeReport.Entry entry = new TreeReport.Entry(messageFile, TreeReport.Status.MISSING_MESSAGE, 0);
+          listener.accept(entry);
+          entries.add(entry);
+        }
+      } else {
+        Path signatureFile = file.getKey().resolveSibling(name + SIGNATURE_SUFFIX);
+        if (!files.containsKey(signatureFile) && !unreadable.contains(signatureFile)) {
+          unsignedFiles.add(file.getKey());
+        }
+      }
+    }
+    pairs.sort(Comparator.comparingLong((Pair pair) -> pair.size).reversed());
+
+    long start = System.nanoTime();
+    entries.addAll(verifyPairs(pairs, listener));
+    Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+    entries.sort(Comparator.comparing(TreeReport.Entry::getMessageFile));
+    return new TreeReport(entries, unsignedFiles, elapsed);
+  }
+
+  /*
+   * Collects the regular files of the tree, and the files and directories below the root that cannot be read.
+   */
+  private static void walk(Path root, Map<Path, BasicFileAttributes> files, Set<Path> unreadable) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+        if (attributes.isRegularFile()) {
+          files.put(file, attributes);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+        if (file.equals(root)) {
+          throw e;
+        }
+        unreadable.add(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(Path directory, IOException e) {
+        if (e != null) {
+          unreadable.add(directory);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private List<TreeReport.Entry> verifyPairs(List<Pair> pairs, Consumer<TreeReport.Entry> listener) throws InterruptedIOException {
+    try {
+      return BoundedTasks.run(pool, maxFilesInFlight, pairs, pair -> {
+        TreeReport.Entry entry = new TreeReport.Entry(pair.messageFile, check(pair), pair.size);
+        listener.accept(entry);
+        return entry;
+      });
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted while verifying directory tree");
+    }
+  }
+
+  private TreeReport.Status check(Pair pair) {
+    try {
+      return TreeReport.Status.of(verifier.tryVerifyFile(pair.signatureFile, pair.messageFile));
+    } catch (IOException e) {
+      return TreeReport.Status.UNREADABLE;
+    }
+  }
+
+  /*
+   * A message file and its signature file.
+   */
+  private static final class Pair {
+    private final Path messageFile;
+    private final Path signatureFile;
+    private final long size;
+
+    private Pair(Path messageFile, Path signatureFile, long size) {
+      this.messageFile = messageFile;
+      this.signatureFile = signatureFile;
+      this.size = size;
+    }
+  }
+}
@@ -0,0 +1,570 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.common.FileUtil;
+import com.alphabot.security.jsignify.elements.PublicKey;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hashing;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * VerificationLedger persists the results of file verifications, so that files which did not change are not
+ * read again after a restart.
+ *
+ * <p>The ledger is a memory-mapped file of fixed-size records. A record holds a hash of the file's absolute
+ * path and of what the file was checked against (a signature and public key, or a digest algorithm), the
+ * file's size, modification time and file key, the key number of the signature, the verdict or digest and a
+ * CRC32C checksum. A record only matches while the file keeps its size, modification time and file key, with
+ * the same caveats as {@link CachingSignifyVerifier}: callers only record results of files that were not
+ * modified shortly before nor while they were read.
+ *
+ * <p>Records are only ever appended. A record torn by a crash fails its checksum, is ignored and overwritten
+ * by the next append. Records superseded by newer ones for the same file stay in the ledger until
+ * {@link #compact()} rewrites it and atomically replaces the file.
+ *
+ * <p>Several instances, also in different JVMs on the same host, can share a ledger file: appends and
+ * compactions hold an exclusive lock on the file, and the records appended by other instances are picked up
+ * on the next lookup. Whoever can write the ledger can make files pass verification, so it must be protected
+ * like the public keys.
+ *
+ * <p>Instances are thread-safe.
+ * @see CachingSignifyVerifier#CachingSignifyVerifier(SignifyVerifier, long, VerificationLedger)
+ * @see ChecksumListVerifier#ChecksumListVerifier(SignifyVerifier, java.util.concurrent.ForkJoinPool, int, VerificationLedger)
+ */
+@Alpha
+public final class VerificationLedger implements Closeable {
+  /*
+   * Layout of the header:
+   *    0  magic "JSLEDGER"
+   *    8  version
+   *   12  record length
+   *   16  retired flag, set once a compaction replaced the file
+   *
+   * Layout of a record:
+   *    0  SHA-256 of the kind, the absolute path of the file and what it was checked against
+   *   32  file size
+   *   40  modification time in nanoseconds
+   *   48  hash of the file key (0 if the file system has none)
+   *   56  key number of the signature (0 for digests)
+   *   64  kind, verdict, digest length, unused
+   *   68  digest, up to 64 bytes
+   *  132  CRC32C of the bytes 0 to 131
+   */
+  static final int HEADER_LEN = 64;
+  static final int RECORD_LEN = 136;
+
+  private static final byte[] MAGIC = "JSLEDGER".getBytes(UTF_8);
+  private static final int VERSION = 1;
+  private static final int VERSION_OFFSET = 8;
+  private static final int RECORD_LEN_OFFSET = 12;
+  private static final int RETIRED_OFFSET = 16;
+
+  private static final int ID_LEN = 32;
+  private static final int SIZE_OFFSET = 32;
+  private static final int MODIFIED_OFFSET = 40;
+  private static final int FILE_KEY_OFFSET = 48;
+  private static final int KEY_NUMBER_OFFSET = 56;
+  private static final int KIND_OFFSET = 64;
+  private static final int VERDICT_OFFSET = 65;
+  private static final int DIGEST_LEN_OFFSET = 66;
+  private static final int DIGEST_OFFSET = 68;
+  private static final int MAX_DIGEST_LEN = 64;
+  private static final int CRC_OFFSET = 132;
+
+  private static final byte KIND_SIGNATURE = 1;
+  private static final byte KIND_DIGEST = 2;
+  private static final byte VERDICT_OK = 1;
+  private static final byte VERDICT_BAD_SIGNATURE = 2;
+
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_OPEN_ATTEMPTS = 100;
+  private static final long MAX_LEN = HEADER_LEN + (long) (Integer.MAX_VALUE - HEADER_LEN) / RECORD_LEN * RECORD_LEN;
+
+  /*
+   * File locks are held by the whole JVM and overlapping locks of one JVM fail, so instances of the same
+   * ledger in this JVM take turns before they lock the file.
+   */
+  private static final ConcurrentMap<Path, Lock> PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+  private final Path file;
+  private final Path directory;
+  private final Lock processLock;
+  private final Map<ByteBuffer, Integer> index = new HashMap<>();
+  private FileChannel channel;
+  private MappedByteBuffer map;
+  private int end;
+
+  private VerificationLedger(Path file, Path directory) throws IOException {
+    this.file = file;
+    this.directory = directory;
+    this.processLock = PROCESS_LOCKS.computeIfAbsent(file, path -> new ReentrantLock());
+    openFile();
+  }
+
+  /**
+   * Open a ledger file, creating it if it does not exist.
+   * @param ledgerFile a path pointing to the ledger file
+   * @return the opened ledger
+   * @throws IOException in case an I/O error occurs (e.g. the directory of the ledger file does not exist)
+   * @throws IllegalArgumentException in case the file exists, but is not a ledger of this version
+   */
+  public static VerificationLedger open(Path ledgerFile) throws IOException {
+    Preconditions.checkNotNull(ledgerFile, "ledgerFile");
+    Path file = ledgerFile.toAbsolutePath().normalize();
+    Path directory = file.getParent();
+    if (directory == null) {
+      throw new IllegalArgumentException("ledgerFile must be a file, but was " + ledgerFile + ".");
+    }
+    return new VerificationLedger(file, directory);
+  }
+
+  /**
+   * Rewrite the ledger with only the latest record for each file and what it was checked against, and
+   * atomically replace the ledger file. Other instances sharing the ledger switch to the new file on their
+   * next lookup or append.
+   * @throws IOException in case an I/O error occurs
+   */
+  public synchronized void compact() throws IOException {
+    ensureOpen();
+    reopenIfRetired();
+    FileLock lock = lock(channel);
+    try {
+      // unless compacted by another instance in the meantime
+      if (!isRetired()) {
+        scan();
+        rewriteCompacted();
+        // the move must be durable before the flag, or a crash could leave a retired file at the path
+        FileUtil.forceDirectory(directory);
+        map.put(RETIRED_OFFSET, (byte) 1);
+        map.force();
+      }
+    } finally {
+      unlock(lock);
+    }
+    reopenIfRetired();
+  }
+
+  /**
+   * Close the ledger. Records appended so far stay in the file.
+   * @throws IOException in case an I/O error occurs
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+      map = null;
+      index.clear();
+    }
+  }
+
+  /*
+   * Returns the recorded result of verifying the file with the signature and public key, or null if the file
+   * changed since or was never recorded.
+   */
+  VerificationResult findResult(Path file, BasicFileAttributes attributes, PublicKey publicKey, Signature signature)
+      throws IOException {
+    ByteBuffer recorded = find(Record.of(file, attributes, publicKey, signature));
+    if (recorded == null) {
+      return null;
+    }
+    return recorded.get(VERDICT_OFFSET) == VERDICT_OK ? VerificationResult.OK : VerificationResult.BAD_SIGNATURE;
+  }
+
+  /*
+   * Records the result of verifying the file. Only results that depend on the content of the file are
+   * recorded; the others are cheap to determine again.
+   */
+  void recordResult(Path file, BasicFileAttributes attributes, PublicKey publicKey, Signature signature,
+      VerificationResult result) throws IOException {
+    if (result != VerificationResult.OK && result != VerificationResult.BAD_SIGNATURE) {
+      return;
+    }
+    Record record = Record.of(file, attributes, publicKey, signature);
+    record.verdict = result == VerificationResult.OK ? VERDICT_OK : VERDICT_BAD_SIGNATURE;
+    persist(record);
+  }
+
+  /*
+   * Returns the recorded digest of the file, or null if the file changed since or was never recorded.
+   */
+  byte[] findDigest(Path file, BasicFileAttributes attributes, String algorithm) throws IOException {
+    ByteBuffer recorded = find(Record.of(file, attributes, algorithm));
+    if (recorded == null) {
+      return null;
+    }
+    byte[] digest = new byte[recorded.get(DIGEST_LEN_OFFSET)];
+    recorded.position(DIGEST_OFFSET);
+    recorded.get(digest);
+    return digest;
+  }
+
+  void recordDigest(Path file, BasicFileAttributes attributes, String algorithm, byte[] digest) throws IOException {
+    Preconditions.checkArgument(digest.length <= MAX_DIGEST_LEN, "digest must have at most %s bytes", MAX_DIGEST_LEN);
+    Record record = Record.of(file, attributes, algorithm);
+    record.verdict = VERDICT_OK;
+    record.digest = digest;
+    persist(record);
+  }
+
+  /*
+   * The number of distinct files and what they were checked against in the ledger.
+   */
+  synchronized int size() throws IOException {
+    ensureOpen();
+    refresh();
+    return index.size();
+  }
+
+  /*
+   * Returns true if the file was modified long enough before start and still has the attributes read before
+   * it was read, so what was computed from its content since start may be recorded.
+   */
+  static boolean isSettled(Path file, BasicFileAttributes before, long start) throws IOException {
+    BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+    return before.lastModifiedTime().toMillis() < start - CachingSignifyVerifier.RACY_MODIFICATION_MILLIS
+        && before.size() == after.size() && before.lastModifiedTime().equals(after.lastModifiedTime())
+        && Objects.equals(before.fileKey(), after.fileKey());
+  }
+
+  /*
+   * Returns a copy of the record with the same id as the given one, if it still matches the file.
+   */
+  private synchronized ByteBuffer find(Record record) throws IOException {
+    ensureOpen();
+    refresh();
+    Integer offset = index.get(ByteBuffer.wrap(record.id));
+    if (offset == null || !isValid(offset) || !record.matches(map, offset)) {
+      return null;
+    }
+    ByteBuffer recorded = map.duplicate();
+    recorded.position(offset).limit(offset + RECORD_LEN);
+    return ByteBuffer.allocate(RECORD_LEN).put(recorded).clear();
+  }
+
+  private synchronized void persist(Record record) throws IOException {
+    ensureOpen();
+    while (true) {
+      reopenIfRetired();
+      FileLock lock = lock(channel);
+      try {
+        if (!isRetired()) {
+          scan();
+          // a full ledger only stops recording, until compact() makes room
+          if (ensureCapacity()) {
+            record.write(map, end);
+            index.put(ByteBuffer.wrap(record.id), end);
+            end += RECORD_LEN;
+          }
+          return;
+        }
+      } finally {
+        unlock(lock);
+      }
+    }
+  }
+
+  private void ensureOpen() {
+    Preconditions.checkState(channel != null, "ledger is closed");
+  }
+
+  private synchronized void openFile() throws IOException {
+    for (int attempt = 1; ; attempt++) {
+      Object fileKey = fileKey();
+      FileChannel opened = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+      try {
+        MappedByteBuffer mapped = mapHeader(opened);
+        if (mapped != null) {
+          channel = opened;
+          map = mapped;
+          end = HEADER_LEN;
+          index.clear();
+          scan();
+          return;
+        }
+      } catch (IOException | RuntimeException e) {
+        opened.close();
+        throw e;
+      }
+      opened.close();
+      // replaced by a compaction between opening and locking it, unless the path still names the same file
+      boolean replaced = fileKey == null ? attempt < MAX_OPEN_ATTEMPTS : !fileKey.equals(fileKey());
+      if (!replaced) {
+        throw new IOException("verification ledger " + file + " was retired by a compaction, but not replaced");
+      }
+    }
+  }
+
+  /*
+   * Returns the file key of the ledger file, or null if it does not exist or the file system has none.
+   */
+  private Object fileKey() throws IOException {
+    try {
+      return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /*
+   * Initializes the header of a new ledger file, or checks the header of an existing one, and maps the file.
+   * Returns null if the file was retired by a compaction.
+   */
+  private MappedByteBuffer mapHeader(FileChannel opened) throws IOException {
+    FileLock lock = lock(opened);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LEN);
+      int read;
+      do {
+        read = opened.read(header, header.position());
+      } while (read > 0 && header.hasRemaining());
+      if (opened.size() <= HEADER_LEN && isZero(header.array(), header.position())) {
+        // new, or the creator crashed before it wrote the header; anything else is never overwritten
+        header.clear();
+        header.put(MAGIC).putInt(VERSION).putInt(RECORD_LEN).flip();
+        writeFully(opened, header, 0);
+        writeFully(opened, ByteBuffer.allocate(1), HEADER_LEN + (long) INITIAL_CAPACITY * RECORD_LEN - 1);
+      } else if (header.position() < HEADER_LEN
+          || !Arrays.equals(Arrays.copyOf(header.array(), MAGIC.length), MAGIC)
+          || header.getInt(VERSION_OFFSET) != VERSION || header.getInt(RECORD_LEN_OFFSET) != RECORD_LEN) {
+        throw new IllegalArgumentException("invalid verification ledger " + file);
+      } else if (header.get(RETIRED_OFFSET) != 0) {
+        return null;
+      }
+      return opened.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(opened.size(), MAX_LEN));
+    } finally {
+      unlock(lock);
+    }
+  }
+
+  private FileLock lock(FileChannel locked) throws IOException {
+    processLock.lock();
+    try {
+      return locked.lock();
+    } catch (IOException | RuntimeException e) {
+      processLock.unlock();
+      throw e;
+    }
+  }
+
+  private void unlock(FileLock lock) throws IOException {
+    try {
+      lock.release();
+    } finally {
+      processLock.unlock();
+    }
+  }
+
+  private boolean isRetired() {
+    return map.get(RETIRED_OFFSET) != 0;
+  }
+
+  private void reopenIfRetired() throws IOException {
+    if (isRetired()) {
+      channel.close();
+      channel = null;
+      map = null;
+      openFile();
+    }
+  }
+
+  private void refresh() throws IOException {
+    reopenIfRetired();
+    scan();
+  }
+
+  /*
+   * Indexes the records appended since the last scan, by this or another instance. The scan stops at the
+   * first slot that is empty, torn or still being written.
+   */
+  private void scan() throws IOException {
+    long size = Math.min(channel.size(), MAX_LEN);
+    if (size > map.capacity()) {
+      map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+    while (end + RECORD_LEN <= map.capacity() && isValid(end)) {
+      byte[] id = new byte[ID_LEN];
+      ByteBuffer source = map.duplicate();
+      source.position(end);
+      source.get(id);
+      index.put(ByteBuffer.wrap(id), end);
+      end += RECORD_LEN;
+    }
+  }
+
+  private boolean ensureCapacity() throws IOException {
+    if (end + RECORD_LEN <= map.capacity()) {
+      return true;
+    }
+    long length = Math.min(HEADER_LEN + 2L * (map.capacity() - HEADER_LEN), MAX_LEN);
+    if (end + RECORD_LEN > length) {
+      return false;
+    }
+    writeFully(channel, ByteBuffer.allocate(1), length - 1);
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    return true;
+  }
+
+  private boolean isValid(int offset) {
+    return map.getInt(offset + CRC_OFFSET) == crc(map, offset);
+  }
+
+  private void rewriteCompacted() throws IOException {
+    List<Integer> offsets = new ArrayList<>(index.values());
+    Collections.sort(offsets);
+    Path temp = FileUtil.tempFilePath(directory);
+    try {
+      try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LEN);
+        header.put(MAGIC).putInt(VERSION).putInt(RECORD_LEN).clear();
+        writeFully(out, header, 0);
+        long position = HEADER_LEN;
+        for (int offset : offsets) {
+          if (isValid(offset)) {
+            ByteBuffer record = map.duplicate();
+            record.position(offset).limit(offset + RECORD_LEN);
+            writeFully(out, record, position);
+            position += RECORD_LEN;
+          }
+        }
+        writeFully(out, ByteBuffer.allocate(1), Math.max(position, HEADER_LEN + (long) INITIAL_CAPACITY * RECORD_LEN) - 1);
+        out.force(true);
+      }
+      // other users sharing the ledger keep their access
+      FileUtil.copyPermissions(file, temp);
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(temp);
+      throw e;
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long current = position;
+    while (buffer.hasRemaining()) {
+      current += channel.write(buffer, current);
+    }
+  }
+
+  private static int crc(ByteBuffer buffer, int offset) {
+    ByteBuffer record = buffer.duplicate();
+    record.position(offset).limit(offset + CRC_OFFSET);
+    CRC32C crc = new CRC32C();
+    crc.update(record);
+    return (int) crc.getValue();
+  }
+
+  private static boolean isZero(byte[] bytes, int length) {
+    for (int i = 0; i < length; i++) {
+      if (bytes[i] != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * A record to look up or append.
+   */
+  private static final class Record {
+    private final byte[] id;
+    private final byte kind;
+    private final long size;
+    private final long lastModified;
+    private final long fileKeyHash;
+    private final long keyNumber;
+    private byte verdict;
+    private byte[] digest = new byte[0];
+
+    private Record(byte[] id, byte kind, BasicFileAttributes attributes, long keyNumber) {
+      this.id = id;
+      this.kind = kind;
+      this.size = attributes.size();
+      this.lastModified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+      this.fileKeyHash = attributes.fileKey() == null ? 0
+          : Hashing.sha256().hashString(attributes.fileKey().toString(), UTF_8).asLong();
+      this.keyNumber = keyNumber;
+    }
+
+    static Record of(Path file, BasicFileAttributes attributes, PublicKey publicKey, Signature signature) {
+      byte[] id = Hashing.sha256().newHasher()
+          .putByte(KIND_SIGNATURE)
+          .putString(file.toString(), UTF_8)
+          .putByte((byte) 0)
+          .putBytes(publicKey.getPublicKeyBuffer())
+          .putBytes(signature.getSignatureBuffer())
+          .hash().asBytes();
+      return new Record(id, KIND_SIGNATURE, attributes, signature.getKeyNumber().toLong());
+    }
+
+    static Record of(Path file, BasicFileAttributes attributes, String algorithm) {
+      byte[] id = Hashing.sha256().newHasher()
+          .putByte(KIND_DIGEST)
+          .putString(file.toString(), UTF_8)
+          .putByte((byte) 0)
+          .putString(algorithm, UTF_8)
+          .hash().asBytes();
+      return new Record(id, KIND_DIGEST, attributes, 0);
+    }
+
+    boolean matches(ByteBuffer map, int offset) {
+      ByteBuffer recorded = map.duplicate();
+      recorded.position(offset).limit(offset + ID_LEN);
+      return recorded.equals(ByteBuffer.wrap(id)) && map.get(offset + KIND_OFFSET) == kind
+          && map.getLong(offset + SIZE_OFFSET) == size && map.getLong(offset + MODIFIED_OFFSET) == lastModified
+          && map.getLong(offset + FILE_KEY_OFFSET) == fileKeyHash && map.getLong(offset + KEY_NUMBER_OFFSET) == keyNumber;
+    }
+
+    void write(ByteBuffer map, int offset) {
+      ByteBuffer target = map.duplicate();
+      target.position(offset);
+      target.put(id).putLong(size).putLong(lastModified).putLong(fileKeyHash).putLong(keyNumber)
+          .put(kind).put(verdict).put((byte) digest.length).put((byte) 0).put(digest)
+          .put(new byte[MAX_DIGEST_LEN - digest.length]);
+      // the checksum goes last, so a record is only valid once it is complete
+      map.putInt(offset + CRC_OFFSET, crc(map, offset));
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+/**
+ * The outcome of a verification with one of the {@code tryVerify} methods, which report failures without
+ * throwing an exception.
+ */
+public enum VerificationResult {
+  /**
+   * The signature is valid for the message.
+   */
+  OK,
+  /**
+   * The signature was made with another key (its key number does not match).
+   */
+  WRONG_KEY,
+  /**
+   * The signature is not valid for the message and the key.
+   */
+  BAD_SIGNATURE,
+  /**
+   * The signature could not be parsed (e.g. invalid Base64 or wrong length).
+   */
+  MALFORMED
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/*
+ * Hands out the compressed data of a signify -z file block by block, each block only after its hash has
+ * been checked against the verified header (used internally).
+ * Up to blocksInFlight blocks are read ahead and hashed in parallel on the executor.
+ */
+final class VerifiedBlockInputStream extends InputStream {
+  private final InputStream source;
+  private final GzipSignatureHeader header;
+  private final Executor executor;
+  private final int blocksInFlight;
+  private final Queue<PendingBlock> pending = new ArrayDeque<>();
+
+  private int nextBlock;
+  private boolean sourceExhausted;
+  private IOException failure;
+  private byte[] current = new byte[0];
+  private int position;
+
+  VerifiedBlockInputStream(InputStream source, GzipSignatureHeader header, Executor executor, int blocksInFlight) {
+    this.source = source;
+    this.header = header;
+    this.executor = executor;
+    this.blocksInFlight = blocksInFlight;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (position == current.length && !nextVerifiedBlock()) {
+      return -1;
+    }
+    int length = Math.min(len, current.length - position);
+    System.arraycopy(current, position, b, off, length);
+    position += length;
+    return length;
+  }
+
+  @Override
+  public int available() {
+    return current.length - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    source.close();
+  }
+
+  private boolean nextVerifiedBlock() throws IOException {
+    if (failure != null) {
+      throw failure;
+    }
+    fillPipeline();
+    PendingBlock block = pending.poll();
+    if (block == null) {
+      return false;
+    }
+    if (!header.matches(block.index, block.hash.join())) {
+      throw fail("verification failed: block " + block.index + " does not match its signed hash");
+    }
+    current = block.data;
+    position = 0;
+    return true;
+  }
+
+  private void fillPipeline() throws IOException {
+    while (pending.size() < blocksInFlight && !sourceExhausted) {
+      byte[] data = source.readNBytes(header.getBlockSize());
+      if (data.length < header.getBlockSize()) {
+        sourceExhausted = true;
+      }
+      if (data.length == 0) {
+        break;
+      }
+      if (nextBlock == header.getBlockCount()) {
+        throw fail("verification failed: more data than signed blocks");
+      }
+      pending.add(new PendingBlock(nextBlock++, data, CompletableFuture.supplyAsync(() -> hash(data), executor)));
+    }
+    if (sourceExhausted && pending.isEmpty() && nextBlock < header.getBlockCount()) {
+      throw fail("verification failed: data ends after " + nextBlock + " of " + header.getBlockCount() + " signed blocks");
+    }
+  }
+
+  private IOException fail(String message) {
+    failure = new IOException(message, new VerificationFailedException(message));
+    return failure;
+  }
+
+  private static byte[] hash(byte[] data) {
+    MessageDigest digest = GzipSignatureHeader.newDigest();
+    return digest.digest(data);
+  }
+
+  /*
+   * A block that has been read and is being hashed.
+   */
+  private static final class PendingBlock {
+    private final int index;
+    private final byte[] data;
+    private final CompletableFuture<byte[]> hash;
+
+    private PendingBlock(int index, byte[] data, CompletableFuture<byte[]> hash) {
+      this.index = index;
+      this.data = data;
+      this.hash = hash;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.ed25519.Ed25519Verifier;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * VerifyingBodySubscriber verifies a message as it arrives from a {@link Flow.Publisher}, e.g. the body of a
+ * download with {@link java.net.http.HttpClient}, without collecting the message in memory.
+ *
+ * <p>The chunks of the message are hashed as they are received. Only one chunk is requested at a time, and the
+ * next one only after the previous one was hashed, so a fast sender is slowed down to the speed of hashing and
+ * no chunk is kept after it was hashed. When the publisher completes, the body completes with the
+ * {@link VerificationResult}; if the publisher fails, the body fails with its error. A signature made with
+ * another key completes the body with {@link VerificationResult#WRONG_KEY} at once, and the subscription is
+ * cancelled without reading the message. Cancelling the body cancels the subscription.
+ *
+ * <p>A subscriber verifies a single message. Use {@link #handler(SignifyVerifier, Signature)} to verify the
+ * body of an HTTP response; note that the body of an error response (e.g. 404) is verified like any other
+ * and fails with {@link VerificationResult#BAD_SIGNATURE}, so check the status code of the response as well.
+ */
+@Alpha
+public final class VerifyingBodySubscriber implements HttpResponse.BodySubscriber<VerificationResult> {
+  private final SignifyVerifier verifier;
+  private final Signature signature;
+  private final CompletableFuture<VerificationResult> body = new CompletableFuture<>();
+  private volatile Flow.Subscription subscription;
+  private Ed25519Verifier.Verification verification;
+
+  /**
+   * Create a new VerifyingBodySubscriber for a message.
+   * @param verifier the verifier holding the public key
+   * @param signature the signature of the message
+   */
+  public VerifyingBodySubscriber(SignifyVerifier verifier, Signature signature) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(signature, "signature");
+    this.verifier = verifier;
+    this.signature = signature;
+  }
+
+  /**
+   * Create a handler that verifies the body of an HTTP response, e.g. for
+   * {@link java.net.http.HttpClient#send(java.net.http.HttpRequest, HttpResponse.BodyHandler)}.
+   * @param verifier the verifier holding the public key
+   * @param signature the signature of the body
+   * @return a handler whose body is the result of the verification
+   */
+  public static HttpResponse.BodyHandler<VerificationResult> handler(SignifyVerifier verifier, Signature signature) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(signature, "signature");
+    return responseInfo -> new VerifyingBodySubscriber(verifier, signature);
+  }
+
+  @Override
+  public CompletionStage<VerificationResult> getBody() {
+    CompletableFuture<VerificationResult> copy = body.copy();
+    copy.whenComplete((result, failure) -> {
+      if (copy.isCancelled()) {
+        cancel();
+      }
+    });
+    return copy;
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    Preconditions.checkNotNull(subscription, "subscription");
+    if (this.subscription != null) {
+      subscription.cancel();
+      return;
+    }
+    this.subscription = subscription;
+    if (verifier.isSignedWithOtherKey(signature)) {
+      subscription.cancel();
+      body.complete(VerificationResult.WRONG_KEY);
+      return;
+    }
+    verification = verifier.newVerification(signature);
+    if (body.isDone()) {
+      subscription.cancel();
+    } else {
+      subscription.request(1);
+    }
+  }
+
+  @Override
+  public void onNext(List<ByteBuffer> chunk) {
+    Preconditions.checkNotNull(chunk, "chunk");
+    if (body.isDone()) {
+      return;
+    }
+    for (ByteBuffer buffer : chunk) {
+      verification.update(buffer);
+    }
+    subscription.request(1);
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    Preconditions.checkNotNull(throwable, "throwable");
+    body.completeExceptionally(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    if (!body.isDone()) {
+      body.complete(SignifyVerifier.result(verification.verify()));
+    }
+  }
+
+  private void cancel() {
+    body.cancel(false);
+    Flow.Subscription current = subscription;
+    if (current != null) {
+      current.cancel();
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.common.FileUtil;
+import com.alphabot.security.jsignify.ed25519.Ed25519Verifier;
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * VerifyingTransfer copies a message from a channel (e.g. a download) to a file and verifies it on the way,
+ * so every byte is read only once.
+ *
+ * <p>The message is written to a temporary file next to the destination. Only if the signature is valid, the
+ * temporary file is flushed to disk and atomically moved to the destination, replacing an existing file, and
+ * the directory is flushed too; otherwise it is deleted and the destination is left untouched. The file gets
+ * the permissions of the file it replaces or, for a new file, the default permissions of new files. Messages
+ * larger than the maximum size are rejected as soon as the limit is exceeded, so a hostile source cannot fill
+ * the disk. The bytes are copied through a direct buffer, which the channels read and write without further
+ * copies and which each thread allocates once for all its transfers; an {@code InputStream} can be passed
+ * with {@link java.nio.channels.Channels#newChannel(java.io.InputStream)}.
+ */
+@Alpha
+public final class VerifyingTransfer {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // allocating a direct buffer costs more than copying a small message, so each thread keeps its buffer
+  private static final ThreadLocal<ByteBuffer> BUFFERS = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+  private final SignifyVerifier verifier;
+  private final long maxSize;
+
+  /**
+   * Create a new VerifyingTransfer.
+   * @param verifier the verifier holding the public key
+   * @param maxSize the maximum size of a message in bytes
+   * @throws IllegalArgumentException in case maxSize is negative
+   */
+  public VerifyingTransfer(SignifyVerifier verifier, long maxSize) {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkArgument(maxSize >= 0, "maxSize must not be negative, but was %s.", maxSize);
+    this.verifier = verifier;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Copy a message from a channel to a file if its signature is valid. The channel is read to its end (but
+   * not closed), unless the message is too large or signed with another key.
+   * @param signatureFile a path pointing to the signature file
+   * @param source the channel of the message
+   * @param destination the path of the file the message is written to
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs or the message is larger than the maximum size
+   * @throws IllegalArgumentException in case the signature file is in the wrong format
+   */
+  public void transfer(Path signatureFile, ReadableByteChannel source, Path destination)
+      throws VerificationFailedException, IOException {
+    transfer(Signature.fromFile(signatureFile), source, destination);
+  }
+
+  /**
+   * Copy a message from a channel to a file if its signature is valid. The channel is read to its end (but
+   * not closed), unless the message is too large or signed with another key.
+   * @param signature the signature of the message
+   * @param source the channel of the message
+   * @param destination the path of the file the message is written to
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs or the message is larger than the maximum size
+   */
+  public void transfer(Signature signature, ReadableByteChannel source, Path destination)
+      throws VerificationFailedException, IOException {
+    SignifyVerifier.check(tryTransfer(signature, source, destination));
+  }
+
+  /**
+   * Copy a message from a channel to a file if its signature is valid, without throwing if the verification
+   * fails. The channel is read to its end (but not closed), unless the message is too large or signed with
+   * another key.
+   * @param signature the signature of the message
+   * @param source the channel of the message
+   * @param destination the path of the file the message is written to
+   * @return the result of the verification; the destination was only written if it is {@link VerificationResult#OK}
+   * @throws IOException in case an I/O error occurs or the message is larger than the maximum size
+   */
+  public VerificationResult tryTransfer(Signature signature, ReadableByteChannel source, Path destination) throws IOException {
+    Preconditions.checkNotNull(signature, "signature");
+    Preconditions.checkNotNull(source, "source");
+    Preconditions.checkNotNull(destination, "destination");
+    Path directory = destination.toAbsolutePath().getParent();
+    if (directory == null) {
+      throw new IllegalArgumentException("destination must be a file, but was " + destination + ".");
+    }
+    if (verifier.isSignedWithOtherKey(signature)) {
+      return VerificationResult.WRONG_KEY;
+    }
+
+    Ed25519Verifier.Verification verification = verifier.newVerification(signature);
+    Path temp = FileUtil.tempFilePath(directory);
+    FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    boolean committed = false;
+    try {
+      try (target) {
+        copy(source, target, verification);
+        if (!verification.verify()) {
+          return VerificationResult.BAD_SIGNATURE;
+        }
+        target.force(true);
+      }
+      FileUtil.copyPermissions(destination, temp);
+      Files.move(temp, destination, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      committed = true;
+      FileUtil.forceDirectory(directory);
+      return VerificationResult.OK;
+    } finally {
+      if (!committed) {
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+
+  /**
+   * Copy the message embedded in a signature file (as created by {@code signify -S -e}) to a file if its
+   * signature is valid. The message is read from the same open file as the header, right after it, so the
+   * file written is the message that was verified, even if the signature file is replaced in the meantime.
+   * @param signedFile a path pointing to the signature file with the embedded message
+   * @param destination the path of the file the message is written to
+   * @throws VerificationFailedException in case the verification of the message fails (e.g. not signed by this public key)
+   * @throws IOException in case an I/O error occurs or the message is larger than the maximum size
+   * @throws IllegalArgumentException in case the header of the signature file is in the wrong format
+   */
+  public void transferEmbedded(Path signedFile, Path destination) throws VerificationFailedException, IOException {
+    try (FileChannel source = FileChannel.open(signedFile, StandardOpenOption.READ)) {
+      Signature signature = Signature.fromBase64Bytes(FileUtil.readHeader(source, signedFile).getBase64Bytes());
+      transfer(signature, source, destination);
+    }
+  }
+
+  /**
+   * Copy the message embedded in a signature file to a file if its signature is valid, without throwing if
+   * the verification fails.
+   * @param signedFile a path pointing to the signature file with the embedded message
+   * @param destination the path of the file the message is written to
+   * @return the result of the verification; {@link VerificationResult#MALFORMED} if the header of the file is
+   *     in the wrong format; the destination was only written if it is {@link VerificationResult#OK}
+   * @throws IOException in case an I/O error occurs or the message is larger than the maximum size
+   * @see #transferEmbedded(Path, Path)
+   */
+  public VerificationResult tryTransferEmbedded(Path signedFile, Path destination) throws IOException {
+    try (FileChannel source = FileChannel.open(signedFile, StandardOpenOption.READ)) {
+      FileUtil.Header header = FileUtil.tryReadHeader(source);
+      Signature signature = header == null ? null : Signature.tryFromBase64Bytes(header.getBase64Bytes());
+      if (signature == null) {
+        return VerificationResult.MALFORMED;
+      }
+      return tryTransfer(signature, source, destination);
+    }
+  }
+
+  private void copy(ReadableByteChannel source, FileChannel target, Ed25519Verifier.Verification verification)
+      throws IOException {
+    ByteBuffer buffer = BUFFERS.get().clear();
+    long size = 0;
+    while (true) {
+      // read at most one byte more than allowed, to notice an oversized message early
+      long allowed = maxSize - size;
+      buffer.limit(allowed < BUFFER_SIZE ? (int) allowed + 1 : BUFFER_SIZE);
+      int read = source.read(buffer);
+      if (read == -1) {
+        return;
+      }
+      size += read;
+      if (size > maxSize) {
+        throw new IOException("message is larger than the maximum size of " + maxSize + " bytes");
+      }
+
+      buffer.flip();
+      verification.update(buffer);
+      buffer.rewind();
+      while (buffer.hasRemaining()) {
+        target.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.annotations.Alpha;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * WatchingVerifier verifies the signed files of a directory tree as they arrive, e.g. on an upload host where
+ * each {@code foo.tar} is uploaded together with its signature file {@code foo.tar.sig}.
+ *
+ * <p>A watcher thread listens for changes with a {@link WatchService}. A message file and its signature file
+ * are verified once neither was changed for the quiet period, so files are not verified while they are still
+ * being written; a writer that pauses longer than the quiet period gets a failed result followed by another
+ * one once the file is complete. Only new or changed pairs are verified: a pair is skipped if the size,
+ * modification time and file key of both files are the same as at its last verification. Files without a
+ * signature file and signature files without a message file are not reported, as the other file may still
+ * arrive. All existing pairs are verified when the watcher starts. New subdirectories are watched as they are
+ * created. If events were lost because too many arrived at once, the directory they belong to is scanned
+ * again.
+ *
+ * <p>The results are passed to the listener, which is called on the verification executor, but never by two
+ * threads at once. A result is dropped if its pair changed or was removed while it was verified, so a result
+ * never follows the one of a later change of the same pair. Instances must be closed to stop the watcher
+ * thread.
+ */
+@Alpha
+public final class WatchingVerifier implements Closeable {
+  private static final String SIGNATURE_SUFFIX = ".sig";
+
+  private final SignifyVerifier verifier;
+  private final Executor executor;
+  private final long quietPeriodNanos;
+  private final Consumer<TreeReport.Entry> listener;
+  private final WatchService watchService;
+  private final Thread watcher;
+
+  /*
+   * Message files with the time they may be verified at, only used by the watcher thread, and the identity of
+   * the message and signature file at their last verification, only changed by the watcher thread.
+   */
+  private final Map<Path, Long> pending = new HashMap<>();
+  private final Map<Path, List<Object>> verified = new ConcurrentHashMap<>();
+
+  /**
+   * Create a new WatchingVerifier that verifies files on the common fork-join pool and start watching.
+   * @param verifier the verifier holding the public key
+   * @param root a path pointing to the root directory of the watched tree
+   * @param quietPeriod the time both files of a pair must remain unchanged before they are verified, e.g. 2 seconds
+   * @param unit the unit of quietPeriod
+   * @param listener the listener the results are passed to
+   * @throws IOException in case an I/O error occurs while registering the tree (e.g. root not found)
+   * @throws IllegalArgumentException in case quietPeriod is negative
+   */
+  public WatchingVerifier(SignifyVerifier verifier, Path root, long quietPeriod, TimeUnit unit,
+      Consumer<TreeReport.Entry> listener) throws IOException {
+    this(verifier, ForkJoinPool.commonPool(), root, quietPeriod, unit, listener);
+  }
+
+  /**
+   * Create a new WatchingVerifier that verifies files on the given executor and start watching.
+   * @param verifier the verifier holding the public key
+   * @param executor the executor the files are verified on
+   * @param root a path pointing to the root directory of the watched tree
+   * @param quietPeriod the time both files of a pair must remain unchanged before they are verified, e.g. 2 seconds
+   * @param unit the unit of quietPeriod
+   * @param listener the listener the results are passed to
+   * @throws IOException in case an I/O error occurs while registering the tree (e.g. root not found)
+   * @throws IllegalArgumentException in case quietPeriod is negative
+   */
+  public WatchingVerifier(SignifyVerifier verifier, Executor executor, Path root, long quietPeriod, TimeUnit unit,
+      Consumer<TreeReport.Entry> listener) throws IOException {
+    Preconditions.checkNotNull(verifier, "verifier");
+    Preconditions.checkNotNull(executor, "executor");
+    Preconditions.checkNotNull(root, "root");
+    Preconditions.checkNotNull(unit, "unit");
+    Preconditions.checkNotNull(listener, "listener");
+    Preconditions.checkArgument(quietPeriod >= 0, "quietPeriod must not be negative, but was %s.", quietPeriod);
+    this.verifier = verifier;
+    this.executor = executor;
+    this.quietPeriodNanos = unit.toNanos(quietPeriod);
+    this.listener = listener;
+    this.watchService = root.getFileSystem().newWatchService();
+    try {
+      register(root);
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+    this.watcher = new Thread(this::watch, "jsignify-watcher");
+    watcher.setDaemon(true);
+    watcher.start();
+  }
+
+  /**
+   * Stop watching and wait for the watcher thread to end. Verifications already handed to the executor still
+   * complete.
+   * @throws IOException in case an I/O error occurs while closing the watch service
+   */
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    boolean interrupted = false;
+    while (watcher.isAlive()) {
+      try {
+        watcher.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        long nextDeadline = dispatchDue();
+        WatchKey key = nextDeadline == Long.MAX_VALUE ? watchService.take()
+            : watchService.poll(nextDeadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        while (key != null) {
+          handle(key);
+          key = watchService.poll();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // closed
+    }
+  }
+
+  private void handle(WatchKey key) {
+    Path directory = (Path) key.watchable();
+    for (WatchEvent<?> event : key.pollEvents()) {
+      try {
+        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+          // events of this directory were lost
+          register(directory);
+        } else {
+          Path file = directory.resolve((Path) event.context());
+          if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) {
+            register(file);
+          } else {
+            markPending(file);
+          }
+        }
+      } catch (IOException e) {
+        // removed in the meantime, which is reported by its own event
+      }
+    }
+    key.reset();
+  }
+
+  /*
+   * Watches the directory and its subdirectories and marks all files in them as pending.
+   */
+  private void register(Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+        dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+            StandardWatchEventKinds.ENTRY_DELETE);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+        if (attributes.isRegularFile()) {
+          markPending(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void markPending(Path file) {
+    String name = String.valueOf(file.getFileName());
+    Path messageFile = file;
+    if (name.endsWith(SIGNATURE_SUFFIX) && name.length() > SIGNATURE_SUFFIX.length()) {
+      messageFile = file.resolveSibling(name.substring(0, name.length() - SIGNATURE_SUFFIX.length()));
+    }
+    pending.put(messageFile, System.nanoTime() + quietPeriodNanos);
+  }
+
+  /*
+   * Dispatches the pending pairs whose quiet period is over and returns the earliest time another one may be
+   * dispatched, or Long.MAX_VALUE if none is pending.
+   */
+  private long dispatchDue() {
+    long now = System.nanoTime();
+    long nextDeadline = Long.MAX_VALUE;
+    Iterator<Map.Entry<Path, Long>> iterator = pending.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<Path, Long> entry = iterator.next();
+      if (entry.getValue() - now <= 0) {
+        iterator.remove();
+        dispatch(entry.getKey());
+      } else {
+        nextDeadline = Math.min(nextDeadline, entry.getValue());
+      }
+    }
+    return nextDeadline;
+  }
+
+  private void dispatch(Path messageFile) {
+    Path signatureFile = messageFile.resolveSibling(messageFile.getFileName() + SIGNATURE_SUFFIX);
+    BasicFileAttributes message;
+    BasicFileAttributes signature;
+    try {
+      message = Files.readAttributes(messageFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      signature = Files.readAttributes(signatureFile, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    } catch (IOException e) {
+      verified.remove(messageFile);
+      return;
+    }
+    if (!message.isRegularFile() || !signature.isRegularFile()) {
+      verified.remove(messageFile);
+      return;
+    }
+
+    List<Object> identity = Arrays.asList(message.size(), message.lastModifiedTime(), message.fileKey(),
+        signature.size(), signature.lastModifiedTime(), signature.fileKey());
+    if (identity.equals(verified.get(messageFile))) {
+      return;
+    }
+    verified.put(messageFile, identity);
+    long size = message.size();
+    try {
+      executor.execute(() -> deliver(identity, new TreeReport.Entry(messageFile, check(signatureFile, messageFile), size)));
+    } catch (RejectedExecutionException e) {
+      // verified again on its next change
+      verified.remove(messageFile);
+    }
+  }
+
+  /*
+   * Passes the result to the listener unless the pair was dispatched again or removed in the meantime. The
+   * watcher thread replaces the identity before it dispatches again, and results are passed on one at a time,
+   * so a newer result of the same pair cannot have been passed on before.
+   */
+  private synchronized void deliver(List<Object> identity, TreeReport.Entry entry) {
+    if (verified.get(entry.getMessageFile()) == identity) {
+      listener.accept(entry);
+    }
+  }
+
+  private TreeReport.Status check(Path signatureFile, Path messageFile) {
+    try {
+      return TreeReport.Status.of(verifier.tryVerifyFile(signatureFile, messageFile));
+    } catch (IOException e) {
+      return TreeReport.Status.UNREADABLE;
+    }
+  }
+}
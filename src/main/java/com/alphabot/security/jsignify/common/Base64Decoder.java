@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/*
+ * Decodes standard Base64 (RFC 4648, padding optional) straight from bytes into a caller-provided array,
+ * without intermediate Strings or buffers. Errors are reported like java.util.Base64.Decoder does, or by
+ * returning INVALID from tryDecode. (used internally)
+ */
+public final class Base64Decoder {
+  public static final int INVALID = -1;
+  private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(US_ASCII);
+  private static final int[] VALUES = new int[256];
+
+  static {
+    Arrays.fill(VALUES, -1);
+    for (int i = 0; i < ALPHABET.length; i++) {
+      VALUES[ALPHABET[i]] = i;
+    }
+  }
+
+  private Base64Decoder() {
+  }
+
+  /*
+   * Decodes the remaining bytes of src (its position is not changed) into dst and returns the decoded length.
+   * Decoded bytes that do not fit into dst are counted but not written, so a length mismatch can be reported
+   * after the whole input was checked.
+   */
+  public static int decode(ByteBuffer src, byte[] dst) {
+    return decodeBase64(src, dst, true);
+  }
+
+  /*
+   * Like decode, but returns INVALID instead of throwing in case src is not valid Base64, so rejecting
+   * garbage does not cost an exception.
+   */
+  public static int tryDecode(ByteBuffer src, byte[] dst) {
+    return decodeBase64(src, dst, false);
+  }
+
+  private static int decodeBase64(ByteBuffer src, byte[] dst, boolean throwing) {
+    int bits = 0;
+    int unitLength = 0;
+    int length = 0;
+    int end = src.limit();
+    for (int i = src.position(); i < end; i++) {
+      int b = src.get(i) & 0xff;
+      if (b == '=') {
+        if (!checkPadding(src, i, unitLength, throwing)) {
+          return INVALID;
+        }
+        break;
+      }
+      int value = VALUES[b];
+      if (value < 0) {
+        if (throwing) {
+          throw new IllegalArgumentException("Illegal base64 character " + Integer.toString(b, 16));
+        }
+        return INVALID;
+      }
+      bits = (bits << 6) | value;
+      unitLength++;
+      if (unitLength == 4) {
+        length = put(dst, length, bits >> 16);
+        length = put(dst, length, bits >> 8);
+        length = put(dst, length, bits);
+        bits = 0;
+        unitLength = 0;
+      }
+    }
+    if (unitLength == 1) {
+      return fail(throwing, "Last unit does not have enough valid bits") ? length : INVALID;
+    }
+    if (unitLength == 2) {
+      length = put(dst, length, bits >> 4);
+    } else if (unitLength == 3) {
+      length = put(dst, length, bits >> 10);
+      length = put(dst, length, bits >> 2);
+    }
+    return length;
+  }
+
+  private static boolean checkPadding(ByteBuffer src, int index, int unitLength, boolean throwing) {
+    int paddingLength = 4 - unitLength;
+    if (unitLength < 2 || index + paddingLength > src.limit()) {
+      return fail(throwing, "Input byte array has wrong 4-byte ending unit");
+    }
+    for (int i = index; i < index + paddingLength; i++) {
+      if (src.get(i) != '=') {
+        return fail(throwing, "Input byte array has wrong 4-byte ending unit");
+      }
+    }
+    if (index + paddingLength < src.limit()) {
+      if (throwing) {
+        throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (index + paddingLength));
+      }
+      return false;
+    }
+    return true;
+  }
+
+  /*
+   * Throws with the message, or returns false if the caller does not want an exception.
+   */
+  private static boolean fail(boolean throwing, String message) {
+    if (throwing) {
+      throw new IllegalArgumentException(message);
+    }
+    return false;
+  }
+
+  private static int put(byte[] dst, int index, int value) {
+    if (index < dst.length) {
+      dst[index] = (byte) value;
+    }
+    return index + 1;
+  }
+}
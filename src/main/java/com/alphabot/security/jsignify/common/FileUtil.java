@@ -15,25 +15,233 @@
 package com.alphabot.security.jsignify.common;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.List;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.SecureRandom;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
 public final class FileUtil {
-  private static final String COMMENT_HEADER = "untrusted comment: ";
+  public static final String COMMENT_HEADER = "untrusted comment: ";
+  private static final byte[] COMMENT_HEADER_BYTES = COMMENT_HEADER.getBytes(ISO_8859_1);
+  /*
+   * Signify limits the comment line to 1024 bytes, and the second line (a Base64 key or signature) has about
+   * 100, so the header of a valid file always fits.
+   */
+  static final int MAX_HEADER_LEN = 2048;
+  private static final SecureRandom RANDOM = new SecureRandom();
 
   public static byte[] readAllBytes(Path file) throws IOException {
     return Files.readAllBytes(file);
   }
 
+  /*
+   * Returns a random path for a temporary file in the directory. Unlike Files.createTempFile, which restricts
+   * the file to its owner, a file created there with CREATE_NEW and default attributes gets the default
+   * permissions of new files.
+   */
+  public static Path tempFilePath(Path directory) {
+    return directory.resolve(".jsignify-" + Long.toUnsignedString(RANDOM.nextLong()) + ".tmp");
+  }
+
+  /*
+   * Gives the target the POSIX permissions of the source, if the file system has them and the source exists.
+   */
+  public static void copyPermissions(Path source, Path target) throws IOException {
+    PosixFileAttributeView view = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+    if (view == null) {
+      return;
+    }
+    Set<PosixFilePermission> permissions;
+    try {
+      permissions = view.readAttributes().permissions();
+    } catch (NoSuchFileException e) {
+      return;
+    }
+    Files.setPosixFilePermissions(target, permissions);
+  }
+
+  /*
+   * Flushes the entries of a directory, e.g. of a file moved into it, on platforms where a directory can be
+   * opened.
+   */
+  public static void forceDirectory(Path directory) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      // e.g. on Windows
+      return;
+    }
+    try (channel) {
+      channel.force(true);
+    }
+  }
+
   public static String readBase64File(Path file) throws IOException {
-    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    ByteBuffer base64 = readBase64Bytes(file);
+    return new String(base64.array(), base64.position(), base64.remaining(), ISO_8859_1);
+  }
+
+  /*
+   * Reads the second line of a Signify file without decoding it into Strings. Only the header of the file is
+   * read, not the rest of it. The returned buffer wraps the header; its position and limit mark the trimmed
+   * line.
+   */
+  public static ByteBuffer readBase64Bytes(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return readHeader(channel, file).getBase64Bytes();
+    }
+  }
+
+  /*
+   * Like readBase64Bytes, but returns null instead of throwing in case the header is in the wrong format.
+   */
+  public static ByteBuffer tryReadBase64Bytes(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      Header header = tryReadHeader(channel);
+      return header == null ? null : header.getBase64Bytes();
+    }
+  }
+
+  /*
+   * Reads the header (the comment line and the Base64 line) of a Signify file from the start of the channel,
+   * but never more than MAX_HEADER_LEN bytes. The channel is left positioned right after the header, where
+   * the message of a file with an embedded message (signify -e) starts.
+   */
+  public static Header readHeader(SeekableByteChannel channel, Path file) throws IOException {
+    return parseHeader(channel, file, true);
+  }
+
+  /*
+   * Like readHeader, but returns null instead of throwing in case the header is in the wrong format, so that
+   * rejecting garbage does not cost an exception. The position of the channel is then undefined.
+   */
+  public static Header tryReadHeader(SeekableByteChannel channel) throws IOException {
+    return parseHeader(channel, null, false);
+  }
+
+  /*
+   * Splits the header (the comment line and the Base64 line) off a Signify file held in memory, from index 0 to
+   * the limit of the buffer, e.g. a checksum list or the comment of a signed gzip file. Returns null if the
+   * content does not start with the comment line and a Base64 line that ends with a line break. The end of the
+   * header is where the embedded message starts.
+   */
+  public static Header splitHeader(ByteBuffer content) {
+    int length = content.limit();
+    int firstLineEnd = lineEnd(content, 0, length);
+    int secondLineStart = nextLineStart(content, firstLineEnd, length);
+    int secondLineEnd = lineEnd(content, secondLineStart, length);
+    if (secondLineEnd == length || !startsWithCommentHeader(content, firstLineEnd)) {
+      return null;
+    }
+    return newHeader(content, secondLineStart, secondLineEnd);
+  }
+
+  private static Header parseHeader(SeekableByteChannel channel, Path file, boolean throwing) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(MAX_HEADER_LEN);
+    channel.position(0);
+    int read = 0;
+    while (buffer.hasRemaining() && read != -1) {
+      read = channel.read(buffer);
+    }
+    int length = buffer.position();
+    boolean wholeFile = read == -1 || channel.size() == length;
+    ByteBuffer content = buffer.flip();
+
+    int firstLineEnd = lineEnd(content, 0, length);
+    int secondLineStart = nextLineStart(content, firstLineEnd, length);
+    int secondLineEnd = lineEnd(content, secondLineStart, length);
+    // a line break at the end of the buffer could be the first half of \r\n
+    if (!wholeFile && secondLineEnd >= length - 1) {
+      if (throwing) {
+        throw new IllegalArgumentException("invalid header in " + file.toAbsolutePath().toString()
+            + "; must not be longer than " + MAX_HEADER_LEN + " bytes");
+      }
+      return null;
+    }
+    if (secondLineStart == length || !startsWithCommentHeader(content, firstLineEnd)) {
+      if (throwing) {
+        throw new IllegalArgumentException("invalid comment in " + file.toAbsolutePath().toString()
+            + "; must start with '" + COMMENT_HEADER + "'");
+      }
+      return null;
+    }
+
+    Header header = newHeader(content, secondLineStart, secondLineEnd);
+    channel.position(header.getEnd());
+    return header;
+  }
+
+  /*
+   * Creates the header of the Base64 line from secondLineStart to secondLineEnd, trimmed.
+   */
+  private static Header newHeader(ByteBuffer content, int secondLineStart, int secondLineEnd) {
+    int start = secondLineStart;
+    int end = secondLineEnd;
+    while (start < end && (content.get(start) & 0xff) <= ' ') {
+      start++;
+    }
+    while (end > start && (content.get(end - 1) & 0xff) <= ' ') {
+      end--;
+    }
+    ByteBuffer base64Bytes = content.duplicate().limit(end).position(start);
+    return new Header(base64Bytes, nextLineStart(content, secondLineEnd, content.limit()));
+  }
+
+  private static boolean startsWithCommentHeader(ByteBuffer content, int firstLineEnd) {
+    if (firstLineEnd < COMMENT_HEADER_BYTES.length) {
+      return false;
+    }
+    for (int i = 0; i < COMMENT_HEADER_BYTES.length; i++) {
+      if (content.get(i) != COMMENT_HEADER_BYTES[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int lineEnd(ByteBuffer content, int start, int length) {
+    int end = start;
+    while (end < length && content.get(end) != '\n' && content.get(end) != '\r') {
+      end++;
+    }
+    return end;
+  }
+
+  private static int nextLineStart(ByteBuffer content, int lineEnd, int length) {
+    if (lineEnd < length - 1 && content.get(lineEnd) == '\r' && content.get(lineEnd + 1) == '\n') {
+      return lineEnd + 2;
+    }
+    return Math.min(lineEnd + 1, length);
+  }
+
+  /*
+   * The header of a Signify file: the Base64 line and the offset of the first byte after the header.
+   */
+  public static final class Header {
+    private final ByteBuffer base64Bytes;
+    private final long end;
+
+    private Header(ByteBuffer base64Bytes, long end) {
+      this.base64Bytes = base64Bytes;
+      this.end = end;
+    }
+
+    public ByteBuffer getBase64Bytes() {
+      return base64Bytes.duplicate();
+    }
 
-    if (lines.size() < 2 || !lines.get(0).startsWith(COMMENT_HEADER)) {
-      throw new IllegalArgumentException("invalid comment in " + file.toAbsolutePath().toString()
-          + "; must start with '" + COMMENT_HEADER + "'");
+    public long getEnd() {
+      return end;
     }
-    return lines.get(1).trim();
   }
 }
@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.ed25519;
+
+import com.google.common.base.Preconditions;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.alphabot.security.jsignify.ed25519.Field25519.FIELD_LEN;
+
+/**
+ * Ed25519 signature verification (RFC 8032) that can hash the message incrementally.
+ *
+ * <p>Verification needs a single SHA-512 pass over R || A || M, so the message never has to be held
+ * in memory as a whole. The equation is checked with the cofactor 8, [8][S]B = [8]R + [8][h]A, as RFC 8032
+ * permits, so that {@link #verify} and {@link #verifyBatch} always agree. For every signature created by a
+ * signer following RFC 8032 the result is the same as the one of Tink's {@code Ed25519Verify}, which checks
+ * the equation without the cofactor; they differ only on signatures crafted with a point of small order in R
+ * or in the public key, which this verifier accepts. Like Tink, it rejects a non-reduced S and a
+ * non-canonical encoding of R.
+ *
+ * <p>The public key is decoded once, when the verifier is created, together with a table of its
+ * first 32 odd multiples. Every verification with the same verifier reuses both.
+ *
+ * <p>Many signatures of the same key can be checked at once with {@link #verifyBatch}.
+ *
+ * <p>An instance is bound to one public key and is thread-safe. A {@link Verification} is not.
+ */
+public final class Ed25519Verifier {
+  public static final int PUBLIC_KEY_LEN = FIELD_LEN;
+  public static final int SIGNATURE_LEN = 2 * FIELD_LEN;
+
+  private static final GroupElement BASE_POINT = GroupElement.decode(basePointEncoding(), 0);
+  private static final int BASE_TABLE_SIZE = 8;
+  private static final GroupElement.Cached[] BASE_ODD_MULTIPLES = BASE_POINT.oddMultiples(BASE_TABLE_SIZE);
+  private static final int KEY_TABLE_SIZE = 32;
+  private static final int BATCH_TABLE_SIZE = 8;
+  private static final int BATCH_COEFFICIENT_LEN = 16;
+  private static final int COFACTOR_LOG = 3;
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final byte[] publicKey;
+  private final GroupElement.Cached[] negatedPublicKeyMultiples;
+
+  /**
+   * Create a new Ed25519Verifier for a raw 32 byte Ed25519 public key.
+   * A public key that does not decode to a curve point is accepted here, but every verification
+   * against it fails (as with Tink).
+   * @param publicKey the raw Ed25519 public key
+   * @throws IllegalArgumentException in case the public key has the wrong length
+   */
+  public Ed25519Verifier(byte[] publicKey) {
+    Preconditions.checkNotNull(publicKey, "publicKey");
+    Preconditions.checkArgument(
+        publicKey.length == PUBLIC_KEY_LEN,
+        "Public key length must be %s, but was %s.", PUBLIC_KEY_LEN, publicKey.length);
+    this.publicKey = publicKey.clone();
+    GroupElement point = GroupElement.decode(publicKey, 0);
+    this.negatedPublicKeyMultiples = point == null ? null : point.negate().oddMultiples(KEY_TABLE_SIZE);
+  }
+
+  /**
+   * Verify a signature of a message held in memory.
+   * @param signature the raw 64 byte Ed25519 signature (R || S)
+   * @param message the signed message
+   * @return true if the signature is valid for this public key
+   */
+  public boolean verify(byte[] signature, byte[] message) {
+    checkSignatureLength(signature);
+    Verification verification = new Verification(signature);
+    verification.update(message, 0, message.length);
+    return verification.verify();
+  }
+
+  /**
+   * Verify many signatures of messages held in memory at once.
+   *
+   * <p>The signatures are checked with a single randomized linear combination of all verification
+   * equations, which needs one multi-scalar multiplication instead of one scalar multiplication per
+   * signature. If the combination does not hold, the batch is split in halves until the invalid
+   * signatures are found; a single remaining signature is checked exactly like {@link #verify}. Both
+   * use the equation with the cofactor, so the result for each signature is the one of {@link #verify}.
+   * @param signatures the raw 64 byte Ed25519 signatures (R || S)
+   * @param messages the signed messages, in the same order as the signatures
+   * @return for each signature, true if it is valid for its message and this public key
+   * @throws IllegalArgumentException in case the lists differ in size or a signature has the wrong length
+   */
+  public boolean[] verifyBatch(List<byte[]> signatures, List<byte[]> messages) {
+    Preconditions.checkNotNull(signatures, "signatures");
+    Preconditions.checkNotNull(messages, "messages");
+    Preconditions.checkArgument(
+        signatures.size() == messages.size(),
+        "Number of signatures (%s) and messages (%s) must be equal.", signatures.size(), messages.size());
+
+    boolean[] valid = new boolean[signatures.size()];
+    BatchEntry[] entries = new BatchEntry[signatures.size()];
+    int count = 0;
+    for (int i = 0; i < signatures.size(); i++) {
+      byte[] signature = signatures.get(i);
+      Preconditions.checkArgument(
+          signature.length == SIGNATURE_LEN,
+          "Signature length must be %s, but was %s.", SIGNATURE_LEN, signature.length);
+      BatchEntry entry = BatchEntry.prepare(i, signature.clone(), hash(signature, messages.get(i)));
+      if (negatedPublicKeyMultiples != null && entry != null) {
+        entries[count++] = entry;
+      }
+    }
+
+    verifyBatch(Arrays.copyOf(entries, count), valid);
+    return valid;
+  }
+
+  private void verifyBatch(BatchEntry[] entries, boolean[] valid) {
+    if (entries.length == 0) {
+      return;
+    }
+    if (entries.length == 1) {
+      BatchEntry entry = entries[0];
+      valid[entry.index] = checkEquation(entry.challenge, entry.signature);
+      return;
+    }
+    if (batchEquationHolds(entries)) {
+      for (BatchEntry entry : entries) {
+        valid[entry.index] = true;
+      }
+      return;
+    }
+    int half = entries.length / 2;
+    verifyBatch(Arrays.copyOfRange(entries, 0, half), valid);
+    verifyBatch(Arrays.copyOfRange(entries, half, entries.length), valid);
+  }
+
+  /*
+   * Checks [8]([sum(z * S)]B + [sum(z * h)](-A) + sum([z](-R))) = 0 for random 128 bit coefficients z.
+   */
+  private boolean batchEquationHolds(BatchEntry[] entries) {
+    byte[][] scalars = new byte[entries.length + 2][];
+    GroupElement.Cached[][] tables = new GroupElement.Cached[entries.length + 2][];
+    BigInteger sumOfS = BigInteger.ZERO;
+    BigInteger sumOfH = BigInteger.ZERO;
+    byte[] coefficient = new byte[BATCH_COEFFICIENT_LEN];
+    for (int i = 0; i < entries.length; i++) {
+      RANDOM.nextBytes(coefficient);
+      BigInteger z = Scalar25519.fromBytes(coefficient);
+      sumOfS = sumOfS.add(z.multiply(entries[i].scalar));
+      sumOfH = sumOfH.add(z.multiply(Scalar25519.fromBytes(entries[i].challenge)));
+      scalars[i] = Scalar25519.toBytes(z);
+      tables[i] = entries[i].negatedR.oddMultiples(BATCH_TABLE_SIZE);
+    }
+    scalars[entries.length] = Scalar25519.toBytes(sumOfS.mod(Scalar25519.ORDER));
+    tables[entries.length] = BASE_ODD_MULTIPLES;
+    scalars[entries.length + 1] = Scalar25519.toBytes(sumOfH.mod(Scalar25519.ORDER));
+    tables[entries.length + 1] = negatedPublicKeyMultiples;
+
+    return hasSmallOrder(linearCombination(scalars, tables));
+  }
+
+  /*
+   * A signature of a batch with its decoded parts.
+   */
+  private static final class BatchEntry {
+    private final int index;
+    private final byte[] signature;
+    private final byte[] challenge;
+    private final GroupElement negatedR;
+    private final BigInteger scalar;
+
+    private BatchEntry(int index, byte[] signature, byte[] h, GroupElement negatedR) {
+      this.index = index;
+      this.signature = signature;
+      this.challenge = h;
+      this.negatedR = negatedR;
+      this.scalar = Scalar25519.fromBytes(Arrays.copyOfRange(signature, FIELD_LEN, SIGNATURE_LEN));
+    }
+
+    /*
+     * Returns null if the signature is invalid on its own, see decodeR.
+     */
+    static BatchEntry prepare(int index, byte[] signature, byte[] h) {
+      GroupElement r = decodeR(signature);
+      return r == null ? null : new BatchEntry(index, signature, h, r.negate());
+    }
+  }
+
+  /**
+   * Start an incremental verification of a signature.
+   * The message has to be passed to {@link Verification#update} before calling {@link Verification#verify}.
+   * @param signature the raw 64 byte Ed25519 signature (R || S)
+   * @return a new verification (not thread-safe)
+   * @throws IllegalArgumentException in case the signature has the wrong length
+   */
+  public Verification newVerification(byte[] signature) {
+    checkSignatureLength(signature);
+    return new Verification(signature.clone());
+  }
+
+  /**
+   * Start an incremental verification of a signature read from the remaining bytes of a buffer.
+   * The signature is copied once; the position of the buffer is not changed.
+   * @param signature buffer holding the raw 64 byte Ed25519 signature (R || S)
+   * @return a new verification (not thread-safe)
+   * @throws IllegalArgumentException in case the signature has the wrong length
+   */
+  public Verification newVerification(ByteBuffer signature) {
+    Preconditions.checkNotNull(signature, "signature");
+    Preconditions.checkArgument(
+        signature.remaining() == SIGNATURE_LEN,
+        "Signature length must be %s, but was %s.", SIGNATURE_LEN, signature.remaining());
+    byte[] copy = new byte[SIGNATURE_LEN];
+    signature.duplicate().get(copy);
+    return new Verification(copy);
+  }
+
+  private static void checkSignatureLength(byte[] signature) {
+    Preconditions.checkNotNull(signature, "signature");
+    Preconditions.checkArgument(
+        signature.length == SIGNATURE_LEN,
+        "Signature length must be %s, but was %s.", SIGNATURE_LEN, signature.length);
+  }
+
+  /**
+   * An incremental verification of a single signature.
+   */
+  public final class Verification {
+    private final byte[] signature;
+    private final MessageDigest digest;
+
+    private Verification(byte[] signature) {
+      this.signature = signature;
+      this.digest = newSha512();
+      digest.update(signature, 0, FIELD_LEN);
+      digest.update(publicKey);
+    }
+
+    /**
+     * Hash the next part of the message.
+     * @param message buffer holding the message part
+     * @param offset offset of the message part in the buffer
+     * @param length length of the message part
+     */
+    public void update(byte[] message, int offset, int length) {
+      digest.update(message, offset, length);
+    }
+
+    /**
+     * Hash the remaining bytes of the buffer as the next part of the message.
+     * The position of the buffer is advanced to its limit.
+     * @param message buffer holding the message part
+     */
+    public void update(ByteBuffer message) {
+      digest.update(message);
+    }
+
+    /**
+     * Finish hashing the message and check the signature.
+     * @return true if the signature is valid for the message hashed so far
+     */
+    public boolean verify() {
+      return checkEquation(Scalar25519.reduce(digest.digest()), signature);
+    }
+  }
+
+  /*
+   * Checks [8]([S]B - [h]A - R) = 0.
+   */
+  private boolean checkEquation(byte[] h, byte[] signature) {
+    GroupElement r = decodeR(signature);
+    if (negatedPublicKeyMultiples == null || r == null) {
+      return false;
+    }
+    byte[] s = Arrays.copyOfRange(signature, FIELD_LEN, SIGNATURE_LEN);
+    GroupElement.Cached[][] tables = {negatedPublicKeyMultiples, BASE_ODD_MULTIPLES};
+    GroupElement difference = linearCombination(new byte[][] {h, s}, tables);
+    new GroupElement.Arithmetic().sub(difference, difference, r.toCached());
+    return hasSmallOrder(difference);
+  }
+
+  /*
+   * Returns R, or null if S is not reduced or R is not the canonical encoding of a point.
+   */
+  private static GroupElement decodeR(byte[] signature) {
+    if (!Scalar25519.isCanonical(signature, FIELD_LEN) || !Field25519.isCanonical(signature, 0)) {
+      return null;
+    }
+    return GroupElement.decode(signature, 0);
+  }
+
+  /*
+   * Returns true if [8]P is the identity. Modifies P.
+   */
+  private static boolean hasSmallOrder(GroupElement point) {
+    GroupElement.Arithmetic arithmetic = new GroupElement.Arithmetic();
+    for (int i = 0; i < COFACTOR_LOG; i++) {
+      arithmetic.dbl(point, point);
+    }
+    return point.isIdentity();
+  }
+
+  private byte[] hash(byte[] signature, byte[] message) {
+    MessageDigest digest = newSha512();
+    digest.update(signature, 0, FIELD_LEN);
+    digest.update(publicKey);
+    digest.update(message);
+    return Scalar25519.reduce(digest.digest());
+  }
+
+  /*
+   * Computes sum([scalars[i]]P[i]) (variable time, interleaved sliding windows). tables[i] holds the
+   * odd multiples of P[i], see GroupElement.oddMultiples.
+   */
+  private static GroupElement linearCombination(byte[][] scalars, GroupElement.Cached[][] tables) {
+    byte[][] digits = new byte[scalars.length][];
+    int top = -1;
+    for (int j = 0; j < scalars.length; j++) {
+      digits[j] = Scalar25519.slide(scalars[j], 2 * tables[j].length - 1);
+      for (int i = 255; i > top; i--) {
+        if (digits[j][i] != 0) {
+          top = i;
+        }
+      }
+    }
+
+    GroupElement.Arithmetic arithmetic = new GroupElement.Arithmetic();
+    GroupElement r = GroupElement.identity();
+    for (int i = top; i >= 0; i--) {
+      arithmetic.dbl(r, r);
+      for (int j = 0; j < scalars.length; j++) {
+        addDigit(arithmetic, r, digits[j][i], tables[j]);
+      }
+    }
+    return r;
+  }
+
+  private static void addDigit(GroupElement.Arithmetic arithmetic, GroupElement r, byte digit, GroupElement.Cached[] oddMultiples) {
+    if (digit > 0) {
+      arithmetic.add(r, r, oddMultiples[digit / 2]);
+    } else if (digit < 0) {
+      arithmetic.sub(r, r, oddMultiples[-digit / 2]);
+    }
+  }
+
+  private static MessageDigest newSha512() {
+    try {
+      return MessageDigest.getInstance("SHA-512");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-512 is not available", e);
+    }
+  }
+
+  private static byte[] basePointEncoding() {
+    // y = 4/5 with a positive (even) x coordinate
+    byte[] encoding = new byte[FIELD_LEN];
+    Arrays.fill(encoding, (byte) 0x66);
+    encoding[0] = 0x58;
+    return encoding;
+  }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.ed25519;
+
+/*
+ * Arithmetic in GF(2^255 - 19) (used internally).
+ * An element is represented as ten signed limbs in radix 2^25.5 (alternating 26 and 25 bits), as in the
+ * ref10 implementation. All outputs may alias inputs. Nothing in here is constant time: it is only used
+ * for signature verification, where all inputs are public.
+ */
+final class Field25519 {
+  static final int LIMB_COUNT = 10;
+  static final int FIELD_LEN = 32;
+
+  private Field25519() {
+  }
+
+  static long[] zero() {
+    return new long[LIMB_COUNT];
+  }
+
+  static long[] one() {
+    long[] one = new long[LIMB_COUNT];
+    one[0] = 1;
+    return one;
+  }
+
+  static void copy(long[] out, long[] in) {
+    System.arraycopy(in, 0, out, 0, LIMB_COUNT);
+  }
+
+  static void add(long[] out, long[] a, long[] b) {
+    for (int i = 0; i < LIMB_COUNT; i++) {
+      out[i] = a[i] + b[i];
+    }
+  }
+
+  static void sub(long[] out, long[] a, long[] b) {
+    for (int i = 0; i < LIMB_COUNT; i++) {
+      out[i] = a[i] - b[i];
+    }
+  }
+
+  static void negate(long[] out, long[] in) {
+    for (int i = 0; i < LIMB_COUNT; i++) {
+      out[i] = -in[i];
+    }
+  }
+
+  static void mult(long[] out, long[] f, long[] g) {
+    long f0 = f[0];
+    long f1 = f[1];
+    long f2 = f[2];
+    long f3 = f[3];
+    long f4 = f[4];
+    long f5 = f[5];
+    long f6 = f[6];
+    long f7 = f[7];
+    long f8 = f[8];
+    long f9 = f[9];
+    long g0 = g[0];
+    long g1 = g[1];
+    long g2 = g[2];
+    long g3 = g[3];
+    long g4 = g[4];
+    long g5 = g[5];
+    long g6 = g[6];
+    long g7 = g[7];
+    long g8 = g[8];
+    long g9 = g[9];
+    long f1x2 = 2 * f1;
+    long f3x2 = 2 * f3;
+    long f5x2 = 2 * f5;
+    long f7x2 = 2 * f7;
+    long f9x2 = 2 * f9;
+    long g1x19 = 19 * g1;
+    long g2x19 = 19 * g2;
+    long g3x19 = 19 * g3;
+    long g4x19 = 19 * g4;
+    long g5x19 = 19 * g5;
+    long g6x19 = 19 * g6;
+    long g7x19 = 19 * g7;
+    long g8x19 = 19 * g8;
+    long g9x19 = 19 * g9;
+
+    out[0] = f0 * g0 + f1x2 * g9x19 + f2 * g8x19 + f3x2 * g7x19 + f4 * g6x19
+        + f5x2 * g5x19 + f6 * g4x19 + f7x2 * g3x19 + f8 * g2x19 + f9x2 * g1x19;
+    out[1] = f0 * g1 + f1 * g0 + f2 * g9x19 + f3 * g8x19 + f4 * g7x19
+        + f5 * g6x19 + f6 * g5x19 + f7 * g4x19 + f8 * g3x19 + f9 * g2x19;
+    out[2] = f0 * g2 + f1x2 * g1 + f2 * g0 + f3x2 * g9x19 + f4 * g8x19
+        + f5x2 * g7x19 + f6 * g6x19 + f7x2 * g5x19 + f8 * g4x19 + f9x2 * g3x19;
+    out[3] = f0 * g3 + f1 * g2 + f2 * g1 + f3 * g0 + f4 * g9x19
+        + f5 * g8x19 + f6 * g7x19 + f7 * g6x19 + f8 * g5x19 + f9 * g4x19;
+    out[4] = f0 * g4 + f1x2 * g3 + f2 * g2 + f3x2 * g1 + f4 * g0
+        + f5x2 * g9x19 + f6 * g8x19 + f7x2 * g7x19 + f8 * g6x19 + f9x2 * g5x19;
+    out[5] = f0 * g5 + f1 * g4 + f2 * g3 + f3 * g2 + f4 * g1
+        + f5 * g0 + f6 * g9x19 + f7 * g8x19 + f8 * g7x19 + f9 * g6x19;
+    out[6] = f0 * g6 + f1x2 * g5 + f2 * g4 + f3x2 * g3 + f4 * g2
+        + f5x2 * g1 + f6 * g0 + f7x2 * g9x19 + f8 * g8x19 + f9x2 * g7x19;
+    out[7] = f0 * g7 + f1 * g6 + f2 * g5 + f3 * g4 + f4 * g3
+        + f5 * g2 + f6 * g1 + f7 * g0 + f8 * g9x19 + f9 * g8x19;
+    out[8] = f0 * g8 + f1x2 * g7 + f2 * g6 + f3x2 * g5 + f4 * g4
+        + f5x2 * g3 + f6 * g2 + f7x2 * g1 + f8 * g0 + f9x2 * g9x19;
+    out[9] = f0 * g9 + f1 * g8 + f2 * g7 + f3 * g6 + f4 * g5
+        + f5 * g4 + f6 * g3 + f7 * g2 + f8 * g1 + f9 * g0;
+
+    carry(out, 0);
+    carry(out, 4);
+    carry(out, 1);
+    carry(out, 5);
+    carry(out, 2);
+    carry(out, 6);
+    carry(out, 3);
+    carry(out, 7);
+    carry(out, 4);
+    carry(out, 8);
+    carry(out, 9);
+    carry(out, 0);
+  }
+
+  /*
+   * Moves the bits of limb i above its width (26 bits for even, 25 bits for odd limbs) into the next
+   * limb, leaving a signed limb. The carry out of the top limb wraps around as 2^255 = 19.
+   */
+  private static void carry(long[] h, int i) {
+    int width = (i & 1) == 0 ? 26 : 25;
+    long carry = (h[i] + (1L << (width - 1))) >> width;
+    h[i] -= carry << width;
+    if (i == LIMB_COUNT - 1) {
+      h[0] += carry * 19;
+    } else {
+      h[i + 1] += carry;
+    }
+  }
+
+  static void square(long[] out, long[] in) {
+    mult(out, in, in);
+  }
+
+  /*
+   * Computes in^(2^count) by repeated squaring.
+   */
+  static void squareTimes(long[] out, long[] in, int count) {
+    square(out, in);
+    for (int i = 1; i < count; i++) {
+      square(out, out);
+    }
+  }
+
+  /*
+   * Computes in^(2^250 - 1), the common prefix of the inversion and square root addition chains.
+   * Also returns in^11 in {@code in11}.
+   */
+  private static void pow2250(long[] out, long[] in11, long[] in) {
+    long[] t0 = new long[LIMB_COUNT];
+    long[] t1 = new long[LIMB_COUNT];
+    square(t0, in);                // 2
+    squareTimes(t1, t0, 2);        // 8
+    mult(t1, in, t1);              // 9
+    mult(in11, t0, t1);            // 11
+    square(t0, in11);              // 22
+    mult(t0, t1, t0);              // 2^5 - 1
+    squareTimes(t1, t0, 5);
+    mult(t0, t1, t0);              // 2^10 - 1
+    squareTimes(t1, t0, 10);
+    mult(t1, t1, t0);              // 2^20 - 1
+    long[] t2 = new long[LIMB_COUNT];
+    squareTimes(t2, t1, 20);
+    mult(t1, t2, t1);              // 2^40 - 1
+    squareTimes(t1, t1, 10);
+    mult(t0, t1, t0);              // 2^50 - 1
+    squareTimes(t1, t0, 50);
+    mult(t1, t1, t0);              // 2^100 - 1
+    squareTimes(t2, t1, 100);
+    mult(t1, t2, t1);              // 2^200 - 1
+    squareTimes(t1, t1, 50);
+    mult(out, t1, t0);             // 2^250 - 1
+  }
+
+  /*
+   * Computes in^(p - 2) = in^-1.
+   */
+  static void invert(long[] out, long[] in) {
+    long[] t = new long[LIMB_COUNT];
+    long[] in11 = new long[LIMB_COUNT];
+    pow2250(t, in11, in);
+    squareTimes(t, t, 5);          // 2^255 - 32
+    mult(out, t, in11);            // 2^255 - 21
+  }
+
+  /*
+   * Computes in^((p - 5) / 8) = in^(2^252 - 3), used for square roots.
+   */
+  static void pow22523(long[] out, long[] in) {
+    long[] t = new long[LIMB_COUNT];
+    long[] in11 = new long[LIMB_COUNT];
+    pow2250(t, in11, in);
+    squareTimes(t, t, 2);          // 2^252 - 4
+    mult(out, t, in);              // 2^252 - 3
+  }
+
+  static long[] fromBytes(byte[] s, int offset) {
+    long[] h = new long[LIMB_COUNT];
+    h[0] = load4(s, offset);
+    h[1] = load3(s, offset + 4) << 6;
+    h[2] = load3(s, offset + 7) << 5;
+    h[3] = load3(s, offset + 10) << 3;
+    h[4] = load3(s, offset + 13) << 2;
+    h[5] = load4(s, offset + 16);
+    h[6] = load3(s, offset + 20) << 7;
+    h[7] = load3(s, offset + 23) << 5;
+    h[8] = load3(s, offset + 26) << 4;
+    h[9] = (load3(s, offset + 29) & 0x7fffff) << 2;
+
+    carry(h, 9);
+    carry(h, 1);
+    carry(h, 3);
+    carry(h, 5);
+    carry(h, 7);
+    carry(h, 0);
+    carry(h, 2);
+    carry(h, 4);
+    carry(h, 6);
+    carry(h, 8);
+    return h;
+  }
+
+  /*
+   * Writes the canonical (fully reduced) little-endian encoding of h.
+   */
+  static void toBytes(byte[] s, int offset, long[] in) {
+    long q = (19 * in[9] + (1L << 24)) >> 25;
+    for (int i = 0; i < LIMB_COUNT; i++) {
+      q = (in[i] + q) >> ((i & 1) == 0 ? 26 : 25);
+    }
+
+    // h = in - q * p, which is the canonical representative in [0, p)
+    long[] h = in.clone();
+    h[0] += 19 * q;
+    for (int i = 0; i < LIMB_COUNT - 1; i++) {
+      int width = (i & 1) == 0 ? 26 : 25;
+      long carry = h[i] >> width;
+      h[i + 1] += carry;
+      h[i] -= carry << width;
+    }
+    h[9] -= (h[9] >> 25) << 25;
+
+    s[offset] = (byte) h[0];
+    s[offset + 1] = (byte) (h[0] >> 8);
+    s[offset + 2] = (byte) (h[0] >> 16);
+    s[offset + 3] = (byte) ((h[0] >> 24) | (h[1] << 2));
+    s[offset + 4] = (byte) (h[1] >> 6);
+    s[offset + 5] = (byte) (h[1] >> 14);
+    s[offset + 6] = (byte) ((h[1] >> 22) | (h[2] << 3));
+    s[offset + 7] = (byte) (h[2] >> 5);
+    s[offset + 8] = (byte) (h[2] >> 13);
+    s[offset + 9] = (byte) ((h[2] >> 21) | (h[3] << 5));
+    s[offset + 10] = (byte) (h[3] >> 3);
+    s[offset + 11] = (byte) (h[3] >> 11);
+    s[offset + 12] = (byte) ((h[3] >> 19) | (h[4] << 6));
+    s[offset + 13] = (byte) (h[4] >> 2);
+    s[offset + 14] = (byte) (h[4] >> 10);
+    s[offset + 15] = (byte) (h[4] >> 18);
+    s[offset + 16] = (byte) h[5];
+    s[offset + 17] = (byte) (h[5] >> 8);
+    s[offset + 18] = (byte) (h[5] >> 16);
+    s[offset + 19] = (byte) ((h[5] >> 24) | (h[6] << 1));
+    s[offset + 20] = (byte) (h[6] >> 7);
+    s[offset + 21] = (byte) (h[6] >> 15);
+    s[offset + 22] = (byte) ((h[6] >> 23) | (h[7] << 3));
+    s[offset + 23] = (byte) (h[7] >> 5);
+    s[offset + 24] = (byte) (h[7] >> 13);
+    s[offset + 25] = (byte) ((h[7] >> 21) | (h[8] << 4));
+    s[offset + 26] = (byte) (h[8] >> 4);
+    s[offset + 27] = (byte) (h[8] >> 12);
+    s[offset + 28] = (byte) ((h[8] >> 20) | (h[9] << 6));
+    s[offset + 29] = (byte) (h[9] >> 2);
+    s[offset + 30] = (byte) (h[9] >> 10);
+    s[offset + 31] = (byte) (h[9] >> 18);
+  }
+
+  static byte[] toBytes(long[] h) {
+    byte[] s = new byte[FIELD_LEN];
+    toBytes(s, 0, h);
+    return s;
+  }
+
+  static boolean isZero(long[] h) {
+    byte[] s = toBytes(h);
+    int acc = 0;
+    for (byte b : s) {
+      acc |= b;
+    }
+    return acc == 0;
+  }
+
+  /*
+   * Returns true if the 255 bit little-endian number at s[offset..offset+32), ignoring the top bit,
+   * is smaller than p = 2^255 - 19.
+   */
+  static boolean isCanonical(byte[] s, int offset) {
+    if ((s[offset + FIELD_LEN - 1] & 0x7f) != 0x7f) {
+      return true;
+    }
+    for (int i = FIELD_LEN - 2; i > 0; i--) {
+      if (s[offset + i] != (byte) 0xff) {
+        return true;
+      }
+    }
+    return (s[offset] & 0xff) < 0xed;
+  }
+
+  /*
+   * Returns true if the canonical encoding of h is odd ("negative" in RFC 8032 terms).
+   */
+  static boolean isNegative(long[] h) {
+    return (toBytes(h)[0] & 1) != 0;
+  }
+
+  static boolean equal(long[] a, long[] b) {
+    long[] diff = new long[LIMB_COUNT];
+    sub(diff, a, b);
+    return isZero(diff);
+  }
+
+  private static long load3(byte[] in, int offset) {
+    return (in[offset] & 0xff)
+        | ((in[offset + 1] & 0xff) << 8)
+        | ((in[offset + 2] & 0xff) << 16);
+  }
+
+  private static long load4(byte[] in, int offset) {
+    return load3(in, offset) | ((long) (in[offset + 3] & 0xff) << 24);
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.ed25519;
+
+import java.math.BigInteger;
+
+import static com.alphabot.security.jsignify.ed25519.Field25519.FIELD_LEN;
+import static com.alphabot.security.jsignify.ed25519.Field25519.LIMB_COUNT;
+
+/*
+ * A point on the twisted Edwards curve -x^2 + y^2 = 1 + d x^2 y^2 in extended coordinates
+ * (X:Y:Z:T) with x = X/Z, y = Y/Z and x * y = T/Z (used internally).
+ * Group elements are mutable so that scalar multiplications can run without allocating.
+ */
+final class GroupElement {
+  private static final BigInteger P = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+  private static final BigInteger D_VALUE = BigInteger.valueOf(-121665)
+      .multiply(BigInteger.valueOf(121666).modInverse(P)).mod(P);
+  static final long[] D = fieldElement(D_VALUE);
+  static final long[] D2 = fieldElement(D_VALUE.shiftLeft(1).mod(P));
+  static final long[] SQRT_M1 = fieldElement(BigInteger.TWO.modPow(P.subtract(BigInteger.ONE).shiftRight(2), P));
+
+  final long[] coordX = new long[LIMB_COUNT];
+  final long[] coordY = new long[LIMB_COUNT];
+  final long[] coordZ = new long[LIMB_COUNT];
+  final long[] coordT = new long[LIMB_COUNT];
+
+  /*
+   * A point prepared for addition: (Y + X, Y - X, Z, 2 * d * T).
+   */
+  static final class Cached {
+    final long[] sumYX = new long[LIMB_COUNT];
+    final long[] diffYX = new long[LIMB_COUNT];
+    final long[] coordZ = new long[LIMB_COUNT];
+    final long[] t2d = new long[LIMB_COUNT];
+  }
+
+  static GroupElement identity() {
+    GroupElement identity = new GroupElement();
+    identity.coordY[0] = 1;
+    identity.coordZ[0] = 1;
+    return identity;
+  }
+
+  void set(GroupElement other) {
+    Field25519.copy(coordX, other.coordX);
+    Field25519.copy(coordY, other.coordY);
+    Field25519.copy(coordZ, other.coordZ);
+    Field25519.copy(coordT, other.coordT);
+  }
+
+  /*
+   * Decodes a point as specified in RFC 8032, section 5.1.3.
+   * Returns null if the encoding does not describe a point on the curve. Like Tink and ref10, a
+   * non-canonical y coordinate is reduced instead of rejected.
+   */
+  static GroupElement decode(byte[] s, int offset) {
+    long[] y = Field25519.fromBytes(s, offset);
+    long[] y2 = new long[LIMB_COUNT];
+    long[] u = new long[LIMB_COUNT];
+    long[] v = new long[LIMB_COUNT];
+    Field25519.square(y2, y);
+    Field25519.sub(u, y2, Field25519.one());        // u = y^2 - 1
+    Field25519.mult(v, y2, D);
+    Field25519.add(v, v, Field25519.one());         // v = d * y^2 + 1
+
+    long[] v3 = new long[LIMB_COUNT];
+    long[] x = new long[LIMB_COUNT];
+    Field25519.square(v3, v);
+    Field25519.mult(v3, v3, v);                     // v^3
+    Field25519.square(x, v3);
+    Field25519.mult(x, x, v);
+    Field25519.mult(x, x, u);                       // u * v^7
+    Field25519.pow22523(x, x);                      // (u * v^7)^((p - 5) / 8)
+    Field25519.mult(x, x, v3);
+    Field25519.mult(x, x, u);                       // u * v^3 * (u * v^7)^((p - 5) / 8)
+
+    long[] check = new long[LIMB_COUNT];
+    Field25519.square(check, x);
+    Field25519.mult(check, check, v);
+    if (!Field25519.equal(check, u)) {
+      long[] minusU = new long[LIMB_COUNT];
+      Field25519.negate(minusU, u);
+      if (!Field25519.equal(check, minusU)) {
+        return null;
+      }
+      Field25519.mult(x, x, SQRT_M1);
+    }
+
+    boolean sign = ((s[offset + FIELD_LEN - 1] & 0xff) >> 7) == 1;
+    if (Field25519.isZero(x) && sign) {
+      return null;
+    }
+    if (Field25519.isNegative(x) != sign) {
+      Field25519.negate(x, x);
+    }
+
+    GroupElement point = new GroupElement();
+    Field25519.copy(point.coordX, x);
+    Field25519.copy(point.coordY, y);
+    Field25519.copy(point.coordZ, Field25519.one());
+    Field25519.mult(point.coordT, x, y);
+    return point;
+  }
+
+  void encode(byte[] out, int offset) {
+    long[] inverseZ = new long[LIMB_COUNT];
+    long[] affineX = new long[LIMB_COUNT];
+    long[] affineY = new long[LIMB_COUNT];
+    Field25519.invert(inverseZ, coordZ);
+    Field25519.mult(affineX, coordX, inverseZ);
+    Field25519.mult(affineY, coordY, inverseZ);
+    Field25519.toBytes(out, offset, affineY);
+    if (Field25519.isNegative(affineX)) {
+      out[offset + FIELD_LEN - 1] |= (byte) 0x80;
+    }
+  }
+
+  byte[] encode() {
+    byte[] out = new byte[FIELD_LEN];
+    encode(out, 0);
+    return out;
+  }
+
+  boolean isIdentity() {
+    return Field25519.isZero(coordX) && Field25519.equal(coordY, coordZ);
+  }
+
+  GroupElement negate() {
+    GroupElement negated = new GroupElement();
+    Field25519.negate(negated.coordX, coordX);
+    Field25519.copy(negated.coordY, coordY);
+    Field25519.copy(negated.coordZ, coordZ);
+    Field25519.negate(negated.coordT, coordT);
+    return negated;
+  }
+
+  Cached toCached() {
+    Cached cached = new Cached();
+    Field25519.add(cached.sumYX, coordY, coordX);
+    Field25519.sub(cached.diffYX, coordY, coordX);
+    Field25519.copy(cached.coordZ, coordZ);
+    Field25519.mult(cached.t2d, coordT, D2);
+    return cached;
+  }
+
+  /*
+   * Returns the odd multiples [1]P, [3]P, ..., [2 * count - 1]P in cached form.
+   */
+  Cached[] oddMultiples(int count) {
+    Arithmetic arithmetic = new Arithmetic();
+    Cached[] multiples = new Cached[count];
+    multiples[0] = toCached();
+    GroupElement twice = new GroupElement();
+    arithmetic.dbl(twice, this);
+    Cached twiceCached = twice.toCached();
+    GroupElement current = new GroupElement();
+    current.set(this);
+    for (int i = 1; i < count; i++) {
+      arithmetic.add(current, current, twiceCached);
+      multiples[i] = current.toCached();
+    }
+    return multiples;
+  }
+
+  private static long[] fieldElement(BigInteger value) {
+    return Field25519.fromBytes(Scalar25519.toBytes(value), 0);
+  }
+
+  /*
+   * Point addition and doubling with reusable temporaries (not thread-safe).
+   * Formulas are add-2008-hwcd-3 and dbl-2008-hwcd for a = -1.
+   */
+  static final class Arithmetic {
+    private final long[] tmpA = new long[LIMB_COUNT];
+    private final long[] tmpB = new long[LIMB_COUNT];
+    private final long[] tmpC = new long[LIMB_COUNT];
+    private final long[] tmpD = new long[LIMB_COUNT];
+    private final long[] tmpE = new long[LIMB_COUNT];
+    private final long[] tmpF = new long[LIMB_COUNT];
+    private final long[] tmpG = new long[LIMB_COUNT];
+    private final long[] tmpH = new long[LIMB_COUNT];
+
+    /*
+     * r = p + q. r may be the same object as p.
+     */
+    void add(GroupElement r, GroupElement p, Cached q) {
+      addOrSub(r, p, q.diffYX, q.sumYX, q, false);
+    }
+
+    /*
+     * r = p - q. r may be the same object as p.
+     */
+    void sub(GroupElement r, GroupElement p, Cached q) {
+      addOrSub(r, p, q.sumYX, q.diffYX, q, true);
+    }
+
+    private void addOrSub(GroupElement r, GroupElement p, long[] otherDiffYX, long[] otherSumYX, Cached q, boolean negateT) {
+      Field25519.sub(tmpA, p.coordY, p.coordX);
+      Field25519.mult(tmpA, tmpA, otherDiffYX);                // A = (Y1 - X1) * (Y2 - X2)
+      Field25519.add(tmpB, p.coordY, p.coordX);
+      Field25519.mult(tmpB, tmpB, otherSumYX);                 // B = (Y1 + X1) * (Y2 + X2)
+      Field25519.mult(tmpC, p.coordT, q.t2d);              // C = T1 * 2d * T2
+      if (negateT) {
+        Field25519.negate(tmpC, tmpC);
+      }
+      Field25519.mult(tmpD, p.coordZ, q.coordZ);
+      Field25519.add(tmpD, tmpD, tmpD);                    // D = 2 * Z1 * Z2
+      Field25519.sub(tmpE, tmpB, tmpA);                    // E = B - A
+      Field25519.sub(tmpF, tmpD, tmpC);                    // F = D - C
+      Field25519.add(tmpG, tmpD, tmpC);                    // G = D + C
+      Field25519.add(tmpH, tmpB, tmpA);                    // H = B + A
+      Field25519.mult(r.coordX, tmpE, tmpF);
+      Field25519.mult(r.coordY, tmpG, tmpH);
+      Field25519.mult(r.coordT, tmpE, tmpH);
+      Field25519.mult(r.coordZ, tmpF, tmpG);
+    }
+
+    /*
+     * r = 2 * p. r may be the same object as p.
+     */
+    void dbl(GroupElement r, GroupElement p) {
+      Field25519.square(tmpA, p.coordX);                   // A = X1^2
+      Field25519.square(tmpB, p.coordY);                   // B = Y1^2
+      Field25519.square(tmpC, p.coordZ);
+      Field25519.add(tmpC, tmpC, tmpC);                    // C = 2 * Z1^2
+      Field25519.add(tmpE, p.coordX, p.coordY);
+      Field25519.square(tmpE, tmpE);
+      Field25519.sub(tmpE, tmpE, tmpA);
+      Field25519.sub(tmpE, tmpE, tmpB);                    // E = (X1 + Y1)^2 - A - B
+      Field25519.sub(tmpG, tmpB, tmpA);                    // G = -A + B
+      Field25519.sub(tmpF, tmpG, tmpC);                    // F = G - C
+      Field25519.add(tmpH, tmpA, tmpB);
+      Field25519.negate(tmpH, tmpH);                       // H = -A - B
+      Field25519.mult(r.coordX, tmpE, tmpF);
+      Field25519.mult(r.coordY, tmpG, tmpH);
+      Field25519.mult(r.coordT, tmpE, tmpH);
+      Field25519.mult(r.coordZ, tmpF, tmpG);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.ed25519;
+
+import java.math.BigInteger;
+
+/*
+ * Scalars modulo the group order L = 2^252 + 27742317777372353535851937790883648493 (used internally).
+ * Scalars are 32 byte little-endian arrays, as in RFC 8032.
+ */
+final class Scalar25519 {
+  static final int SCALAR_LEN = 32;
+  static final BigInteger ORDER = BigInteger.ONE.shiftLeft(252)
+      .add(new BigInteger("27742317777372353535851937790883648493"));
+  private static final byte[] ORDER_BYTES = toBytes(ORDER);
+
+  private Scalar25519() {
+  }
+
+  /*
+   * Returns true if the little-endian scalar at s[offset..offset+32) is smaller than L.
+   */
+  static boolean isCanonical(byte[] s, int offset) {
+    for (int i = SCALAR_LEN - 1; i >= 0; i--) {
+      int a = s[offset + i] & 0xff;
+      int b = ORDER_BYTES[i] & 0xff;
+      if (a != b) {
+        return a < b;
+      }
+    }
+    return false;
+  }
+
+  /*
+   * Reduces a little-endian number of any length (typically a 64 byte SHA-512 digest) modulo L.
+   */
+  static byte[] reduce(byte[] s) {
+    return toBytes(fromBytes(s).mod(ORDER));
+  }
+
+  static BigInteger fromBytes(byte[] s) {
+    byte[] bigEndian = new byte[s.length];
+    for (int i = 0; i < s.length; i++) {
+      bigEndian[i] = s[s.length - 1 - i];
+    }
+    return new BigInteger(1, bigEndian);
+  }
+
+  static byte[] toBytes(BigInteger value) {
+    byte[] bigEndian = value.toByteArray();
+    byte[] out = new byte[SCALAR_LEN];
+    for (int i = 0; i < SCALAR_LEN && i < bigEndian.length; i++) {
+      out[i] = bigEndian[bigEndian.length - 1 - i];
+    }
+    return out;
+  }
+
+  /*
+   * Recodes a scalar into a signed sliding window representation: 256 digits that are either zero or
+   * odd with an absolute value of at most maxDigit, such that a = sum(r[i] * 2^i).
+   * maxDigit must be of the form 2^w - 1 and at most 127.
+   */
+  static byte[] slide(byte[] a, int maxDigit) {
+    int window = Integer.bitCount(maxDigit) + 2;
+    byte[] r = new byte[256];
+    for (int i = 0; i < 256; i++) {
+      r[i] = (byte) (1 & (a[i >> 3] >> (i & 7)));
+    }
+
+    for (int i = 0; i < 256; i++) {
+      if (r[i] == 0) {
+        continue;
+      }
+      for (int b = 1; b <= window && i + b < 256; b++) {
+        if (r[i + b] == 0) {
+          continue;
+        }
+        int shifted = r[i + b] << b;
+        if (r[i] + shifted <= maxDigit) {
+          r[i] = (byte) (r[i] + shifted);
+          r[i + b] = 0;
+        } else if (r[i] - shifted >= -maxDigit) {
+          r[i] = (byte) (r[i] - shifted);
+          for (int k = i + b; k < 256; k++) {
+            if (r[k] == 0) {
+              r[k] = 1;
+              break;
+            }
+            r[k] = 0;
+          }
+        } else {
+          break;
+        }
+      }
+    }
+    return r;
+  }
+}
@@ -28,6 +28,8 @@ import static java.nio.charset.StandardCharsets.ISO_8859_1;
 public final class Algorithm {
   static final int KEY_ALGORITHM_LEN = 2;
   private static final byte[] KEY_ALGORITHM = "Ed".getBytes(ISO_8859_1);
+  static final Algorithm ED = new Algorithm(KEY_ALGORITHM);
+
   private final ImmutableByteArray algorithm;
 
   public Algorithm(byte[] algorithm) {
@@ -36,6 +38,17 @@ public final class Algorithm {
     this.algorithm = ImmutableByteArray.of(algorithm);
   }
 
+  /*
+   * Checks the algorithm at the start of a decoded Signify layout without copying it.
+   */
+  static void checkLayout(byte[] layout) {
+    Preconditions.checkArgument(isLayout(layout), "Algorithm must equal 'Ed'");
+  }
+
+  static boolean isLayout(byte[] layout) {
+    return Arrays.equals(layout, 0, KEY_ALGORITHM_LEN, KEY_ALGORITHM, 0, KEY_ALGORITHM_LEN);
+  }
+
   public byte[] getRaw() {
     return algorithm.getBytes();
   }
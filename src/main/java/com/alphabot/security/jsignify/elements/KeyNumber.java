@@ -15,31 +15,61 @@
 package com.alphabot.security.jsignify.elements;
 
 import com.google.common.base.Preconditions;
-import com.google.crypto.tink.subtle.ImmutableByteArray;
-
-import java.util.Arrays;
 
 /*
  * A Signify key number (used internally).
+ * The 8 bytes are kept packed into a long (big-endian), so comparing and hashing key numbers does not
+ * allocate.
  */
 public final class KeyNumber {
   static final int KEY_NUMBER_LEN = 8;
-  private final ImmutableByteArray keyNumber;
+  private final long keyNumber;
 
   public KeyNumber(byte[] keyNumber) {
     Preconditions.checkNotNull(keyNumber, "keyNumber must not be null");
     Preconditions.checkArgument(
         keyNumber.length == KEY_NUMBER_LEN,
         "Key number length must be %s, but was %s.", KEY_NUMBER_LEN, keyNumber.length);
-    this.keyNumber = ImmutableByteArray.of(keyNumber);
+    this.keyNumber = pack(keyNumber, 0);
+  }
+
+  private KeyNumber(long keyNumber) {
+    this.keyNumber = keyNumber;
+  }
+
+  /*
+   * Reads the key number at an offset of a decoded Signify layout without copying it.
+   */
+  static KeyNumber fromLayout(byte[] layout, int offset) {
+    return new KeyNumber(pack(layout, offset));
+  }
+
+  private static long pack(byte[] bytes, int offset) {
+    long packed = 0;
+    for (int i = offset; i < offset + KEY_NUMBER_LEN; i++) {
+      packed = (packed << 8) | (bytes[i] & 0xff);
+    }
+    return packed;
   }
 
   public byte[] getRaw() {
-    return keyNumber.getBytes();
+    byte[] raw = new byte[KEY_NUMBER_LEN];
+    for (int i = 0; i < KEY_NUMBER_LEN; i++) {
+      raw[i] = (byte) (keyNumber >>> (8 * (KEY_NUMBER_LEN - 1 - i)));
+    }
+    return raw;
+  }
+
+  /**
+   * Get the key number as a long, the first byte being the most significant.
+   * @return the packed key number
+   */
+  public long toLong() {
+    return keyNumber;
   }
 
   public boolean isNotEqualTo(KeyNumber otherKeyNumber) {
-    return !Arrays.equals(keyNumber.getBytes(), otherKeyNumber.keyNumber.getBytes());
+    return keyNumber != otherKeyNumber.keyNumber;
   }
 
   @Override
@@ -51,11 +81,11 @@ public final class KeyNumber {
       return false;
     }
     KeyNumber otherKeyNumber = (KeyNumber) o;
-    return Arrays.equals(keyNumber.getBytes(), otherKeyNumber.keyNumber.getBytes());
+    return keyNumber == otherKeyNumber.keyNumber;
   }
 
   @Override
   public int hashCode() {
-    return Arrays.hashCode(keyNumber.getBytes());
+    return Long.hashCode(keyNumber);
   }
 }
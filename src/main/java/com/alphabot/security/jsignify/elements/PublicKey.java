@@ -14,18 +14,19 @@
 
 package com.alphabot.security.jsignify.elements;
 
+import com.alphabot.security.jsignify.common.Base64Decoder;
 import com.alphabot.security.jsignify.common.FileUtil;
 import com.google.common.base.Preconditions;
-import com.google.crypto.tink.subtle.ImmutableByteArray;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.Base64;
 
 import static com.alphabot.security.jsignify.elements.Algorithm.KEY_ALGORITHM_LEN;
 import static com.alphabot.security.jsignify.elements.KeyNumber.KEY_NUMBER_LEN;
 import static com.google.crypto.tink.subtle.Ed25519Verify.PUBLIC_KEY_LEN;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
 /*
  * A Signify public key. (used internally)
@@ -33,38 +34,55 @@ import static com.google.crypto.tink.subtle.Ed25519Verify.PUBLIC_KEY_LEN;
  */
 public final class PublicKey {
   private static final int DECODED_PUBLIC_KEY_LEN = KEY_ALGORITHM_LEN + KEY_NUMBER_LEN + PUBLIC_KEY_LEN;
+  private static final int PUBLIC_KEY_OFFSET = KEY_ALGORITHM_LEN + KEY_NUMBER_LEN;
 
-  private final Algorithm algorithm;
+  /*
+   * The decoded Signify layout: algorithm, key number and Ed25519 public key. It is never handed out, only copies or
+   * read-only views of it.
+   */
+  private final byte[] layout;
   private final KeyNumber keyNumber;
-  private final ImmutableByteArray publicKey;
 
-  private PublicKey(byte[] algorithm, byte[] keyNumber, byte[] publicKey) {
-    this.algorithm = new Algorithm(algorithm);
-    this.keyNumber = new KeyNumber(keyNumber);
-    this.publicKey = ImmutableByteArray.of(publicKey);
+  private PublicKey(byte[] layout) {
+    Algorithm.checkLayout(layout);
+    this.layout = layout;
+    this.keyNumber = KeyNumber.fromLayout(layout, KEY_ALGORITHM_LEN);
   }
 
   public static PublicKey fromBase64String(String base64PublicKey) {
     Preconditions.checkNotNull(base64PublicKey, "base64PublicKey");
-    byte[] decoded = Base64.getDecoder().decode(base64PublicKey);
-    Preconditions.checkArgument(
-        decoded.length == DECODED_PUBLIC_KEY_LEN,
-        "Decoded public key total length must be %s, but was %s.", DECODED_PUBLIC_KEY_LEN, decoded.length);
+    return fromBase64Bytes(ByteBuffer.wrap(base64PublicKey.getBytes(ISO_8859_1)));
+  }
 
-    byte[] algorithm = Arrays.copyOfRange(decoded, 0, KEY_ALGORITHM_LEN);
-    byte[] keyNumber = Arrays.copyOfRange(decoded, KEY_ALGORITHM_LEN, 2 + KEY_NUMBER_LEN);
-    byte[] publicKey = Arrays.copyOfRange(decoded, 10, 10 + PUBLIC_KEY_LEN);
-    return new PublicKey(algorithm, keyNumber, publicKey);
+  /*
+   * Decodes Base64 bytes (e.g. the second line of a Signify file) straight into the 42 byte layout.
+   */
+  public static PublicKey fromBase64Bytes(byte[] base64PublicKey) {
+    Preconditions.checkNotNull(base64PublicKey, "base64PublicKey");
+    return fromBase64Bytes(ByteBuffer.wrap(base64PublicKey));
+  }
+
+  /*
+   * Decodes the remaining Base64 bytes of the buffer straight into the 42 byte layout. The position of the
+   * buffer is not changed.
+   */
+  public static PublicKey fromBase64Bytes(ByteBuffer base64PublicKey) {
+    Preconditions.checkNotNull(base64PublicKey, "base64PublicKey");
+    byte[] layout = new byte[DECODED_PUBLIC_KEY_LEN];
+    int decodedLength = Base64Decoder.decode(base64PublicKey, layout);
+    Preconditions.checkArgument(
+        decodedLength == DECODED_PUBLIC_KEY_LEN,
+        "Decoded public key total length must be %s, but was %s.", DECODED_PUBLIC_KEY_LEN, decodedLength);
+    return new PublicKey(layout);
   }
 
   public static PublicKey fromFile(Path publicKeyFile) throws IOException {
     Preconditions.checkNotNull(publicKeyFile, "publicKeyFile");
-    String base64 = FileUtil.readBase64File(publicKeyFile);
-    return PublicKey.fromBase64String(base64);
+    return fromBase64Bytes(FileUtil.readBase64Bytes(publicKeyFile));
   }
 
   public Algorithm getAlgorithm() {
-    return algorithm;
+    return Algorithm.ED;
   }
 
   public KeyNumber getKeyNumber() {
@@ -72,6 +90,13 @@ public final class PublicKey {
   }
 
   public byte[] getPublicKey() {
-    return publicKey.getBytes();
+    return Arrays.copyOfRange(layout, PUBLIC_KEY_OFFSET, DECODED_PUBLIC_KEY_LEN);
+  }
+
+  /*
+   * A read-only view of the raw Ed25519 public key, which does not copy it.
+   */
+  public ByteBuffer getPublicKeyBuffer() {
+    return ByteBuffer.wrap(layout, PUBLIC_KEY_OFFSET, PUBLIC_KEY_LEN).slice().asReadOnlyBuffer();
   }
 }
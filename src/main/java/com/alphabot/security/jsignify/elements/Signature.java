@@ -14,18 +14,19 @@
 
 package com.alphabot.security.jsignify.elements;
 
+import com.alphabot.security.jsignify.common.Base64Decoder;
 import com.alphabot.security.jsignify.common.FileUtil;
 import com.google.common.base.Preconditions;
-import com.google.crypto.tink.subtle.ImmutableByteArray;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.Arrays;
-import java.util.Base64;
 
 import static com.alphabot.security.jsignify.elements.Algorithm.KEY_ALGORITHM_LEN;
 import static com.alphabot.security.jsignify.elements.KeyNumber.KEY_NUMBER_LEN;
 import static com.google.crypto.tink.subtle.Ed25519Verify.SIGNATURE_LEN;
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
 /*
  * A Signify signature. (used internally)
@@ -33,38 +34,107 @@ import static com.google.crypto.tink.subtle.Ed25519Verify.SIGNATURE_LEN;
  */
 public final class Signature {
   private static final int DECODED_SIGNATURE_LEN = KEY_ALGORITHM_LEN + KEY_NUMBER_LEN + SIGNATURE_LEN;
+  private static final int SIGNATURE_OFFSET = KEY_ALGORITHM_LEN + KEY_NUMBER_LEN;
 
-  private final Algorithm algorithm;
+  /*
+   * The decoded Signify layout: algorithm, key number and Ed25519 signature. It is never handed out, only copies or
+   * read-only views of it.
+   */
+  private final byte[] layout;
   private final KeyNumber keyNumber;
-  private final ImmutableByteArray signature;
 
-  private Signature(byte[] algorithm, byte[] keyNumber, byte[] signature) {
-    this.algorithm = new Algorithm(algorithm);
-    this.keyNumber = new KeyNumber(keyNumber);
-    this.signature = ImmutableByteArray.of(signature);
+  private Signature(byte[] layout) {
+    Algorithm.checkLayout(layout);
+    this.layout = layout;
+    this.keyNumber = KeyNumber.fromLayout(layout, KEY_ALGORITHM_LEN);
   }
 
   public static Signature fromBase64String(String base64Signature) {
     Preconditions.checkNotNull(base64Signature, "base64Signature");
-    byte[] decoded = Base64.getDecoder().decode(base64Signature);
+    return fromBase64Bytes(ByteBuffer.wrap(base64Signature.getBytes(ISO_8859_1)));
+  }
+
+  /*
+   * Like fromBase64String, but returns null instead of throwing in case the signature is in the wrong format.
+   */
+  public static Signature tryFromBase64String(String base64Signature) {
+    Preconditions.checkNotNull(base64Signature, "base64Signature");
+    return tryFromBase64Bytes(ByteBuffer.wrap(base64Signature.getBytes(ISO_8859_1)));
+  }
+
+  /*
+   * Decodes Base64 bytes (e.g. the second line of a Signify file) straight into the 74 byte layout.
+   */
+  public static Signature fromBase64Bytes(byte[] base64Signature) {
+    Preconditions.checkNotNull(base64Signature, "base64Signature");
+    return fromBase64Bytes(ByteBuffer.wrap(base64Signature));
+  }
+
+  /*
+   * Decodes the remaining Base64 bytes of the buffer straight into the 74 byte layout. The position of the
+   * buffer is not changed.
+   */
+  public static Signature fromBase64Bytes(ByteBuffer base64Signature) {
+    Signature signature = tryFromBase64Bytes(base64Signature);
+    return signature != null ? signature : rejectBase64Bytes(base64Signature);
+  }
+
+  /*
+   * Like fromBase64Bytes, but returns null instead of throwing in case the signature is in the wrong format,
+   * so that rejecting garbage does not cost an exception.
+   */
+  public static Signature tryFromBase64Bytes(ByteBuffer base64Signature) {
+    Preconditions.checkNotNull(base64Signature, "base64Signature");
+    byte[] layout = new byte[DECODED_SIGNATURE_LEN];
+    if (Base64Decoder.tryDecode(base64Signature, layout) != DECODED_SIGNATURE_LEN || !Algorithm.isLayout(layout)) {
+      return null;
+    }
+    return new Signature(layout);
+  }
+
+  /*
+   * Decodes a signature rejected by tryFromBase64Bytes again, only to throw the exception that tells why.
+   */
+  private static Signature rejectBase64Bytes(ByteBuffer base64Signature) {
+    byte[] layout = new byte[DECODED_SIGNATURE_LEN];
+    int decodedLength = Base64Decoder.decode(base64Signature, layout);
     Preconditions.checkArgument(
-        decoded.length == DECODED_SIGNATURE_LEN,
-        "Decoded signature total length should be %s, but was %s.", DECODED_SIGNATURE_LEN, decoded.length);
+        decodedLength == DECODED_SIGNATURE_LEN,
+        "Decoded signature total length should be %s, but was %s.", DECODED_SIGNATURE_LEN, decodedLength);
+    Algorithm.checkLayout(layout);
+    throw new IllegalStateException("signature was rejected, but is valid");
+  }
 
-    byte[] algorithm = Arrays.copyOfRange(decoded, 0, KEY_ALGORITHM_LEN);
-    byte[] keyNumber = Arrays.copyOfRange(decoded, KEY_ALGORITHM_LEN, 2 + KEY_NUMBER_LEN);
-    byte[] signature = Arrays.copyOfRange(decoded, 10, 10 + SIGNATURE_LEN);
-    return new Signature(algorithm, keyNumber, signature);
+  /*
+   * Reads the remaining 74 bytes of the buffer as a decoded Signify layout, e.g. a record written from
+   * getLayoutBuffer(). The position of the buffer is not changed.
+   */
+  public static Signature fromLayout(ByteBuffer layout) {
+    Preconditions.checkNotNull(layout, "layout");
+    Preconditions.checkArgument(
+        layout.remaining() == DECODED_SIGNATURE_LEN,
+        "Decoded signature total length should be %s, but was %s.", DECODED_SIGNATURE_LEN, layout.remaining());
+    byte[] copy = new byte[DECODED_SIGNATURE_LEN];
+    layout.duplicate().get(copy);
+    return new Signature(copy);
   }
 
   public static Signature fromFile(Path signatureFile) throws IOException {
     Preconditions.checkNotNull(signatureFile, "signatureFile");
-    String base64 = FileUtil.readBase64File(signatureFile);
-    return Signature.fromBase64String(base64);
+    return fromBase64Bytes(FileUtil.readBase64Bytes(signatureFile));
+  }
+
+  /*
+   * Like fromFile, but returns null instead of throwing in case the file is in the wrong format.
+   */
+  public static Signature tryFromFile(Path signatureFile) throws IOException {
+    Preconditions.checkNotNull(signatureFile, "signatureFile");
+    ByteBuffer base64Signature = FileUtil.tryReadBase64Bytes(signatureFile);
+    return base64Signature == null ? null : tryFromBase64Bytes(base64Signature);
   }
 
   public Algorithm getAlgorithm() {
-    return algorithm;
+    return Algorithm.ED;
   }
 
   public KeyNumber getKeyNumber() {
@@ -72,6 +142,21 @@ public final class Signature {
   }
 
   public byte[] getSignature() {
-    return signature.getBytes();
+    return Arrays.copyOfRange(layout, SIGNATURE_OFFSET, DECODED_SIGNATURE_LEN);
+  }
+
+  /*
+   * A read-only view of the whole 74 byte decoded layout (algorithm, key number and Ed25519 signature), which
+   * does not copy it.
+   */
+  public ByteBuffer getLayoutBuffer() {
+    return ByteBuffer.wrap(layout).asReadOnlyBuffer();
+  }
+
+  /*
+   * A read-only view of the raw Ed25519 signature, which does not copy it.
+   */
+  public ByteBuffer getSignatureBuffer() {
+    return ByteBuffer.wrap(layout, SIGNATURE_OFFSET, SIGNATURE_LEN).slice().asReadOnlyBuffer();
   }
 }
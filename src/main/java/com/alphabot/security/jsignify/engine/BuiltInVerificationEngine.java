@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.engine;
+
+import com.alphabot.security.jsignify.ed25519.Ed25519Verifier;
+
+/**
+ * Verifies with the built-in {@link Ed25519Verifier}, which decodes the public key and precomputes a
+ * table of its multiples once per key. Results are the same as with {@link TinkVerificationEngine}, except
+ * for signatures crafted with a point of small order, which this engine accepts (see {@link Ed25519Verifier}).
+ */
+public final class BuiltInVerificationEngine implements VerificationEngine {
+  @Override
+  public String getName() {
+    return "built-in";
+  }
+
+  @Override
+  public KeyVerifier newKeyVerifier(byte[] publicKey) {
+    return new Ed25519Verifier(publicKey)::verify;
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.engine;
+
+import com.google.common.base.Preconditions;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.X509EncodedKeySpec;
+
+/**
+ * Verifies with the Ed25519 implementation of the JDK (Java 15 and later).
+ * The engine only uses algorithm names, not classes added after Java 11, so it is compiled with the rest
+ * of the library and simply reports itself as not available on older JDKs.
+ *
+ * <p>Unlike the other engines, the JDK rejects public keys whose y coordinate is not encoded canonically
+ * (y >= p). Such keys are never generated by Signify.
+ */
+public final class JdkVerificationEngine implements VerificationEngine {
+  private static final String ALGORITHM = "Ed25519";
+  // DER encoding of SubjectPublicKeyInfo for Ed25519 (RFC 8410), followed by the raw key
+  private static final byte[] X509_PREFIX = {
+      0x30, 0x2a, 0x30, 0x05, 0x06, 0x03, 0x2b, 0x65, 0x70, 0x03, 0x21, 0x00
+  };
+  private static final int PUBLIC_KEY_LEN = 32;
+  // looking up the provider costs more than verifying a short message, so each thread keeps its instance
+  private static final ThreadLocal<Signature> SIGNATURES = ThreadLocal.withInitial(JdkVerificationEngine::newSignature);
+
+  @Override
+  public String getName() {
+    return "jdk";
+  }
+
+  @Override
+  public boolean isAvailable() {
+    try {
+      Signature.getInstance(ALGORITHM);
+      KeyFactory.getInstance(ALGORITHM);
+      return true;
+    } catch (NoSuchAlgorithmException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public KeyVerifier newKeyVerifier(byte[] publicKey) {
+    Preconditions.checkNotNull(publicKey, "publicKey");
+    Preconditions.checkArgument(
+        publicKey.length == PUBLIC_KEY_LEN,
+        "Public key length must be %s, but was %s.", PUBLIC_KEY_LEN, publicKey.length);
+
+    byte[] encoded = new byte[X509_PREFIX.length + PUBLIC_KEY_LEN];
+    System.arraycopy(X509_PREFIX, 0, encoded, 0, X509_PREFIX.length);
+    System.arraycopy(publicKey, 0, encoded, X509_PREFIX.length, PUBLIC_KEY_LEN);
+    PublicKey key;
+    try {
+      key = KeyFactory.getInstance(ALGORITHM).generatePublic(new X509EncodedKeySpec(encoded));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Ed25519 is not available", e);
+    } catch (GeneralSecurityException e) {
+      // like the other engines, accept the key but fail every verification
+      return (signature, message) -> false;
+    }
+
+    return (signature, message) -> {
+      try {
+        Signature verifier = SIGNATURES.get();
+        verifier.initVerify(key);
+        verifier.update(message);
+        return verifier.verify(signature);
+      } catch (GeneralSecurityException e) {
+        return false;
+      }
+    };
+  }
+
+  private static Signature newSignature() {
+    try {
+      return Signature.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("Ed25519 is not available", e);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.engine;
+
+import com.google.crypto.tink.subtle.Ed25519Verify;
+
+import java.security.GeneralSecurityException;
+
+/**
+ * Verifies with Tink's {@link Ed25519Verify}, which decodes the public key again for every signature.
+ */
+public final class TinkVerificationEngine implements VerificationEngine {
+  @Override
+  public String getName() {
+    return "tink";
+  }
+
+  @Override
+  public KeyVerifier newKeyVerifier(byte[] publicKey) {
+    Ed25519Verify verifier = new Ed25519Verify(publicKey);
+    return (signature, message) -> {
+      try {
+        verifier.verify(signature, message);
+        return true;
+      } catch (GeneralSecurityException e) {
+        return false;
+      }
+    };
+  }
+}
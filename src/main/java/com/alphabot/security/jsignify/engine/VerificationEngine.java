@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.engine;
+
+/**
+ * An implementation of Ed25519 signature verification (RFC 8032) that {@code SignifyVerifier} delegates to.
+ * Engines are stateless; everything that depends on the public key belongs to a {@link KeyVerifier}.
+ */
+public interface VerificationEngine {
+  /**
+   * Get a short name of the engine, e.g. for logging.
+   * @return the name of the engine
+   */
+  String getName();
+
+  /**
+   * Check whether the engine can be used in the running JVM.
+   * @return true if the engine is available
+   */
+  default boolean isAvailable() {
+    return true;
+  }
+
+  /**
+   * Prepare the verification of signatures made with one public key.
+   * @param publicKey the raw 32 byte Ed25519 public key
+   * @return a thread-safe verifier bound to the public key
+   * @throws IllegalArgumentException in case the public key has the wrong length
+   */
+  KeyVerifier newKeyVerifier(byte[] publicKey);
+
+  /**
+   * Verifies signatures made with one public key. Implementations must be thread-safe.
+   */
+  interface KeyVerifier {
+    /**
+     * Verify a signature of a message.
+     * @param signature the raw 64 byte Ed25519 signature (R || S)
+     * @param message the signed message
+     * @return true if the signature is valid for the public key of this verifier
+     */
+    boolean verify(byte[] signature, byte[] message);
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.engine;
+
+import com.google.common.base.Preconditions;
+import com.google.crypto.tink.subtle.Hex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Finds the {@link VerificationEngine}s registered with {@link ServiceLoader} and selects the default one.
+ *
+ * <p>On first use every registered engine that is available in the running JVM has to pass a self-test
+ * (the test vectors of RFC 8032 and signatures that must be rejected). The default is the {@code built-in}
+ * engine, the one {@code SignifyVerifier} also uses for streams, files and batches, so every way of verifying
+ * accepts the same signatures. Set the system property {@value #ENGINE_PROPERTY} to the name of another engine
+ * (e.g. {@code tink} or {@code jdk}) or pass an engine to {@code SignifyVerifier} to choose it.
+ *
+ * <p>Setting the property to {@value #FASTEST} makes the fastest engine the default, measured on a few hundred
+ * verifications after a warm-up. The measurement is rough and may pick a different engine on each start, and
+ * the engines differ on inputs that signify never creates (e.g. the JDK engine rejects non-canonically encoded
+ * public keys that the others accept), so this is opt-in.
+ */
+public final class VerificationEngines {
+  /**
+   * System property that selects the default engine by name.
+   */
+  public static final String ENGINE_PROPERTY = "jsignify.engine";
+  /**
+   * Value of {@value #ENGINE_PROPERTY} that selects the fastest usable engine.
+   */
+  public static final String FASTEST = "fastest";
+
+  private static final String BUILT_IN = "built-in";
+  private static final int WARM_UP_VERIFICATIONS = 500;
+  private static final int TIMED_VERIFICATIONS = 200;
+
+  // RFC 8032, section 7.1, tests 1 to 3 (public key, message, signature)
+  private static final String[][] TEST_VECTORS = {
+      {
+          "d75a980182b10ab7d54bfed3c964073a0ee172f3daa62325af021a68f707511a",
+          "",
+          "e5564300c360ac729086e2cc806e828a84877f1eb8e5d974d873e065224901555fb8821590a33bacc61e39701cf9b46bd25bf5f0595bbe24655141438e7a100b"
+      },
+      {
+          "3d4017c3e843895a92b70aa74d1b7ebc9c982ccf2ec4968cc0cd55f12af4660c",
+          "72",
+          "92a009a9f0d4cab8720e820b5f642540a2b27b5416503f8fb3762223ebdb69da085ac1e43e15996e458f3613d0f11d8c387b2eaeb4302aeeb00d291612bb0c00"
+      },
+      {
+          "fc51cd8e6218a1a38da47ed00230f0580816ed13ba3303ac5deb911548908025",
+          "af82",
+          "6291d657deec24024827e69c3abe01a30ce548a284743a445e3680d7db5ac3ac18ff9b538d16f290ae67f760984dc6594a7c15e9716ed28dc027beceea1ec40a"
+      }
+  };
+  // L = 2^252 + 27742317777372353535851937790883648493, little-endian
+  private static final String GROUP_ORDER = "edd3f55c1a631258d69cf7a2def9de1400000000000000000000000000000010";
+
+  private VerificationEngines() {
+  }
+
+  /**
+   * Get the registered engines that are available and passed the self-test, in the order of registration.
+   * @return the usable engines
+   */
+  public static List<VerificationEngine> getEngines() {
+    return Engines.USABLE;
+  }
+
+  /**
+   * Get a usable engine by its name.
+   * @param name the name of the engine, see {@link VerificationEngine#getName()}
+   * @return the engine
+   * @throws IllegalArgumentException in case no usable engine has this name
+   */
+  public static VerificationEngine getEngine(String name) {
+    Preconditions.checkNotNull(name, "name");
+    for (VerificationEngine engine : Engines.USABLE) {
+      if (engine.getName().equals(name)) {
+        return engine;
+      }
+    }
+    throw new IllegalArgumentException("Verification engine '" + name + "' is not available.");
+  }
+
+  /**
+   * Get the engine selected by the system property {@value #ENGINE_PROPERTY}, or else the built-in engine (or
+   * the first usable engine, in case the built-in one did not pass the self-test).
+   * @return the default engine
+   * @throws IllegalArgumentException in case the system property names an engine that is not usable
+   */
+  public static VerificationEngine getDefault() {
+    String name = System.getProperty(ENGINE_PROPERTY);
+    if (name == null) {
+      return Engines.DEFAULT;
+    }
+    return FASTEST.equals(name) ? Fastest.ENGINE : getEngine(name);
+  }
+
+  /*
+   * Returns true if the engine accepts the RFC 8032 test vectors and rejects modified messages and
+   * signatures with a non-reduced S.
+   */
+  static boolean passesSelfTest(VerificationEngine engine) {
+    try {
+      for (String[] vector : TEST_VECTORS) {
+        VerificationEngine.KeyVerifier verifier = engine.newKeyVerifier(Hex.decode(vector[0]));
+        byte[] message = Hex.decode(vector[1]);
+        byte[] signature = Hex.decode(vector[2]);
+        if (!verifier.verify(signature, message)
+            || verifier.verify(signature, append(message, (byte) 0))
+            || verifier.verify(addGroupOrderToS(signature), message)) {
+          return false;
+        }
+      }
+      return true;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  /*
+   * Loaded once, on first use.
+   */
+  private static final class Engines {
+    static final List<VerificationEngine> USABLE = loadUsableEngines();
+    static final VerificationEngine DEFAULT = USABLE.stream()
+        .filter(engine -> engine.getName().equals(BUILT_IN))
+        .findFirst()
+        .orElse(USABLE.get(0));
+  }
+
+  /*
+   * Measured once, on first use, and only if asked for.
+   */
+  private static final class Fastest {
+    static final VerificationEngine ENGINE = selectFastest(Engines.USABLE);
+  }
+
+  private static List<VerificationEngine> loadUsableEngines() {
+    List<VerificationEngine> engines = new ArrayList<>();
+    Iterator<VerificationEngine> iterator = ServiceLoader.load(VerificationEngine.class, VerificationEngines.class.getClassLoader())
+        .iterator();
+    while (iterator.hasNext()) {
+      VerificationEngine engine;
+      try {
+        engine = iterator.next();
+      } catch (ServiceConfigurationError e) {
+        continue;
+      }
+      if (engine.isAvailable() && passesSelfTest(engine)) {
+        engines.add(engine);
+      }
+    }
+    if (engines.isEmpty()) {
+      throw new IllegalStateException("No Ed25519 verification engine passed the self-test");
+    }
+    return Collections.unmodifiableList(engines);
+  }
+
+  private static VerificationEngine selectFastest(List<VerificationEngine> engines) {
+    VerificationEngine fastest = null;
+    long fastestDuration = Long.MAX_VALUE;
+    for (VerificationEngine engine : engines) {
+      long duration = time(engine);
+      if (duration < fastestDuration) {
+        fastest = engine;
+        fastestDuration = duration;
+      }
+    }
+    return fastest;
+  }
+
+  private static long time(VerificationEngine engine) {
+    String[] vector = TEST_VECTORS[2];
+    VerificationEngine.KeyVerifier verifier = engine.newKeyVerifier(Hex.decode(vector[0]));
+    byte[] message = Hex.decode(vector[1]);
+    byte[] signature = Hex.decode(vector[2]);
+    boolean valid = true;
+    for (int i = 0; i < WARM_UP_VERIFICATIONS; i++) {
+      valid &= verifier.verify(signature, message);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < TIMED_VERIFICATIONS; i++) {
+      valid &= verifier.verify(signature, message);
+    }
+    long duration = System.nanoTime() - start;
+    // uses the results, so that the verifications cannot be dropped as dead code
+    return valid ? duration : Long.MAX_VALUE;
+  }
+
+  private static byte[] addGroupOrderToS(byte[] signature) {
+    byte[] order = Hex.decode(GROUP_ORDER);
+    byte[] modified = signature.clone();
+    int carry = 0;
+    for (int i = 0; i < order.length; i++) {
+      int sum = (modified[32 + i] & 0xff) + (order[i] & 0xff) + carry;
+      modified[32 + i] = (byte) sum;
+      carry = sum >> 8;
+    }
+    return modified;
+  }
+
+  private static byte[] append(byte[] bytes, byte last) {
+    byte[] appended = new byte[bytes.length + 1];
+    System.arraycopy(bytes, 0, appended, 0, bytes.length);
+    appended[bytes.length] = last;
+    return appended;
+  }
+}
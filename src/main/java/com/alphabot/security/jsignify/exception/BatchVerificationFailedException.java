@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.exception;
+
+import java.util.List;
+
+/**
+ * Thrown when at least one signature of a batch is invalid.
+ * All other signatures of the batch were verified successfully.
+ */
+@SuppressWarnings("serial")
+public class BatchVerificationFailedException extends VerificationFailedException {
+  private final List<Integer> invalidIndices;
+
+  public BatchVerificationFailedException(List<Integer> invalidIndices) {
+    super("batch verification failed: invalid signatures at indices " + invalidIndices);
+    this.invalidIndices = List.copyOf(invalidIndices);
+  }
+
+  /**
+   * Get the positions of the invalid signatures in the batch, in ascending order.
+   * @return the indices of the invalid signatures
+   */
+  public List<Integer> getInvalidIndices() {
+    return invalidIndices;
+  }
+}
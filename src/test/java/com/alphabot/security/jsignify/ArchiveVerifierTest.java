@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.crypto.tink.subtle.Hex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchiveVerifierTest {
+  @TempDir
+  Path directory;
+
+  private TestSigner signer;
+  private SignifyVerifier verifier;
+  private Path checksumFile;
+  private Path archive;
+
+  @BeforeEach
+  void createSigner() {
+    signer = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    checksumFile = directory.resolve("SHA256.sig");
+    archive = directory.resolve("bundle.jar");
+  }
+
+  @Test
+  void verifyAllEntriesInParallel() throws Exception {
+    byte[] large = new byte[1024 * 1024];
+    new Random(5).nextBytes(large);
+    StringBuilder list = new StringBuilder();
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      zip.putNextEntry(new ZipEntry("lib/"));
+      addEntry(zip, "lib/large.bin", large);
+      list.append(checksumLine("SHA512", "lib/large.bin", large));
+      for (int i = 0; i < 30; i++) {
+        byte[] content = ("entry " + i + "\n").getBytes(UTF_8);
+        addEntry(zip, "entry" + i + ".txt", content);
+        list.append(checksumLine("SHA256", "entry" + i + ".txt", content));
+      }
+    }
+    signer.writeEmbeddedSignature(checksumFile, list.toString().getBytes(UTF_8));
+
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      ChecksumReport report = new ArchiveVerifier(verifier, pool, 2).verify(checksumFile, archive);
+      assertThat(report.isOk()).isTrue();
+      assertThat(report.getEntries()).hasSize(31);
+      assertThat(report.getEntries().get(0).getName()).isEqualTo("lib/large.bin");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void reportMismatchingMissingAndExtraEntries() throws Exception {
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      addEntry(zip, "good.txt", "good".getBytes(UTF_8));
+      addEntry(zip, "changed.txt", "changed".getBytes(UTF_8));
+      addEntry(zip, "extra.txt", "extra".getBytes(UTF_8));
+      zip.putNextEntry(new ZipEntry("missing.txt/"));
+    }
+    String list = checksumLine("SHA256", "good.txt", "good".getBytes(UTF_8))
+        + checksumLine("SHA256", "changed.txt", "original".getBytes(UTF_8))
+        + checksumLine("SHA512", "missing.txt", "missing".getBytes(UTF_8));
+    signer.writeEmbeddedSignature(checksumFile, list.getBytes(UTF_8));
+
+    ChecksumReport report = new ArchiveVerifier(verifier).verify(checksumFile, archive);
+
+    assertThat(report.getEntries()).extracting(ChecksumReport.Entry::toString).containsExactly(
+        "good.txt: OK", "changed.txt: MISMATCH", "missing.txt: MISSING", "extra.txt: NOT_LISTED");
+    assertThat(report.isOk()).isFalse();
+  }
+
+  @Test
+  void reportDuplicateEntries() throws Exception {
+    Files.write(archive, zipWithDuplicates());
+    String list = checksumLine("SHA256", "a.txt", "a1".getBytes(UTF_8))
+        + checksumLine("SHA256", "c.txt", "c".getBytes(UTF_8));
+    signer.writeEmbeddedSignature(checksumFile, list.getBytes(UTF_8));
+
+    ChecksumReport report = new ArchiveVerifier(verifier).verify(checksumFile, archive);
+
+    assertThat(report.getEntries()).extracting(ChecksumReport.Entry::toString).containsExactly(
+        "a.txt: DUPLICATE", "c.txt: OK", "b.txt: DUPLICATE");
+    assertThat(report.isOk()).isFalse();
+  }
+
+  @Test
+  void failIfSignatureOfListIsNotValid() throws Exception {
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+      addEntry(zip, "a.txt", "a".getBytes(UTF_8));
+    }
+    signer.writeEmbeddedSignature(checksumFile, checksumLine("SHA256", "a.txt", "a".getBytes(UTF_8)).getBytes(UTF_8));
+    SignifyVerifier otherVerifier = new SignifyVerifier(TestSigner.generate().getBase64PublicKey());
+
+    assertThatThrownBy(() -> new ArchiveVerifier(otherVerifier).verify(checksumFile, archive))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("verification failed: checked against wrong key");
+  }
+
+  @Test
+  void failIfArchiveIsNotZip() throws Exception {
+    Files.write(archive, "not a zip archive".getBytes(UTF_8));
+    signer.writeEmbeddedSignature(checksumFile, checksumLine("SHA256", "a.txt", "a".getBytes(UTF_8)).getBytes(UTF_8));
+
+    assertThatThrownBy(() -> new ArchiveVerifier(verifier).verify(checksumFile, archive))
+        .isInstanceOf(ZipException.class);
+  }
+
+  /*
+   * ZipOutputStream refuses duplicate names, so entries are written with distinct names of the same length
+   * that are renamed in the local headers and the central directory afterwards.
+   */
+  private static byte[] zipWithDuplicates() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+      addEntry(zip, "a.txt", "a1".getBytes(UTF_8));
+      addEntry(zip, "x.txt", "a2".getBytes(UTF_8));
+      addEntry(zip, "c.txt", "c".getBytes(UTF_8));
+      addEntry(zip, "b.txt", "b1".getBytes(UTF_8));
+      addEntry(zip, "y.txt", "b2".getBytes(UTF_8));
+    }
+    byte[] zip = bytes.toByteArray();
+    rename(zip, "x.txt", "a.txt");
+    rename(zip, "y.txt", "b.txt");
+    return zip;
+  }
+
+  private static void rename(byte[] zip, String from, String to) {
+    byte[] pattern = from.getBytes(UTF_8);
+    byte[] replacement = to.getBytes(UTF_8);
+    int renamed = 0;
+    for (int i = 0; i <= zip.length - pattern.length; i++) {
+      if (Arrays.equals(zip, i, i + pattern.length, pattern, 0, pattern.length)) {
+        System.arraycopy(replacement, 0, zip, i, replacement.length);
+        renamed++;
+      }
+    }
+    assertThat(renamed).isEqualTo(2);
+  }
+
+  private static void addEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+    zip.putNextEntry(new ZipEntry(name));
+    zip.write(content);
+    zip.closeEntry();
+  }
+
+  private static String checksumLine(String algorithm, String name, byte[] content) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA256".equals(algorithm) ? "SHA-256" : "SHA-512");
+    return algorithm + " (" + name + ") = " + Hex.encode(digest.digest(content)) + "\n";
+  }
+}
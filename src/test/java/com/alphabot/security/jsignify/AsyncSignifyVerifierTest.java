@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncSignifyVerifierTest {
+  private static final byte[] MESSAGE = "testmessage\n".getBytes(UTF_8);
+
+  @TempDir
+  Path tempDir;
+
+  private TestSigner signer;
+  private SignifyVerifier verifier;
+  private ExecutorService readPool;
+  private ExecutorService cryptoPool;
+  private Path messageFile;
+  private Path signatureFile;
+
+  @BeforeEach
+  void createSignedFile() throws Exception {
+    signer = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    readPool = Executors.newCachedThreadPool();
+    cryptoPool = Executors.newFixedThreadPool(2);
+    messageFile = tempDir.resolve("message.txt");
+    signatureFile = tempDir.resolve("message.txt.sig");
+    Files.write(messageFile, MESSAGE);
+    signer.writeSignature(signatureFile, MESSAGE);
+  }
+
+  @AfterEach
+  void shutdownPools() {
+    readPool.shutdown();
+    cryptoPool.shutdown();
+  }
+
+  @Test
+  void verifyFile() throws Exception {
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, readPool, cryptoPool, 4);
+    assertThat(async.verifyFile(signatureFile, messageFile).get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+    assertThat(async.availableSlots()).isEqualTo(4);
+  }
+
+  @Test
+  void reportFailedVerifications() throws Exception {
+    Path forgedFile = tempDir.resolve("forged.txt");
+    Files.write(forgedFile, "forged\n".getBytes(UTF_8));
+    Path otherKeySignature = tempDir.resolve("other.sig");
+    TestSigner.generate().writeSignature(otherKeySignature, MESSAGE);
+
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, readPool, cryptoPool, 4);
+    assertThat(async.verifyFile(signatureFile, forgedFile).get(10, TimeUnit.SECONDS))
+        .isEqualTo(VerificationResult.BAD_SIGNATURE);
+    assertThat(async.verifyFile(otherKeySignature, messageFile).get(10, TimeUnit.SECONDS))
+        .isEqualTo(VerificationResult.WRONG_KEY);
+    assertThat(async.verifyFile(messageFile, messageFile).get(10, TimeUnit.SECONDS))
+        .isEqualTo(VerificationResult.MALFORMED);
+  }
+
+  @Test
+  void verifyMessageInMemory() throws Exception {
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, readPool, cryptoPool, 4);
+    assertThat(async.verify(signer.sign(MESSAGE), MESSAGE).get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+  }
+
+  @Test
+  void failIfMessageFileIsNotFound() {
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, readPool, cryptoPool, 4);
+    CompletableFuture<VerificationResult> result = async.verifyFile(signatureFile, tempDir.resolve("missing.txt"));
+    assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS))
+        .isExactlyInstanceOf(ExecutionException.class)
+        .hasCauseExactlyInstanceOf(NoSuchFileException.class);
+  }
+
+  @Test
+  void rejectIfTooManyVerificationsArePending() throws Exception {
+    HeldExecutor heldReads = new HeldExecutor();
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, heldReads, cryptoPool, 2);
+    List<CompletableFuture<VerificationResult>> accepted = List.of(
+        async.verifyFile(signatureFile, messageFile), async.verifyFile(signatureFile, messageFile));
+    CompletableFuture<VerificationResult> rejected = async.verifyFile(signatureFile, messageFile);
+
+    assertThatThrownBy(() -> rejected.get(10, TimeUnit.SECONDS))
+        .isExactlyInstanceOf(ExecutionException.class)
+        .hasCauseExactlyInstanceOf(RejectedExecutionException.class)
+        .hasRootCauseMessage("too many pending verifications");
+
+    heldReads.runAll();
+    for (CompletableFuture<VerificationResult> result : accepted) {
+      assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+    }
+    assertThat(async.availableSlots()).isEqualTo(2);
+  }
+
+  @Test
+  void skipStagesOfCancelledVerification() {
+    HeldExecutor heldReads = new HeldExecutor();
+    HeldExecutor heldCrypto = new HeldExecutor();
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, heldReads, heldCrypto, 1);
+    CompletableFuture<VerificationResult> result = async.verifyFile(signatureFile, messageFile);
+
+    result.cancel(true);
+    assertThat(async.availableSlots()).isEqualTo(0);
+    heldReads.runAll();
+    assertThat(heldCrypto.tasks).isEmpty();
+    assertThat(async.availableSlots()).isEqualTo(1);
+  }
+
+  @Test
+  void hashMessageOnCryptoExecutor() throws Exception {
+    byte[] message = new byte[10 * 64 * 1024 + 17];
+    new Random(3).nextBytes(message);
+    Files.write(messageFile, message);
+    signer.writeSignature(signatureFile, message);
+    AtomicInteger readTasks = new AtomicInteger();
+    AtomicInteger cryptoTasks = new AtomicInteger();
+    Executor countingReads = task -> {
+      readTasks.incrementAndGet();
+      readPool.execute(task);
+    };
+    Executor countingCrypto = task -> {
+      cryptoTasks.incrementAndGet();
+      cryptoPool.execute(task);
+    };
+
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, countingReads, countingCrypto, 1);
+    assertThat(async.verifyFile(signatureFile, messageFile).get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+    // the reading pauses while all chunk buffers are in use, and resumes in a new task
+    assertThat(readTasks.get()).isBetween(1, 11);
+    // one task per chunk, and one for the final check
+    assertThat(cryptoTasks.get()).isEqualTo(11 + 1);
+  }
+
+  @Test
+  void holdSlotUntilCancelledVerificationEnds() throws Exception {
+    byte[] message = new byte[10 * 64 * 1024];
+    Files.write(messageFile, message);
+    signer.writeSignature(signatureFile, message);
+    HeldExecutor heldCrypto = new HeldExecutor();
+    AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, readPool, heldCrypto, 1);
+    CompletableFuture<VerificationResult> result = async.verifyFile(signatureFile, messageFile);
+    awaitHeldTask(heldCrypto);
+    // the chunks are hashed one after the other, the reading pauses once all chunk buffers are in use
+    assertThat(heldCrypto.tasks).hasSize(1);
+
+    result.cancel(true);
+    assertThat(async.availableSlots()).isEqualTo(0);
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (async.availableSlots() == 0 && System.nanoTime() < deadline) {
+      heldCrypto.runAll();
+      Thread.sleep(1);
+    }
+    assertThat(async.availableSlots()).isEqualTo(1);
+  }
+
+  @Test
+  void verifyWithOneSmallPoolForReadsAndCrypto() throws Exception {
+    byte[] message = new byte[20 * 64 * 1024];
+    new Random(5).nextBytes(message);
+    Files.write(messageFile, message);
+    signer.writeSignature(signatureFile, message);
+    ExecutorService sharedPool = Executors.newFixedThreadPool(2);
+    try {
+      AsyncSignifyVerifier async = new AsyncSignifyVerifier(verifier, sharedPool, sharedPool, 8);
+      List<CompletableFuture<VerificationResult>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(async.verifyFile(signatureFile, messageFile));
+      }
+      for (CompletableFuture<VerificationResult> result : results) {
+        assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+      }
+      assertThat(async.availableSlots()).isEqualTo(8);
+    } finally {
+      sharedPool.shutdown();
+    }
+  }
+
+  private static void awaitHeldTask(HeldExecutor executor) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (executor.tasks.isEmpty() && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(50);
+  }
+
+  private static final class HeldExecutor implements Executor {
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void execute(Runnable task) {
+      tasks.add(task);
+    }
+
+    void runAll() {
+      for (int held = tasks.size(); held > 0; held--) {
+        tasks.remove().run();
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchingSignifyVerifierTest {
+  private final TestSigner signer = TestSigner.generate();
+  private final SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+
+  @Test
+  void verifyConcurrentRequestsInBatches() throws Exception {
+    ExecutorService callers = Executors.newFixedThreadPool(8);
+    try (BatchingSignifyVerifier batching = new BatchingSignifyVerifier(verifier, 16, 200, TimeUnit.MICROSECONDS)) {
+      List<CompletableFuture<VerificationResult>> results = new ArrayList<>();
+      List<VerificationResult> expected = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        byte[] message = ("message " + i).getBytes(UTF_8);
+        String signature = i % 10 == 3 ? signer.sign("other".getBytes(UTF_8)) : signer.sign(message);
+        expected.add(i % 10 == 3 ? VerificationResult.BAD_SIGNATURE : VerificationResult.OK);
+        results.add(CompletableFuture.supplyAsync(() -> batching.verify(signature, message), callers)
+            .thenCompose(result -> result));
+      }
+
+      for (int i = 0; i < results.size(); i++) {
+        assertThat(results.get(i).get(10, TimeUnit.SECONDS)).isEqualTo(expected.get(i));
+      }
+    } finally {
+      callers.shutdown();
+    }
+  }
+
+  @Test
+  void coalesceRequestsUpToMaxBatchSize() throws Exception {
+    AtomicInteger batches = new AtomicInteger();
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try (BatchingSignifyVerifier batching = new BatchingSignifyVerifier(verifier, task -> {
+      batches.incrementAndGet();
+      pool.execute(task);
+    }, 8, 10, TimeUnit.SECONDS)) {
+      List<CompletableFuture<VerificationResult>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        byte[] message = ("message " + i).getBytes(UTF_8);
+        results.add(batching.verify(Signature.fromBase64String(signer.sign(message)), message));
+      }
+
+      for (CompletableFuture<VerificationResult> result : results) {
+        assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+      }
+      assertThat(batches.get()).isEqualTo(1);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void dispatchIncompleteBatchAfterMaxWait() throws Exception {
+    try (BatchingSignifyVerifier batching = new BatchingSignifyVerifier(verifier, 64, 1, TimeUnit.MILLISECONDS)) {
+      byte[] message = "single".getBytes(UTF_8);
+      assertThat(batching.verify(signer.sign(message), message).get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+    }
+  }
+
+  @Test
+  void reportWrongKeyAndMalformedSignatures() throws Exception {
+    try (BatchingSignifyVerifier batching = new BatchingSignifyVerifier(verifier, 4, 1, TimeUnit.MILLISECONDS)) {
+      byte[] message = "message".getBytes(UTF_8);
+      assertThat(batching.verify(TestSigner.generate().sign(message), message).get(10, TimeUnit.SECONDS))
+          .isEqualTo(VerificationResult.WRONG_KEY);
+      assertThat(batching.verify("RWSvK/", message).get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.MALFORMED);
+    }
+  }
+
+  @Test
+  void rejectRequestsBeyondMaxPending() throws Exception {
+    byte[] message = "message".getBytes(UTF_8);
+    Signature signature = Signature.fromBase64String(signer.sign(message));
+    BlockingQueue<Runnable> heldBatches = new LinkedBlockingQueue<>();
+    try (BatchingSignifyVerifier batching = new BatchingSignifyVerifier(verifier, heldBatches::add, 1, 0, TimeUnit.SECONDS, 2)) {
+      CompletableFuture<VerificationResult> first = batching.verify(signature, message);
+      CompletableFuture<VerificationResult> second = batching.verify(signature, message);
+
+      assertThat(batching.availableSlots()).isZero();
+      assertThatThrownBy(() -> batching.verify(signature, message).get())
+          .isExactlyInstanceOf(ExecutionException.class)
+          .hasCauseExactlyInstanceOf(RejectedExecutionException.class)
+          .hasMessageEndingWith("too many pending verifications");
+
+      heldBatches.take().run();
+      heldBatches.take().run();
+      assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+      assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+      assertThat(batching.availableSlots()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void flushQueuedRequestsOnCloseAndRejectLaterOnes() throws Exception {
+    byte[] message = "message".getBytes(UTF_8);
+    BatchingSignifyVerifier batching = new BatchingSignifyVerifier(verifier, 64, 10, TimeUnit.SECONDS);
+    CompletableFuture<VerificationResult> queued = batching.verify(signer.sign(message), message);
+    batching.close();
+
+    assertThat(queued.get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+    assertThatThrownBy(() -> batching.verify(signer.sign(message), message).get())
+        .isExactlyInstanceOf(ExecutionException.class)
+        .hasCauseExactlyInstanceOf(RejectedExecutionException.class);
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingSignifyVerifierTest {
+  private static final byte[] MESSAGE = "testmessage\n".getBytes(UTF_8);
+  private static final FileTime SETTLED = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+
+  @TempDir
+  Path tempDir;
+
+  private TestSigner signer;
+  private CachingSignifyVerifier verifier;
+  private Path messageFile;
+  private Path signatureFile;
+
+  @BeforeEach
+  void createSignedFile() throws Exception {
+    signer = TestSigner.generate();
+    verifier = new CachingSignifyVerifier(new SignifyVerifier(signer.getBase64PublicKey()), 16);
+    messageFile = tempDir.resolve("message.txt");
+    signatureFile = tempDir.resolve("message.txt.sig");
+    Files.write(messageFile, MESSAGE);
+    Files.setLastModifiedTime(messageFile, SETTLED);
+    signer.writeSignature(signatureFile, MESSAGE);
+  }
+
+  @Test
+  void verifyUnchangedFileOnce() throws Exception {
+    verifier.verifyFile(signatureFile, messageFile);
+    verifier.verifyFile(signatureFile, messageFile);
+    assertThat(verifier.tryVerifyFile(signatureFile, messageFile)).isEqualTo(VerificationResult.OK);
+
+    assertThat(verifier.stats().loadCount()).isEqualTo(1);
+    assertThat(verifier.stats().hitCount()).isEqualTo(2);
+  }
+
+  @Test
+  void verifyAgainAfterFileChanged() throws Exception {
+    verifier.verifyFile(signatureFile, messageFile);
+    Files.write(messageFile, "forged".getBytes(UTF_8));
+    Files.setLastModifiedTime(messageFile, FileTime.fromMillis(SETTLED.toMillis() + 1000));
+
+    assertThatThrownBy(() -> verifier.verifyFile(signatureFile, messageFile))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+    assertThat(verifier.stats().loadCount()).isEqualTo(2);
+  }
+
+  @Test
+  void doNotCacheRecentlyModifiedFile() throws Exception {
+    Files.setLastModifiedTime(messageFile, FileTime.fromMillis(System.currentTimeMillis()));
+
+    verifier.verifyFile(signatureFile, messageFile);
+    verifier.verifyFile(signatureFile, messageFile);
+    assertThat(verifier.stats().loadCount()).isEqualTo(2);
+  }
+
+  @Test
+  void collapseConcurrentVerifications() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<VerificationResult>> results = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        results.add(pool.submit(() -> {
+          start.await();
+          return verifier.tryVerifyFile(signatureFile, messageFile);
+        }));
+      }
+      start.countDown();
+
+      for (Future<VerificationResult> result : results) {
+        assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(VerificationResult.OK);
+      }
+      assertThat(verifier.stats().loadCount()).isEqualTo(1);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void cacheSignaturesSeparately() throws Exception {
+    Path otherKeySignature = tempDir.resolve("other.sig");
+    TestSigner.generate().writeSignature(otherKeySignature, MESSAGE);
+
+    verifier.verifyFile(signatureFile, messageFile);
+    assertThat(verifier.tryVerifyFile(otherKeySignature, messageFile)).isEqualTo(VerificationResult.WRONG_KEY);
+    assertThat(verifier.tryVerifyFile(messageFile, messageFile)).isEqualTo(VerificationResult.MALFORMED);
+  }
+
+  @Test
+  void evictLeastRecentlyUsedResults() throws Exception {
+    Path otherFile = tempDir.resolve("other.txt");
+    Path otherSignature = tempDir.resolve("other.txt.sig");
+    Files.write(otherFile, MESSAGE);
+    Files.setLastModifiedTime(otherFile, SETTLED);
+    signer.writeSignature(otherSignature, MESSAGE);
+
+    CachingSignifyVerifier single = new CachingSignifyVerifier(new SignifyVerifier(signer.getBase64PublicKey()), 1);
+    single.verifyFile(signatureFile, messageFile);
+    single.verifyFile(otherSignature, otherFile);
+    single.verifyFile(signatureFile, messageFile);
+    assertThat(single.stats().loadCount()).isEqualTo(3);
+  }
+
+  @Test
+  void takeResultFromLedgerAfterRestart() throws Exception {
+    Path ledgerFile = tempDir.resolve("ledger");
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      new CachingSignifyVerifier(new SignifyVerifier(signer.getBase64PublicKey()), 16, ledger)
+          .verifyFile(signatureFile, messageFile);
+    }
+    // same size, modification time and inode: only a changed file identity is noticed, so this is not read again
+    Files.write(messageFile, "forgedmessa\n".getBytes(UTF_8));
+    Files.setLastModifiedTime(messageFile, SETTLED);
+
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      CachingSignifyVerifier restarted = new CachingSignifyVerifier(new SignifyVerifier(signer.getBase64PublicKey()), 16, ledger);
+      assertThat(restarted.tryVerifyFile(signatureFile, messageFile)).isEqualTo(VerificationResult.OK);
+      assertThat(verifier.tryVerifyFile(signatureFile, messageFile)).isEqualTo(VerificationResult.BAD_SIGNATURE);
+    }
+  }
+
+  @Test
+  void failIfMessageFileIsNotFound() {
+    assertThatThrownBy(() -> verifier.verifyFile(signatureFile, tempDir.resolve("missing.txt")))
+        .isExactlyInstanceOf(NoSuchFileException.class);
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.crypto.tink.subtle.Hex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChecksumListVerifierTest {
+  @TempDir
+  Path directory;
+
+  private TestSigner signer;
+  private SignifyVerifier verifier;
+
+  @BeforeEach
+  void createSigner() {
+    signer = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+  }
+
+  @Test
+  void verifyAllListedFiles() throws Exception {
+    StringBuilder list = new StringBuilder();
+    for (int i = 0; i < 40; i++) {
+      list.append(checksumLine(i % 2 == 0 ? "SHA256" : "SHA512", "file" + i + ".txt", "content " + i));
+    }
+    Path checksumFile = writeChecksumList(list.toString());
+
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      ChecksumReport report = new ChecksumListVerifier(verifier, pool, 2).verify(checksumFile);
+      assertThat(report.isOk()).isTrue();
+      assertThat(report.getEntries()).hasSize(40);
+      assertThat(report.getEntries().get(7).getName()).isEqualTo("file7.txt");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void verifyFromTheOnlyThreadOfThePool() throws Exception {
+    StringBuilder list = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      list.append(checksumLine("SHA256", "file" + i + ".txt", "content " + i));
+    }
+    Path checksumFile = writeChecksumList(list.toString());
+
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      ChecksumListVerifier poolVerifier = new ChecksumListVerifier(verifier, pool, 2);
+      ChecksumReport report = pool.submit(() -> poolVerifier.verify(checksumFile)).get(30, TimeUnit.SECONDS);
+      assertThat(report.isOk()).isTrue();
+      assertThat(report.getEntries()).hasSize(10);
+      assertThat(report.getEntries().get(3).getName()).isEqualTo("file3.txt");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  void reportMismatchingAndMissingFiles() throws Exception {
+    String list = checksumLine("SHA256", "good.txt", "good")
+        + checksumLine("SHA256", "changed.txt", "original")
+        + checksumLine("SHA512", "missing.txt", "missing");
+    Files.write(directory.resolve("changed.txt"), "changed".getBytes(UTF_8));
+    Files.delete(directory.resolve("missing.txt"));
+    Path checksumFile = writeChecksumList(list);
+
+    ChecksumReport report = new ChecksumListVerifier(verifier).verify(checksumFile);
+    assertThat(report.isOk()).isFalse();
+    assertThat(report.getEntries()).extracting(ChecksumReport.Entry::getStatus).containsExactly(
+        ChecksumReport.Status.OK, ChecksumReport.Status.MISMATCH, ChecksumReport.Status.MISSING);
+    assertThat(report.getFailures()).extracting(ChecksumReport.Entry::getName).containsExactly("changed.txt", "missing.txt");
+  }
+
+  @Test
+  void verifyRequestedFilesOnly() throws Exception {
+    String list = checksumLine("SHA256", "a.txt", "a")
+        + checksumLine("SHA256", "b.txt", "b")
+        + checksumLine("SHA256", "name (with) = parentheses.txt", "c");
+    Files.write(directory.resolve("b.txt"), "changed".getBytes(UTF_8));
+    Path checksumFile = writeChecksumList(list);
+
+    ChecksumReport report = new ChecksumListVerifier(verifier)
+        .verify(checksumFile, directory, List.of("name (with) = parentheses.txt", "a.txt", "unknown.txt"));
+    assertThat(report.getEntries()).extracting(ChecksumReport.Entry::toString).containsExactly(
+        "a.txt: OK", "name (with) = parentheses.txt: OK", "unknown.txt: NOT_LISTED");
+  }
+
+  @Test
+  void takeDigestsOfUnchangedFilesFromLedger() throws Exception {
+    Path checksumFile = writeChecksumList(checksumLine("SHA256", "a.txt", "a") + checksumLine("SHA512", "b.txt", "b"));
+    FileTime settled = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    Files.setLastModifiedTime(directory.resolve("a.txt"), settled);
+    Files.setLastModifiedTime(directory.resolve("b.txt"), settled);
+
+    try (VerificationLedger ledger = VerificationLedger.open(directory.resolve("ledger"))) {
+      ChecksumListVerifier ledgerVerifier = new ChecksumListVerifier(verifier, ForkJoinPool.commonPool(), 2, ledger);
+      assertThat(ledgerVerifier.verify(checksumFile).isOk()).isTrue();
+      assertThat(ledger.size()).isEqualTo(2);
+
+      // same size and modification time: the recorded digest is used instead of reading the file
+      Files.write(directory.resolve("a.txt"), "x".getBytes(UTF_8));
+      Files.setLastModifiedTime(directory.resolve("a.txt"), settled);
+      Files.write(directory.resolve("b.txt"), "changed".getBytes(UTF_8));
+      assertThat(ledgerVerifier.verify(checksumFile).getEntries()).extracting(ChecksumReport.Entry::toString)
+          .containsExactly("a.txt: OK", "b.txt: MISMATCH");
+    }
+  }
+
+  @Test
+  void failIfChecksumListIsModified() throws Exception {
+    Path checksumFile = writeChecksumList(checksumLine("SHA256", "a.txt", "a"));
+    Files.write(checksumFile, checksumLine("SHA256", "b.txt", "b").getBytes(UTF_8), StandardOpenOption.APPEND);
+
+    assertThatThrownBy(() -> new ChecksumListVerifier(verifier).verify(checksumFile))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+  }
+
+  @Test
+  void acceptWindowsLineEndingsAndTrailingWhitespace() throws Exception {
+    String list = checksumLine("SHA256", "a.txt", "a").replace("\n", " \r\n")
+        + "\r\n"
+        + checksumLine("SHA512", "b.txt", "b").replace("\n", "\r\n");
+    Path checksumFile = writeChecksumList(list);
+
+    ChecksumReport report = new ChecksumListVerifier(verifier).verify(checksumFile);
+    assertThat(report.isOk()).isTrue();
+    assertThat(report.getEntries()).extracting(ChecksumReport.Entry::getName).containsExactly("a.txt", "b.txt");
+  }
+
+  @Test
+  void failIfLineIsMalformed() throws Exception {
+    Path checksumFile = writeChecksumList(checksumLine("SHA256", "a.txt", "a") + "MD5 (b.txt) = 00\n");
+
+    assertThatThrownBy(() -> new ChecksumListVerifier(verifier).verify(checksumFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("invalid line 2 in checksum list ");
+  }
+
+  @Test
+  void failIfSignatureIsMissing() throws Exception {
+    Path checksumFile = directory.resolve("SHA256");
+    Files.write(checksumFile, checksumLine("SHA256", "a.txt", "a").getBytes(UTF_8));
+
+    assertThatThrownBy(() -> new ChecksumListVerifier(verifier).verify(checksumFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessageEndingWith("; must start with 'untrusted comment: ' and a signature line");
+  }
+
+  private Path writeChecksumList(String list) throws Exception {
+    Path checksumFile = directory.resolve("SHA256.sig");
+    signer.writeEmbeddedSignature(checksumFile, list.getBytes(UTF_8));
+    return checksumFile;
+  }
+
+  private String checksumLine(String algorithm, String name, String content) throws Exception {
+    Files.write(directory.resolve(name), content.getBytes(UTF_8));
+    MessageDigest digest = MessageDigest.getInstance("SHA256".equals(algorithm) ? "SHA-256" : "SHA-512");
+    return algorithm + " (" + name + ") = " + Hex.encode(digest.digest(content.getBytes(UTF_8))) + "\n";
+  }
+}
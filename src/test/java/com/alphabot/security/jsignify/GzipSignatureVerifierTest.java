@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class GzipSignatureVerifierTest {
+  private static final int BLOCK_SIZE = 4096;
+
+  private TestSigner signer;
+  private ExecutorService executor;
+  private GzipSignatureVerifier verifier;
+
+  @BeforeEach
+  void createVerifier() {
+    signer = TestSigner.generate();
+    executor = Executors.newFixedThreadPool(3);
+    verifier = new GzipSignatureVerifier(new SignifyVerifier(signer.getBase64PublicKey()), executor, 4);
+  }
+
+  @AfterEach
+  void shutdownExecutor() {
+    executor.shutdown();
+  }
+
+  @Test
+  void verifyAndDecompress() throws Exception {
+    byte[] content = randomContent(300_000);
+    byte[] signed = signer.signGzip(gzip(content), BLOCK_SIZE);
+
+    try (InputStream in = verifier.verify(new ByteArrayInputStream(signed))) {
+      assertThat(in.readAllBytes()).isEqualTo(content);
+    }
+  }
+
+  @Test
+  void verifyWithDefaultBlockSizeAndPool() throws Exception {
+    byte[] content = "a small signed file\n".getBytes(UTF_8);
+    byte[] signed = signer.signGzip(gzip(content), 64 * 1024);
+
+    GzipSignatureVerifier defaultVerifier = new GzipSignatureVerifier(new SignifyVerifier(signer.getBase64PublicKey()));
+    try (InputStream in = defaultVerifier.verify(new ByteArrayInputStream(signed))) {
+      assertThat(in.readAllBytes()).isEqualTo(content);
+    }
+  }
+
+  @Test
+  void failIfBlockIsModified() throws Exception {
+    byte[] signed = signer.signGzip(gzip(randomContent(300_000)), BLOCK_SIZE);
+    signed[signed.length - 5 * BLOCK_SIZE] ^= 1;
+
+    InputStream in = verifier.verify(new ByteArrayInputStream(signed));
+    assertThatThrownBy(in::readAllBytes)
+        .isExactlyInstanceOf(IOException.class)
+        .hasMessageMatching("verification failed: block \\d+ does not match its signed hash")
+        .hasCauseExactlyInstanceOf(VerificationFailedException.class);
+  }
+
+  @Test
+  void failIfDataIsTruncated() throws Exception {
+    byte[] compressed = gzip(randomContent(300_000));
+    byte[] signed = signer.signGzip(compressed, BLOCK_SIZE);
+    int payloadStart = signed.length - (compressed.length - 10);
+    byte[] truncated = Arrays.copyOf(signed, payloadStart + 3 * BLOCK_SIZE);
+
+    InputStream in = verifier.verify(new ByteArrayInputStream(truncated));
+    assertThatThrownBy(in::readAllBytes)
+        .isExactlyInstanceOf(IOException.class)
+        .hasMessageStartingWith("verification failed: data ends after 3 of ")
+        .hasCauseExactlyInstanceOf(VerificationFailedException.class);
+  }
+
+  @Test
+  void failIfDataIsAppended() throws Exception {
+    byte[] signed = signer.signGzip(gzip(randomContent(10_000)), BLOCK_SIZE);
+    byte[] appended = Arrays.copyOf(signed, signed.length + BLOCK_SIZE);
+
+    InputStream in = verifier.verify(new ByteArrayInputStream(appended));
+    assertThatThrownBy(in::readAllBytes)
+        .isExactlyInstanceOf(IOException.class)
+        .hasMessage("verification failed: more data than signed blocks");
+  }
+
+  @Test
+  void failIfSignedHeaderIsModified() throws Exception {
+    byte[] signed = signer.signGzip(gzip(randomContent(10_000)), BLOCK_SIZE);
+    String text = new String(signed, 0, 400, UTF_8);
+    signed[text.indexOf("blocksize=") + "blocksize=".length()] = '8';
+
+    assertThatThrownBy(() -> verifier.verify(new ByteArrayInputStream(signed)))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+  }
+
+  @Test
+  void failIfFileHasMoreBlocksThanAllowed() throws Exception {
+    byte[] signed = signer.signGzip(gzip(randomContent(300_000)), BLOCK_SIZE);
+    GzipSignatureVerifier limited = new GzipSignatureVerifier(new SignifyVerifier(signer.getBase64PublicKey()), executor, 4, 4);
+
+    assertThatThrownBy(() -> limited.verify(new ByteArrayInputStream(signed)))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("signed gzip header has more than 4 blocks");
+  }
+
+  @Test
+  void skipFileNameInHeader() throws Exception {
+    byte[] content = randomContent(10_000);
+    byte[] signed = withFileName(signer.signGzip(gzip(content), BLOCK_SIZE), "content.txt");
+
+    try (InputStream in = verifier.verify(new ByteArrayInputStream(signed))) {
+      assertThat(in.readAllBytes()).isEqualTo(content);
+    }
+  }
+
+  @Test
+  void failIfFileNameIsTooLong() throws Exception {
+    byte[] signed = withFileName(signer.signGzip(gzip(randomContent(100)), BLOCK_SIZE), "a".repeat(4097));
+
+    assertThatThrownBy(() -> verifier.verify(new ByteArrayInputStream(signed)))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("gzip header file name is longer than 4096 bytes");
+  }
+
+  @Test
+  void failIfGzipHasNoSignature() throws Exception {
+    byte[] plain = gzip(randomContent(100));
+
+    assertThatThrownBy(() -> verifier.verify(new ByteArrayInputStream(plain)))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("gzip header has no comment with a signature");
+  }
+
+  @Test
+  void failIfNotGzip() {
+    assertThatThrownBy(() -> verifier.verify(new ByteArrayInputStream("no gzip".getBytes(UTF_8))))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("not a gzip file with deflate compression");
+  }
+
+  static byte[] randomContent(int length) {
+    // compressible, but not trivially
+    byte[] content = new byte[length];
+    Random random = new Random(length);
+    for (int i = 0; i < length; i++) {
+      content[i] = (byte) ('a' + random.nextInt(8));
+    }
+    return content;
+  }
+
+  static byte[] gzip(byte[] content) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(content);
+    }
+    return out.toByteArray();
+  }
+
+  /*
+   * Adds a file name (FNAME) in front of the comment of a signed gzip file, as gzip does for a named file.
+   */
+  private static byte[] withFileName(byte[] signed, String name) {
+    byte[] field = (name + "\0").getBytes(UTF_8);
+    byte[] named = new byte[signed.length + field.length];
+    System.arraycopy(signed, 0, named, 0, 10);
+    named[3] |= 0x08;
+    System.arraycopy(field, 0, named, 10, field.length);
+    System.arraycopy(signed, 10, named, 10 + field.length, signed.length - 10);
+    return named;
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import com.google.crypto.tink.subtle.Hex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ManifestIndexTest {
+  @TempDir
+  Path directory;
+
+  private TestSigner signer;
+  private SignifyVerifier verifier;
+  private Path checksumFile;
+
+  @BeforeEach
+  void createSigner() {
+    signer = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    checksumFile = directory.resolve("SHA256.sig");
+  }
+
+  @Test
+  void lookUpListedDigests() throws Exception {
+    StringBuilder list = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      list.append(checksumLine(i % 3 == 0 ? "SHA512" : "SHA256", "packages/file" + i + ".tgz", "content " + i));
+    }
+    list.append('\n').append(checksumLine("SHA256", "odd) = name (x).tgz", "odd"));
+    signer.writeEmbeddedSignature(checksumFile, list.toString().getBytes(UTF_8));
+
+    ManifestIndex index = new ManifestIndex(verifier, checksumFile);
+
+    assertThat(index.size()).isEqualTo(1001);
+    assertThat(index.getDigest("packages/file7.tgz")).isEqualTo(digest("SHA256", "content 7"));
+    assertThat(index.getDigest("packages/file9.tgz")).isEqualTo(digest("SHA512", "content 9"));
+    assertThat(index.getDigest("odd) = name (x).tgz")).isEqualTo(digest("SHA256", "odd"));
+    assertThat(index.getDigest("packages/file1000.tgz")).isNull();
+    assertThat(index.getDigest("packages/file7.tg")).isNull();
+    assertThat(index.getDigest("packages/file7.tgz)")).isNull();
+    assertThat(index.getDigest("odd")).isNull();
+  }
+
+  @Test
+  void checkSingleFiles() throws Exception {
+    String list = checksumLine("SHA256", "good.txt", "good")
+        + checksumLine("SHA512", "changed.txt", "original")
+        + checksumLine("SHA256", "missing.txt", "missing");
+    signer.writeEmbeddedSignature(checksumFile, list.getBytes(UTF_8));
+    Files.write(directory.resolve("good.txt"), "good".getBytes(UTF_8));
+    Files.write(directory.resolve("changed.txt"), "changed".getBytes(UTF_8));
+
+    ManifestIndex index = new ManifestIndex(verifier, checksumFile);
+
+    assertThat(index.check("good.txt", directory.resolve("good.txt"))).isEqualTo(ChecksumReport.Status.OK);
+    assertThat(index.check("changed.txt", directory.resolve("changed.txt"))).isEqualTo(ChecksumReport.Status.MISMATCH);
+    assertThat(index.check("missing.txt", directory.resolve("missing.txt"))).isEqualTo(ChecksumReport.Status.MISSING);
+    assertThat(index.check("other.txt", directory.resolve("good.txt"))).isEqualTo(ChecksumReport.Status.NOT_LISTED);
+  }
+
+  @Test
+  void rebuildOnlyIfSignatureChanges() throws Exception {
+    byte[] list = checksumLine("SHA256", "a.txt", "a").getBytes(UTF_8);
+    signer.writeEmbeddedSignature(checksumFile, list);
+    ManifestIndex index = new ManifestIndex(verifier, checksumFile);
+    assertThat(index.refresh()).isFalse();
+
+    // the same list with another comment, moved into place
+    String signatureLine = Files.readAllLines(checksumFile, UTF_8).get(1);
+    replaceChecksumFile(("untrusted comment: another comment\n" + signatureLine + "\n").getBytes(UTF_8), list);
+    assertThat(index.refresh()).isFalse();
+    assertThat(index.getDigest("a.txt")).isEqualTo(digest("SHA256", "a"));
+
+    Path next = directory.resolve("next.sig");
+    signer.writeEmbeddedSignature(next, checksumLine("SHA256", "b.txt", "b").getBytes(UTF_8));
+    Files.move(next, checksumFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.setLastModifiedTime(checksumFile, FileTime.fromMillis(1000));
+    assertThat(index.refresh()).isTrue();
+    assertThat(index.getDigest("a.txt")).isNull();
+    assertThat(index.getDigest("b.txt")).isEqualTo(digest("SHA256", "b"));
+  }
+
+  @Test
+  void becomeUnusableIfChangedListFailsVerification() throws Exception {
+    signer.writeEmbeddedSignature(checksumFile, checksumLine("SHA256", "a.txt", "a").getBytes(UTF_8));
+    ManifestIndex index = new ManifestIndex(verifier, checksumFile);
+
+    forgeLastDigitInPlace();
+
+    assertThatThrownBy(index::refresh)
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+    assertThatThrownBy(() -> index.getDigest("a.txt"))
+        .isExactlyInstanceOf(IllegalStateException.class)
+        .hasMessage("the last refresh of the manifest index failed");
+  }
+
+  @Test
+  void failIfSignatureIsNotValid() throws Exception {
+    signer.writeEmbeddedSignature(checksumFile, checksumLine("SHA256", "a.txt", "a").getBytes(UTF_8));
+    SignifyVerifier otherVerifier = new SignifyVerifier(TestSigner.generate().getBase64PublicKey());
+
+    assertThatThrownBy(() -> new ManifestIndex(otherVerifier, checksumFile))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("verification failed: checked against wrong key");
+  }
+
+  @Test
+  void acceptWindowsLineEndingsAndTrailingWhitespace() throws Exception {
+    String list = checksumLine("SHA256", "a.txt", "a").replace("\n", " \r\n")
+        + "\r\n"
+        + checksumLine("SHA512", "b.txt", "b").replace("\n", "\r\n");
+    signer.writeEmbeddedSignature(checksumFile, list.getBytes(UTF_8));
+
+    ManifestIndex index = new ManifestIndex(verifier, checksumFile);
+
+    assertThat(index.size()).isEqualTo(2);
+    assertThat(index.getDigest("a.txt")).isEqualTo(digest("SHA256", "a"));
+    assertThat(index.getDigest("b.txt")).isEqualTo(digest("SHA512", "b"));
+  }
+
+  @Test
+  void failIfLineIsInvalid() throws Exception {
+    String list = checksumLine("SHA256", "a.txt", "a") + "SHA256 (b.txt) = 1234\n";
+    signer.writeEmbeddedSignature(checksumFile, list.getBytes(UTF_8));
+
+    assertThatThrownBy(() -> new ManifestIndex(verifier, checksumFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid line 2 in checksum list " + checksumFile.toAbsolutePath());
+  }
+
+  @Test
+  void failIfSignatureIsMissing() throws Exception {
+    Files.write(checksumFile, checksumLine("SHA256", "a.txt", "a").getBytes(UTF_8));
+
+    assertThatThrownBy(() -> new ManifestIndex(verifier, checksumFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessageEndingWith("; must start with 'untrusted comment: ' and a signature line");
+  }
+
+  private void forgeLastDigitInPlace() throws Exception {
+    byte[] forged = Files.readAllBytes(checksumFile);
+    forged[forged.length - 2] = (byte) (forged[forged.length - 2] == '0' ? '1' : '0');
+    Files.write(checksumFile, forged);
+    Files.setLastModifiedTime(checksumFile, FileTime.fromMillis(1000));
+  }
+
+  private void replaceChecksumFile(byte[] header, byte[] list) throws Exception {
+    Path next = directory.resolve("next.sig");
+    byte[] content = new byte[header.length + list.length];
+    System.arraycopy(header, 0, content, 0, header.length);
+    System.arraycopy(list, 0, content, header.length, list.length);
+    Files.write(next, content);
+    Files.move(next, checksumFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Files.setLastModifiedTime(checksumFile, FileTime.fromMillis(0));
+  }
+
+  private static String checksumLine(String algorithm, String name, String content) throws Exception {
+    return algorithm + " (" + name + ") = " + Hex.encode(digest(algorithm, content)) + "\n";
+  }
+
+  private static byte[] digest(String algorithm, String content) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA256".equals(algorithm) ? "SHA-256" : "SHA-512");
+    return digest.digest(content.getBytes(UTF_8));
+  }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SignatureStoreTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void storeAndGetSignatures() throws Exception {
+    try (SignatureStore store = SignatureStore.open(directory.resolve("signatures"))) {
+      store.put("amd64/base.tgz", signature(1));
+      store.put("amd64/comp.tgz", signature(2));
+
+      assertThat(store.size()).isEqualTo(2);
+      assertThat(store.get("amd64/base.tgz").getSignature()).isEqualTo(signature(1).getSignature());
+      assertThat(store.get("amd64/comp.tgz").getKeyNumber()).isEqualTo(signature(2).getKeyNumber());
+      assertThat(store.get("amd64/game.tgz")).isNull();
+      assertThat(store.contains("amd64/comp.tgz")).isTrue();
+      assertThat(store.contains("amd64/game.tgz")).isFalse();
+    }
+  }
+
+  @Test
+  void replaceSignatureOfArtifact() throws Exception {
+    try (SignatureStore store = SignatureStore.open(directory.resolve("signatures"))) {
+      store.put("base.tgz", signature(1));
+      store.put("base.tgz", signature(2));
+
+      assertThat(store.size()).isEqualTo(1);
+      assertThat(store.get("base.tgz").getSignature()).isEqualTo(signature(2).getSignature());
+    }
+  }
+
+  @Test
+  void growAndKeepSignaturesAcrossReopening() throws Exception {
+    Path file = directory.resolve("signatures");
+    int count = 10 * SignatureStore.INITIAL_SLOTS;
+    try (SignatureStore store = SignatureStore.open(file)) {
+      for (int i = 0; i < count; i++) {
+        store.put("package-" + i, signature(i));
+      }
+    }
+
+    try (SignatureStore store = SignatureStore.open(file)) {
+      assertThat(store.size()).isEqualTo(count);
+      for (int i = 0; i < count; i++) {
+        assertThat(store.get("package-" + i).getSignature()).isEqualTo(signature(i).getSignature());
+      }
+      assertThat(store.get("package-" + count)).isNull();
+    }
+    // 32768 slots: room for 16384 records of 74 bytes and the slots of 20 bytes
+    assertThat(Files.size(file)).isEqualTo(SignatureStore.HEADER_LEN + 16384L * 74 + 32768L * 20);
+  }
+
+  @Test
+  void importSignatureFilesOfTree() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    Path mirror = Files.createDirectories(directory.resolve("mirror/amd64"));
+    byte[] message = "base package\n".getBytes(UTF_8);
+    signer.writeSignature(mirror.resolve("base.tgz.sig"), message);
+    signer.writeSignature(directory.resolve("mirror/SHA256.sig"), "list\n".getBytes(UTF_8));
+    Files.write(mirror.resolve("broken.tgz.sig"), "no signature\n".getBytes(UTF_8));
+    Files.write(mirror.resolve("base.tgz"), message);
+    Files.write(mirror.resolve(".sig"), "not a signature of a file\n".getBytes(UTF_8));
+
+    try (SignatureStore store = SignatureStore.open(directory.resolve("signatures"))) {
+      int imported = store.importSignatures(directory.resolve("mirror"));
+
+      assertThat(imported).isEqualTo(2);
+      assertThat(store.size()).isEqualTo(2);
+      assertThat(store.contains("SHA256")).isTrue();
+      assertThat(store.contains("amd64/broken.tgz")).isFalse();
+      SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+      assertThat(verifier.tryVerify(store.get("amd64/base.tgz"), message)).isEqualTo(VerificationResult.OK);
+    }
+  }
+
+  @Test
+  void skipUnreadableDirectoryOnImport() throws Exception {
+    assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+    TestSigner signer = TestSigner.generate();
+    Path locked = Files.createDirectories(directory.resolve("mirror/locked"));
+    signer.writeSignature(locked.resolve("a.tgz.sig"), "a\n".getBytes(UTF_8));
+    signer.writeSignature(directory.resolve("mirror/b.tgz.sig"), "b\n".getBytes(UTF_8));
+    Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+    try (SignatureStore store = SignatureStore.open(directory.resolve("signatures"))) {
+      assumeTrue(!Files.isReadable(locked));
+
+      assertThat(store.importSignatures(directory.resolve("mirror"))).isEqualTo(1);
+      assertThat(store.contains("b.tgz")).isTrue();
+    } finally {
+      Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+    }
+  }
+
+  @Test
+  void failIfStoreIsOpenedTwice() throws Exception {
+    Path file = directory.resolve("signatures");
+    try (SignatureStore store = SignatureStore.open(file)) {
+      store.put("base.tgz", signature(1));
+
+      assertThatThrownBy(() -> SignatureStore.open(file))
+          .isExactlyInstanceOf(IOException.class)
+          .hasMessage("signature store " + file + " is opened by another instance");
+    }
+  }
+
+  @Test
+  void failIfFileIsNotAStore() throws Exception {
+    Path file = directory.resolve("signatures");
+    Files.write(file, "JSLEDGER and some more bytes to fill the header of a store, more than 64 bytes".getBytes(UTF_8));
+
+    assertThatThrownBy(() -> SignatureStore.open(file))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid signature store " + file);
+  }
+
+  @Test
+  void neverOverwriteShortFile() throws Exception {
+    Path file = directory.resolve("signatures");
+    byte[] content = "not a store".getBytes(UTF_8);
+    Files.write(file, content);
+
+    assertThatThrownBy(() -> SignatureStore.open(file))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid signature store " + file);
+    assertThat(Files.readAllBytes(file)).isEqualTo(content);
+  }
+
+  @Test
+  void neverOverwriteFileStartingWithZeros() throws Exception {
+    Path file = directory.resolve("signatures");
+    // e.g. a disk image, whose first bytes are often zero
+    byte[] content = new byte[1024 * 1024];
+    Arrays.fill(content, 64, content.length, (byte) 0x5a);
+    Files.write(file, content);
+
+    assertThatThrownBy(() -> SignatureStore.open(file))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid signature store " + file);
+    assertThat(Files.readAllBytes(file)).isEqualTo(content);
+  }
+
+  @Test
+  void failIfClosed() throws Exception {
+    SignatureStore store = SignatureStore.open(directory.resolve("signatures"));
+    store.close();
+    store.close();
+
+    assertThatThrownBy(() -> store.get("base.tgz"))
+        .isExactlyInstanceOf(IllegalStateException.class)
+        .hasMessage("signature store is closed");
+  }
+
+  @Test
+  void neverReuseRecordsAfterCrash() throws Exception {
+    Path file = directory.resolve("signatures");
+    try (SignatureStore store = SignatureStore.open(file)) {
+      for (int i = 0; i < 10; i++) {
+        store.put("package-" + i, signature(i));
+      }
+    }
+    // as if the system crashed while open, before the number of records reached the disk
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(4).putInt(0, 3), 20);
+      channel.write(ByteBuffer.wrap(new byte[] {1}), 24);
+    }
+
+    try (SignatureStore store = SignatureStore.open(file)) {
+      assertThat(store.size()).isEqualTo(10);
+      store.put("package-new", signature(100));
+
+      assertThat(store.get("package-9").getSignature()).isEqualTo(signature(9).getSignature());
+      assertThat(store.get("package-new").getSignature()).isEqualTo(signature(100).getSignature());
+    }
+  }
+
+  @Test
+  void reportLostRecordAsMissing() throws Exception {
+    Path file = directory.resolve("signatures");
+    try (SignatureStore store = SignatureStore.open(file)) {
+      store.put("base.tgz", signature(1));
+    }
+    // as if the record did not reach the disk before a crash of the system
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(SignatureStore.RECORD_LEN), SignatureStore.HEADER_LEN);
+    }
+
+    try (SignatureStore store = SignatureStore.open(file)) {
+      assertThat(store.get("base.tgz")).isNull();
+      assertThat(store.contains("base.tgz")).isFalse();
+    }
+  }
+
+  static Signature signature(int seed) {
+    byte[] layout = new byte[SignatureStore.RECORD_LEN];
+    new Random(seed).nextBytes(layout);
+    layout[0] = 'E';
+    layout[1] = 'd';
+    return Signature.fromLayout(ByteBuffer.wrap(layout));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.alphabot.security.jsignify.GzipSignatureVerifierTest.gzip;
+import static com.alphabot.security.jsignify.GzipSignatureVerifierTest.randomContent;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SignedGzipFileTest {
+  private static final int BLOCK_SIZE = 4096;
+
+  @TempDir
+  Path tempDir;
+
+  private TestSigner signer;
+  private GzipSignatureVerifier verifier;
+  private byte[] compressed;
+  private Path gzipFile;
+  private int payloadOffset;
+
+  @BeforeEach
+  void writeSignedFile() throws Exception {
+    signer = TestSigner.generate();
+    verifier = new GzipSignatureVerifier(new SignifyVerifier(signer.getBase64PublicKey()));
+    compressed = gzip(randomContent(100_000));
+    byte[] signed = signer.signGzip(compressed, BLOCK_SIZE);
+    gzipFile = tempDir.resolve("signed.tgz");
+    Files.write(gzipFile, signed);
+    payloadOffset = signed.length - (compressed.length - 10);
+  }
+
+  @Test
+  void readBlocksInAnyOrder() throws Exception {
+    byte[] signed = Files.readAllBytes(gzipFile);
+    try (SignedGzipFile file = verifier.open(gzipFile)) {
+      assertThat(file.getBlockSize()).isEqualTo(BLOCK_SIZE);
+      int count = file.getBlockCount();
+      assertThat(count).isEqualTo((signed.length - payloadOffset + BLOCK_SIZE - 1) / BLOCK_SIZE);
+      for (int block = count - 1; block >= 0; block--) {
+        int start = payloadOffset + block * BLOCK_SIZE;
+        byte[] expected = Arrays.copyOfRange(signed, start, Math.min(start + BLOCK_SIZE, signed.length));
+        assertThat(file.getBlockLength(block)).isEqualTo(expected.length);
+        assertThat(file.readBlock(block)).isEqualTo(ByteBuffer.wrap(expected));
+      }
+    }
+  }
+
+  @Test
+  void readBlockIntoBuffer() throws Exception {
+    try (SignedGzipFile file = verifier.open(gzipFile)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(2 * BLOCK_SIZE);
+      buffer.position(7);
+      file.readBlock(1, buffer);
+      assertThat(buffer.position()).isEqualTo(7 + BLOCK_SIZE);
+      buffer.flip().position(7);
+      assertThat(buffer).isEqualTo(file.readBlock(1));
+      assertThatThrownBy(() -> file.readBlock(0, ByteBuffer.allocate(BLOCK_SIZE - 1)))
+          .isExactlyInstanceOf(IllegalArgumentException.class)
+          .hasMessage("Buffer must have 4096 bytes remaining, but has 4095.");
+    }
+  }
+
+  @Test
+  void failOnlyForModifiedBlock() throws Exception {
+    byte[] signed = Files.readAllBytes(gzipFile);
+    signed[payloadOffset + 2 * BLOCK_SIZE + 5] ^= 1;
+    Files.write(gzipFile, signed);
+
+    try (SignedGzipFile file = verifier.open(gzipFile)) {
+      file.readBlock(1);
+      assertThatThrownBy(() -> file.readBlock(2))
+          .isExactlyInstanceOf(VerificationFailedException.class)
+          .hasMessage("verification failed: block 2 does not match its signed hash");
+      file.readBlock(3);
+    }
+  }
+
+  @Test
+  void failIfFileSizeDoesNotMatchSignedBlocks() throws Exception {
+    byte[] signed = Files.readAllBytes(gzipFile);
+    Files.write(gzipFile, Arrays.copyOf(signed, signed.length - BLOCK_SIZE));
+
+    assertThatThrownBy(() -> verifier.open(gzipFile))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("verification failed: file size does not match the signed blocks");
+  }
+
+  @Test
+  void failIfHeaderIsSignedWithOtherKey() throws Exception {
+    GzipSignatureVerifier otherVerifier = new GzipSignatureVerifier(
+        new SignifyVerifier(TestSigner.generate().getBase64PublicKey()));
+
+    assertThatThrownBy(() -> otherVerifier.open(gzipFile))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("verification failed: checked against wrong key");
+  }
+
+  @Test
+  void failForMissingBlock() throws Exception {
+    try (SignedGzipFile file = verifier.open(gzipFile)) {
+      assertThatThrownBy(() -> file.readBlock(file.getBlockCount()))
+          .isInstanceOf(IndexOutOfBoundsException.class);
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SignifyKeyringTest {
+  private static final byte[] MESSAGE = "testmessage\n".getBytes(UTF_8);
+
+  @TempDir
+  Path keyDirectory;
+
+  @Test
+  void verifyWithEveryKeyOfDirectory() throws Exception {
+    TestSigner first = TestSigner.generate();
+    TestSigner second = TestSigner.generate();
+    first.writePublicKey(keyDirectory.resolve("first.pub"));
+    second.writePublicKey(keyDirectory.resolve("second.pub"));
+    Files.write(keyDirectory.resolve("README"), "not a key".getBytes(UTF_8));
+
+    SignifyKeyring keyring = new SignifyKeyring(keyDirectory);
+    assertThat(keyring.size()).isEqualTo(2);
+    keyring.verify(first.sign(MESSAGE), MESSAGE);
+    keyring.verify(second.sign(MESSAGE), MESSAGE);
+    keyring.verify(Signature.fromBase64String(second.sign(MESSAGE)), new ByteArrayInputStream(MESSAGE));
+  }
+
+  @Test
+  void verifyFileWithKeyOfDirectory() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    signer.writePublicKey(keyDirectory.resolve("key.pub"));
+    Path messageFile = keyDirectory.resolve("message.txt");
+    Path signatureFile = keyDirectory.resolve("message.txt.sig");
+    Files.write(messageFile, MESSAGE);
+    signer.writeSignature(signatureFile, MESSAGE);
+
+    new SignifyKeyring(keyDirectory).verifyFile(signatureFile, messageFile);
+  }
+
+  @Test
+  void failIfSignedWithUnknownKey() throws Exception {
+    TestSigner.generate().writePublicKey(keyDirectory.resolve("key.pub"));
+
+    SignifyKeyring keyring = new SignifyKeyring(keyDirectory);
+    String signature = TestSigner.generate().sign(MESSAGE);
+    assertThatThrownBy(() -> keyring.verify(signature, MESSAGE))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("verification failed: signed with an unknown key");
+  }
+
+  @Test
+  void tryVerifyWithoutThrowing() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    signer.writePublicKey(keyDirectory.resolve("key.pub"));
+
+    SignifyKeyring keyring = new SignifyKeyring(keyDirectory);
+    assertThat(keyring.tryVerify(signer.sign(MESSAGE), MESSAGE)).isEqualTo(VerificationResult.OK);
+    assertThat(keyring.tryVerify(signer.sign(MESSAGE), "forged".getBytes(UTF_8))).isEqualTo(VerificationResult.BAD_SIGNATURE);
+    assertThat(keyring.tryVerify(TestSigner.generate().sign(MESSAGE), MESSAGE)).isEqualTo(VerificationResult.WRONG_KEY);
+    assertThat(keyring.tryVerify("RWSvK/", MESSAGE)).isEqualTo(VerificationResult.MALFORMED);
+  }
+
+  @Test
+  void failIfSignatureDoesNotMatchMessage() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    signer.writePublicKey(keyDirectory.resolve("key.pub"));
+
+    SignifyKeyring keyring = new SignifyKeyring(keyDirectory);
+    String signature = signer.sign(MESSAGE);
+    assertThatThrownBy(() -> keyring.verify(signature, "not-signed".getBytes(UTF_8)))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+  }
+
+  @Test
+  void reloadAfterKeyRotation() throws Exception {
+    TestSigner oldSigner = TestSigner.generate();
+    TestSigner newSigner = TestSigner.generate();
+    oldSigner.writePublicKey(keyDirectory.resolve("old.pub"));
+    SignifyKeyring keyring = new SignifyKeyring(keyDirectory);
+
+    newSigner.writePublicKey(keyDirectory.resolve("new.pub"));
+    Files.delete(keyDirectory.resolve("old.pub"));
+    keyring.reload();
+
+    keyring.verify(newSigner.sign(MESSAGE), MESSAGE);
+    String oldSignature = oldSigner.sign(MESSAGE);
+    assertThatThrownBy(() -> keyring.verify(oldSignature, MESSAGE))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("verification failed: signed with an unknown key");
+  }
+
+  @Test
+  void keepKeysIfReloadFails() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    signer.writePublicKey(keyDirectory.resolve("key.pub"));
+    SignifyKeyring keyring = new SignifyKeyring(keyDirectory);
+
+    Files.write(keyDirectory.resolve("broken.pub"), "no comment\n".getBytes(UTF_8));
+    assertThatThrownBy(keyring::reload).isExactlyInstanceOf(IllegalArgumentException.class);
+
+    assertThat(keyring.size()).isEqualTo(1);
+    keyring.verify(signer.sign(MESSAGE), MESSAGE);
+  }
+
+  @Test
+  void loadCopiesOfKeyOnce() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    signer.writePublicKey(keyDirectory.resolve("release.pub"));
+    signer.writePublicKey(keyDirectory.resolve("release-2026.pub"));
+
+    SignifyKeyring keyring = new SignifyKeyring(keyDirectory);
+    assertThat(keyring.size()).isEqualTo(1);
+    keyring.verify(signer.sign(MESSAGE), MESSAGE);
+  }
+
+  @Test
+  void failIfKeyNumberIsUsedByDifferentKeys() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    signer.writePublicKey(keyDirectory.resolve("key.pub"));
+    byte[] otherKey = new byte[2 + 8 + 32];
+    otherKey[0] = 'E';
+    otherKey[1] = 'd';
+    System.arraycopy(signer.getKeyNumber(), 0, otherKey, 2, 8);
+    System.arraycopy(TestSigner.generate().getRawPublicKey(), 0, otherKey, 10, 32);
+    Files.write(keyDirectory.resolve("other.pub"),
+        ("untrusted comment: other public key\n" + Base64.getEncoder().encodeToString(otherKey) + "\n").getBytes(UTF_8));
+
+    assertThatThrownBy(() -> new SignifyKeyring(keyDirectory))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("Key number ")
+        .hasMessageContaining(" is used by more than one public key in ");
+  }
+
+  @Test
+  void failIfDirectoryIsNotFound() {
+    assertThatThrownBy(() -> new SignifyKeyring(keyDirectory.resolve("missing")))
+        .isExactlyInstanceOf(NoSuchFileException.class);
+  }
+}
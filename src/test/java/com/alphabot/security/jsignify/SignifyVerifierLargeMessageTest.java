@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Verifies generated messages that are larger than the heap.
+ * Run with {@code ./gradlew largeMessageTest}, which limits the heap to 64 MB. The message size can be
+ * changed with {@code -PlargeMessageSize=<bytes>}.
+ */
+@Tag("large")
+class SignifyVerifierLargeMessageTest {
+  private static final long DEFAULT_MESSAGE_SIZE = 3L * 1024 * 1024 * 1024;
+
+  @TempDir
+  static Path tempDir;
+
+  private static TestSigner signer;
+  private static Path messageFile;
+  private static Path signatureFile;
+
+  @BeforeAll
+  static void generateSignedMessage() throws IOException {
+    long size = Long.getLong("jsignify.largeMessageSize", DEFAULT_MESSAGE_SIZE);
+    messageFile = tempDir.resolve("large-message.bin");
+    signatureFile = tempDir.resolve("large-message.bin.sig");
+
+    byte[] block = new byte[1024 * 1024];
+    try (OutputStream out = Files.newOutputStream(messageFile)) {
+      long written = 0;
+      while (written < size) {
+        fillBlock(block, written);
+        int length = (int) Math.min(block.length, size - written);
+        out.write(block, 0, length);
+        written += length;
+      }
+    }
+
+    signer = TestSigner.generate();
+    signer.writeSignature(signatureFile, messageFile);
+  }
+
+  @Test
+  void verifyLargeFile() throws Exception {
+    assertThat(Runtime.getRuntime().maxMemory()).isLessThan(Files.size(messageFile));
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verifyFile(signatureFile, messageFile);
+  }
+
+  @Test
+  void verifyLargeFileInEveryReadMode() throws Exception {
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    for (MessageReadMode readMode : MessageReadMode.values()) {
+      verifier.verifyFile(signatureFile, messageFile, readMode);
+    }
+  }
+
+  @Test
+  void verifyLargeStream() throws Exception {
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    try (InputStream message = Files.newInputStream(messageFile)) {
+      verifier.verify(Signature.fromFile(signatureFile), message);
+    }
+  }
+
+  @Test
+  void failIfLastByteOfLargeFileIsModified() throws Exception {
+    Path modified = tempDir.resolve("modified.bin");
+    Files.copy(messageFile, modified);
+    try (RandomAccessFile file = new RandomAccessFile(modified.toFile(), "rw")) {
+      file.seek(file.length() - 1);
+      int last = file.read();
+      file.seek(file.length() - 1);
+      file.write(last ^ 1);
+    }
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    try (FileChannel message = FileChannel.open(modified, StandardOpenOption.READ)) {
+      assertThatThrownBy(() -> verifier.verify(Signature.fromFile(signatureFile), message))
+          .isExactlyInstanceOf(VerificationFailedException.class)
+          .hasMessage("signature verification failed");
+    }
+    assertThatThrownBy(() -> verifier.verifyFile(signatureFile, modified, MessageReadMode.MAPPED))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+  }
+
+  private static void fillBlock(byte[] block, long position) {
+    long state = position * 0x9E3779B97F4A7C15L + 1;
+    for (int i = 0; i < block.length; i++) {
+      state ^= state << 13;
+      state ^= state >>> 7;
+      state ^= state << 17;
+      block[i] = (byte) state;
+    }
+  }
+}
@@ -14,15 +14,31 @@
 
 package com.alphabot.security.jsignify;
 
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.engine.VerificationEngine;
+import com.alphabot.security.jsignify.engine.VerificationEngines;
+import com.alphabot.security.jsignify.exception.BatchVerificationFailedException;
 import com.alphabot.security.jsignify.exception.VerificationFailedException;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class SignifyVerifierTest {
@@ -49,6 +65,41 @@ class SignifyVerifierTest {
         .hasMessage("signature verification failed");
   }
 
+  @Test
+  void verifySignedMessageWithEveryEngine() throws Exception {
+    String publicKey = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    String signature = "RWRm/JNSNUb77AmgjFuNCA6+3wwVotARqp2BqrG+ZoqFaK2PB8pW/Acpo660s+DmF1pxJOTB8uXp6b1S1N+sZLZwx8G6tnxSIg0=";
+
+    for (VerificationEngine engine : VerificationEngines.getEngines()) {
+      SignifyVerifier verifier = new SignifyVerifier(publicKey, engine);
+      verifier.verify(signature, "testmessage\n".getBytes(UTF_8));
+      assertThatThrownBy(() -> verifier.verify(signature, "not-signed".getBytes(UTF_8)))
+          .isExactlyInstanceOf(VerificationFailedException.class)
+          .hasMessage("signature verification failed");
+    }
+  }
+
+  @Test
+  void verifySignatureWithSmallOrderRWithTheEngineOnlyForMessagesInMemory() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    byte[] message = "testmessage\n".getBytes(UTF_8);
+    Signature signature = Signature.fromBase64String(signer.signWithSmallOrderR(message));
+
+    for (VerificationEngine engine : VerificationEngines.getEngines()) {
+      // only the built-in engine checks with the cofactor, and its verdict is not overruled for other engines
+      boolean acceptedByEngine = engine.newKeyVerifier(signer.getRawPublicKey()).verify(signature.getSignature(), message);
+      assertThat(acceptedByEngine).as(engine.getName()).isEqualTo(engine.getName().equals("built-in"));
+
+      SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey(), engine);
+      assertThat(verifier.tryVerify(signature, message)).as(engine.getName())
+          .isEqualTo(acceptedByEngine ? VerificationResult.OK : VerificationResult.BAD_SIGNATURE);
+      assertThat(verifier.tryVerify(signature, new ByteArrayInputStream(message))).isEqualTo(VerificationResult.OK);
+      assertThat(verifier.tryVerify(signature, ByteBuffer.wrap(message))).isEqualTo(VerificationResult.OK);
+      assertThat(verifier.tryVerifyBatch(List.of(signature, signature), List.of(message, message)))
+          .containsExactly(VerificationResult.OK, VerificationResult.OK);
+    }
+  }
+
   @Test
   void failIfWrongPublicKeyNumberIsUsed() {
     String publicKey = "RWSvK/c+cFe24BIalifKnqoqdvLlXfeZ9MIj3MINndNeKgyYw5PpcWGn";
@@ -80,6 +131,41 @@ class SignifyVerifierTest {
 
   // TODO split up tests for files and else
 
+  @Test
+  void tryVerifyReportsResultWithoutThrowing() {
+    String publicKey = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    String signature = "RWRm/JNSNUb77AmgjFuNCA6+3wwVotARqp2BqrG+ZoqFaK2PB8pW/Acpo660s+DmF1pxJOTB8uXp6b1S1N+sZLZwx8G6tnxSIg0=";
+    byte[] message = "testmessage\n".getBytes(UTF_8);
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKey);
+    assertThat(verifier.tryVerify(signature, message)).isEqualTo(VerificationResult.OK);
+    assertThat(verifier.tryVerify(signature, "not-signed".getBytes(UTF_8))).isEqualTo(VerificationResult.BAD_SIGNATURE);
+    assertThat(verifier.tryVerify("RWSvK/", message)).isEqualTo(VerificationResult.MALFORMED);
+
+    SignifyVerifier otherKeyVerifier = new SignifyVerifier("RWSvK/c+cFe24BIalifKnqoqdvLlXfeZ9MIj3MINndNeKgyYw5PpcWGn");
+    assertThat(otherKeyVerifier.tryVerify(signature, message)).isEqualTo(VerificationResult.WRONG_KEY);
+  }
+
+  @Test
+  void tryVerifyStreamAndFile() throws Exception {
+    String publicKey = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    Path signatureFile = getPathFromResource("signature.sig");
+    Signature signature = Signature.fromFile(signatureFile);
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKey);
+    assertThat(verifier.tryVerifyFile(signatureFile, getPathFromResource("testmessage.txt"))).isEqualTo(VerificationResult.OK);
+    assertThat(verifier.tryVerifyFile(signatureFile, getPathFromResource("publickey.pub")))
+        .isEqualTo(VerificationResult.BAD_SIGNATURE);
+    assertThat(verifier.tryVerifyFile(getPathFromResource("testmessage.txt"), getPathFromResource("testmessage.txt")))
+        .isEqualTo(VerificationResult.MALFORMED);
+    try (InputStream message = new ByteArrayInputStream("testmessage\n".getBytes(UTF_8))) {
+      assertThat(verifier.tryVerify(signature, message)).isEqualTo(VerificationResult.OK);
+    }
+    try (ReadableByteChannel message = Channels.newChannel(new ByteArrayInputStream("forged\n".getBytes(UTF_8)))) {
+      assertThat(verifier.tryVerify(signature, message)).isEqualTo(VerificationResult.BAD_SIGNATURE);
+    }
+  }
+
   @Test
   void verifySignedMessageUsingFiles() throws Exception {
     Path publicKeyFile = getPathFromResource("publickey.pub");
@@ -90,6 +176,30 @@ class SignifyVerifierTest {
     verifier.verifyFile(signatureFile, messageFile);
   }
 
+  @Test
+  void verifySignedMessageUsingFilesInEveryReadMode() throws Exception {
+    Path publicKeyFile = getPathFromResource("publickey.pub");
+    Path signatureFile = getPathFromResource("signature.sig");
+    Path messageFile = getPathFromResource("testmessage.txt");
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKeyFile);
+    for (MessageReadMode readMode : MessageReadMode.values()) {
+      verifier.verifyFile(signatureFile, messageFile, readMode);
+    }
+  }
+
+  @Test
+  void failIfSignatureDoesNotMatchMappedMessage() throws Exception {
+    Path publicKeyFile = getPathFromResource("publickey.pub");
+    Path signatureFile = getPathFromResource("signature.sig");
+    Path notSignedMessageFile = getPathFromResource("notsignedmessage.txt");
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKeyFile);
+    assertThatThrownBy(() -> verifier.verifyFile(signatureFile, notSignedMessageFile, MessageReadMode.MAPPED))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+  }
+
   @Test
   void failIfSignatureDoesNotMatchMessageUsingFiles() throws Exception {
     Path publicKeyFile = getPathFromResource("publickey.pub");
@@ -114,6 +224,237 @@ class SignifyVerifierTest {
         .hasMessage("notexistingmessagefile.txt");
   }
 
+  @Test
+  void verifyEmbeddedFile(@TempDir Path tempDir) throws Exception {
+    TestSigner signer = TestSigner.generate();
+    Path signedFile = tempDir.resolve("message.sig");
+    signer.writeEmbeddedSignature(signedFile, "testmessage\n".getBytes(UTF_8));
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verifyEmbeddedFile(signedFile);
+    assertThat(verifier.tryVerifyEmbeddedFile(signedFile)).isEqualTo(VerificationResult.OK);
+  }
+
+  @Test
+  void verifyEmbeddedFileLargerThanMappedReadThreshold(@TempDir Path tempDir) throws Exception {
+    TestSigner signer = TestSigner.generate();
+    byte[] message = new byte[(int) SignifyVerifier.MAPPED_READ_THRESHOLD + 17];
+    new Random(11).nextBytes(message);
+    Path signedFile = tempDir.resolve("message.sig");
+    signer.writeEmbeddedSignature(signedFile, message);
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verifyEmbeddedFile(signedFile);
+
+    byte[] content = Files.readAllBytes(signedFile);
+    content[content.length - 1] ^= 1;
+    Files.write(signedFile, content);
+    assertThatThrownBy(() -> verifier.verifyEmbeddedFile(signedFile))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+  }
+
+  @Test
+  void verifyEmbeddedFileWithWindowsLineEndings(@TempDir Path tempDir) throws Exception {
+    TestSigner signer = TestSigner.generate();
+    byte[] message = "line 1\r\nline 2\r\n".getBytes(UTF_8);
+    Path signedFile = tempDir.resolve("message.sig");
+    Files.write(signedFile, ("untrusted comment: key\r\n" + signer.sign(message) + "\r\n").getBytes(UTF_8));
+    Files.write(signedFile, message, StandardOpenOption.APPEND);
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verifyEmbeddedFile(signedFile);
+  }
+
+  @Test
+  void tryVerifyEmbeddedFileReportsResultWithoutThrowing(@TempDir Path tempDir) throws Exception {
+    TestSigner signer = TestSigner.generate();
+    Path signedFile = tempDir.resolve("message.sig");
+    signer.writeEmbeddedSignature(signedFile, "testmessage\n".getBytes(UTF_8));
+    Path notSignedFile = tempDir.resolve("notsigned.sig");
+    Files.write(notSignedFile, "not a signature file\n".getBytes(UTF_8));
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    SignifyVerifier otherVerifier = new SignifyVerifier(TestSigner.generate().getBase64PublicKey());
+    assertThat(otherVerifier.tryVerifyEmbeddedFile(signedFile)).isEqualTo(VerificationResult.WRONG_KEY);
+    assertThat(verifier.tryVerifyEmbeddedFile(notSignedFile)).isEqualTo(VerificationResult.MALFORMED);
+    assertThatThrownBy(() -> verifier.verifyEmbeddedFile(notSignedFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("invalid comment in ");
+  }
+
+  @Test
+  void verifySignedMessageFromStream() throws Exception {
+    String publicKey = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    Signature signature = Signature.fromFile(getPathFromResource("signature.sig"));
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKey);
+    try (InputStream message = getClass().getResourceAsStream("testmessage.txt")) {
+      verifier.verify(signature, message);
+    }
+  }
+
+  @Test
+  void verifySignedMessageFromChannel() throws Exception {
+    String publicKey = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    Signature signature = Signature.fromFile(getPathFromResource("signature.sig"));
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKey);
+    try (ReadableByteChannel message = Channels.newChannel(new ByteArrayInputStream("testmessage\n".getBytes(UTF_8)))) {
+      verifier.verify(signature, message);
+    }
+  }
+
+  @Test
+  void failIfSignatureDoesNotMatchMessageFromStream() {
+    String publicKey = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    Signature signature = Signature.fromBase64String(
+        "RWRm/JNSNUb77AmgjFuNCA6+3wwVotARqp2BqrG+ZoqFaK2PB8pW/Acpo660s+DmF1pxJOTB8uXp6b1S1N+sZLZwx8G6tnxSIg0=");
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKey);
+    assertThatThrownBy(() -> verifier.verify(signature, new ByteArrayInputStream("not-signed".getBytes(UTF_8))))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+  }
+
+  @Test
+  void failIfWrongPublicKeyNumberIsUsedFromChannel() {
+    String publicKey = "RWSvK/c+cFe24BIalifKnqoqdvLlXfeZ9MIj3MINndNeKgyYw5PpcWGn";
+    Signature signature = Signature.fromBase64String(
+        "RWRm/JNSNUb77AmgjFuNCA6+3wwVotARqp2BqrG+ZoqFaK2PB8pW/Acpo660s+DmF1pxJOTB8uXp6b1S1N+sZLZwx8G6tnxSIg0=");
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKey);
+    assertThatThrownBy(() -> verifier.verify(signature, Channels.newChannel(new ByteArrayInputStream(new byte[0]))))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("verification failed: checked against wrong key");
+  }
+
+  @Test
+  void verifyMessageLargerThanBuffer() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    byte[] message = new byte[1024 * 1024 + 17];
+    new Random(7).nextBytes(message);
+    Signature signature = Signature.fromBase64String(signer.sign(message));
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verify(signature, new ByteArrayInputStream(message));
+    verifier.verify(signature, Channels.newChannel(new ByteArrayInputStream(message)));
+    verifier.verify(signer.sign(message), message);
+  }
+
+  @Test
+  void verifySignedMessageFromHeapAndDirectBuffers() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    byte[] message = new byte[100_000];
+    new Random(11).nextBytes(message);
+    Signature signature = Signature.fromBase64String(signer.sign(message));
+    ByteBuffer heap = ByteBuffer.wrap(message);
+    ByteBuffer direct = ByteBuffer.allocateDirect(message.length).put(message).flip();
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verify(signature, heap);
+    verifier.verify(signature, direct);
+    verifier.verify(signature, direct);
+
+    assertThat(heap.position()).isZero();
+    assertThat(direct.position()).isZero();
+  }
+
+  @Test
+  void verifySignedMessageFromSlicedAndReadOnlyBuffers() throws Exception {
+    byte[] message = "a message in the middle of a buffer\n".getBytes(UTF_8);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(message.length + 20);
+    buffer.position(7);
+    buffer.put(message);
+    buffer.position(7).limit(7 + message.length);
+    ByteBuffer slice = buffer.slice();
+    ByteBuffer readOnly = ByteBuffer.wrap(message).asReadOnlyBuffer();
+    TestSigner signer = TestSigner.generate();
+    Signature signature = Signature.fromBase64String(signer.sign(message));
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verify(signature, buffer);
+    verifier.verify(signature, slice);
+    verifier.verify(signature, readOnly);
+    verifier.verify(signature, buffer.asReadOnlyBuffer());
+
+    assertThat(buffer.position()).isEqualTo(7);
+    assertThat(slice.position()).isZero();
+    assertThat(readOnly.position()).isZero();
+  }
+
+  @Test
+  void verifySignedMessageScatteredOverBuffers() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    byte[] message = "header|body of the message|trailer\n".getBytes(UTF_8);
+    Signature signature = Signature.fromBase64String(signer.sign(message));
+    ByteBuffer header = ByteBuffer.wrap(message, 0, 7);
+    ByteBuffer body = ByteBuffer.allocateDirect(19).put(message, 7, 19).flip();
+    ByteBuffer empty = ByteBuffer.allocate(0);
+    ByteBuffer trailer = ByteBuffer.wrap(message, 26, message.length - 26).asReadOnlyBuffer();
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verify(signature, header, empty, body, trailer);
+
+    assertThat(header.position()).isZero();
+    assertThat(body.position()).isZero();
+    assertThat(trailer.position()).isEqualTo(26);
+    assertThat(verifier.tryVerify(signature, body, header, trailer)).isEqualTo(VerificationResult.BAD_SIGNATURE);
+    assertThat(verifier.tryVerify(signature, header, body)).isEqualTo(VerificationResult.BAD_SIGNATURE);
+  }
+
+  @Test
+  void failIfSignatureDoesNotMatchBuffer() {
+    String publicKey = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    Signature signature = Signature.fromBase64String(
+        "RWRm/JNSNUb77AmgjFuNCA6+3wwVotARqp2BqrG+ZoqFaK2PB8pW/Acpo660s+DmF1pxJOTB8uXp6b1S1N+sZLZwx8G6tnxSIg0=");
+    ByteBuffer signed = ByteBuffer.wrap("testmessage\n".getBytes(UTF_8));
+
+    SignifyVerifier verifier = new SignifyVerifier(publicKey);
+    assertThat(verifier.tryVerify(signature, signed)).isEqualTo(VerificationResult.OK);
+    signed.position(1);
+    assertThatThrownBy(() -> verifier.verify(signature, signed))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+    assertThat(new SignifyVerifier("RWSvK/c+cFe24BIalifKnqoqdvLlXfeZ9MIj3MINndNeKgyYw5PpcWGn").tryVerify(signature, signed))
+        .isEqualTo(VerificationResult.WRONG_KEY);
+  }
+
+  @Test
+  void verifyBatchOfSignedMessages() throws Exception {
+    TestSigner signer = TestSigner.generate();
+    List<Signature> signatures = new ArrayList<>();
+    List<byte[]> messages = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      byte[] message = ("manifest " + i + "\n").getBytes(UTF_8);
+      signatures.add(Signature.fromBase64String(signer.sign(message)));
+      messages.add(message);
+    }
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    verifier.verifyBatch(signatures, messages);
+  }
+
+  @Test
+  void failIfBatchContainsInvalidSignatures() {
+    TestSigner signer = TestSigner.generate();
+    List<Signature> signatures = new ArrayList<>();
+    List<byte[]> messages = new ArrayList<>();
+    for (int i = 0; i < 16; i++) {
+      byte[] message = ("manifest " + i + "\n").getBytes(UTF_8);
+      signatures.add(Signature.fromBase64String(signer.sign(message)));
+      messages.add(message);
+    }
+    messages.set(3, "not-signed".getBytes(UTF_8));
+    signatures.set(11, Signature.fromBase64String(TestSigner.generate().sign(messages.get(11))));
+
+    SignifyVerifier verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    assertThatThrownBy(() -> verifier.verifyBatch(signatures, messages))
+        .isExactlyInstanceOf(BatchVerificationFailedException.class)
+        .hasMessage("batch verification failed: invalid signatures at indices [3, 11]")
+        .satisfies(e -> assertThat(((BatchVerificationFailedException) e).getInvalidIndices()).containsExactly(3, 11));
+  }
+
   private Path getPathFromResource(String resourceName) throws URISyntaxException {
     return Paths.get(getClass().getResource(resourceName).toURI());
   }
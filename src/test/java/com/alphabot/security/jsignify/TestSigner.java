@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Creates Signify keys and signatures for tests.
+ * Signing is implemented independently of the library (affine Edwards arithmetic with BigInteger), so it
+ * can serve as an oracle. It hashes the message in two streaming passes, which allows signing messages
+ * larger than the heap.
+ */
+public final class TestSigner {
+  private static final BigInteger P = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+  private static final BigInteger L = BigInteger.ONE.shiftLeft(252)
+      .add(new BigInteger("27742317777372353535851937790883648493"));
+  private static final BigInteger D = BigInteger.valueOf(-121665)
+      .multiply(BigInteger.valueOf(121666).modInverse(P)).mod(P);
+  private static final BigInteger[] BASE_POINT = {
+      new BigInteger("15112221349535400772501151409588531511454012693041857206046113283949847762202"),
+      new BigInteger("46316835694926478169428394003475163141307993866256225615783033603165251855960")
+  };
+  private static final byte[] ALGORITHM = {'E', 'd'};
+
+  private final byte[] keyNumber;
+  private final BigInteger secretScalar;
+  private final byte[] prefix;
+  private final byte[] publicKey;
+
+  /**
+   * A message that can be read more than once.
+   */
+  @FunctionalInterface
+  public interface MessageSource {
+    InputStream open() throws IOException;
+  }
+
+  private TestSigner(byte[] seed, byte[] keyNumber) {
+    this.keyNumber = keyNumber.clone();
+    byte[] h = sha512(seed);
+    byte[] scalar = Arrays.copyOf(h, 32);
+    scalar[0] &= (byte) 248;
+    scalar[31] &= 127;
+    scalar[31] |= 64;
+    this.secretScalar = fromLittleEndian(scalar);
+    this.prefix = Arrays.copyOfRange(h, 32, 64);
+    this.publicKey = encode(multiply(BASE_POINT, secretScalar));
+  }
+
+  /**
+   * Create a signer with a random seed and key number.
+   * @return a new signer
+   */
+  public static TestSigner generate() {
+    SecureRandom random = new SecureRandom();
+    byte[] seed = new byte[32];
+    byte[] keyNumber = new byte[8];
+    random.nextBytes(seed);
+    random.nextBytes(keyNumber);
+    return new TestSigner(seed, keyNumber);
+  }
+
+  public byte[] getKeyNumber() {
+    return keyNumber.clone();
+  }
+
+  public byte[] getRawPublicKey() {
+    return publicKey.clone();
+  }
+
+  public String getBase64PublicKey() {
+    return base64(concat(ALGORITHM, keyNumber, publicKey));
+  }
+
+  public String sign(byte[] message) {
+    return sign(() -> new ByteArrayInputStream(message));
+  }
+
+  /**
+   * Sign a message in two streaming passes.
+   * @param message the message to sign
+   * @return the Signify signature Base64 encoded
+   */
+  public String sign(MessageSource message) {
+    return base64(concat(ALGORITHM, keyNumber, signRaw(message)));
+  }
+
+  public byte[] signRaw(byte[] message) {
+    return signRaw(() -> new ByteArrayInputStream(message));
+  }
+
+  public byte[] signRaw(MessageSource message) {
+    BigInteger r = fromLittleEndian(digest(prefix, message)).mod(L);
+    byte[] encodedR = encode(multiply(BASE_POINT, r));
+    BigInteger k = fromLittleEndian(digest(concat(encodedR, publicKey), message)).mod(L);
+    BigInteger s = r.add(k.multiply(secretScalar)).mod(L);
+    return concat(encodedR, toLittleEndian(s));
+  }
+
+  /**
+   * Sign a message with R = [r]B + T, where T is the point of order 2. The equation then only holds with the
+   * cofactor: [S]B - [h]A - R = -T. Only the holder of the private key can create such a signature.
+   * @param message the message to sign
+   * @return the Signify signature Base64 encoded
+   */
+  public String signWithSmallOrderR(byte[] message) {
+    MessageSource source = () -> new ByteArrayInputStream(message);
+    BigInteger r = fromLittleEndian(digest(prefix, source)).mod(L);
+    BigInteger[] orderTwo = {BigInteger.ZERO, P.subtract(BigInteger.ONE)};
+    byte[] encodedR = encode(add(multiply(BASE_POINT, r), orderTwo));
+    BigInteger k = fromLittleEndian(digest(concat(encodedR, publicKey), source)).mod(L);
+    BigInteger s = r.add(k.multiply(secretScalar)).mod(L);
+    return base64(concat(ALGORITHM, keyNumber, encodedR, toLittleEndian(s)));
+  }
+
+  public void writePublicKey(Path file) throws IOException {
+    writeSignifyFile(file, "signify public key", getBase64PublicKey());
+  }
+
+  public void writeSignature(Path file, byte[] message) throws IOException {
+    writeSignifyFile(file, "verify with key.pub", sign(message));
+  }
+
+  public void writeSignature(Path file, Path message) throws IOException {
+    writeSignifyFile(file, "verify with key.pub", sign(() -> Files.newInputStream(message)));
+  }
+
+  /**
+   * Write a signature file with the message embedded after the signature line (signify -e).
+   * @param file the signature file to write
+   * @param message the message to sign and embed
+   * @throws IOException in case the file cannot be written
+   */
+  public void writeEmbeddedSignature(Path file, byte[] message) throws IOException {
+    byte[] header = ("untrusted comment: verify with key.pub\n" + sign(message) + "\n").getBytes(UTF_8);
+    Files.write(file, concat(header, message));
+  }
+
+  /**
+   * Embed a signature in a gzip file like signify -zS: the header is replaced by one with a comment that holds
+   * the signed SHA-512/256 hashes of the blocks of the compressed data.
+   * @param gzip a gzip file with a plain 10 byte header (as written by GZIPOutputStream)
+   * @param blockSize the block size
+   * @return the signed gzip file
+   */
+  public byte[] signGzip(byte[] gzip, int blockSize) {
+    if (gzip.length < 10 || gzip[3] != 0) {
+      throw new IllegalArgumentException("gzip header must not have optional fields");
+    }
+    byte[] payload = Arrays.copyOfRange(gzip, 10, gzip.length);
+    StringBuilder message = new StringBuilder()
+        .append("date=2020-01-01T00:00:00Z\nkey=test.sec\nalgorithm=SHA512/256\nblocksize=")
+        .append(blockSize).append("\n\n");
+    try {
+      for (int offset = 0; offset < payload.length; offset += blockSize) {
+        MessageDigest digest = MessageDigest.getInstance("SHA-512/256");
+        digest.update(payload, offset, Math.min(blockSize, payload.length - offset));
+        for (byte b : digest.digest()) {
+          message.append(String.format("%02x", b));
+        }
+        message.append('\n');
+      }
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] signedMessage = message.toString().getBytes(UTF_8);
+    byte[] comment = ("untrusted comment: signature from test.sec\n" + sign(signedMessage) + "\n").getBytes(UTF_8);
+    byte[] header = {0x1f, (byte) 0x8b, 8, 0x10, 0, 0, 0, 0, 0, 3};
+    return concat(header, comment, signedMessage, new byte[1], payload);
+  }
+
+  private static void writeSignifyFile(Path file, String comment, String base64) throws IOException {
+    Files.write(file, ("untrusted comment: " + comment + "\n" + base64 + "\n").getBytes(UTF_8));
+  }
+
+  private static byte[] digest(byte[] start, MessageSource message) {
+    MessageDigest digest = newSha512();
+    digest.update(start);
+    byte[] buffer = new byte[64 * 1024];
+    try (InputStream in = message.open()) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return digest.digest();
+  }
+
+  private static BigInteger[] add(BigInteger[] p, BigInteger[] q) {
+    BigInteger xx = p[0].multiply(q[0]);
+    BigInteger yy = p[1].multiply(q[1]);
+    BigInteger dxxyy = D.multiply(xx).multiply(yy).mod(P);
+    BigInteger x = p[0].multiply(q[1]).add(q[0].multiply(p[1]))
+        .multiply(BigInteger.ONE.add(dxxyy).modInverse(P)).mod(P);
+    BigInteger y = yy.add(xx)
+        .multiply(BigInteger.ONE.subtract(dxxyy).mod(P).modInverse(P)).mod(P);
+    return new BigInteger[] {x, y};
+  }
+
+  private static BigInteger[] multiply(BigInteger[] point, BigInteger scalar) {
+    BigInteger[] result = {BigInteger.ZERO, BigInteger.ONE};
+    for (int i = scalar.bitLength() - 1; i >= 0; i--) {
+      result = add(result, result);
+      if (scalar.testBit(i)) {
+        result = add(result, point);
+      }
+    }
+    return result;
+  }
+
+  private static byte[] encode(BigInteger[] point) {
+    byte[] encoded = toLittleEndian(point[1]);
+    if (point[0].testBit(0)) {
+      encoded[31] |= (byte) 0x80;
+    }
+    return encoded;
+  }
+
+  private static BigInteger fromLittleEndian(byte[] bytes) {
+    byte[] bigEndian = new byte[bytes.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bigEndian[i] = bytes[bytes.length - 1 - i];
+    }
+    return new BigInteger(1, bigEndian);
+  }
+
+  private static byte[] toLittleEndian(BigInteger value) {
+    byte[] bigEndian = value.toByteArray();
+    byte[] out = new byte[32];
+    for (int i = 0; i < 32 && i < bigEndian.length; i++) {
+      out[i] = bigEndian[bigEndian.length - 1 - i];
+    }
+    return out;
+  }
+
+  private static byte[] concat(byte[]... parts) {
+    int length = 0;
+    for (byte[] part : parts) {
+      length += part.length;
+    }
+    byte[] out = new byte[length];
+    int offset = 0;
+    for (byte[] part : parts) {
+      System.arraycopy(part, 0, out, offset, part.length);
+      offset += part.length;
+    }
+    return out;
+  }
+
+  private static String base64(byte[] bytes) {
+    return Base64.getEncoder().encodeToString(bytes);
+  }
+
+  private static byte[] sha512(byte[] input) {
+    return newSha512().digest(input);
+  }
+
+  private static MessageDigest newSha512() {
+    try {
+      return MessageDigest.getInstance("SHA-512");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class TreeVerifierTest {
+  @TempDir
+  Path root;
+
+  private TestSigner signer;
+  private TreeVerifier verifier;
+
+  @BeforeEach
+  void createVerifier() {
+    signer = TestSigner.generate();
+    verifier = new TreeVerifier(new SignifyVerifier(signer.getBase64PublicKey()));
+  }
+
+  @Test
+  void verifyAllSignedFiles() throws Exception {
+    writeSigned("a.tar", 100);
+    writeSigned("sub/b.tar", 2000);
+    writeSigned("sub/deeper/c.tar", 0);
+    Files.write(root.resolve("sub/README"), "not signed".getBytes(UTF_8));
+
+    List<TreeReport.Entry> streamed = new CopyOnWriteArrayList<>();
+    TreeReport report = verifier.verify(root, streamed::add);
+
+    assertThat(report.isOk()).isTrue();
+    assertThat(report.getEntries()).extracting(TreeReport.Entry::getMessageFile).containsExactly(
+        root.resolve("a.tar"), root.resolve("sub/b.tar"), root.resolve("sub/deeper/c.tar"));
+    assertThat(report.getUnsignedFiles()).containsExactly(root.resolve("sub/README"));
+    assertThat(report.count(TreeReport.Status.OK)).isEqualTo(3);
+    assertThat(report.getBytes()).isEqualTo(2100);
+    assertThat(report.toString()).startsWith("3 signed files, 0 failed, 1 unsigned, 2100 bytes in ");
+    assertThat(streamed).containsExactlyInAnyOrderElementsOf(report.getEntries());
+  }
+
+  @Test
+  void reportFailures() throws Exception {
+    writeSigned("good.tar", 10);
+    writeSigned("modified.tar", 10);
+    Files.write(root.resolve("modified.tar"), "0123456789".getBytes(UTF_8));
+    Files.write(root.resolve("other-key.tar"), new byte[10]);
+    TestSigner.generate().writeSignature(root.resolve("other-key.tar.sig"), new byte[10]);
+    Files.write(root.resolve("malformed.tar"), new byte[10]);
+    Files.write(root.resolve("malformed.tar.sig"), "no signature".getBytes(UTF_8));
+    signer.writeSignature(root.resolve("deleted.tar.sig"), new byte[10]);
+
+    TreeReport report = verifier.verify(root);
+
+    assertThat(report.isOk()).isFalse();
+    assertThat(report.getEntries()).extracting(TreeReport.Entry::toString).containsExactly(
+        root.resolve("deleted.tar") + ": MISSING_MESSAGE",
+        root.resolve("good.tar") + ": OK",
+        root.resolve("malformed.tar") + ": MALFORMED",
+        root.resolve("modified.tar") + ": BAD_SIGNATURE",
+        root.resolve("other-key.tar") + ": WRONG_KEY");
+    assertThat(report.getFailures()).hasSize(4);
+    assertThat(report.getUnsignedFiles()).isEmpty();
+  }
+
+  @Test
+  void reportUnreadableDirectoryAndGoOn() throws Exception {
+    assumeTrue(Files.getFileAttributeView(root, PosixFileAttributeView.class) != null);
+    writeSigned("good.tar", 10);
+    writeSigned("locked/a.tar", 10);
+    Path locked = root.resolve("locked");
+    Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("---------"));
+    try {
+      assumeTrue(!Files.isReadable(locked));
+
+      TreeReport report = verifier.verify(root);
+
+      assertThat(report.isOk()).isFalse();
+      assertThat(report.getEntries()).extracting(TreeReport.Entry::toString).containsExactly(
+          root.resolve("good.tar") + ": OK",
+          locked + ": UNREADABLE");
+    } finally {
+      Files.setPosixFilePermissions(locked, PosixFilePermissions.fromString("rwx------"));
+    }
+  }
+
+  @Test
+  void verifyLargestFilesFirst() throws Exception {
+    writeSigned("small", 10);
+    writeSigned("large", 30_000);
+    writeSigned("medium", 2000);
+
+    List<Long> sizes = new CopyOnWriteArrayList<>();
+    ForkJoinPool pool = new ForkJoinPool(1);
+    try {
+      new TreeVerifier(new SignifyVerifier(signer.getBase64PublicKey()), pool, 1)
+          .verify(root, entry -> sizes.add(entry.getSize()));
+    } finally {
+      pool.shutdown();
+    }
+    assertThat(sizes).containsExactly(30_000L, 2000L, 10L);
+  }
+
+  @Test
+  void failIfRootIsNotFound() {
+    assertThatThrownBy(() -> verifier.verify(root.resolve("missing")))
+        .isExactlyInstanceOf(NoSuchFileException.class);
+  }
+
+  private void writeSigned(String name, int size) throws Exception {
+    Path file = root.resolve(name);
+    Files.createDirectories(file.getParent());
+    byte[] content = new byte[size];
+    Files.write(file, content);
+    signer.writeSignature(root.resolve(name + ".sig"), content);
+  }
+}
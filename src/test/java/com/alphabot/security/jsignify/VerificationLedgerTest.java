@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.PublicKey;
+import com.alphabot.security.jsignify.elements.Signature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VerificationLedgerTest {
+  private static final byte[] MESSAGE = "testmessage\n".getBytes(UTF_8);
+  private static final byte[] DIGEST = new byte[32];
+
+  @TempDir
+  Path tempDir;
+
+  private Path ledgerFile;
+  private Path messageFile;
+  private PublicKey publicKey;
+  private Signature signature;
+
+  @BeforeEach
+  void createMessageFile() throws Exception {
+    ledgerFile = tempDir.resolve("ledger");
+    messageFile = tempDir.resolve("message.txt");
+    Files.write(messageFile, MESSAGE);
+    TestSigner signer = TestSigner.generate();
+    publicKey = PublicKey.fromBase64String(signer.getBase64PublicKey());
+    signature = Signature.fromBase64String(signer.sign(MESSAGE));
+  }
+
+  @Test
+  void findRecordsAfterReopening() throws Exception {
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      ledger.recordResult(messageFile, attributes(), publicKey, signature, VerificationResult.OK);
+      ledger.recordDigest(messageFile, attributes(), "SHA256", DIGEST);
+      ledger.recordResult(messageFile, attributes(), publicKey, signature, VerificationResult.WRONG_KEY);
+    }
+
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      assertThat(ledger.size()).isEqualTo(2);
+      assertThat(ledger.findResult(messageFile, attributes(), publicKey, signature)).isEqualTo(VerificationResult.OK);
+      assertThat(ledger.findDigest(messageFile, attributes(), "SHA256")).isEqualTo(DIGEST);
+      assertThat(ledger.findDigest(messageFile, attributes(), "SHA512")).isNull();
+    }
+  }
+
+  @Test
+  void ignoreRecordsOfChangedFiles() throws Exception {
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      ledger.recordResult(messageFile, attributes(), publicKey, signature, VerificationResult.BAD_SIGNATURE);
+      assertThat(ledger.findResult(messageFile, attributes(), publicKey, signature))
+          .isEqualTo(VerificationResult.BAD_SIGNATURE);
+
+      Files.setLastModifiedTime(messageFile, FileTime.fromMillis(1000));
+      assertThat(ledger.findResult(messageFile, attributes(), publicKey, signature)).isNull();
+      assertThat(ledger.findResult(tempDir.resolve("other.txt"), attributes(), publicKey, signature)).isNull();
+    }
+  }
+
+  @Test
+  void ignoreAndOverwriteTornRecord() throws Exception {
+    Path otherFile = tempDir.resolve("other.txt");
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      ledger.recordDigest(messageFile, attributes(), "SHA256", DIGEST);
+      ledger.recordDigest(otherFile, attributes(), "SHA256", DIGEST);
+    }
+    try (FileChannel channel = FileChannel.open(ledgerFile, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {42}), VerificationLedger.HEADER_LEN + VerificationLedger.RECORD_LEN + 40);
+    }
+
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      assertThat(ledger.findDigest(messageFile, attributes(), "SHA256")).isEqualTo(DIGEST);
+      assertThat(ledger.findDigest(otherFile, attributes(), "SHA256")).isNull();
+      ledger.recordDigest(otherFile, attributes(), "SHA512", DIGEST);
+    }
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      assertThat(ledger.size()).isEqualTo(2);
+      assertThat(ledger.findDigest(otherFile, attributes(), "SHA512")).isEqualTo(DIGEST);
+    }
+  }
+
+  @Test
+  void growBeyondInitialCapacity() throws Exception {
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      for (int i = 0; i < 3000; i++) {
+        ledger.recordDigest(tempDir.resolve("file" + i), attributes(), "SHA256", DIGEST);
+      }
+    }
+
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      assertThat(ledger.size()).isEqualTo(3000);
+      assertThat(ledger.findDigest(tempDir.resolve("file2999"), attributes(), "SHA256")).isEqualTo(DIGEST);
+    }
+  }
+
+  @Test
+  void compactToLatestRecords() throws Exception {
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      for (int i = 1; i <= 2000; i++) {
+        Files.setLastModifiedTime(messageFile, FileTime.fromMillis(i * 1000L));
+        ledger.recordDigest(messageFile, attributes(), "SHA256", DIGEST);
+      }
+      long length = Files.size(ledgerFile);
+
+      ledger.compact();
+      assertThat(Files.size(ledgerFile)).isLessThan(length);
+      assertThat(ledger.size()).isEqualTo(1);
+      assertThat(ledger.findDigest(messageFile, attributes(), "SHA256")).isEqualTo(DIGEST);
+    }
+  }
+
+  @Test
+  void keepPermissionsWhenCompacting() throws Exception {
+    assumeTrue(Files.getFileAttributeView(tempDir, PosixFileAttributeView.class) != null);
+    Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      ledger.recordDigest(messageFile, attributes(), "SHA256", DIGEST);
+      Files.setPosixFilePermissions(ledgerFile, permissions);
+
+      ledger.compact();
+      assertThat(Files.getPosixFilePermissions(ledgerFile)).isEqualTo(permissions);
+      assertThat(ledger.findDigest(messageFile, attributes(), "SHA256")).isEqualTo(DIGEST);
+    }
+  }
+
+  @Test
+  void shareLedgerBetweenInstances() throws Exception {
+    Path otherFile = tempDir.resolve("other.txt");
+    try (VerificationLedger first = VerificationLedger.open(ledgerFile);
+        VerificationLedger second = VerificationLedger.open(ledgerFile)) {
+      first.recordResult(messageFile, attributes(), publicKey, signature, VerificationResult.OK);
+      assertThat(second.findResult(messageFile, attributes(), publicKey, signature)).isEqualTo(VerificationResult.OK);
+
+      second.compact();
+      first.recordDigest(otherFile, attributes(), "SHA256", DIGEST);
+      assertThat(second.findDigest(otherFile, attributes(), "SHA256")).isEqualTo(DIGEST);
+      assertThat(first.size()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void failIfCompactionWasNotMoved() throws Exception {
+    try (VerificationLedger ledger = VerificationLedger.open(ledgerFile)) {
+      ledger.recordDigest(messageFile, attributes(), "SHA256", DIGEST);
+    }
+    // the retired flag reached the disk, but the move of the compacted file was lost
+    try (FileChannel channel = FileChannel.open(ledgerFile, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(new byte[] {1}), 16);
+    }
+
+    assertThatThrownBy(() -> VerificationLedger.open(ledgerFile))
+        .isExactlyInstanceOf(IOException.class)
+        .hasMessage("verification ledger " + ledgerFile.toAbsolutePath() + " was retired by a compaction, but not replaced");
+  }
+
+  @Test
+  void failIfFileIsNotALedger() throws Exception {
+    Files.write(ledgerFile, "not a ledger, but long enough to have a header of sixty-four bytes".getBytes(UTF_8));
+
+    assertThatThrownBy(() -> VerificationLedger.open(ledgerFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid verification ledger " + ledgerFile.toAbsolutePath());
+  }
+
+  @Test
+  void neverOverwriteShortFile() throws Exception {
+    byte[] content = "not a ledger".getBytes(UTF_8);
+    Files.write(ledgerFile, content);
+
+    assertThatThrownBy(() -> VerificationLedger.open(ledgerFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid verification ledger " + ledgerFile.toAbsolutePath());
+    assertThat(Files.readAllBytes(ledgerFile)).isEqualTo(content);
+  }
+
+  @Test
+  void neverOverwriteFileStartingWithZeros() throws Exception {
+    // e.g. a disk image, whose first bytes are often zero
+    byte[] content = new byte[1024 * 1024];
+    Arrays.fill(content, 64, content.length, (byte) 0x5a);
+    Files.write(ledgerFile, content);
+
+    assertThatThrownBy(() -> VerificationLedger.open(ledgerFile))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("invalid verification ledger " + ledgerFile.toAbsolutePath());
+    assertThat(Files.readAllBytes(ledgerFile)).isEqualTo(content);
+  }
+
+  @Test
+  void failIfClosed() throws Exception {
+    VerificationLedger ledger = VerificationLedger.open(ledgerFile);
+    ledger.close();
+
+    assertThatThrownBy(() -> ledger.findDigest(messageFile, attributes(), "SHA256"))
+        .isExactlyInstanceOf(IllegalStateException.class)
+        .hasMessage("ledger is closed");
+  }
+
+  private BasicFileAttributes attributes() throws Exception {
+    return Files.readAttributes(messageFile, BasicFileAttributes.class);
+  }
+}
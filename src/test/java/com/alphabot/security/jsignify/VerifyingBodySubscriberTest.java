@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VerifyingBodySubscriberTest {
+  private static final byte[] MESSAGE = "testmessage\n".getBytes(UTF_8);
+
+  private TestSigner signer;
+  private SignifyVerifier verifier;
+  private HttpServer server;
+  private byte[] served;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    signer = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/artifact", exchange -> {
+      exchange.sendResponseHeaders(200, 0);
+      try (OutputStream out = exchange.getResponseBody()) {
+        // chunked, in parts smaller than the chunks of the client
+        for (int offset = 0; offset < served.length; offset += 5000) {
+          out.write(served, offset, Math.min(5000, served.length - offset));
+        }
+      }
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void verifyDownloadedBody() throws Exception {
+    served = new byte[2 * 1024 * 1024 + 17];
+    new Random(3).nextBytes(served);
+
+    HttpResponse<VerificationResult> response = download(sign(served));
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).isEqualTo(VerificationResult.OK);
+  }
+
+  @Test
+  void reportModifiedBody() throws Exception {
+    served = new byte[100_000];
+    new Random(4).nextBytes(served);
+    Signature signature = sign(served);
+    served[50_000] ^= 1;
+
+    assertThat(download(signature).body()).isEqualTo(VerificationResult.BAD_SIGNATURE);
+  }
+
+  @Test
+  void reportBodySignedWithOtherKey() throws Exception {
+    served = MESSAGE;
+    Signature signature = Signature.fromBase64String(TestSigner.generate().sign(MESSAGE));
+
+    assertThat(download(signature).body()).isEqualTo(VerificationResult.WRONG_KEY);
+  }
+
+  @Test
+  void requestOneChunkAtATime() {
+    VerifyingBodySubscriber subscriber = new VerifyingBodySubscriber(verifier, sign(MESSAGE));
+    RecordingSubscription subscription = new RecordingSubscription();
+
+    subscriber.onSubscribe(subscription);
+    assertThat(subscription.requested).isEqualTo(1);
+    subscriber.onNext(List.of(ByteBuffer.wrap(MESSAGE, 0, 4), ByteBuffer.wrap(MESSAGE, 4, 3)));
+    assertThat(subscription.requested).isEqualTo(2);
+    subscriber.onNext(List.of(ByteBuffer.wrap(MESSAGE, 7, MESSAGE.length - 7)));
+    assertThat(subscription.requested).isEqualTo(3);
+    assertThat(subscriber.getBody().toCompletableFuture()).isNotDone();
+    subscriber.onComplete();
+
+    assertThat(subscriber.getBody().toCompletableFuture()).isCompletedWithValue(VerificationResult.OK);
+    assertThat(subscription.cancelled).isFalse();
+  }
+
+  @Test
+  void cancelSubscriptionIfSignedWithOtherKey() {
+    Signature signature = Signature.fromBase64String(TestSigner.generate().sign(MESSAGE));
+    VerifyingBodySubscriber subscriber = new VerifyingBodySubscriber(verifier, signature);
+    RecordingSubscription subscription = new RecordingSubscription();
+
+    subscriber.onSubscribe(subscription);
+
+    assertThat(subscription.requested).isZero();
+    assertThat(subscription.cancelled).isTrue();
+    assertThat(subscriber.getBody().toCompletableFuture()).isCompletedWithValue(VerificationResult.WRONG_KEY);
+  }
+
+  @Test
+  void cancelSubscriptionIfBodyIsCancelled() {
+    VerifyingBodySubscriber subscriber = new VerifyingBodySubscriber(verifier, sign(MESSAGE));
+    RecordingSubscription subscription = new RecordingSubscription();
+    subscriber.onSubscribe(subscription);
+
+    subscriber.getBody().toCompletableFuture().cancel(false);
+    subscriber.onNext(List.of(ByteBuffer.wrap(MESSAGE)));
+
+    assertThat(subscription.cancelled).isTrue();
+    assertThat(subscription.requested).isEqualTo(1);
+  }
+
+  @Test
+  void cancelSecondSubscription() {
+    VerifyingBodySubscriber subscriber = new VerifyingBodySubscriber(verifier, sign(MESSAGE));
+    RecordingSubscription first = new RecordingSubscription();
+    RecordingSubscription second = new RecordingSubscription();
+
+    subscriber.onSubscribe(first);
+    subscriber.onSubscribe(second);
+
+    assertThat(first.cancelled).isFalse();
+    assertThat(second.cancelled).isTrue();
+    assertThat(second.requested).isZero();
+  }
+
+  @Test
+  void failBodyIfPublisherFails() {
+    VerifyingBodySubscriber subscriber = new VerifyingBodySubscriber(verifier, sign(MESSAGE));
+    subscriber.onSubscribe(new RecordingSubscription());
+    IOException failure = new IOException("connection reset");
+
+    subscriber.onError(failure);
+
+    CompletableFuture<VerificationResult> body = subscriber.getBody().toCompletableFuture();
+    assertThatThrownBy(body::get)
+        .isExactlyInstanceOf(ExecutionException.class)
+        .hasCause(failure);
+  }
+
+  private HttpResponse<VerificationResult> download(Signature signature) throws IOException, InterruptedException {
+    URI uri = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/artifact");
+    HttpClient client = HttpClient.newHttpClient();
+    return client.send(HttpRequest.newBuilder(uri).build(), VerifyingBodySubscriber.handler(verifier, signature));
+  }
+
+  private Signature sign(byte[] message) {
+    return Signature.fromBase64String(signer.sign(message));
+  }
+
+  /*
+   * A subscription that records the demand of its subscriber.
+   */
+  private static final class RecordingSubscription implements Flow.Subscription {
+    private long requested;
+    private boolean cancelled;
+
+    @Override
+    public void request(long n) {
+      requested += n;
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import com.alphabot.security.jsignify.elements.Signature;
+import com.alphabot.security.jsignify.exception.VerificationFailedException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VerifyingTransferTest {
+  private static final byte[] MESSAGE = "testmessage\n".getBytes(UTF_8);
+
+  @TempDir
+  Path directory;
+
+  private TestSigner signer;
+  private VerifyingTransfer transfer;
+  private Path destination;
+
+  @BeforeEach
+  void createTransfer() {
+    signer = TestSigner.generate();
+    transfer = new VerifyingTransfer(new SignifyVerifier(signer.getBase64PublicKey()), 1024 * 1024);
+    destination = directory.resolve("message.txt");
+  }
+
+  @Test
+  void copyAndCommitValidMessage() throws Exception {
+    byte[] message = new byte[300_000];
+    new Random(1).nextBytes(message);
+
+    VerificationResult result = transfer.tryTransfer(sign(message), channel(message), destination);
+
+    assertThat(result).isEqualTo(VerificationResult.OK);
+    assertThat(Files.readAllBytes(destination)).isEqualTo(message);
+    assertThat(directory).isDirectoryNotContaining("glob:**.tmp");
+  }
+
+  @Test
+  void replaceExistingFile() throws Exception {
+    Files.write(destination, "old content".getBytes(UTF_8));
+    Path signatureFile = directory.resolve("message.txt.sig");
+    signer.writeSignature(signatureFile, MESSAGE);
+
+    transfer.transfer(signatureFile, channel(MESSAGE), destination);
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo(MESSAGE);
+  }
+
+  @Test
+  void createFileWithDefaultPermissions() throws Exception {
+    assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+    Path other = Files.createFile(directory.resolve("other.txt"));
+
+    transfer.transfer(sign(MESSAGE), channel(MESSAGE), destination);
+
+    assertThat(Files.getPosixFilePermissions(destination)).isEqualTo(Files.getPosixFilePermissions(other));
+  }
+
+  @Test
+  void keepPermissionsOfReplacedFile() throws Exception {
+    assumeTrue(Files.getFileAttributeView(directory, PosixFileAttributeView.class) != null);
+    Files.write(destination, "old content".getBytes(UTF_8));
+    Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-rw-r--");
+    Files.setPosixFilePermissions(destination, permissions);
+
+    transfer.transfer(sign(MESSAGE), channel(MESSAGE), destination);
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo(MESSAGE);
+    assertThat(Files.getPosixFilePermissions(destination)).isEqualTo(permissions);
+  }
+
+  @Test
+  void keepExistingFileIfSignatureIsNotValid() throws Exception {
+    Files.write(destination, "old content".getBytes(UTF_8));
+    Signature signature = sign(MESSAGE);
+
+    assertThatThrownBy(() -> transfer.transfer(signature, channel("forged\n".getBytes(UTF_8)), destination))
+        .isExactlyInstanceOf(VerificationFailedException.class)
+        .hasMessage("signature verification failed");
+    assertThat(Files.readAllBytes(destination)).isEqualTo("old content".getBytes(UTF_8));
+    assertThat(directory).isDirectoryNotContaining("glob:**.tmp");
+  }
+
+  @Test
+  void doNotReadMessageSignedWithOtherKey() throws Exception {
+    Signature signature = Signature.fromBase64String(TestSigner.generate().sign(MESSAGE));
+    ByteArrayInputStream in = new ByteArrayInputStream(MESSAGE);
+
+    assertThat(transfer.tryTransfer(signature, Channels.newChannel(in), destination)).isEqualTo(VerificationResult.WRONG_KEY);
+    assertThat(in.available()).isEqualTo(MESSAGE.length);
+    assertThat(destination).doesNotExist();
+  }
+
+  @Test
+  void rejectMessageLargerThanMaximumSize() throws Exception {
+    VerifyingTransfer limited = new VerifyingTransfer(new SignifyVerifier(signer.getBase64PublicKey()), MESSAGE.length - 1);
+
+    assertThatThrownBy(() -> limited.tryTransfer(sign(MESSAGE), channel(MESSAGE), destination))
+        .isExactlyInstanceOf(IOException.class)
+        .hasMessage("message is larger than the maximum size of 11 bytes");
+    assertThat(destination).doesNotExist();
+    assertThat(directory).isEmptyDirectory();
+  }
+
+  @Test
+  void copyMessagesOneAfterAnotherAfterRejectedMessage() throws Exception {
+    VerifyingTransfer limited = new VerifyingTransfer(new SignifyVerifier(signer.getBase64PublicKey()), MESSAGE.length - 1);
+    assertThatThrownBy(() -> limited.tryTransfer(sign(MESSAGE), channel(MESSAGE), destination))
+        .isExactlyInstanceOf(IOException.class);
+
+    byte[] message = new byte[100_000];
+    new Random(2).nextBytes(message);
+    assertThat(transfer.tryTransfer(sign(message), channel(message), destination)).isEqualTo(VerificationResult.OK);
+    assertThat(Files.readAllBytes(destination)).isEqualTo(message);
+    assertThat(transfer.tryTransfer(sign(MESSAGE), channel(MESSAGE), destination)).isEqualTo(VerificationResult.OK);
+    assertThat(Files.readAllBytes(destination)).isEqualTo(MESSAGE);
+  }
+
+  @Test
+  void acceptMessageOfMaximumSize() throws Exception {
+    VerifyingTransfer limited = new VerifyingTransfer(new SignifyVerifier(signer.getBase64PublicKey()), MESSAGE.length);
+
+    assertThat(limited.tryTransfer(sign(MESSAGE), channel(MESSAGE), destination)).isEqualTo(VerificationResult.OK);
+    assertThat(Files.readAllBytes(destination)).isEqualTo(MESSAGE);
+  }
+
+  @Test
+  void copyEmbeddedMessage() throws Exception {
+    Path signedFile = directory.resolve("message.txt.sig");
+    signer.writeEmbeddedSignature(signedFile, MESSAGE);
+
+    transfer.transferEmbedded(signedFile, destination);
+
+    assertThat(Files.readAllBytes(destination)).isEqualTo(MESSAGE);
+  }
+
+  @Test
+  void doNotCopyModifiedEmbeddedMessage() throws Exception {
+    Path signedFile = directory.resolve("message.txt.sig");
+    signer.writeEmbeddedSignature(signedFile, MESSAGE);
+    Files.write(signedFile, "appended\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+    assertThat(transfer.tryTransferEmbedded(signedFile, destination)).isEqualTo(VerificationResult.BAD_SIGNATURE);
+    assertThat(destination).doesNotExist();
+    assertThat(directory).isDirectoryNotContaining("glob:**.tmp");
+  }
+
+  @Test
+  void doNotCopyEmbeddedMessageWithMalformedHeader() throws Exception {
+    Path signedFile = directory.resolve("message.txt.sig");
+    Files.write(signedFile, "no signature here\ntestmessage\n".getBytes(UTF_8));
+
+    assertThat(transfer.tryTransferEmbedded(signedFile, destination)).isEqualTo(VerificationResult.MALFORMED);
+    assertThatThrownBy(() -> transfer.transferEmbedded(signedFile, destination))
+        .isExactlyInstanceOf(IllegalArgumentException.class);
+    assertThat(destination).doesNotExist();
+  }
+
+  @Test
+  void failIfMaximumSizeIsNegative() {
+    assertThatThrownBy(() -> new VerifyingTransfer(new SignifyVerifier(signer.getBase64PublicKey()), -1))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("maxSize must not be negative, but was -1.");
+  }
+
+  private Signature sign(byte[] message) {
+    return Signature.fromBase64String(signer.sign(message));
+  }
+
+  private static ReadableByteChannel channel(byte[] message) {
+    return Channels.newChannel(new ByteArrayInputStream(message));
+  }
+}
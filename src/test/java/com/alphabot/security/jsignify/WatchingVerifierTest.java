@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WatchingVerifierTest {
+  private static final byte[] MESSAGE = "testmessage\n".getBytes(UTF_8);
+  private static final long QUIET_MILLIS = 300;
+
+  @TempDir
+  Path root;
+
+  private TestSigner signer;
+  private SignifyVerifier verifier;
+  private final BlockingQueue<TreeReport.Entry> results = new LinkedBlockingQueue<>();
+  private WatchingVerifier watching;
+
+  @BeforeEach
+  void createSigner() {
+    signer = TestSigner.generate();
+    verifier = new SignifyVerifier(signer.getBase64PublicKey());
+  }
+
+  @AfterEach
+  void stopWatching() throws Exception {
+    if (watching != null) {
+      watching.close();
+    }
+  }
+
+  @Test
+  void verifyExistingPairsAtStart() throws Exception {
+    writeSigned(root.resolve("a.tar"));
+    Files.write(root.resolve("unsigned.txt"), MESSAGE);
+
+    watch(Runnable::run);
+
+    assertThat(nextResult()).hasToString(root.resolve("a.tar") + ": OK");
+    assertNoFurtherResult();
+  }
+
+  @Test
+  void verifyNewAndChangedPairs() throws Exception {
+    watch(Runnable::run);
+
+    writeSigned(root.resolve("a.tar"));
+    assertThat(nextResult()).hasToString(root.resolve("a.tar") + ": OK");
+
+    Files.write(root.resolve("a.tar"), "modified\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+    assertThat(nextResult()).hasToString(root.resolve("a.tar") + ": BAD_SIGNATURE");
+    assertNoFurtherResult();
+  }
+
+  @Test
+  void waitUntilFilesAreWritten() throws Exception {
+    watch(Runnable::run);
+
+    Path messageFile = root.resolve("a.tar");
+    signer.writeSignature(root.resolve("a.tar.sig"), MESSAGE);
+    for (int i = 0; i < MESSAGE.length; i++) {
+      Files.write(messageFile, new byte[] {MESSAGE[i]}, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      Thread.sleep(QUIET_MILLIS / 10);
+    }
+
+    TreeReport.Entry result = nextResult();
+    assertThat(result).hasToString(messageFile + ": OK");
+    assertThat(result.getSize()).isEqualTo(MESSAGE.length);
+    assertNoFurtherResult();
+  }
+
+  @Test
+  void watchNewSubdirectories() throws Exception {
+    watch(Runnable::run);
+
+    Path directory = Files.createDirectories(root.resolve("new/deeper"));
+    writeSigned(directory.resolve("a.tar"));
+    assertThat(nextResult()).hasToString(directory.resolve("a.tar") + ": OK");
+  }
+
+  @Test
+  void rescanDirectoryAfterLostEvents() throws Exception {
+    CountDownLatch blocked = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    watch(task -> {
+      blocked.countDown();
+      awaitUninterruptibly(release);
+      task.run();
+    });
+
+    // keep the watcher thread busy, so that more events pile up than a watch key holds
+    writeSigned(root.resolve("first.tar"));
+    assertThat(blocked.await(10, TimeUnit.SECONDS)).isTrue();
+    byte[] signature = Files.readAllBytes(root.resolve("first.tar.sig"));
+    for (int i = 0; i < 400; i++) {
+      Files.write(root.resolve("f" + i + ".tar"), MESSAGE);
+      Files.write(root.resolve("f" + i + ".tar.sig"), signature);
+    }
+    release.countDown();
+
+    List<TreeReport.Entry> received = new ArrayList<>();
+    for (int i = 0; i < 401; i++) {
+      received.add(nextResult());
+    }
+    assertThat(received).allMatch(entry -> entry.getStatus() == TreeReport.Status.OK);
+    assertNoFurtherResult();
+  }
+
+  @Test
+  void dropResultOfPairChangedDuringVerification() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    try {
+      CountDownLatch held = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      AtomicInteger submitted = new AtomicInteger();
+      watch(task -> pool.execute(() -> {
+        if (submitted.getAndIncrement() == 0) {
+          // the first verification ends only after the one of the change
+          held.countDown();
+          awaitUninterruptibly(release);
+          task.run();
+        } else {
+          task.run();
+          release.countDown();
+        }
+      }));
+
+      Path messageFile = root.resolve("a.tar");
+      writeSigned(messageFile);
+      assertThat(held.await(10, TimeUnit.SECONDS)).isTrue();
+      Files.write(messageFile, "modified\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+      assertThat(nextResult()).hasToString(messageFile + ": BAD_SIGNATURE");
+      assertNoFurtherResult();
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  void failIfRootIsNotFound() {
+    assertThatThrownBy(() -> new WatchingVerifier(verifier, root.resolve("missing"), 1, TimeUnit.SECONDS, results::add))
+        .isExactlyInstanceOf(NoSuchFileException.class);
+  }
+
+  private void watch(Executor executor) throws Exception {
+    watching = new WatchingVerifier(verifier, executor, root, QUIET_MILLIS, TimeUnit.MILLISECONDS, results::add);
+  }
+
+  private void writeSigned(Path messageFile) throws Exception {
+    Files.write(messageFile, MESSAGE);
+    signer.writeSignature(messageFile.resolveSibling(messageFile.getFileName() + ".sig"), MESSAGE);
+  }
+
+  private TreeReport.Entry nextResult() throws InterruptedException {
+    TreeReport.Entry result = results.poll(10, TimeUnit.SECONDS);
+    assertThat(result).as("result within 10 seconds").isNotNull();
+    return result;
+  }
+
+  private void assertNoFurtherResult() throws InterruptedException {
+    assertThat(results.poll(3 * QUIET_MILLIS, TimeUnit.MILLISECONDS)).isNull();
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
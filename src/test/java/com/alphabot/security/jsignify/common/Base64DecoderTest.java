@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Base64DecoderTest {
+
+  @Test
+  void decodeLikeJdkDecoder() {
+    Random random = new Random(42);
+    for (int length = 0; length < 80; length++) {
+      byte[] data = new byte[length];
+      random.nextBytes(data);
+      byte[] padded = Base64.getEncoder().encode(data);
+      byte[] unpadded = Base64.getEncoder().withoutPadding().encode(data);
+
+      assertThat(decode(padded, length)).isEqualTo(data);
+      assertThat(decode(unpadded, length)).isEqualTo(data);
+    }
+  }
+
+  @Test
+  void countBytesThatDoNotFit() {
+    byte[] base64 = Base64.getEncoder().encode(new byte[16]);
+    byte[] dst = new byte[4];
+    assertThat(Base64Decoder.decode(ByteBuffer.wrap(base64), dst)).isEqualTo(16);
+  }
+
+  @Test
+  void failIfIllegalCharacter() {
+    assertThatThrownBy(() -> decode("sugus$".getBytes(US_ASCII), 8))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Illegal base64 character 24");
+  }
+
+  @Test
+  void failIfLastUnitIsTooShort() {
+    assertThatThrownBy(() -> decode("QUJDR".getBytes(US_ASCII), 8))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Last unit does not have enough valid bits");
+  }
+
+  @Test
+  void failIfPaddingIsWrong() {
+    assertThatThrownBy(() -> decode("QQ=A".getBytes(US_ASCII), 8))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Input byte array has wrong 4-byte ending unit");
+    assertThatThrownBy(() -> decode("QUI=QUI=".getBytes(US_ASCII), 8))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Input byte array has incorrect ending byte at 4");
+  }
+
+  @Test
+  void returnInvalidInsteadOfThrowing() {
+    byte[] dst = new byte[8];
+    for (String invalid : new String[] {"sugus$", "QUJDR", "QQ=A", "QUI=QUI=", "Q==="}) {
+      assertThat(Base64Decoder.tryDecode(ByteBuffer.wrap(invalid.getBytes(US_ASCII)), dst))
+          .as(invalid)
+          .isEqualTo(Base64Decoder.INVALID);
+    }
+    assertThat(Base64Decoder.tryDecode(ByteBuffer.wrap("QUI=".getBytes(US_ASCII)), dst)).isEqualTo(2);
+  }
+
+  private static byte[] decode(byte[] base64, int maxLength) {
+    byte[] dst = new byte[maxLength];
+    int length = Base64Decoder.decode(ByteBuffer.wrap(base64), dst);
+    return Arrays.copyOf(dst, length);
+  }
+}
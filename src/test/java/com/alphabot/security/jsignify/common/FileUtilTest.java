@@ -15,11 +15,17 @@
 package com.alphabot.security.jsignify.common;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -63,6 +69,91 @@ class FileUtilTest {
         .hasMessageStartingWith("invalid comment in ");
   }
 
+  @Test
+  void readBase64BytesWithWindowsLineEndings(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("key.pub");
+    Files.write(file, "untrusted comment: key\r\n  RWRm/JNSNUb77Cm \r\n".getBytes(UTF_8));
+    ByteBuffer base64 = FileUtil.readBase64Bytes(file);
+    assertThat(UTF_8.decode(base64).toString()).isEqualTo("RWRm/JNSNUb77Cm");
+  }
+
+  @Test
+  void failIfBase64FileHasNoSecondLine(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("key.pub");
+    Files.write(file, "untrusted comment: key\n".getBytes(UTF_8));
+    assertThatThrownBy(() -> FileUtil.readBase64Bytes(file))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("invalid comment in ");
+  }
+
+  @Test
+  void readHeaderOfFileWithEmbeddedMessage(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("message.sig");
+    byte[] message = new byte[3 * FileUtil.MAX_HEADER_LEN];
+    Arrays.fill(message, (byte) 'm');
+    Files.write(file, "untrusted comment: key\r\nRWRm/JNSNUb77Cm\r\n".getBytes(UTF_8));
+    Files.write(file, message, StandardOpenOption.APPEND);
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      FileUtil.Header header = FileUtil.readHeader(channel, file);
+      assertThat(UTF_8.decode(header.getBase64Bytes()).toString()).isEqualTo("RWRm/JNSNUb77Cm");
+      assertThat(header.getEnd()).isEqualTo(41);
+      assertThat(channel.position()).isEqualTo(41);
+    }
+  }
+
+  @Test
+  void splitHeaderOfContentInMemory() {
+    ByteBuffer content = ByteBuffer.wrap("untrusted comment: list\r\n RWRm/JNSNUb77Cm \r\nSHA256 (a)".getBytes(UTF_8));
+    FileUtil.Header header = FileUtil.splitHeader(content);
+    assertThat(UTF_8.decode(header.getBase64Bytes()).toString()).isEqualTo("RWRm/JNSNUb77Cm");
+    assertThat(header.getEnd()).isEqualTo(44);
+  }
+
+  @Test
+  void returnNullIfSplitHeaderHasNoCompleteSignatureLine() {
+    assertThat(FileUtil.splitHeader(ByteBuffer.wrap("untrusted comment: list\nRWRm/JNSNUb77Cm".getBytes(UTF_8)))).isNull();
+    assertThat(FileUtil.splitHeader(ByteBuffer.wrap("comment: list\nRWRm/JNSNUb77Cm\n".getBytes(UTF_8)))).isNull();
+  }
+
+  @Test
+  void readBase64BytesWithoutFinalLineBreak(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("key.pub");
+    Files.write(file, "untrusted comment: key\nRWRm/JNSNUb77Cm".getBytes(UTF_8));
+    ByteBuffer base64 = FileUtil.readBase64Bytes(file);
+    assertThat(UTF_8.decode(base64).toString()).isEqualTo("RWRm/JNSNUb77Cm");
+  }
+
+  @Test
+  void failIfHeaderIsLongerThanLimit(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("message.sig");
+    byte[] comment = new byte[FileUtil.MAX_HEADER_LEN];
+    Arrays.fill(comment, (byte) 'c');
+    Files.write(file, "untrusted comment: ".getBytes(UTF_8));
+    Files.write(file, comment, StandardOpenOption.APPEND);
+    Files.write(file, "\nRWRm/JNSNUb77Cm\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+    assertThatThrownBy(() -> FileUtil.readBase64Bytes(file))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessageStartingWith("invalid header in ")
+        .hasMessageEndingWith("; must not be longer than 2048 bytes");
+  }
+
+  @Test
+  void returnNullForMalformedHeader(@TempDir Path tempDir) throws Exception {
+    Path file = tempDir.resolve("message.sig");
+    byte[] comment = new byte[FileUtil.MAX_HEADER_LEN];
+    Arrays.fill(comment, (byte) 'c');
+    Files.write(file, "untrusted comment: ".getBytes(UTF_8));
+    Files.write(file, comment, StandardOpenOption.APPEND);
+    Files.write(file, "\nRWRm/JNSNUb77Cm\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+
+    assertThat(FileUtil.tryReadBase64Bytes(file)).isNull();
+    assertThat(FileUtil.tryReadBase64Bytes(getPathFromResource("wrongcomment.txt"))).isNull();
+    assertThat(UTF_8.decode(FileUtil.tryReadBase64Bytes(getPathFromResource("../publickey.pub"))).toString())
+        .isEqualTo("RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t");
+  }
+
   private Path getPathFromResource(String resourceName) throws URISyntaxException {
     return Paths.get(getClass().getResource(resourceName).toURI());
   }
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.ed25519;
+
+import com.google.crypto.tink.subtle.Ed25519Sign;
+import com.google.crypto.tink.subtle.Ed25519Verify;
+import com.google.crypto.tink.subtle.Hex;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class Ed25519VerifierTest {
+
+  // RFC 8032, section 7.1, tests 1 to 3
+  private static final String[][] RFC_8032_VECTORS = {
+      {
+          "d75a980182b10ab7d54bfed3c964073a0ee172f3daa62325af021a68f707511a",
+          "",
+          "e5564300c360ac729086e2cc806e828a84877f1eb8e5d974d873e065224901555fb8821590a33bacc61e39701cf9b46bd25bf5f0595bbe24655141438e7a100b"
+      },
+      {
+          "3d4017c3e843895a92b70aa74d1b7ebc9c982ccf2ec4968cc0cd55f12af4660c",
+          "72",
+          "92a009a9f0d4cab8720e820b5f642540a2b27b5416503f8fb3762223ebdb69da085ac1e43e15996e458f3613d0f11d8c387b2eaeb4302aeeb00d291612bb0c00"
+      },
+      {
+          "fc51cd8e6218a1a38da47ed00230f0580816ed13ba3303ac5deb911548908025",
+          "af82",
+          "6291d657deec24024827e69c3abe01a30ce548a284743a445e3680d7db5ac3ac18ff9b538d16f290ae67f760984dc6594a7c15e9716ed28dc027beceea1ec40a"
+      }
+  };
+
+  @Test
+  void verifyRfc8032Vectors() {
+    for (String[] vector : RFC_8032_VECTORS) {
+      Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(vector[0]));
+      assertThat(verifier.verify(Hex.decode(vector[2]), Hex.decode(vector[1]))).isTrue();
+    }
+  }
+
+  @Test
+  void failIfMessageIsModified() {
+    String[] vector = RFC_8032_VECTORS[2];
+    Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(vector[0]));
+    assertThat(verifier.verify(Hex.decode(vector[2]), Hex.decode("af83"))).isFalse();
+  }
+
+  @Test
+  void failIfScalarIsNotReduced() {
+    String[] vector = RFC_8032_VECTORS[0];
+    byte[] signature = Hex.decode(vector[2]);
+    signature[63] |= (byte) 0xf0;
+    Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(vector[0]));
+    assertThat(verifier.verify(signature, new byte[0])).isFalse();
+  }
+
+  @Test
+  void failIfPublicKeyIsNotOnCurve() {
+    byte[] publicKey = new byte[Ed25519Verifier.PUBLIC_KEY_LEN];
+    publicKey[0] = 2;
+    Ed25519Verifier verifier = new Ed25519Verifier(publicKey);
+    assertThat(verifier.verify(new byte[Ed25519Verifier.SIGNATURE_LEN], new byte[0])).isFalse();
+  }
+
+  @Test
+  void failIfPublicKeyHasWrongLength() {
+    assertThatThrownBy(() -> new Ed25519Verifier(new byte[31]))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Public key length must be 32, but was 31.");
+  }
+
+  @Test
+  void failIfSignatureHasWrongLength() {
+    Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(RFC_8032_VECTORS[0][0]));
+    assertThatThrownBy(() -> verifier.newVerification(new byte[63]))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Signature length must be 64, but was 63.");
+  }
+
+  @Test
+  void verifyIncrementally() {
+    String[] vector = RFC_8032_VECTORS[2];
+    Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(vector[0]));
+    Ed25519Verifier.Verification verification = verifier.newVerification(Hex.decode(vector[2]));
+    verification.update(new byte[] {(byte) 0xaf}, 0, 1);
+    verification.update(ByteBuffer.wrap(new byte[] {(byte) 0x82}));
+    assertThat(verification.verify()).isTrue();
+  }
+
+  @Test
+  void sameResultAsTinkForRandomInputs() throws GeneralSecurityException {
+    Random random = new Random(42);
+    for (int i = 0; i < 64; i++) {
+      Ed25519Sign.KeyPair keyPair = Ed25519Sign.KeyPair.newKeyPair();
+      byte[] message = new byte[random.nextInt(512)];
+      random.nextBytes(message);
+      byte[] signature = new Ed25519Sign(keyPair.getPrivateKey()).sign(message);
+      if (i % 2 == 1) {
+        signature[random.nextInt(signature.length)] ^= (byte) (1 << random.nextInt(8));
+      }
+
+      boolean expected = tinkVerify(keyPair.getPublicKey(), signature, message);
+      assertThat(new Ed25519Verifier(keyPair.getPublicKey()).verify(signature, message)).isEqualTo(expected);
+    }
+  }
+
+  private static boolean tinkVerify(byte[] publicKey, byte[] signature, byte[] message) {
+    try {
+      new Ed25519Verify(publicKey).verify(signature, message);
+      return true;
+    } catch (GeneralSecurityException e) {
+      return false;
+    }
+  }
+
+  @Test
+  void verifyBatchOfValidSignatures() throws GeneralSecurityException {
+    Ed25519Sign.KeyPair keyPair = Ed25519Sign.KeyPair.newKeyPair();
+    List<byte[]> messages = randomMessages(new Random(1), 100);
+    List<byte[]> signatures = sign(keyPair, messages);
+
+    boolean[] valid = new Ed25519Verifier(keyPair.getPublicKey()).verifyBatch(signatures, messages);
+    assertThat(valid).hasSize(100).doesNotContain(false);
+  }
+
+  @Test
+  void verifyBatchFindsInvalidSignatures() throws GeneralSecurityException {
+    Ed25519Sign.KeyPair keyPair = Ed25519Sign.KeyPair.newKeyPair();
+    List<byte[]> messages = randomMessages(new Random(2), 33);
+    List<byte[]> signatures = sign(keyPair, messages);
+    messages.get(0)[0] ^= 1;
+    signatures.get(7)[3] ^= 1;
+    signatures.get(20)[63] |= (byte) 0xf0;
+    signatures.get(32)[40] ^= 1;
+
+    boolean[] valid = new Ed25519Verifier(keyPair.getPublicKey()).verifyBatch(signatures, messages);
+    for (int i = 0; i < valid.length; i++) {
+      assertThat(valid[i]).as("signature %s", i).isEqualTo(i != 0 && i != 7 && i != 20 && i != 32);
+    }
+  }
+
+  @Test
+  void failInBatchIfEncodingOfRIsNotCanonical() {
+    String[] vector = RFC_8032_VECTORS[0];
+    byte[] signature = Hex.decode(vector[2]);
+    // y = p + 1, the non-canonical encoding of the neutral element
+    Arrays.fill(signature, 0, 32, (byte) 0xff);
+    signature[0] = (byte) 0xee;
+    signature[31] = 0x7f;
+
+    Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(vector[0]));
+    List<byte[]> signatures = List.of(signature, Hex.decode(vector[2]));
+    List<byte[]> messages = List.of(new byte[0], new byte[0]);
+    assertThat(verifier.verifyBatch(signatures, messages)).containsExactly(false, true);
+  }
+
+  @Test
+  void failInBatchIfPublicKeyIsNotOnCurve() {
+    byte[] publicKey = new byte[Ed25519Verifier.PUBLIC_KEY_LEN];
+    publicKey[0] = 2;
+    Ed25519Verifier verifier = new Ed25519Verifier(publicKey);
+    List<byte[]> signatures = List.of(new byte[Ed25519Verifier.SIGNATURE_LEN], new byte[Ed25519Verifier.SIGNATURE_LEN]);
+    assertThat(verifier.verifyBatch(signatures, List.of(new byte[0], new byte[0]))).containsExactly(false, false);
+  }
+
+  @Test
+  void verifyEmptyBatch() {
+    Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(RFC_8032_VECTORS[0][0]));
+    assertThat(verifier.verifyBatch(List.of(), List.of())).isEmpty();
+  }
+
+  @Test
+  void failIfBatchSizesDiffer() {
+    Ed25519Verifier verifier = new Ed25519Verifier(Hex.decode(RFC_8032_VECTORS[0][0]));
+    assertThatThrownBy(() -> verifier.verifyBatch(List.of(), List.of(new byte[0])))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Number of signatures (0) and messages (1) must be equal.");
+  }
+
+  @Test
+  void batchHasSameResultAsSingleVerificationForRandomInputs() throws GeneralSecurityException {
+    Random random = new Random(3);
+    Ed25519Sign.KeyPair keyPair = Ed25519Sign.KeyPair.newKeyPair();
+    Ed25519Verifier verifier = new Ed25519Verifier(keyPair.getPublicKey());
+    for (int round = 0; round < 8; round++) {
+      List<byte[]> messages = randomMessages(random, 1 + random.nextInt(64));
+      List<byte[]> signatures = sign(keyPair, messages);
+      for (byte[] signature : signatures) {
+        if (random.nextInt(4) == 0) {
+          signature[random.nextInt(signature.length)] ^= (byte) (1 << random.nextInt(8));
+        }
+      }
+
+      boolean[] valid = verifier.verifyBatch(signatures, messages);
+      for (int i = 0; i < valid.length; i++) {
+        assertThat(valid[i]).isEqualTo(verifier.verify(signatures.get(i), messages.get(i)));
+      }
+    }
+  }
+
+  @Test
+  void batchHasSameResultAsSingleVerificationForPublicKeyOfSmallOrder() throws GeneralSecurityException {
+    // y = p - 1, the point of order 2
+    byte[] publicKey = new byte[Ed25519Verifier.PUBLIC_KEY_LEN];
+    Arrays.fill(publicKey, (byte) 0xff);
+    publicKey[0] = (byte) 0xec;
+    publicKey[31] = 0x7f;
+    List<byte[]> messages = randomMessages(new Random(4), 16);
+    List<byte[]> signatures = new ArrayList<>();
+    for (int i = 0; i < messages.size(); i++) {
+      signatures.add(signWithoutKey((byte) i));
+    }
+
+    // [S]B = R, so [S]B - [h]A - R has order 2 for odd h, which only the check with the cofactor accepts
+    Ed25519Verifier verifier = new Ed25519Verifier(publicKey);
+    assertThat(verifier.verifyBatch(signatures, messages)).doesNotContain(false);
+    int rejectedByTink = 0;
+    for (int i = 0; i < messages.size(); i++) {
+      assertThat(verifier.verify(signatures.get(i), messages.get(i))).isTrue();
+      rejectedByTink += tinkVerify(publicKey, signatures.get(i), messages.get(i)) ? 0 : 1;
+    }
+    assertThat(rejectedByTink).isPositive();
+  }
+
+  private static List<byte[]> randomMessages(Random random, int count) {
+    List<byte[]> messages = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      byte[] message = new byte[random.nextInt(256)];
+      random.nextBytes(message);
+      messages.add(message);
+    }
+    return messages;
+  }
+
+  /*
+   * Returns R || S with R = [S]B, for a nonce derived from the seed byte like a private key scalar.
+   */
+  private static byte[] signWithoutKey(byte seed) throws GeneralSecurityException {
+    byte[] seedBytes = new byte[Ed25519Verifier.PUBLIC_KEY_LEN];
+    seedBytes[0] = seed;
+    byte[] hash = MessageDigest.getInstance("SHA-512").digest(seedBytes);
+    hash[0] &= (byte) 248;
+    hash[31] &= 127;
+    hash[31] |= 64;
+    byte[] s = Scalar25519.reduce(Arrays.copyOf(hash, 32));
+    byte[] r = Ed25519Sign.KeyPair.newKeyPairFromSeed(seedBytes).getPublicKey();
+    byte[] signature = Arrays.copyOf(r, Ed25519Verifier.SIGNATURE_LEN);
+    System.arraycopy(s, 0, signature, 32, 32);
+    return signature;
+  }
+
+  private static List<byte[]> sign(Ed25519Sign.KeyPair keyPair, List<byte[]> messages) throws GeneralSecurityException {
+    Ed25519Sign signer = new Ed25519Sign(keyPair.getPrivateKey());
+    List<byte[]> signatures = new ArrayList<>();
+    for (byte[] message : messages) {
+      signatures.add(signer.sign(message));
+    }
+    return signatures;
+  }
+}
@@ -41,7 +41,11 @@ class KeyNumberTest {
     assertThat(actual.getRaw()).isEqualTo(new byte[]{0x11, 0x22, 0x22, 0x44, 0x0a, 0x0b, 0x0c, 0x0d});
   }
 
-
+  @Test
+  void toLong() {
+    KeyNumber actual = new KeyNumber(new byte[]{0x11, 0x22, 0x22, 0x44, 0x0a, 0x0b, 0x0c, (byte) 0xfd});
+    assertThat(actual.toLong()).isEqualTo(0x112222440a0b0cfdL);
+  }
 
   @Test
   void isNotEqualTo() {
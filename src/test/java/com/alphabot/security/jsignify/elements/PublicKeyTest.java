@@ -17,10 +17,12 @@ package com.alphabot.security.jsignify.elements;
 import org.junit.jupiter.api.Test;
 
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
@@ -69,6 +71,17 @@ class PublicKeyTest {
         .hasMessage("not-existing.txt");
   }
 
+  @Test
+  void createPublicKeyFromBase64Bytes() {
+    String base64 = "RWRm/JNSNUb77CmSMXBAA5Owr4XzPbRO/PKDXXLIUfOgFDd/F8hT8p5t";
+    PublicKey fromString = PublicKey.fromBase64String(base64);
+    PublicKey fromBytes = PublicKey.fromBase64Bytes(base64.getBytes(US_ASCII));
+    PublicKey fromBuffer = PublicKey.fromBase64Bytes(ByteBuffer.allocateDirect(base64.length()).put(base64.getBytes(US_ASCII)).flip());
+    assertThat(fromBytes.getPublicKey()).isEqualTo(fromString.getPublicKey());
+    assertThat(fromBuffer.getPublicKey()).isEqualTo(fromString.getPublicKey());
+    assertThat(fromBuffer.getPublicKeyBuffer()).isEqualTo(ByteBuffer.wrap(fromString.getPublicKey()));
+  }
+
   private Path getPathFromResource(String resourceName) throws URISyntaxException {
     return Paths.get(getClass().getResource(resourceName).toURI());
   }
@@ -14,17 +14,25 @@
 
 package com.alphabot.security.jsignify.elements;
 
+import com.sun.management.ThreadMXBean;
 import org.junit.jupiter.api.Test;
 
+import java.lang.management.ManagementFactory;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class SignatureTest {
+  private static final String BASE64_SIGNATURE =
+      "RWRm/JNSNUb77AmgjFuNCA6+3wwVotARqp2BqrG+ZoqFaK2PB8pW/Acpo660s+DmF1pxJOTB8uXp6b1S1N+sZLZwx8G6tnxSIg0=";
 
   @Test
   void createSignatureFromBase64String() {
@@ -54,6 +62,45 @@ class SignatureTest {
         .hasMessage("base64Signature");
   }
 
+  @Test
+  void returnNullForMalformedSignature() {
+    assertThat(Signature.tryFromBase64String(BASE64_SIGNATURE)).isNotNull();
+    assertThat(Signature.tryFromBase64String("sugus$")).isNull();
+    assertThat(Signature.tryFromBase64String("RWRm/JNSNUb77AmgjFuNCA")).isNull();
+    assertThat(Signature.tryFromBase64String(BASE64_SIGNATURE.replace("RWRm", "AAAA"))).isNull();
+    assertThatThrownBy(() -> Signature.fromBase64String(BASE64_SIGNATURE.replace("RWRm", "AAAA")))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Algorithm must equal 'Ed'");
+  }
+
+  @Test
+  void rejectMalformedSignatureWithoutException() {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    String garbage = BASE64_SIGNATURE.replace('+', '$');
+    long threadId = Thread.currentThread().getId();
+
+    int count = 10_000;
+    int rejected = 0;
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < count; i++) {
+      rejected += Signature.tryFromBase64String(garbage) == null ? 1 : 0;
+    }
+    long allocatedPerReject = (threads.getThreadAllocatedBytes(threadId) - before) / count;
+
+    assertThat(rejected).isEqualTo(count);
+    // the bytes of the string, the layout and a buffer wrapper; an exception with its stack trace is far larger
+    assertThat(allocatedPerReject).isLessThanOrEqualTo(400);
+  }
+
+  @Test
+  void returnNullForMalformedFile() throws Exception {
+    assertThat(Signature.tryFromFile(getPathFromResource("../signature.sig"))).isNotNull();
+    assertThat(Signature.tryFromFile(getPathFromResource("../common/wrongcomment.txt"))).isNull();
+    assertThat(Signature.tryFromFile(getPathFromResource("../publickey.pub"))).isNull();
+  }
+
   @Test
   void createSignatureFromFile() throws Exception {
     Path signatureFile = getPathFromResource("../signature.sig");
@@ -69,6 +116,91 @@ class SignatureTest {
         .hasMessage("not-existing.txt");
   }
 
+  @Test
+  void createSignatureFromBase64Bytes() {
+    Signature fromString = Signature.fromBase64String(BASE64_SIGNATURE);
+    Signature fromBytes = Signature.fromBase64Bytes(BASE64_SIGNATURE.getBytes(US_ASCII));
+    assertThat(fromBytes.getKeyNumber()).isEqualTo(fromString.getKeyNumber());
+    assertThat(fromBytes.getSignature()).isEqualTo(fromString.getSignature());
+  }
+
+  @Test
+  void createSignatureFromDirectBufferWithoutMovingIt() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BASE64_SIGNATURE.length() + 4);
+    buffer.put("sig:".getBytes(US_ASCII)).put(BASE64_SIGNATURE.getBytes(US_ASCII)).flip().position(4);
+
+    Signature signature = Signature.fromBase64Bytes(buffer);
+    assertThat(buffer.position()).isEqualTo(4);
+    assertThat(signature.getSignature()).isEqualTo(Signature.fromBase64String(BASE64_SIGNATURE).getSignature());
+  }
+
+  @Test
+  void failIfBase64BytesHaveWrongLength() {
+    assertThatThrownBy(() -> Signature.fromBase64Bytes("RWRm/JNSNUb77AmgjFuNCA==".getBytes(US_ASCII)))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Decoded signature total length should be 74, but was 16.");
+  }
+
+  @Test
+  void signatureBufferIsReadOnlyView() {
+    Signature signature = Signature.fromBase64String(BASE64_SIGNATURE);
+    ByteBuffer view = signature.getSignatureBuffer();
+    assertThat(view.isReadOnly()).isTrue();
+    assertThat(view).isEqualTo(ByteBuffer.wrap(signature.getSignature()));
+    assertThatThrownBy(() -> view.put(0, (byte) 0)).isExactlyInstanceOf(ReadOnlyBufferException.class);
+  }
+
+  @Test
+  void createSignatureFromLayout() {
+    Signature signature = Signature.fromBase64String(BASE64_SIGNATURE);
+    ByteBuffer layout = signature.getLayoutBuffer();
+    assertThat(layout.isReadOnly()).isTrue();
+    assertThat(layout.remaining()).isEqualTo(74);
+
+    ByteBuffer record = ByteBuffer.allocateDirect(80);
+    record.position(3);
+    record.put(layout).flip().position(3);
+    Signature fromLayout = Signature.fromLayout(record);
+
+    assertThat(record.position()).isEqualTo(3);
+    assertThat(fromLayout.getKeyNumber()).isEqualTo(signature.getKeyNumber());
+    assertThat(fromLayout.getSignature()).isEqualTo(signature.getSignature());
+  }
+
+  @Test
+  void failIfLayoutHasWrongLengthOrAlgorithm() {
+    assertThatThrownBy(() -> Signature.fromLayout(ByteBuffer.allocate(16)))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Decoded signature total length should be 74, but was 16.");
+    assertThatThrownBy(() -> Signature.fromLayout(ByteBuffer.allocate(74)))
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Algorithm must equal 'Ed'");
+  }
+
+  @Test
+  void parseWithoutIntermediateCopies() {
+    assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+    ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    byte[] base64 = BASE64_SIGNATURE.getBytes(US_ASCII);
+    long threadId = Thread.currentThread().getId();
+
+    long keyNumbers = 0;
+    for (int i = 0; i < 20_000; i++) {
+      keyNumbers += Signature.fromBase64Bytes(base64).getKeyNumber().toLong();
+    }
+    int count = 10_000;
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < count; i++) {
+      keyNumbers += Signature.fromBase64Bytes(base64).getKeyNumber().toLong();
+    }
+    long allocatedPerParse = (threads.getThreadAllocatedBytes(threadId) - before) / count;
+
+    assertThat(keyNumbers).isNotZero();
+    // the signature, its 74 byte layout and its key number, with room for headers and a buffer wrapper
+    assertThat(allocatedPerParse).isLessThanOrEqualTo(256);
+  }
+
   private Path getPathFromResource(String resourceName) throws URISyntaxException {
     return Paths.get(getClass().getResource(resourceName).toURI());
   }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.engine;
+
+import com.google.crypto.tink.subtle.Hex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class JdkVerificationEngineTest {
+
+  // RFC 8032, section 7.1, tests 1 to 3
+  private static final String[][] RFC_8032_VECTORS = {
+      {
+          "d75a980182b10ab7d54bfed3c964073a0ee172f3daa62325af021a68f707511a",
+          "",
+          "e5564300c360ac729086e2cc806e828a84877f1eb8e5d974d873e065224901555fb8821590a33bacc61e39701cf9b46bd25bf5f0595bbe24655141438e7a100b"
+      },
+      {
+          "3d4017c3e843895a92b70aa74d1b7ebc9c982ccf2ec4968cc0cd55f12af4660c",
+          "72",
+          "92a009a9f0d4cab8720e820b5f642540a2b27b5416503f8fb3762223ebdb69da085ac1e43e15996e458f3613d0f11d8c387b2eaeb4302aeeb00d291612bb0c00"
+      },
+      {
+          "fc51cd8e6218a1a38da47ed00230f0580816ed13ba3303ac5deb911548908025",
+          "af82",
+          "6291d657deec24024827e69c3abe01a30ce548a284743a445e3680d7db5ac3ac18ff9b538d16f290ae67f760984dc6594a7c15e9716ed28dc027beceea1ec40a"
+      }
+  };
+
+  private final VerificationEngine engine = new JdkVerificationEngine();
+
+  @BeforeEach
+  void requireJdkEd25519() {
+    assumeTrue(engine.isAvailable(), "Ed25519 needs Java 15 or later");
+  }
+
+  @Test
+  void verifyRfc8032Vectors() {
+    for (String[] vector : RFC_8032_VECTORS) {
+      VerificationEngine.KeyVerifier verifier = engine.newKeyVerifier(Hex.decode(vector[0]));
+      assertThat(verifier.verify(Hex.decode(vector[2]), Hex.decode(vector[1]))).isTrue();
+      assertThat(verifier.verify(Hex.decode(vector[2]), Hex.decode(vector[1] + "00"))).isFalse();
+    }
+  }
+
+  @Test
+  void verifyWithKeysTakingTurnsOnOneThread() {
+    VerificationEngine.KeyVerifier[] verifiers = new VerificationEngine.KeyVerifier[RFC_8032_VECTORS.length];
+    for (int i = 0; i < verifiers.length; i++) {
+      verifiers[i] = engine.newKeyVerifier(Hex.decode(RFC_8032_VECTORS[i][0]));
+    }
+    for (int round = 0; round < 2; round++) {
+      for (int i = 0; i < verifiers.length; i++) {
+        String[] vector = RFC_8032_VECTORS[i];
+        String[] otherVector = RFC_8032_VECTORS[(i + 1) % RFC_8032_VECTORS.length];
+        assertThat(verifiers[i].verify(Hex.decode(otherVector[2]), Hex.decode(otherVector[1]))).isFalse();
+        assertThat(verifiers[i].verify(Hex.decode(vector[2]), Hex.decode(vector[1]))).isTrue();
+      }
+    }
+  }
+
+  @Test
+  void failIfPublicKeyIsNotOnCurve() {
+    byte[] publicKey = new byte[32];
+    publicKey[0] = 2;
+    assertThat(engine.newKeyVerifier(publicKey).verify(new byte[64], new byte[0])).isFalse();
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 The JSignify Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.alphabot.security.jsignify.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VerificationEnginesTest {
+
+  @AfterEach
+  void clearEngineProperty() {
+    System.clearProperty(VerificationEngines.ENGINE_PROPERTY);
+  }
+
+  @Test
+  void findRegisteredEngines() {
+    assertThat(VerificationEngines.getEngines())
+        .extracting(VerificationEngine::getName)
+        .contains("tink", "built-in");
+    assertThat(VerificationEngines.getEngines())
+        .extracting(VerificationEngine::getName)
+        .hasSize(new JdkVerificationEngine().isAvailable() ? 3 : 2);
+  }
+
+  @Test
+  void selectBuiltInEngineByDefault() {
+    assertThat(VerificationEngines.getDefault()).isInstanceOf(BuiltInVerificationEngine.class);
+    assertThat(VerificationEngines.getDefault()).isSameAs(VerificationEngines.getEngine("built-in"));
+  }
+
+  @Test
+  void selectFastestEngineOnlyIfAskedFor() {
+    System.setProperty(VerificationEngines.ENGINE_PROPERTY, VerificationEngines.FASTEST);
+    VerificationEngine fastest = VerificationEngines.getDefault();
+    assertThat(VerificationEngines.getEngines()).contains(fastest);
+    assertThat(VerificationEngines.getDefault()).isSameAs(fastest);
+  }
+
+  @Test
+  void selectEngineBySystemProperty() {
+    System.setProperty(VerificationEngines.ENGINE_PROPERTY, "tink");
+    assertThat(VerificationEngines.getDefault()).isInstanceOf(TinkVerificationEngine.class);
+
+    System.setProperty(VerificationEngines.ENGINE_PROPERTY, "built-in");
+    assertThat(VerificationEngines.getDefault()).isInstanceOf(BuiltInVerificationEngine.class);
+  }
+
+  @Test
+  void failIfUnknownEngineIsSelected() {
+    System.setProperty(VerificationEngines.ENGINE_PROPERTY, "unknown");
+    assertThatThrownBy(VerificationEngines::getDefault)
+        .isExactlyInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Verification engine 'unknown' is not available.");
+  }
+
+  @Test
+  void passSelfTest() {
+    assertThat(VerificationEngines.passesSelfTest(new TinkVerificationEngine())).isTrue();
+    assertThat(VerificationEngines.passesSelfTest(new BuiltInVerificationEngine())).isTrue();
+  }
+
+  @Test
+  void failSelfTestIfEngineAcceptsEverything() {
+    VerificationEngine engine = new VerificationEngine() {
+      @Override
+      public String getName() {
+        return "accept-all";
+      }
+
+      @Override
+      public KeyVerifier newKeyVerifier(byte[] publicKey) {
+        return (signature, message) -> true;
+      }
+    };
+    assertThat(VerificationEngines.passesSelfTest(engine)).isFalse();
+  }
+
+  @Test
+  void failSelfTestIfEngineThrows() {
+    VerificationEngine engine = new VerificationEngine() {
+      @Override
+      public String getName() {
+        return "broken";
+      }
+
+      @Override
+      public KeyVerifier newKeyVerifier(byte[] publicKey) {
+        throw new IllegalStateException("broken");
+      }
+    };
+    assertThat(VerificationEngines.passesSelfTest(engine)).isFalse();
+  }
+}